@@ -0,0 +1,101 @@
+package org.udap.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.udap.config.ClientKeyMaterial;
+import org.udap.config.UdapFhirClient;
+
+/**
+ * Generated (never checked in) keystores and certificates for the benchmarks. Uses the
+ * JDK's keytool, as the JDK has no public API to issue a certificate.
+ */
+final class BenchmarkKeys implements AutoCloseable {
+
+    static final String SECRET = "changeit";
+
+    static final String CLIENT_SAN = "https://bench.example.org/client-apps/benchmark";
+
+    private final Path directory;
+
+    BenchmarkKeys() throws IOException {
+        this.directory = Files.createTempDirectory("udap-benchmark");
+    }
+
+    /**
+     * Generates a PKCS#12 keystore holding a key pair and a self-signed certificate with
+     * the client SAN
+     * @param alias - also the file name
+     * @param keyAlg - RSA or EC
+     * @param keySize - 2048 for RSA, 256 for EC P-256
+     * @return keystore
+     */
+    Path keystore(final String alias, final String keyAlg, final int keySize)
+            throws IOException, InterruptedException {
+        final Path keystore = directory.resolve(alias + ".p12");
+        keytool("-genkeypair", "-alias", alias, "-keyalg", keyAlg, "-keysize", String.valueOf(keySize), "-dname",
+                "CN=" + CLIENT_SAN + ",O=UDAP Benchmark", "-ext", "SAN=uri:" + CLIENT_SAN, "-storetype", "PKCS12",
+                "-keystore", keystore.toString(), "-storepass", SECRET, "-validity", "30");
+        return keystore;
+    }
+
+    /**
+     * @param alias - of a keystore generated by {@link #keystore(String, String, int)}
+     * @return PEM certificate of the keystore
+     */
+    Path certificate(final String alias) throws IOException, InterruptedException {
+        final Path certificate = directory.resolve(alias + ".crt");
+        keytool("-exportcert", "-rfc", "-alias", alias, "-keystore", directory.resolve(alias + ".p12").toString(),
+                "-storepass", SECRET, "-file", certificate.toString());
+        return certificate;
+    }
+
+    /**
+     * @return FHIR client using the RSA keystore and certificate of the alias, with its key
+     * material loaded
+     */
+    UdapFhirClient fhirClient(final String alias) throws Exception {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname(alias);
+        fhirClient.setClientName("UDAP Benchmark");
+        fhirClient.setClientId("benchmark-client-id");
+        fhirClient.setContacts(List.of(URI.create("mailto:operations@example.org")));
+        fhirClient.setGrantTypes(List.of("client_credentials"));
+        fhirClient.setResponseTypes(List.of());
+        fhirClient.setScopes(List.of("system/Patient.read"));
+        fhirClient.setTokenEndpointAuthMethod("private_key_jwt");
+        fhirClient.setSoftwareStatementTtl(300);
+        fhirClient.setAuthNTokenTtl(300);
+        fhirClient.setPrivateKeyLocation(directory.resolve(alias + ".p12").toUri().toString());
+        fhirClient.setPrivateKeySecret(SECRET);
+        fhirClient.setX509Location(certificate(alias).toUri().toString());
+        ClientKeyMaterial.of(fhirClient);
+        return fhirClient;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void keytool(final String... args) throws IOException, InterruptedException {
+        final List<String> command = Stream.concat(
+                Stream.of(Path.of(System.getProperty("java.home"), "bin", "keytool").toString()), Stream.of(args))
+            .toList();
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        final String output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + output);
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.udap.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.udap.util.JtiGenerator;
+
+/**
+ * jti generation under contention: random UUIDs, which all draw from the shared
+ * SecureRandom, vs. the per-thread prefix and counter default
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class JtiBenchmark {
+
+    private final JtiGenerator uuid = JtiGenerator.uuid();
+
+    private final JtiGenerator perThread = JtiGenerator.perThread();
+
+    @Benchmark
+    public String uuid() {
+        return uuid.next();
+    }
+
+    @Benchmark
+    public String perThread() {
+        return perThread.next();
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.udap.benchmark;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AuthZExtension;
+import org.udap.model.AuthZExtensionHl7B2b;
+import org.udap.model.AuthZExtensionHl7B2bHeader;
+import org.udap.util.JwsSignerRegistry;
+import org.udap.util.UdapUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Signing an authentication token: a new minter and key selection per signature
+ * ({@link UdapUtil#createJwtWithSignature(JWTClaimsSet, JWKSet, JWSAlgorithm)}) versus the
+ * client's pre-built signers ({@link JwsSignerRegistry}).
+ *
+ * Complete authentication tokens with an hl7-b2b extension: claims built, serialized and
+ * signed per token versus a pre-encoded client assertion template. Signed with HS256 so
+ * that the encoding rather than the signature dominates
+ * ({@link UdapUtil#createSignedAuthNToken(UdapFhirClient, String, List, JwsSignerRegistry,
+ * JWSAlgorithm)})
+ */
+@State(Scope.Benchmark)
+public class JwsSigningBenchmark {
+
+    private JWTClaimsSet claimsSet;
+
+    private JWKSet rsaJwkSet;
+
+    private JWKSet ecJwkSet;
+
+    private JwsSignerRegistry rsaSigners;
+
+    private JwsSignerRegistry ecSigners;
+
+    private JwsSignerRegistry hmacSigners;
+
+    private UdapFhirClient fhirClient;
+
+    private List<AuthZExtension> extensions;
+
+    @Setup
+    public void setUp() throws JOSEException {
+        rsaJwkSet = new JWKSet(new RSAKeyGenerator(2048).keyID("rsa").generate());
+        ecJwkSet = new JWKSet(new ECKeyGenerator(Curve.P_256).keyID("ec").generate());
+        rsaSigners = new JwsSignerRegistry(rsaJwkSet);
+        ecSigners = new JwsSignerRegistry(ecJwkSet);
+        hmacSigners = new JwsSignerRegistry(new JWKSet(new OctetSequenceKeyGenerator(256).generate()));
+
+        claimsSet = new JWTClaimsSet.Builder().issuer("client-id")
+            .subject("client-id")
+            .audience("https://as.example.com/token")
+            .issueTime(new Date())
+            .expirationTime(new Date(System.currentTimeMillis() + 300_000))
+            .jwtID("jti")
+            .build();
+
+        fhirClient = new UdapFhirClient();
+        fhirClient.setClientId("client-id");
+        fhirClient.setAuthNTokenTtl(300);
+        extensions = List.of(AuthZExtensionHl7B2bHeader.builder()
+            .hl7B2b(AuthZExtensionHl7B2b.builder()
+                .version("1")
+                .organizationId("https://bench.example.org/organization")
+                .purposeOfUse(List.of("urn:oid:2.16.840.1.113883.5.8#TREAT"))
+                .build())
+            .build());
+    }
+
+    @Benchmark
+    public JWSObject minterRs256() throws JOSEException {
+        return UdapUtil.createJwtWithSignature(claimsSet, rsaJwkSet, JWSAlgorithm.RS256);
+    }
+
+    @Benchmark
+    public JWSObject registryRs256() throws JOSEException {
+        return UdapUtil.createJwtWithSignature(claimsSet, rsaSigners, JWSAlgorithm.RS256);
+    }
+
+    @Benchmark
+    public JWSObject minterEs256() throws JOSEException {
+        return UdapUtil.createJwtWithSignature(claimsSet, ecJwkSet, JWSAlgorithm.ES256);
+    }
+
+    @Benchmark
+    public JWSObject registryEs256() throws JOSEException {
+        return UdapUtil.createJwtWithSignature(claimsSet, ecSigners, JWSAlgorithm.ES256);
+    }
+
+    @Benchmark
+    public JWSObject builtAuthNTokenHs256() throws JOSEException, JsonProcessingException, ParseException {
+        final JWTClaimsSet authNClaims = UdapUtil
+            .appendAuthNExtensions(UdapUtil.createAuthNToken(fhirClient, "https://as.example.com/token"), extensions)
+            .build();
+
+        return UdapUtil.createJwtWithSignature(authNClaims, hmacSigners, JWSAlgorithm.HS256);
+    }
+
+    @Benchmark
+    public JWSObject templateAuthNTokenHs256() throws JOSEException, JsonProcessingException, ParseException {
+        return UdapUtil.createSignedAuthNToken(fhirClient, "https://as.example.com/token", extensions, hmacSigners,
+                JWSAlgorithm.HS256);
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.udap.benchmark;
+
+import java.net.URI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.udap.util.CommonUtil;
+
+import com.nimbusds.jose.jwk.JWKSet;
+
+/**
+ * Decrypting a client keystore; PKCS#12 key derivation makes this deliberately slow, which
+ * is why key material is loaded once per client
+ */
+@State(Scope.Benchmark)
+public class KeyStoreBenchmark {
+
+    private BenchmarkKeys keys;
+
+    private URI rsaKeystore;
+
+    private URI ecKeystore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keys = new BenchmarkKeys();
+        rsaKeystore = keys.keystore("rsa", "RSA", 2048).toUri();
+        ecKeystore = keys.keystore("ec", "EC", 256).toUri();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keys.close();
+    }
+
+    @Benchmark
+    public JWKSet getJwkSetFromPkcs12Rsa() throws Exception {
+        return CommonUtil.getJwkSetFromPkcs12(rsaKeystore, BenchmarkKeys.SECRET.toCharArray());
+    }
+
+    @Benchmark
+    public JWKSet getJwkSetFromPkcs12Ec() throws Exception {
+        return CommonUtil.getJwkSetFromPkcs12(ecKeystore, BenchmarkKeys.SECRET.toCharArray());
+    }
+
+}
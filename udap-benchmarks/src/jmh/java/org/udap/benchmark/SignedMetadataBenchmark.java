@@ -0,0 +1,85 @@
+package org.udap.benchmark;
+
+import java.io.FileInputStream;
+import java.security.KeyStore;
+import java.util.Date;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.udap.config.SignedMetadataCacheProperties;
+import org.udap.service.SignedMetadataCache;
+import org.udap.util.JwsSignerRegistry;
+import org.udap.util.UdapUtil;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Verification of an authorization server's signed metadata: every call
+ * ({@link UdapUtil#getClaimsFromSignedServerMetadata(String, String, java.util.Set)})
+ * versus the verified signed metadata cache
+ */
+@State(Scope.Benchmark)
+public class SignedMetadataBenchmark {
+
+    private static final String ISSUER = "https://as.example.org/fhir";
+
+    private BenchmarkKeys keys;
+
+    private String signedMetadata;
+
+    private SignedMetadataCache signedMetadataCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keys = new BenchmarkKeys();
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(keys.keystore("server", "RSA", 2048).toFile())) {
+            keyStore.load(in, BenchmarkKeys.SECRET.toCharArray());
+        }
+        // Certificate in x5c; no "kid" as the key is taken from the certificate
+        final RSAKey rsaKey = (RSAKey) JWKSet.load(keyStore, name -> BenchmarkKeys.SECRET.toCharArray())
+            .getKeys()
+            .get(0);
+
+        final Date now = new Date();
+        final JWTClaimsSet claims = new JWTClaimsSet.Builder().issuer(ISSUER)
+            .subject(ISSUER)
+            .issueTime(now)
+            .expirationTime(new Date(now.getTime() + 86_400_000))
+            .jwtID("metadata")
+            .claim("authorization_endpoint", ISSUER + "/authorize")
+            .claim("token_endpoint", ISSUER + "/token")
+            .claim("registration_endpoint", ISSUER + "/register")
+            .build();
+        signedMetadata = new JwsSignerRegistry(new JWKSet(new RSAKey.Builder(rsaKey).keyID(null).build()))
+            .sign(claims, JWSAlgorithm.RS256)
+            .serialize();
+
+        signedMetadataCache = new SignedMetadataCache(new SignedMetadataCacheProperties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keys.close();
+    }
+
+    @Benchmark
+    public JWTClaimsSet getClaimsFromSignedServerMetadata() throws Exception {
+        return UdapUtil.getClaimsFromSignedServerMetadata(signedMetadata, ISSUER,
+                UdapUtil.SIGNED_METADATA_ALGORITHMS);
+    }
+
+    @Benchmark
+    public JWTClaimsSet signedMetadataCache() throws Exception {
+        return signedMetadataCache.getClaims(signedMetadata, ISSUER, UdapUtil.SIGNED_METADATA_ALGORITHMS);
+    }
+
+}
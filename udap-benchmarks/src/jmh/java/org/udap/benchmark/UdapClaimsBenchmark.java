@@ -0,0 +1,76 @@
+package org.udap.benchmark;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AuthZExtensionHl7B2b;
+import org.udap.model.AuthZExtensionHl7B2bHeader;
+import org.udap.util.CommonUtil;
+import org.udap.util.UdapUtil;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Claims construction and serialization of software statements and authentication
+ * tokens, before signing
+ */
+@State(Scope.Benchmark)
+public class UdapClaimsBenchmark {
+
+    private static final String REGISTRATION_ENDPOINT = "https://as.example.org/register";
+
+    private static final String TOKEN_ENDPOINT = "https://as.example.org/token";
+
+    private BenchmarkKeys keys;
+
+    private UdapFhirClient fhirClient;
+
+    private AuthZExtensionHl7B2bHeader hl7B2bHeader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keys = new BenchmarkKeys();
+        keys.keystore("claims", "RSA", 2048);
+        fhirClient = keys.fhirClient("claims");
+
+        hl7B2bHeader = AuthZExtensionHl7B2bHeader.builder()
+            .hl7B2b(AuthZExtensionHl7B2b.builder()
+                .version("1")
+                .subjectName("FHIR Benchmark Subject")
+                .subjectId("urn:oid:2.16.840.1.113883.4.6#1234567890")
+                .subjectRole("http://nucc.org/provider-taxonomy#207Q00000X")
+                .organizationName("FHIR Benchmark Organization")
+                .organizationId("https://bench.example.org/organization")
+                .purposeOfUse(List.of("urn:oid:2.16.840.1.113883.5.8#TREAT"))
+                .build())
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        keys.close();
+    }
+
+    @Benchmark
+    public JWTClaimsSet createSoftwareStatement() throws Exception {
+        return UdapUtil.createSoftwareStatement(fhirClient, REGISTRATION_ENDPOINT);
+    }
+
+    @Benchmark
+    public JWTClaimsSet createAuthNTokenWithHl7B2b() throws Exception {
+        return UdapUtil.appendAuthNExtension(UdapUtil.createAuthNToken(fhirClient, TOKEN_ENDPOINT), hl7B2bHeader)
+            .build();
+    }
+
+    @Benchmark
+    public String getObjectAsJson() throws Exception {
+        return CommonUtil.getObjectAsJson(hl7B2bHeader);
+    }
+
+}
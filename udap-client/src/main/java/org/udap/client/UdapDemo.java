@@ -6,10 +6,13 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 /**
  * Just a stub - to be refined, renamed, pruned
  *
+ * Scans all of org.udap so that the UDAP client's services, caches and health
+ * indicators (e.g., udapWarmUp of the readiness group) are registered.
+ *
  * @author Brett P Stringham
  *
  */
-@SpringBootApplication
+@SpringBootApplication(scanBasePackages = "org.udap")
 public class UdapDemo {
 
     public static void main(String[] args) {
@@ -0,0 +1,48 @@
+package org.udap.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the cache of access tokens obtained with the client credentials grant.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.access-token-cache")
+@NoArgsConstructor
+@Data
+public class AccessTokenCacheProperties {
+
+    /**
+     * When disabled, every call requests a new access token from the token endpoint
+     */
+    private boolean enabled = true;
+
+    /**
+     * Safety margin before "expires_in" after which a cached token is no longer served,
+     * so that it cannot expire while a request is in flight
+     */
+    private Duration expiryMargin = Duration.ofSeconds(30);
+
+    /**
+     * How long before the safety margin is reached that a background token request is
+     * started, so callers keep being served the cached token while it is replaced
+     */
+    private Duration refreshAhead = Duration.ofSeconds(60);
+
+    /**
+     * Maximum number of access tokens held in the cache
+     */
+    private long maximumSize = 10000;
+
+    /**
+     * Threads running blocking refreshers passed to the access token cache in the
+     * background; the client services refresh without holding a thread
+     */
+    private int refreshThreads = 4;
+
+}
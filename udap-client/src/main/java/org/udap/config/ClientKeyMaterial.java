@@ -0,0 +1,159 @@
+package org.udap.config;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+
+import org.udap.util.CommonUtil;
+import org.udap.util.JwsSignerRegistry;
+import org.udap.util.UdapMetrics;
+import org.udap.util.UdapUtil;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Decrypted key material of a FHIR client: the private JWK set read from the client's
+ * PKCS#12 keystore (RSA or EC P-256/P-384 keys), its x509 certificate and the
+ * certificate's subject alternative name.
+ *
+ * Decrypting a PKCS#12 keystore is deliberately slow (key derivation iterations), so it
+ * is loaded once per client and swapped as a whole when the files change.
+ */
+@Builder
+@Data
+public class ClientKeyMaterial {
+
+    @ToString.Exclude
+    private final JWKSet privateJwkSet;
+
+    private final X509Certificate x509Certificate;
+
+    /**
+     * Issuer of software statements - first SAN of the client's certificate
+     */
+    private final String subjectAlternativeName;
+
+    private final Instant loadedAt;
+
+    /**
+     * Signers of the private JWK set, built on first use and replaced together with the
+     * key material
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Getter(lazy = true)
+    private final JwsSignerRegistry signers = new JwsSignerRegistry(privateJwkSet);
+
+    /**
+     * Reads and decrypts the client's keystore and certificate
+     * @param fhirClient
+     * @return ClientKeyMaterial
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws CertificateException
+     */
+    public static ClientKeyMaterial load(final UdapFhirClient fhirClient)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        final Timer.Sample sample = UdapMetrics.start();
+        String outcome = UdapMetrics.ERROR;
+        try {
+            final JWKSet privateJwkSet = CommonUtil.getJwkSetFromPkcs12(
+                    URI.create(fhirClient.getPrivateKeyLocation()), fhirClient.getPrivateKeySecret().toCharArray());
+
+            final X509Certificate x509Certificate = CommonUtil
+                .readX509File(URI.create(fhirClient.getX509Location()));
+            if (x509Certificate == null) {
+                throw new CertificateException("Unable to parse x509 certificate at " + fhirClient.getX509Location());
+            }
+
+            final ClientKeyMaterial keyMaterial = ClientKeyMaterial.builder()
+                .privateJwkSet(privateJwkSet)
+                .x509Certificate(x509Certificate)
+                .subjectAlternativeName(UdapUtil.getSubjectAlternativeName(x509Certificate))
+                .loadedAt(Instant.now())
+                .build();
+            outcome = UdapMetrics.SUCCESS;
+
+            return keyMaterial;
+        } finally {
+            UdapMetrics.stop(sample, UdapMetrics.KEYSTORE_LOAD, outcome,
+                    UdapMetrics.tags(UdapMetrics.CLIENT, fhirClient.getClientNickname()));
+        }
+    }
+
+    /**
+     * Returns the client's key material, loading it on first use when it was not loaded
+     * when the client pool was bound
+     * @param fhirClient
+     * @return ClientKeyMaterial
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws CertificateException
+     */
+    public static ClientKeyMaterial of(final UdapFhirClient fhirClient)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+        ClientKeyMaterial keyMaterial = fhirClient.getKeyMaterial();
+        if (keyMaterial != null) {
+            return keyMaterial;
+        }
+
+        synchronized (fhirClient) {
+            keyMaterial = fhirClient.getKeyMaterial();
+            if (keyMaterial == null) {
+                keyMaterial = load(fhirClient);
+                fhirClient.setKeyMaterial(keyMaterial);
+            }
+        }
+
+        return keyMaterial;
+    }
+
+    /**
+     * Checks that the certificate carries the public key of (one of) the private keys, so
+     * that a keystore and certificate caught mid-rotation are never paired
+     * @return true when the certificate matches the keystore
+     * @throws JOSEException
+     */
+    public boolean isCertificateMatchingKey() throws JOSEException {
+        final String certificateThumbprint = JWK.parse(x509Certificate).computeThumbprint().toString();
+
+        for (JWK jwk : privateJwkSet.getKeys()) {
+            if (jwk.isPrivate() && certificateThumbprint.equals(jwk.toPublicJWK().computeThumbprint().toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param location - "file:" URI of a keystore or certificate
+     * @return file system path of the location, null when it is not a file URI
+     */
+    static Path toPath(final String location) {
+        try {
+            return Paths.get(URI.create(location)).toAbsolutePath().normalize();
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            return null;
+        }
+    }
+
+}
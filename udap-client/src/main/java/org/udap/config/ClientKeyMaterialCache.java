@@ -0,0 +1,64 @@
+package org.udap.config;
+
+import org.udap.util.UdapMetrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounds the number of FHIR clients holding decrypted key material. Clients are tracked
+ * when their key material is loaded or used; once the bound is exceeded the clients least
+ * recently (and frequently) used drop their key material, which is loaded again on their
+ * next use.
+ *
+ * Clients are tracked by identity and weakly, so a client removed from the pool does not
+ * stay reachable through the cache.
+ */
+@Slf4j
+public class ClientKeyMaterialCache {
+
+    private final Cache<UdapFhirClient, Boolean> loaded;
+
+    public ClientKeyMaterialCache(final long maximumSize) {
+        this.loaded = UdapMetrics.monitor(Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .weakKeys()
+            .executor(Runnable::run)
+            .<UdapFhirClient, Boolean>removalListener((fhirClient, value, cause) -> {
+                if (fhirClient != null && cause == RemovalCause.SIZE) {
+                    log.debug("Dropping key material of least used client {}",
+                            fhirClient.getClientNickname());
+                    fhirClient.setKeyMaterial(null);
+                }
+            })
+            .recordStats()
+            .build(), "udap.key-material");
+    }
+
+    /**
+     * Marks the client's key material as used
+     * @param fhirClient
+     */
+    void touch(final UdapFhirClient fhirClient) {
+        if (loaded.getIfPresent(fhirClient) == null) {
+            loaded.put(fhirClient, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Stops tracking a client, e.g., removed from the pool
+     * @param fhirClient
+     */
+    void forget(final UdapFhirClient fhirClient) {
+        loaded.asMap().remove(fhirClient);
+    }
+
+    public long size() {
+        loaded.cleanUp();
+        return loaded.estimatedSize();
+    }
+
+}
@@ -0,0 +1,219 @@
+package org.udap.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Watches the keystore and certificate files of the FHIR clients and reloads a client's
+ * key material when one of its files changes. The new key material is swapped in as a
+ * whole, so callers never block on a reload and never see a keystore paired with a
+ * certificate of another generation. When the reloaded files do not load or do not match
+ * (e.g., caught mid-rotation) the current key material is kept until the next change.
+ *
+ * Files reached through a symbolic link are reloaded when a link in their directory is
+ * swapped, as on the atomic update of a mounted Kubernetes secret.
+ */
+@Slf4j
+public class ClientKeyMaterialWatcher implements AutoCloseable {
+
+    private final Collection<UdapFhirClient> fhirClients;
+
+    /**
+     * Rotations usually touch a file several times (truncate, write, rename); reloads are
+     * deferred until the files have been quiet for this long
+     */
+    private final Duration quietPeriod;
+
+    private final WatchService watchService;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<UdapFhirClient, ScheduledFuture<?>> pendingReloads = Collections
+        .synchronizedMap(new IdentityHashMap<>());
+
+    public ClientKeyMaterialWatcher(final Collection<UdapFhirClient> fhirClients, final Duration quietPeriod)
+            throws IOException {
+        this.fhirClients = fhirClients;
+        this.quietPeriod = quietPeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "udap-key-material-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers the directories of every client's keystore and certificate and starts
+     * watching them
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        final Set<Path> directories = new HashSet<>();
+        for (UdapFhirClient fhirClient : fhirClients) {
+            for (Path path : watchedPaths(fhirClient)) {
+                if (path.getParent() != null) {
+                    directories.add(path.getParent());
+                }
+            }
+        }
+
+        for (Path directory : directories) {
+            register(directory);
+        }
+
+        scheduler.execute(this::poll);
+    }
+
+    /**
+     * Watches the directories of a client added after the watcher started
+     * @param fhirClient
+     */
+    public void watch(final UdapFhirClient fhirClient) {
+        for (Path path : watchedPaths(fhirClient)) {
+            if (path.getParent() != null) {
+                try {
+                    register(path.getParent());
+                } catch (IOException e) {
+                    log.warn("Unable to watch key material of {}: {}", fhirClient.getClientNickname(),
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void register(final Path directory) throws IOException {
+        // Registering a directory again returns its existing key
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        log.debug("Watching {} for key material changes", directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        watchService.close();
+    }
+
+    private void poll() {
+        try {
+            final WatchKey watchKey = watchService.poll(1, TimeUnit.SECONDS);
+            if (watchKey != null) {
+                try {
+                    final Path directory = (Path) watchKey.watchable();
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        if (event.context() instanceof Path fileName) {
+                            scheduleReloads(directory.resolve(fileName).toAbsolutePath().normalize());
+                        }
+                    }
+                } finally {
+                    watchKey.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ClosedWatchServiceException e) {
+            log.debug("Key material watcher closed");
+            return;
+        } catch (RuntimeException e) {
+            // Keep watching; a client whose files cannot be told apart must not stop the
+            // others' reloads
+            log.warn("Unable to handle key material change: {}", e.getMessage());
+        }
+
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(this::poll);
+        }
+    }
+
+    private void scheduleReloads(final Path changedPath) {
+        // Swapping a symbolic link (e.g., the "..data" link of a Kubernetes secret) changes
+        // the files linked through it without an event of their own
+        final boolean linkSwapped = Files.isSymbolicLink(changedPath) || Files.isDirectory(changedPath);
+        for (UdapFhirClient fhirClient : fhirClients) {
+            try {
+                if (isAffected(watchedPaths(fhirClient), changedPath, linkSwapped)) {
+                    scheduleReload(fhirClient);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Unable to schedule reload of key material of {}: {}", fhirClient.getClientNickname(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isAffected(final Set<Path> watchedPaths, final Path changedPath,
+            final boolean linkSwapped) {
+        if (watchedPaths.contains(changedPath)) {
+            return true;
+        }
+
+        return linkSwapped && watchedPaths.stream()
+            .anyMatch(path -> changedPath.getParent().equals(path.getParent()) && Files.isSymbolicLink(path));
+    }
+
+    private void scheduleReload(final UdapFhirClient fhirClient) {
+        final ScheduledFuture<?> previous = pendingReloads.put(fhirClient,
+                scheduler.schedule(() -> reload(fhirClient), quietPeriod.toMillis(), TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    private void reload(final UdapFhirClient fhirClient) {
+        pendingReloads.remove(fhirClient);
+        if (!fhirClient.isKeyMaterialLoaded()) {
+            // Loaded from the new files on next use
+            return;
+        }
+
+        try {
+            final ClientKeyMaterial keyMaterial = ClientKeyMaterial.load(fhirClient);
+            if (!keyMaterial.isCertificateMatchingKey()) {
+                log.warn("Key material of {} changed but certificate does not match private key; keeping current",
+                        fhirClient.getClientNickname());
+                return;
+            }
+
+            fhirClient.setKeyMaterial(keyMaterial);
+            log.info("Reloaded key material of {}", fhirClient.getClientNickname());
+        } catch (Exception e) {
+            log.warn("Unable to reload key material of {}; keeping current: {}", fhirClient.getClientNickname(),
+                    e.getMessage());
+        }
+    }
+
+    private static Set<Path> watchedPaths(final UdapFhirClient fhirClient) {
+        final Set<Path> paths = new HashSet<>();
+        for (String location : List.of(String.valueOf(fhirClient.getPrivateKeyLocation()),
+                String.valueOf(fhirClient.getX509Location()))) {
+            final Path path = ClientKeyMaterial.toPath(location);
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+}
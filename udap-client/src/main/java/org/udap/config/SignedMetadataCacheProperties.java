@@ -0,0 +1,34 @@
+package org.udap.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the cache of verified signed server metadata and of the signature
+ * verifiers of the servers' certificates.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.signed-metadata-cache")
+@NoArgsConstructor
+@Data
+public class SignedMetadataCacheProperties {
+
+    /**
+     * When disabled, every signed metadata is parsed and its signature verified
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum number of verified signed metadata held in the cache
+     */
+    private long maximumSize = 1000;
+
+    /**
+     * Maximum number of server certificates whose signature verifiers are kept
+     */
+    private long maximumCertificates = 200;
+
+}
@@ -0,0 +1,58 @@
+package org.udap.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the cache of authorization servers whose UDAP metadata has been
+ * discovered and (when required) verified as trusted.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.trusted-server-cache")
+@NoArgsConstructor
+@Data
+public class TrustedServerCacheProperties {
+
+    /**
+     * When disabled, every call performs discovery and signed metadata verification
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum time a trusted server is served before its metadata is re-validated. The
+     * effective interval is further bounded by the discovery response's Cache-Control
+     * max-age (or Expires) and the "exp" claim of the signed metadata
+     */
+    private Duration revalidateInterval = Duration.ofHours(1);
+
+    /**
+     * How long an expired entry is still served while it is re-validated in the
+     * background, unless the server's Cache-Control gives stale-while-revalidate. Never
+     * beyond the signed metadata "exp"
+     */
+    private Duration staleWhileRevalidate = Duration.ofMinutes(1);
+
+    /**
+     * How long an expired entry is still served when its server cannot be reached
+     * (connection errors, timeouts, 5xx, open circuit), unless the server's Cache-Control
+     * gives stale-if-error. Never beyond the signed metadata "exp"
+     */
+    private Duration staleIfError = Duration.ofHours(1);
+
+    /**
+     * How long before an entry expires that a background re-validation is started, so
+     * callers keep being served the cached entry while it is refreshed
+     */
+    private Duration refreshAhead = Duration.ofMinutes(5);
+
+    /**
+     * Maximum number of authorization servers held in the cache
+     */
+    private long maximumSize = 1000;
+
+}
@@ -0,0 +1,29 @@
+package org.udap.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for registering FHIR clients with many authorization servers at once, e.g.,
+ * when onboarding a trust community.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.bulk-registration")
+@NoArgsConstructor
+@Data
+public class UdapBulkRegistrationProperties {
+
+    /**
+     * Maximum number of targets discovered, verified and registered at the same time
+     */
+    private int concurrency = 16;
+
+    /**
+     * "udap" version of the registration requests
+     */
+    private String udapVersion = "1";
+
+}
@@ -0,0 +1,100 @@
+package org.udap.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for fanning one FHIR query out to many responding gateways (e.g., a TEFCA
+ * patient discovery), each with its own authorization server and FHIR client.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.federated-query")
+@NoArgsConstructor
+@Data
+public class UdapFederatedQueryProperties {
+
+    /**
+     * Maximum number of responders discovered, authenticated and queried at the same time
+     */
+    private int concurrency = 16;
+
+    /**
+     * Time after which the query ends with the results received so far; responders still
+     * in flight or not yet started are reported as past the deadline
+     */
+    private Duration deadline = Duration.ofSeconds(30);
+
+    /**
+     * Time after which a single responder is given up on, discovery and authentication
+     * included
+     */
+    private Duration responderTimeout = Duration.ofSeconds(20);
+
+    /**
+     * Result pages followed at most per responder, the first one included
+     */
+    private int maxPages = 5;
+
+    /**
+     * Resources of a responder read ahead of demand
+     */
+    private int prefetch = 64;
+
+    /**
+     * Gateways queried by default
+     */
+    private List<Responder> responders = new ArrayList<>();
+
+    @NoArgsConstructor
+    @Data
+    public static class Responder {
+
+        /**
+         * Identifies the responder in results and logs; its FHIR base URL when not set
+         */
+        private String name;
+
+        /**
+         * FHIR base URL the query is relative to
+         */
+        private String fhirBaseUrl;
+
+        /**
+         * Default FHIR client when not set
+         */
+        private String clientNickname;
+
+        /**
+         * Base URL of the authorization server
+         */
+        private String authorizationServer;
+
+        /**
+         * Required issuer of the signed metadata
+         */
+        private String expectedMetadataIssuer;
+
+        private boolean mustBeTrusted = true;
+
+        private String scope;
+
+        /**
+         * B2B authorization extension of every authentication token; none when its
+         * organization ID is not set
+         */
+        private UdapOAuth2ClientProperties.Hl7B2b hl7B2b = new UdapOAuth2ClientProperties.Hl7B2b();
+
+        public String getName() {
+            return name != null ? name : fhirBaseUrl;
+        }
+
+    }
+
+}
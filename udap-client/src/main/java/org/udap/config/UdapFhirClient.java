@@ -1,12 +1,17 @@
 package org.udap.config;
 
 import java.net.URI;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import com.nimbusds.jose.jwk.JWKSet;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * UDAP - FHIR CLient Properties
@@ -62,9 +67,28 @@ public class UdapFhirClient {
     private String privateKeySecret;
     
     /**
-     * JWK Set created from private key located as the privateKeyLocation
+     * Private JWK set, x509 certificate and SAN loaded from privateKeyLocation and
+     * x509Location. Loaded once when the client pool is bound (or on first use) and
+     * replaced as a whole when the files change
      */
-    private JWKSet privateJwkSet;
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile ClientKeyMaterial keyMaterial;
+
+    /**
+     * Bounds the clients holding decrypted key material; set when the client joins a pool
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile ClientKeyMaterialCache keyMaterialCache;
+
+    /**
+     * Told of every key material loaded, e.g., to index the client by its certificate's
+     * SAN; set when the client joins a pool
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private volatile Consumer<ClientKeyMaterial> keyMaterialListener;
 
     /**
      * STU1 - SHALL be no more than 5 minutes (expressed in seconds)
@@ -83,6 +107,12 @@ public class UdapFhirClient {
      */
     private String clientId;
 
+    /**
+     * Client IDs issued by the authorization servers this client has already registered
+     * with, by authorization server base URL
+     */
+    private Map<String, String> clientIds = new LinkedHashMap<>();
+
     /**
      * ONLY FOR INTEGRATION TESTS - so various FHIR Clients can be exercised Expected X509
      * Principle Name
@@ -95,4 +125,49 @@ public class UdapFhirClient {
      */
     private String integrationTestX509SanExpected;
 
+    /**
+     * @return key material, null until loaded (or after it was dropped to bound the
+     * clients holding decrypted keys)
+     */
+    public ClientKeyMaterial getKeyMaterial() {
+        final ClientKeyMaterial current = keyMaterial;
+        final ClientKeyMaterialCache cache = keyMaterialCache;
+        if (current != null && cache != null) {
+            cache.touch(this);
+        }
+        return current;
+    }
+
+    public void setKeyMaterial(final ClientKeyMaterial keyMaterial) {
+        this.keyMaterial = keyMaterial;
+        if (keyMaterial == null) {
+            return;
+        }
+
+        final ClientKeyMaterialCache cache = keyMaterialCache;
+        if (cache != null) {
+            cache.touch(this);
+        }
+        final Consumer<ClientKeyMaterial> listener = keyMaterialListener;
+        if (listener != null) {
+            listener.accept(keyMaterial);
+        }
+    }
+
+    /**
+     * @return true when the key material is loaded; does not count as a use
+     */
+    public boolean isKeyMaterialLoaded() {
+        return keyMaterial != null;
+    }
+
+    /**
+     * @return JWK Set created from private key located as the privateKeyLocation, null
+     * until the key material is loaded
+     */
+    public JWKSet getPrivateJwkSet() {
+        final ClientKeyMaterial current = getKeyMaterial();
+        return current != null ? current.getPrivateJwkSet() : null;
+    }
+
 }
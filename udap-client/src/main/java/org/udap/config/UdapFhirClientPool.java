@@ -1,25 +1,49 @@
 package org.udap.config;
 
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.udap.util.CommonUtil;
+import org.udap.util.UdapUtil;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Pool of UDAP FHIR Clients that are configured based upon their associated trust
  * community.
  *
+ * Clients are indexed by nickname, by the client ID issued to them per authorization
+ * server and by the subject alternative name of their certificate (the "iss" of their
+ * software statements and authentication tokens), re-indexed when reloaded key material
+ * carries another SAN. Clients may be added and removed at runtime. At most
+ * {@link #getMaxKeyMaterial()} clients hold decrypted key material at a time; the others
+ * load it again on use.
+ *
  * @author Brett P Stringham
  *
  */
+@Slf4j
 @Configuration
 @ConfigurationProperties
 @NoArgsConstructor
 @Data
-public class UdapFhirClientPool {
+public class UdapFhirClientPool implements InitializingBean, DisposableBean {
 
     /**
      * Nickname for default FHIR client
@@ -27,7 +51,282 @@ public class UdapFhirClientPool {
     private String fhirClientDefault;
 
     /**
-     * UDAP FHIR Clients - support more that one client in this reference
+     * Load every client's key material when the pool is bound; otherwise key material is
+     * loaded on first use (or by the warm-up)
+     */
+    private boolean preloadKeyMaterial = true;
+
+    /**
+     * Maximum number of clients holding decrypted key material
+     */
+    private long maxKeyMaterial = 1000;
+
+    /**
+     * Reload a client's key material when its keystore or certificate file changes
+     */
+    private boolean watchKeyMaterial = true;
+
+    /**
+     * Time a changed keystore or certificate must be left untouched before it is reloaded
+     */
+    private Duration keyMaterialQuietPeriod = Duration.ofSeconds(2);
+
+    /**
+     * UDAP FHIR Clients in the order they were added
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<UdapFhirClient> fhirClients = new CopyOnWriteArrayList<>();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentMap<String, UdapFhirClient> byNickname = new ConcurrentHashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentMap<ClientIdKey, UdapFhirClient> byClientId = new ConcurrentHashMap<>();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ConcurrentMap<String, List<UdapFhirClient>> byIssuer = new ConcurrentHashMap<>();
+
+    /**
+     * Bounds the clients holding key material; created once the pool is bound
      */
-    private List<UdapFhirClient> fhirClients;
-}
\ No newline at end of file
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile ClientKeyMaterialCache keyMaterialCache;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private ClientKeyMaterialWatcher keyMaterialWatcher;
+
+    /**
+     * @return the clients in the order they were added; add and remove clients with
+     * {@link #add(UdapFhirClient)} and {@link #remove(String)}
+     */
+    public List<UdapFhirClient> getFhirClients() {
+        return Collections.unmodifiableList(fhirClients);
+    }
+
+    public int size() {
+        return byNickname.size();
+    }
+
+    /**
+     * Replaces the clients of the pool, e.g., when the configuration is bound
+     * @param fhirClients
+     */
+    public void setFhirClients(final List<UdapFhirClient> fhirClients) {
+        List.copyOf(this.fhirClients).forEach(fhirClient -> remove(fhirClient.getClientNickname()));
+        if (fhirClients != null) {
+            fhirClients.forEach(this::add);
+        }
+    }
+
+    /**
+     * Loads every client's key material once the pool is bound, unless loaded lazily. A
+     * client whose key material cannot be loaded now is retried on first use
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        keyMaterialCache = new ClientKeyMaterialCache(maxKeyMaterial);
+        fhirClients.forEach(fhirClient -> fhirClient.setKeyMaterialCache(keyMaterialCache));
+
+        if (preloadKeyMaterial) {
+            for (UdapFhirClient fhirClient : fhirClients) {
+                try {
+                    ClientKeyMaterial.of(fhirClient);
+                } catch (Exception e) {
+                    log.error("Unable to load key material of {}: {}", fhirClient.getClientNickname(),
+                            e.getMessage());
+                }
+            }
+        }
+
+        if (watchKeyMaterial) {
+            keyMaterialWatcher = new ClientKeyMaterialWatcher(fhirClients, keyMaterialQuietPeriod);
+            keyMaterialWatcher.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (keyMaterialWatcher != null) {
+            keyMaterialWatcher.close();
+        }
+    }
+
+    /**
+     * @param clientNickname
+     * @return the client, null when no client has the nickname
+     */
+    public UdapFhirClient get(final String clientNickname) {
+        return clientNickname != null ? byNickname.get(clientNickname) : null;
+    }
+
+    /**
+     * @return the default client, null when it is not configured
+     */
+    public UdapFhirClient getDefault() {
+        return get(fhirClientDefault);
+    }
+
+    /**
+     * @param authorizationServer - base URL of the authorization server
+     * @param clientId - client ID issued by the authorization server
+     * @return the client, null when no client holds the client ID at the server
+     */
+    public UdapFhirClient getByClientId(final String authorizationServer, final String clientId) {
+        return byClientId.get(new ClientIdKey(authorizationServer, clientId));
+    }
+
+    /**
+     * @param subjectAlternativeName - SAN of the client's certificate, the "iss" of its
+     * software statements and authentication tokens
+     * @return the client, the one indexed first when several share the SAN; null when no
+     * client has the SAN
+     */
+    public UdapFhirClient getByIssuer(final String subjectAlternativeName) {
+        final List<UdapFhirClient> clients = subjectAlternativeName != null ? byIssuer.get(subjectAlternativeName)
+                : null;
+        return clients != null ? clients.get(0) : null;
+    }
+
+    /**
+     * Adds a client, e.g., at runtime. Its key material is loaded on first use and its
+     * files are watched when the pool watches key material
+     * @param fhirClient
+     * @throws IllegalArgumentException when the client has no nickname or the nickname is
+     * taken
+     */
+    public void add(final UdapFhirClient fhirClient) {
+        if (fhirClient.getClientNickname() == null) {
+            throw new IllegalArgumentException("FHIR client without a nickname");
+        }
+        if (byNickname.putIfAbsent(fhirClient.getClientNickname(), fhirClient) != null) {
+            throw new IllegalArgumentException("Duplicate FHIR client nickname " + fhirClient.getClientNickname());
+        }
+
+        fhirClient.setKeyMaterialCache(keyMaterialCache);
+        fhirClients.add(fhirClient);
+
+        fhirClient.getClientIds()
+            .forEach((authorizationServer, clientId) -> putClientId(fhirClient, authorizationServer, clientId));
+        indexIssuer(fhirClient, issuerOf(fhirClient));
+        fhirClient.setKeyMaterialListener(
+                keyMaterial -> indexIssuer(fhirClient, keyMaterial.getSubjectAlternativeName()));
+
+        if (keyMaterialWatcher != null) {
+            keyMaterialWatcher.watch(fhirClient);
+        }
+    }
+
+    /**
+     * Removes a client at runtime and drops its key material
+     * @param clientNickname
+     * @return the removed client, null when no client has the nickname
+     */
+    public UdapFhirClient remove(final String clientNickname) {
+        final UdapFhirClient fhirClient = get(clientNickname);
+        if (fhirClient == null || !byNickname.remove(clientNickname, fhirClient)) {
+            return null;
+        }
+
+        fhirClients.remove(fhirClient);
+        byClientId.values().removeIf(indexed -> indexed == fhirClient);
+        fhirClient.setKeyMaterialListener(null);
+        unindexIssuer(fhirClient);
+        if (keyMaterialCache != null) {
+            keyMaterialCache.forget(fhirClient);
+        }
+        fhirClient.setKeyMaterialCache(null);
+        fhirClient.setKeyMaterial(null);
+
+        return fhirClient;
+    }
+
+    /**
+     * Indexes a client ID issued to a client, e.g., by a registration
+     * @param fhirClient
+     * @param authorizationServer
+     * @param clientId
+     */
+    public void putClientId(final UdapFhirClient fhirClient, final String authorizationServer,
+            final String clientId) {
+        if (byNickname.get(fhirClient.getClientNickname()) == fhirClient) {
+            byClientId.put(new ClientIdKey(authorizationServer, clientId), fhirClient);
+        }
+    }
+
+    /**
+     * Drops the client IDs indexed for a client at an authorization server
+     * @param fhirClient
+     * @param authorizationServer
+     */
+    public void removeClientId(final UdapFhirClient fhirClient, final String authorizationServer) {
+        byClientId.entrySet()
+            .removeIf(entry -> entry.getValue() == fhirClient
+                    && entry.getKey().authorizationServer().equals(authorizationServer));
+    }
+
+    /**
+     * Indexes a client by its SAN, in place of the SAN it was indexed by before
+     * @param fhirClient
+     * @param issuer - may be null
+     */
+    private void indexIssuer(final UdapFhirClient fhirClient, final String issuer) {
+        final List<UdapFhirClient> indexed = issuer != null ? byIssuer.get(issuer) : null;
+        if (indexed != null && indexed.stream().anyMatch(client -> client == fhirClient)) {
+            return;
+        }
+
+        unindexIssuer(fhirClient);
+        if (issuer == null || byNickname.get(fhirClient.getClientNickname()) != fhirClient) {
+            return;
+        }
+        final List<UdapFhirClient> clients = byIssuer.merge(issuer, List.of(fhirClient),
+                (current, added) -> Stream.concat(current.stream(), added.stream()).toList());
+        if (clients.size() > 1) {
+            log.warn("FHIR clients {} share SAN {}; found by issuer as {}",
+                    clients.stream().map(UdapFhirClient::getClientNickname).toList(), issuer,
+                    clients.get(0).getClientNickname());
+        }
+    }
+
+    private void unindexIssuer(final UdapFhirClient fhirClient) {
+        for (String issuer : byIssuer.keySet()) {
+            byIssuer.computeIfPresent(issuer, (key, clients) -> {
+                final List<UdapFhirClient> others = clients.stream().filter(client -> client != fhirClient).toList();
+                return others.isEmpty() ? null : others;
+            });
+        }
+    }
+
+    /**
+     * @param fhirClient
+     * @return SAN of the client's certificate, read without decrypting its keystore; null
+     * when it cannot be read
+     */
+    private static String issuerOf(final UdapFhirClient fhirClient) {
+        if (fhirClient.isKeyMaterialLoaded()) {
+            return fhirClient.getKeyMaterial().getSubjectAlternativeName();
+        }
+        if (fhirClient.getX509Location() == null) {
+            return null;
+        }
+
+        try {
+            final X509Certificate x509Certificate = CommonUtil.readX509File(URI.create(fhirClient.getX509Location()));
+            return x509Certificate != null ? UdapUtil.getSubjectAlternativeName(x509Certificate) : null;
+        } catch (Exception e) {
+            log.warn("Unable to read certificate of {}; not indexed by issuer: {}", fhirClient.getClientNickname(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private record ClientIdKey(String authorizationServer, String clientId) {
+    }
+
+}
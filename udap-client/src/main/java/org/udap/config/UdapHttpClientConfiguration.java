@@ -0,0 +1,29 @@
+package org.udap.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.util.UdapWebClientFactory;
+
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Shared, pooled HTTP client for all UDAP calls
+ */
+@Configuration
+public class UdapHttpClientConfiguration {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider udapConnectionProvider(final UdapHttpClientProperties properties) {
+        return UdapWebClientFactory.createConnectionProvider(properties);
+    }
+
+    @Bean
+    public WebClient udapWebClient(@Qualifier("udapConnectionProvider") final ConnectionProvider connectionProvider,
+            final UdapHttpClientProperties properties, final UdapResilienceProperties resilience) {
+        return UdapWebClientFactory.create(UdapWebClientFactory.createHttpClient(connectionProvider, properties),
+                resilience);
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.udap.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings of the HTTP client (and its connection pool) shared by every UDAP discovery,
+ * registration and token request.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.http-client")
+@NoArgsConstructor
+@Data
+public class UdapHttpClientProperties {
+
+    /**
+     * Name of the connection pool, also used as the pool metrics tag
+     */
+    private String poolName = "udap";
+
+    /**
+     * Maximum number of connections per authorization server host
+     */
+    private int maxConnections = 50;
+
+    /**
+     * Maximum number of requests waiting for a connection per host, -1 for no limit
+     */
+    private int pendingAcquireMaxCount = 500;
+
+    /**
+     * Maximum time a request waits for a connection from the pool
+     */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(45);
+
+    /**
+     * Idle connections are closed after this long, below typical server keep-alive
+     * timeouts so that a pooled connection is not closed by the server mid-request
+     */
+    private Duration maxIdleTime = Duration.ofSeconds(30);
+
+    /**
+     * Connections are closed after this long regardless of use, so DNS and load balancer
+     * changes are eventually picked up
+     */
+    private Duration maxLifeTime = Duration.ofMinutes(5);
+
+    /**
+     * Interval of the background eviction of idle and expired connections
+     */
+    private Duration evictInBackground = Duration.ofSeconds(30);
+
+    /**
+     * Negotiate HTTP/2 (via ALPN) with authorization servers that support it, falling back
+     * to HTTP/1.1
+     */
+    private boolean http2 = true;
+
+    /**
+     * Publish connection pool metrics through Micrometer
+     */
+    private boolean metrics = true;
+
+    /**
+     * Log request and response traffic (at DEBUG level of reactor.netty.http.client.HttpClient)
+     */
+    private boolean wiretap = false;
+
+}
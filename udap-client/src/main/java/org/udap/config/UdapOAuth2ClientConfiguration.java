@@ -0,0 +1,132 @@
+package org.udap.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.InMemoryReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.fhir.BulkExportService;
+import org.udap.fhir.FhirSearchService;
+import org.udap.model.AuthZExtension;
+import org.udap.security.UdapAuthorizationFailureHandler;
+import org.udap.security.UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider;
+import org.udap.security.UdapOAuth2ClientRegistrations;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.ReactiveUdapClientService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Spring Security OAuth2 client support for UDAP client credentials registrations. Calls
+ * made through the "udapFhirWebClient" carry the access token of their registration
+ * (see {@link ServerOAuth2AuthorizedClientExchangeFilterFunction#clientRegistrationId}),
+ * obtained once and replaced shortly before it expires. A 401 response drops its token,
+ * so the next call carries a new one. FHIR searches are streamed with the
+ * "udapFhirSearchService", Bulk Data exports downloaded with the "udapBulkExportService".
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "udap.oauth2-client", name = "enabled", havingValue = "true")
+public class UdapOAuth2ClientConfiguration {
+
+    @Bean
+    public ReactiveClientRegistrationRepository udapClientRegistrationRepository(
+            final UdapOAuth2ClientProperties properties, final UdapFhirClientPool fhirClientPool) {
+        final List<ClientRegistration> clientRegistrations = new ArrayList<>();
+        properties.getRegistrations().forEach((registrationId, registration) -> {
+            final UdapFhirClient fhirClient = registration.getClientNickname() != null
+                    ? fhirClientPool.get(registration.getClientNickname()) : fhirClientPool.getDefault();
+            if (fhirClient == null) {
+                throw new IllegalStateException("No FHIR client " + registration.getClientNickname()
+                        + " for OAuth2 client registration " + registrationId);
+            }
+
+            final AuthZExtension hl7B2b = registration.getHl7B2b().toExtension();
+            clientRegistrations.add(UdapOAuth2ClientRegistrations
+                .withUdapClient(registrationId, fhirClient, registration.getAuthorizationServer(),
+                        registration.getExpectedMetadataIssuer(), registration.isMustBeTrusted(),
+                        hl7B2b != null ? List.of(hl7B2b) : null)
+                .scope(registration.getScope())
+                .build());
+        });
+
+        return new InMemoryReactiveClientRegistrationRepository(clientRegistrations);
+    }
+
+    @Bean
+    public ReactiveOAuth2AuthorizedClientService udapAuthorizedClientService(
+            @Qualifier("udapClientRegistrationRepository") final ReactiveClientRegistrationRepository repository) {
+        return new InMemoryReactiveOAuth2AuthorizedClientService(repository);
+    }
+
+    @Bean
+    public UdapAuthorizationFailureHandler udapAuthorizationFailureHandler(
+            @Qualifier("udapAuthorizedClientService") final ReactiveOAuth2AuthorizedClientService clientService,
+            final AccessTokenCache accessTokenCache) {
+        return new UdapAuthorizationFailureHandler(clientService, accessTokenCache);
+    }
+
+    @Bean
+    public ReactiveOAuth2AuthorizedClientManager udapAuthorizedClientManager(
+            @Qualifier("udapClientRegistrationRepository") final ReactiveClientRegistrationRepository repository,
+            @Qualifier("udapAuthorizedClientService") final ReactiveOAuth2AuthorizedClientService clientService,
+            final UdapAuthorizationFailureHandler failureHandler, final ReactiveUdapClientService udapClientService,
+            final UdapFhirClientPool fhirClientPool, final UdapOAuth2ClientProperties properties) {
+        final UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider authorizedClientProvider =
+                new UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider(udapClientService, fhirClientPool);
+        authorizedClientProvider.setClockSkew(properties.getClockSkew());
+
+        final AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager authorizedClientManager =
+                new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager(repository, clientService);
+        authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+        authorizedClientManager.setAuthorizationFailureHandler(failureHandler);
+        // Authorize request attributes, e.g., the authorization extensions, reach the provider
+        final AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager.DefaultContextAttributesMapper defaults =
+                new AuthorizedClientServiceReactiveOAuth2AuthorizedClientManager.DefaultContextAttributesMapper();
+        authorizedClientManager.setContextAttributesMapper(authorizeRequest -> defaults.apply(authorizeRequest)
+            .defaultIfEmpty(Map.of())
+            .flatMap(attributes -> {
+                final Map<String, Object> contextAttributes = new HashMap<>(authorizeRequest.getAttributes());
+                contextAttributes.putAll(attributes);
+                return Mono.just(contextAttributes);
+            }));
+
+        return authorizedClientManager;
+    }
+
+    @Bean
+    public WebClient udapFhirWebClient(@Qualifier("udapWebClient") final WebClient webClient,
+            @Qualifier("udapAuthorizedClientManager") final ReactiveOAuth2AuthorizedClientManager clientManager,
+            final UdapAuthorizationFailureHandler failureHandler, final UdapOAuth2ClientProperties properties) {
+        final ServerOAuth2AuthorizedClientExchangeFilterFunction oauth2 =
+                new ServerOAuth2AuthorizedClientExchangeFilterFunction(clientManager);
+        oauth2.setDefaultClientRegistrationId(properties.getDefaultRegistrationId());
+        oauth2.setAuthorizationFailureHandler(failureHandler);
+
+        return webClient.mutate().filter(oauth2).build();
+    }
+
+    @Bean
+    public FhirSearchService udapFhirSearchService(@Qualifier("udapFhirWebClient") final WebClient fhirWebClient) {
+        return new FhirSearchService(fhirWebClient);
+    }
+
+    @Bean
+    public BulkExportService udapBulkExportService(@Qualifier("udapFhirWebClient") final WebClient fhirWebClient,
+            @Qualifier("udapWebClient") final WebClient webClient) {
+        return new BulkExportService(fhirWebClient, webClient);
+    }
+
+}
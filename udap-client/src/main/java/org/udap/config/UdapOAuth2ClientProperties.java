@@ -0,0 +1,121 @@
+package org.udap.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.udap.model.AuthZExtensionHl7B2b;
+import org.udap.model.AuthZExtensionHl7B2bHeader;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for Spring Security OAuth2 client support: UDAP client credentials
+ * registrations whose access tokens are attached to FHIR calls made through the
+ * "udapFhirWebClient".
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.oauth2-client")
+@NoArgsConstructor
+@Data
+public class UdapOAuth2ClientProperties {
+
+    private boolean enabled = false;
+
+    /**
+     * Registration used by the "udapFhirWebClient" when a request names none
+     */
+    private String defaultRegistrationId;
+
+    /**
+     * An access token is replaced this long before it expires
+     */
+    private Duration clockSkew = Duration.ofSeconds(60);
+
+    /**
+     * Registrations by registration ID
+     */
+    private Map<String, Registration> registrations = new LinkedHashMap<>();
+
+    @NoArgsConstructor
+    @Data
+    public static class Registration {
+
+        /**
+         * FHIR client of the pool; the default client when not set
+         */
+        private String clientNickname;
+
+        /**
+         * Base URL of the authorization server
+         */
+        private String authorizationServer;
+
+        /**
+         * Required issuer of the signed metadata
+         */
+        private String expectedMetadataIssuer;
+
+        private boolean mustBeTrusted = true;
+
+        private Set<String> scope = new LinkedHashSet<>();
+
+        /**
+         * B2B authorization extension of every authentication token; none when its
+         * organization ID is not set
+         */
+        private Hl7B2b hl7B2b = new Hl7B2b();
+
+    }
+
+    @NoArgsConstructor
+    @Data
+    public static class Hl7B2b {
+
+        private String subjectName;
+
+        private String subjectId;
+
+        private String subjectRole;
+
+        private String organizationName;
+
+        private String organizationId;
+
+        private List<String> purposeOfUse = new ArrayList<>();
+
+        private List<URI> consentPolicy;
+
+        /**
+         * @return the extension; null when no organization ID is set
+         */
+        public AuthZExtensionHl7B2bHeader toExtension() {
+            if (organizationId == null) {
+                return null;
+            }
+
+            return AuthZExtensionHl7B2bHeader.builder()
+                .hl7B2b(AuthZExtensionHl7B2b.builder()
+                    .version("1")
+                    .subjectName(subjectName)
+                    .subjectId(subjectId)
+                    .subjectRole(subjectRole)
+                    .organizationName(organizationName)
+                    .organizationId(organizationId)
+                    .purposeOfUse(purposeOfUse)
+                    .consentPolicy(consentPolicy)
+                    .build())
+                .build();
+        }
+
+    }
+
+}
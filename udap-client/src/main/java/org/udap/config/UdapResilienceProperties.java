@@ -0,0 +1,135 @@
+package org.udap.config;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Timeouts, retries and circuit breakers of the calls to authorization servers. The
+ * timeouts apply to every server unless overridden for the server's host.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.resilience")
+@NoArgsConstructor
+@Data
+public class UdapResilienceProperties {
+
+    /**
+     * Maximum time to establish a new connection (TCP and TLS) to a server
+     */
+    private Duration connectTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Maximum time between sending a request and receiving the response
+     */
+    private Duration responseTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Overall deadline of a call, retries and their backoff included
+     */
+    private Duration deadline = Duration.ofSeconds(30);
+
+    private RetryProperties retry = new RetryProperties();
+
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    /**
+     * Timeouts per authorization server host; unset values fall back to the defaults
+     * above. Hosts containing dots are quoted in brackets, e.g., "[as.example.com]"
+     */
+    private Map<String, Timeouts> authorizationServers = new LinkedHashMap<>();
+
+    /**
+     * @param authorizationServer - base URL or host of the authorization server
+     * @return effective timeouts of the server
+     */
+    public Timeouts timeoutsFor(final String authorizationServer) {
+        final Timeouts overrides = authorizationServer != null ? authorizationServers.get(hostOf(authorizationServer))
+                : null;
+
+        final Timeouts timeouts = new Timeouts();
+        timeouts.setConnectTimeout(overrides != null && overrides.getConnectTimeout() != null
+                ? overrides.getConnectTimeout() : connectTimeout);
+        timeouts.setResponseTimeout(overrides != null && overrides.getResponseTimeout() != null
+                ? overrides.getResponseTimeout() : responseTimeout);
+        timeouts.setDeadline(overrides != null && overrides.getDeadline() != null ? overrides.getDeadline()
+                : deadline);
+
+        return timeouts;
+    }
+
+    private static String hostOf(final String authorizationServer) {
+        final String host = authorizationServer.contains("://") ? URI.create(authorizationServer).getHost() : null;
+        return host != null ? host : authorizationServer;
+    }
+
+    @NoArgsConstructor
+    @Data
+    public static class Timeouts {
+
+        private Duration connectTimeout;
+
+        private Duration responseTimeout;
+
+        private Duration deadline;
+
+    }
+
+    /**
+     * Retries of idempotent calls (discovery) after connection errors, timeouts, 429 and
+     * 5xx responses
+     */
+    @NoArgsConstructor
+    @Data
+    public static class RetryProperties {
+
+        /**
+         * Attempts including the first one; 1 disables retries
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Backoff before the first retry, doubled for every further retry
+         */
+        private Duration minBackoff = Duration.ofMillis(200);
+
+        private Duration maxBackoff = Duration.ofSeconds(2);
+
+        /**
+         * Random share (0 - 1) of each backoff, so that clients do not retry in lockstep
+         */
+        private double jitter = 0.5;
+
+    }
+
+    /**
+     * Per authorization server: after consecutive failures (connection errors, timeouts,
+     * 5xx responses) calls fail fast for a while, then a single trial call decides whether
+     * the server is back
+     */
+    @NoArgsConstructor
+    @Data
+    public static class CircuitBreakerProperties {
+
+        private boolean enabled = true;
+
+        /**
+         * Consecutive failures that open the circuit
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * Time calls fail fast before a trial call is let through
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.udap.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the on-disk warm-start snapshot of verified server metadata, registered
+ * client IDs and access tokens.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.snapshot")
+@NoArgsConstructor
+@Data
+public class UdapSnapshotProperties {
+
+    /**
+     * When disabled, a restarted node discovers, verifies and requests tokens anew
+     */
+    private boolean enabled = false;
+
+    /**
+     * Snapshot file; its directory is created when missing
+     */
+    private String path = "udap-snapshot.bin";
+
+    /**
+     * Base64 encoded AES key (128, 192 or 256 bit) the snapshot is encrypted with. In a
+     * production scenario such secrets would be handled by some vaulting mechanism
+     */
+    private String key;
+
+    /**
+     * Also keep unexpired access tokens in the snapshot
+     */
+    private boolean accessTokens = true;
+
+    /**
+     * Superseded and removed records after which the snapshot is rewritten with its live
+     * entries only
+     */
+    private int compactThreshold = 10000;
+
+}
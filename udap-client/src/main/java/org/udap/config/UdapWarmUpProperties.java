@@ -0,0 +1,72 @@
+package org.udap.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for warming up the FHIR clients once the application is ready: key material,
+ * discovery and access tokens of every configured client / authorization server pair.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "udap.warm-up")
+@NoArgsConstructor
+@Data
+public class UdapWarmUpProperties {
+
+    /**
+     * When disabled, the first request of each client / authorization server pair pays for
+     * its key material, discovery and access token
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of pairs warmed up at the same time
+     */
+    private int concurrency = 8;
+
+    /**
+     * Time after which warm-up gives up on the pairs still in flight and reports ready
+     */
+    private Duration timeout = Duration.ofMinutes(2);
+
+    /**
+     * Authorization servers to warm up
+     */
+    private List<Target> targets = new ArrayList<>();
+
+    @NoArgsConstructor
+    @Data
+    public static class Target {
+
+        /**
+         * Base URL of the authorization server
+         */
+        private String authorizationServer;
+
+        /**
+         * Required issuer of the signed metadata
+         */
+        private String expectedMetadataIssuer;
+
+        private boolean mustBeTrusted = true;
+
+        /**
+         * Clients warmed up against this server; all configured clients when empty
+         */
+        private List<String> clientNicknames = new ArrayList<>();
+
+        /**
+         * Scope of the access tokens prefetched; metadata is only discovered when not set
+         */
+        private String scope;
+
+    }
+
+}
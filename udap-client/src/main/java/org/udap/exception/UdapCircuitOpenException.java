@@ -0,0 +1,17 @@
+package org.udap.exception;
+
+/**
+ * The call was not made: the authorization server's circuit breaker is open after
+ * repeated failures
+ */
+public class UdapCircuitOpenException extends UdapException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CIRCUIT_OPEN = "circuit_open";
+
+    public UdapCircuitOpenException(final String authorizationServer) {
+        super(CIRCUIT_OPEN, "Circuit breaker of " + authorizationServer + " is open");
+    }
+
+}
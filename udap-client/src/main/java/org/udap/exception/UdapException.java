@@ -1,31 +1,52 @@
 package org.udap.exception;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 /**
- * Place holder - to be refined as robust error and exception handling is put in place.
+ * Failure of a UDAP call to an authorization server. The "error" is the OAuth error code
+ * returned by the server or one of the client side codes below; subclasses type the
+ * failures a caller may want to handle differently.
  *
  * @author Brett P Stringham
  *
  */
-@AllArgsConstructor
 @Data
 @EqualsAndHashCode(callSuper=false)
 public class UdapException extends Exception {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The server could not be reached, e.g., connection refused or reset
+     */
+    public static final String CONNECTION_ERROR = "connection_error";
+
+    /**
+     * The client could not build or sign its request, e.g., its key material failed to
+     * load or no signing algorithm is shared with the server
+     */
+    public static final String CLIENT_ERROR = "client_error";
+
+    /**
+     * The server answered without the expected response body
+     */
+    public static final String INVALID_RESPONSE = "invalid_response";
+
     private final String error;
 
     @JsonProperty("error_message")
     private final String errorMessage;
 
-    /*
-    public UdapException(WebClientResponseException e) {
+    public UdapException(final String error, final String errorMessage) {
+        this(error, errorMessage, null);
+    }
 
+    public UdapException(final String error, final String errorMessage, final Throwable cause) {
+        super(errorMessage, cause);
+        this.error = error;
+        this.errorMessage = errorMessage;
     }
-    */
+
 }
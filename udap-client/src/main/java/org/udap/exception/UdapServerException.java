@@ -0,0 +1,58 @@
+package org.udap.exception;
+
+import java.text.ParseException;
+import java.util.Map;
+
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+
+import lombok.Getter;
+
+/**
+ * The authorization server answered with an error status. The "error" and
+ * "error_message" are taken from an OAuth error response body (error,
+ * error_description) when the server sent one.
+ */
+@Getter
+public class UdapServerException extends UdapException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String SERVER_ERROR = "server_error";
+
+    private final int statusCode;
+
+    public UdapServerException(final String error, final String errorMessage, final int statusCode,
+            final Throwable cause) {
+        super(error, errorMessage, cause);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @param e - error status received by the WebClient
+     * @return UdapServerException carrying the server's OAuth error, if any
+     */
+    public static UdapServerException of(final WebClientResponseException e) {
+        String error = SERVER_ERROR;
+        String errorMessage = e.getStatusCode() + " from " + (e.getRequest() != null ? e.getRequest().getURI() : "");
+        try {
+            final Map<String, Object> body = JSONObjectUtils.parse(e.getResponseBodyAsString());
+            if (body.get("error") instanceof String oauthError) {
+                error = oauthError;
+            }
+            if (body.get("error_description") instanceof String description) {
+                errorMessage = description;
+            }
+        } catch (ParseException ignored) {
+            // Not an OAuth error response
+        }
+
+        return new UdapServerException(error, errorMessage, e.getStatusCode().value(), e);
+    }
+
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.udap.exception;
+
+/**
+ * A connect or response timeout, or the overall deadline of a call, elapsed
+ */
+public class UdapTimeoutException extends UdapException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String TIMEOUT = "timeout";
+
+    public UdapTimeoutException(final String errorMessage, final Throwable cause) {
+        super(TIMEOUT, errorMessage, cause);
+    }
+
+}
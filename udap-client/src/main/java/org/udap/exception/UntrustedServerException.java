@@ -0,0 +1,21 @@
+package org.udap.exception;
+
+/**
+ * The authorization server's signed metadata is missing, failed verification or does not
+ * match its metadata
+ */
+public class UntrustedServerException extends UdapException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String UNTRUSTED_SERVER = "untrusted_server";
+
+    public UntrustedServerException(final String authorizationServer) {
+        this(authorizationServer, null);
+    }
+
+    public UntrustedServerException(final String authorizationServer, final Throwable cause) {
+        super(UNTRUSTED_SERVER, authorizationServer + " is not trusted", cause);
+    }
+
+}
@@ -0,0 +1,420 @@
+package org.udap.fhir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.udap.model.BulkExportManifest;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+/**
+ * Client of FHIR Bulk Data exports: kicks off an export, polls its status as told by
+ * "Retry-After" and downloads the NDJSON files of the manifest, a few at a time.
+ *
+ * Files are streamed to disk through an {@link AsynchronousFileChannel} as their bytes
+ * arrive, so exports of any size are downloaded in constant memory. A file is written to
+ * "&lt;name&gt;.part" and renamed once complete; an interrupted download resumes from the
+ * end of its part with a Range request (or starts over when the server does not honor
+ * it), and files already downloaded are skipped, so a failed export is completed by
+ * downloading its manifest again.
+ *
+ * Built on a WebClient that authorizes FHIR requests, e.g., the "udapFhirWebClient";
+ * every request, resumed downloads included, carries a current access token, and a
+ * request answered 401 is repeated with a new one.
+ *
+ * @see <a href="https://hl7.org/fhir/uv/bulkdata/export.html">Bulk Data Export</a>
+ */
+@Slf4j
+public class BulkExportService {
+
+    private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+
+    private static final MediaType FHIR_NDJSON = MediaType.parseMediaType("application/fhir+ndjson");
+
+    /**
+     * Name of a FHIR resource type; the manifest's types name the downloaded files
+     */
+    private static final Pattern RESOURCE_TYPE = Pattern.compile("[A-Z][A-Za-z]+");
+
+    private final WebClient webClient;
+
+    private final WebClient downloadWebClient;
+
+    private int concurrency = 4;
+
+    private Duration defaultPollInterval = Duration.ofSeconds(10);
+
+    private Duration maxPollInterval = Duration.ofMinutes(5);
+
+    private Duration timeout = Duration.ofHours(24);
+
+    private int maxAttempts = 5;
+
+    private Duration minBackoff = Duration.ofSeconds(1);
+
+    /**
+     * @param webClient - authorizes FHIR requests, e.g., the "udapFhirWebClient"
+     */
+    public BulkExportService(final WebClient webClient) {
+        this(webClient, webClient);
+    }
+
+    /**
+     * @param webClient - authorizes FHIR requests, e.g., the "udapFhirWebClient"
+     * @param downloadWebClient - downloads files of exports not requiring an access token,
+     * e.g., the "udapWebClient"
+     */
+    public BulkExportService(final WebClient webClient, final WebClient downloadWebClient) {
+        this.webClient = webClient;
+        this.downloadWebClient = downloadWebClient;
+    }
+
+    /**
+     * @param exportUrl - e.g., https://fhir.example.com/Group/1/$export?_type=Patient
+     * @param directory - the files are downloaded to
+     * @return files as their download completes
+     */
+    public Flux<Path> export(final String exportUrl, final Path directory) {
+        return kickOff(exportUrl).flatMap(this::poll).flatMapMany(manifest -> download(manifest, directory));
+    }
+
+    /**
+     * @param exportUrl - e.g., https://fhir.example.com/Group/1/$export?_type=Patient
+     * @return URL of the export's status
+     */
+    public Mono<String> kickOff(final String exportUrl) {
+        return webClient.get()
+            .uri(URI.create(exportUrl))
+            .accept(FHIR_JSON)
+            .header("Prefer", "respond-async")
+            .exchangeToMono(response -> {
+                if (!response.statusCode().isSameCodeAs(HttpStatus.ACCEPTED)) {
+                    return response.createException().flatMap(Mono::error);
+                }
+
+                final String statusUrl = response.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_LOCATION);
+                return response.releaseBody()
+                    .then(statusUrl != null ? Mono.just(URI.create(exportUrl).resolve(statusUrl).toString())
+                            : Mono.error(new IllegalStateException("Export " + exportUrl
+                                    + " was kicked off without a Content-Location")));
+            })
+            .retryWhen(Retry.max(1).filter(WebClientResponseException.Unauthorized.class::isInstance))
+            .doOnNext(statusUrl -> log.info("Export {} kicked off, status at {}", exportUrl, statusUrl));
+    }
+
+    /**
+     * @param statusUrl
+     * @return manifest of the completed export; a {@link WebClientResponseException} error
+     * when the export failed
+     */
+    public Mono<BulkExportManifest> poll(final String statusUrl) {
+        return pollOnce(statusUrl)
+            .expand(status -> status.manifest() != null ? Mono.empty()
+                    : Mono.delay(status.retryAfter()).then(pollOnce(statusUrl)))
+            .mapNotNull(PollStatus::manifest)
+            .next()
+            .timeout(timeout);
+    }
+
+    /**
+     * @param manifest
+     * @param directory - the files are downloaded to, as "&lt;type&gt;-&lt;n&gt;.ndjson" and
+     * "error-&lt;type&gt;-&lt;n&gt;.ndjson"
+     * @return files as their download completes; an {@link IllegalArgumentException} error,
+     * before any file is downloaded, when a type of the manifest is not a FHIR resource type
+     */
+    public Flux<Path> download(final BulkExportManifest manifest, final Path directory) {
+        return Flux.defer(() -> {
+            final WebClient client = manifest.isRequiresAccessToken() ? webClient : downloadWebClient;
+            final List<Download> downloads = new ArrayList<>();
+            final Map<String, Integer> counts = new HashMap<>();
+            manifest.getOutput()
+                .forEach(file -> downloads.add(new Download(file.getUrl(), target(directory, file.getType(),
+                        file.getType() + "-" + counts.merge(file.getType(), 1, Integer::sum)))));
+            manifest.getError()
+                .forEach(file -> downloads.add(new Download(file.getUrl(), target(directory, file.getType(),
+                        "error-" + file.getType() + "-" + counts.merge("error-" + file.getType(), 1, Integer::sum)))));
+
+            return Flux.fromIterable(downloads).flatMap(download -> download(client, download), concurrency);
+        });
+    }
+
+    /**
+     * @param directory
+     * @param type - resource type of the file, as told by the server
+     * @param name - file name without extension
+     * @return the file in the directory
+     * @throws IllegalArgumentException when the type is not a FHIR resource type or the file
+     * would not be in the directory
+     */
+    private static Path target(final Path directory, final String type, final String name) {
+        if (type == null || !RESOURCE_TYPE.matcher(type).matches()) {
+            throw new IllegalArgumentException("Not a FHIR resource type: " + type);
+        }
+
+        final Path file = directory.resolve(name + ".ndjson").normalize();
+        if (!file.startsWith(directory.normalize())) {
+            throw new IllegalArgumentException("File outside of " + directory + ": " + name);
+        }
+
+        return file;
+    }
+
+    /**
+     * @param concurrency - files downloaded at the same time
+     */
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param defaultPollInterval - between status requests answered without Retry-After
+     */
+    public void setDefaultPollInterval(final Duration defaultPollInterval) {
+        this.defaultPollInterval = defaultPollInterval;
+    }
+
+    /**
+     * @param maxPollInterval - longest Retry-After honored
+     */
+    public void setMaxPollInterval(final Duration maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * @param timeout - time after which polling gives up on an export
+     */
+    public void setTimeout(final Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param maxAttempts - of a status request or download failing with a connection error,
+     * 401, 429 or 5xx
+     */
+    public void setMaxAttempts(final int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param minBackoff - before the first repeated attempt, doubled for every next one
+     */
+    public void setMinBackoff(final Duration minBackoff) {
+        this.minBackoff = minBackoff;
+    }
+
+    /**
+     * @param manifest - of the completed export; null while in progress
+     * @param retryAfter - before the next status request
+     */
+    private record PollStatus(BulkExportManifest manifest, Duration retryAfter) {
+    }
+
+    private record Download(String url, Path file) {
+    }
+
+    private Mono<PollStatus> pollOnce(final String statusUrl) {
+        return webClient.get()
+            .uri(URI.create(statusUrl))
+            .accept(MediaType.APPLICATION_JSON)
+            .exchangeToMono(response -> {
+                if (response.statusCode().isSameCodeAs(HttpStatus.OK)) {
+                    return response.bodyToMono(BulkExportManifest.class)
+                        .map(manifest -> new PollStatus(manifest, null));
+                }
+                if (!response.statusCode().isSameCodeAs(HttpStatus.ACCEPTED)) {
+                    return response.createException().flatMap(Mono::error);
+                }
+
+                final HttpHeaders headers = response.headers().asHttpHeaders();
+                final Duration retryAfter = retryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER));
+                log.debug("Export {} in progress ({}), polling again in {}", statusUrl,
+                        headers.getFirst("X-Progress"), retryAfter);
+                return response.releaseBody().thenReturn(new PollStatus(null, retryAfter));
+            })
+            .retryWhen(retry(statusUrl));
+    }
+
+    private Mono<Path> download(final WebClient client, final Download download) {
+        final Path part = download.file().resolveSibling(download.file().getFileName() + ".part");
+
+        return Mono.fromCallable(() -> Files.exists(download.file()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(downloaded -> downloaded ? Mono.just(download.file())
+                    : Mono.defer(() -> downloadPart(client, download.url(), part))
+                        .retryWhen(retry(download.url()))
+                        .then(Mono.fromCallable(() -> Files.move(part, download.file(),
+                                StandardCopyOption.REPLACE_EXISTING)).subscribeOn(Schedulers.boundedElastic()))
+                        .doOnNext(file -> log.info("Downloaded {} to {}", download.url(), file)));
+    }
+
+    /**
+     * Downloads the rest of a file: from the end of its part when the server honors the
+     * Range, from the start otherwise. A part the server answers 416 for already holds the
+     * whole file, e.g., when stopped between its last byte and its rename
+     */
+    private Mono<Void> downloadPart(final WebClient client, final String url, final Path part) {
+        final long position = size(part);
+
+        return client.get()
+            .uri(URI.create(url))
+            .accept(FHIR_NDJSON, MediaType.ALL)
+            .headers(headers -> {
+                if (position > 0) {
+                    headers.setRange(List.of(HttpRange.createByteRange(position)));
+                }
+            })
+            .exchangeToMono(response -> {
+                if (position > 0 && response.statusCode().isSameCodeAs(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        && isComplete(response.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE),
+                                position)) {
+                    log.info("Download of {} already complete at {} bytes", url, position);
+                    return response.releaseBody();
+                }
+                if (!response.statusCode().is2xxSuccessful()) {
+                    return response.createException().flatMap(Mono::error);
+                }
+
+                final long offset = response.statusCode().isSameCodeAs(HttpStatus.PARTIAL_CONTENT)
+                        ? rangeStart(response.headers().asHttpHeaders().getFirst(HttpHeaders.CONTENT_RANGE), position)
+                        : 0;
+                if (position > 0) {
+                    log.info("Resuming download of {} at byte {} of its {} downloaded", url, offset, position);
+                }
+                return write(response.bodyToFlux(DataBuffer.class), part, offset);
+            });
+    }
+
+    /**
+     * @return completes once every buffer of the body was written, from the position on
+     */
+    private static Mono<Void> write(final Flux<DataBuffer> body, final Path part, final long position) {
+        final OpenOption[] options = position > 0
+                ? new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE }
+                : new OpenOption[] { StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING };
+
+        return Mono.using(() -> AsynchronousFileChannel.open(part, options),
+                channel -> DataBufferUtils.write(body, channel, position).doOnNext(DataBufferUtils::release).then(),
+                channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.warn("Closing {} failed: {}", part, e.getMessage());
+                    }
+                });
+    }
+
+    private static long size(final Path part) {
+        try {
+            return Files.exists(part) ? Files.size(part) : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param contentRange - e.g., "bytes 1024-2047/2048"
+     * @param position - requested start
+     * @return first byte of the range
+     */
+    private static long rangeStart(final String contentRange, final long position) {
+        if (contentRange == null || !contentRange.startsWith("bytes ") || contentRange.indexOf('-') < 0) {
+            return position;
+        }
+
+        return Long.parseLong(contentRange.substring("bytes ".length(), contentRange.indexOf('-')).trim());
+    }
+
+    /**
+     * @param contentRange - of a 416 response, the file's length following its "/"; may be
+     * null
+     * @param position - size of the part
+     * @return true when the file is as long as the part; a missing or unknown length counts
+     * as complete
+     */
+    private static boolean isComplete(final String contentRange, final long position) {
+        if (contentRange == null || contentRange.indexOf('/') < 0) {
+            return true;
+        }
+
+        final String length = contentRange.substring(contentRange.indexOf('/') + 1).trim();
+        try {
+            return "*".equals(length) || Long.parseLong(length) == position;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * @param retryAfter - seconds or an HTTP date
+     * @return time to wait, at most the maximum poll interval
+     */
+    private Duration retryAfter(final String retryAfter) {
+        Duration wait = defaultPollInterval;
+        if (retryAfter != null) {
+            try {
+                wait = retryAfter.chars().allMatch(Character::isDigit) ? Duration.ofSeconds(Long.parseLong(retryAfter))
+                        : Duration.between(Instant.now(),
+                                ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                log.warn("Ignoring Retry-After {}: {}", retryAfter, e.getMessage());
+            }
+        }
+
+        return wait.isNegative() ? Duration.ZERO : wait.compareTo(maxPollInterval) > 0 ? maxPollInterval : wait;
+    }
+
+    private Retry retry(final String url) {
+        return Retry.backoff(maxAttempts - 1, minBackoff)
+            .filter(BulkExportService::isTransient)
+            .doBeforeRetry(signal -> log.warn("Request of {} failed, attempt {} of {}: {}", url,
+                    signal.totalRetries() + 2, maxAttempts, signal.failure().getMessage()))
+            .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * @return true for connection errors, interrupted bodies, 401 (the access token was
+     * dropped), 429 and 5xx responses
+     */
+    private static boolean isTransient(final Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError()
+                    || response.getStatusCode().isSameCodeAs(HttpStatus.UNAUTHORIZED)
+                    || response.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+
+        return e instanceof WebClientRequestException || e instanceof IOException;
+    }
+
+}
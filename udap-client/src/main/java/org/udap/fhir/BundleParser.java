@@ -0,0 +1,140 @@
+package org.udap.fhir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Incremental parser of a FHIR JSON Bundle. Bytes are fed as they arrive; every
+ * "entry.resource" is returned as soon as its last byte was fed, so at most one resource
+ * of the Bundle is held at a time. The "next" link is handed to a callback when parsed
+ * (FHIR serializes "link" ahead of "entry", so before the first resource).
+ *
+ * Not thread safe; feed one Bundle from one sequence of calls.
+ */
+final class BundleParser {
+
+    private final ObjectMapper objectMapper;
+
+    private final Consumer<String> nextLinkConsumer;
+
+    private final JsonParser parser;
+
+    private final ByteArrayFeeder feeder;
+
+    /**
+     * Tokens of the resource or link being read; null in between
+     */
+    private TokenBuffer captured;
+
+    private boolean capturingLink;
+
+    private int capturedDepth;
+
+    /**
+     * @param objectMapper
+     * @param nextLinkConsumer - told of the Bundle's "next" link
+     * @throws IOException
+     */
+    BundleParser(final ObjectMapper objectMapper, final Consumer<String> nextLinkConsumer) throws IOException {
+        this.objectMapper = objectMapper;
+        this.nextLinkConsumer = nextLinkConsumer;
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * @param bytes
+     * @return resources completed by the bytes
+     * @throws IOException when the bytes are not JSON
+     */
+    List<JsonNode> feed(final byte[] bytes) throws IOException {
+        feeder.feedInput(bytes, 0, bytes.length);
+        return parse();
+    }
+
+    /**
+     * @return resources completed by the end of the input
+     * @throws IOException when the input ended within the Bundle
+     */
+    List<JsonNode> endOfInput() throws IOException {
+        feeder.endOfInput();
+        final List<JsonNode> resources = parse();
+        if (captured != null || parser.getParsingContext().getParent() != null) {
+            throw new IOException("Bundle ended unexpectedly");
+        }
+        return resources;
+    }
+
+    private List<JsonNode> parse() throws IOException {
+        final List<JsonNode> resources = new ArrayList<>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (captured == null) {
+                if (token == JsonToken.START_OBJECT && (isResource(parser.getParsingContext())
+                        || isLink(parser.getParsingContext()))) {
+                    captured = new TokenBuffer(parser);
+                    capturingLink = isLink(parser.getParsingContext());
+                    capturedDepth = 0;
+                } else {
+                    continue;
+                }
+            }
+
+            captured.copyCurrentEvent(parser);
+            if (token.isStructStart()) {
+                capturedDepth++;
+            } else if (token.isStructEnd() && --capturedDepth == 0) {
+                final JsonNode node = objectMapper.readTree(captured.asParser(objectMapper));
+                captured = null;
+                if (!capturingLink) {
+                    resources.add(node);
+                } else if ("next".equals(node.path("relation").asText())) {
+                    nextLinkConsumer.accept(node.path("url").asText());
+                }
+            }
+        }
+
+        return resources;
+    }
+
+    /**
+     * @param context - of an object just started
+     * @return true when the object is the "resource" of an "entry" of the Bundle
+     */
+    private static boolean isResource(final JsonStreamContext context) {
+        final JsonStreamContext entry = context.getParent();
+        return entry != null && entry.inObject() && "resource".equals(entry.getCurrentName())
+                && isBundleArrayElement(entry, "entry");
+    }
+
+    /**
+     * @param context - of an object just started
+     * @return true when the object is a "link" of the Bundle
+     */
+    private static boolean isLink(final JsonStreamContext context) {
+        return isBundleArrayElement(context, "link");
+    }
+
+    private static boolean isBundleArrayElement(final JsonStreamContext context, final String name) {
+        final JsonStreamContext array = context.getParent();
+        if (array == null || !array.inArray()) {
+            return false;
+        }
+
+        final JsonStreamContext bundle = array.getParent();
+        return bundle != null && bundle.inObject() && name.equals(bundle.getCurrentName())
+                && bundle.getParent() != null && bundle.getParent().inRoot();
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.udap.fhir;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.UdapFederatedQueryProperties;
+import org.udap.config.UdapFederatedQueryProperties.Responder;
+import org.udap.config.UdapFhirClient;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.model.AuthZExtension;
+import org.udap.service.ReactiveUdapClientService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Fans one FHIR query out to many responding gateways, e.g., a TEFCA patient discovery.
+ * Every responder is discovered, authenticated (with its own authorization server, FHIR
+ * client and B2B extension) and searched independently, at most
+ * {@link UdapFederatedQueryProperties#getConcurrency()} at a time, so the query takes
+ * about as long as its slowest responder rather than the sum of all of them.
+ *
+ * Resources are streamed as they arrive, interleaved across responders, followed by one
+ * outcome per responder. A responder is given up on after the responder timeout, the
+ * whole query after the deadline; either way the resources received so far are kept and
+ * the responders cut short are reported, so a slow or failing gateway never holds back or
+ * fails the others.
+ */
+@Slf4j
+@Service
+public class FederatedQueryService {
+
+    public enum Outcome {
+        /**
+         * Every page was received
+         */
+        COMPLETED,
+        /**
+         * Discovery, authentication or the search failed
+         */
+        FAILED,
+        /**
+         * Given up on after the responder timeout
+         */
+        TIMED_OUT,
+        /**
+         * In flight or not yet started at the deadline of the query
+         */
+        DEADLINE_EXCEEDED
+    }
+
+    /**
+     * Either a resource of a responder or, once it is done, the responder's outcome
+     *
+     * @param responder
+     * @param resource - null for an outcome
+     * @param outcome - null for a resource
+     * @param error - why the responder failed or was cut short; null otherwise
+     * @param resources - resources received from the responder, for an outcome
+     * @param elapsed - since the query started, for an outcome
+     */
+    public record Result(Responder responder, JsonNode resource, Outcome outcome, String error, int resources,
+            Duration elapsed) {
+
+        public boolean isResource() {
+            return resource != null;
+        }
+
+        static Result resource(final Responder responder, final JsonNode resource) {
+            return new Result(responder, resource, null, null, 0, null);
+        }
+
+    }
+
+    private final UdapFederatedQueryProperties properties;
+
+    private final UdapFhirClientPool fhirClientPool;
+
+    private final ReactiveUdapClientService udapClientService;
+
+    private final WebClient webClient;
+
+    @Autowired
+    public FederatedQueryService(final UdapFederatedQueryProperties properties,
+            final UdapFhirClientPool fhirClientPool, final ReactiveUdapClientService udapClientService,
+            @Qualifier("udapWebClient") final WebClient webClient) {
+        this.properties = properties;
+        this.fhirClientPool = fhirClientPool;
+        this.udapClientService = udapClientService;
+        this.webClient = webClient;
+    }
+
+    /**
+     * @param query - relative to the FHIR base URL, e.g., Patient?family=Demo&birthdate=1970-01-01
+     * @return results of the configured responders
+     */
+    public Flux<Result> query(final String query) {
+        return query(properties.getResponders(), query);
+    }
+
+    /**
+     * @param responders
+     * @param query - relative to the FHIR base URL, e.g., Patient?family=Demo&birthdate=1970-01-01
+     * @return resources as they arrive, and one outcome per responder; never errors
+     */
+    public Flux<Result> query(final List<Responder> responders, final String query) {
+        return Flux.defer(() -> {
+            final Instant startedAt = Instant.now();
+            // Signals past the deadline are serialized, so plain maps will do
+            final Map<Responder, Integer> received = new IdentityHashMap<>();
+            final Map<Responder, Outcome> outcomes = new IdentityHashMap<>();
+            log.info("Querying {} responders, {} at a time: {}", responders.size(), properties.getConcurrency(),
+                    query);
+
+            return Flux.fromIterable(responders)
+                .flatMap(responder -> queryResponder(responder, query, startedAt), properties.getConcurrency(),
+                        properties.getPrefetch())
+                .takeUntilOther(Mono.delay(properties.getDeadline()))
+                .doOnNext(result -> {
+                    if (result.isResource()) {
+                        received.merge(result.responder(), 1, Integer::sum);
+                    } else {
+                        outcomes.put(result.responder(), result.outcome());
+                    }
+                })
+                .concatWith(Flux.defer(() -> Flux.fromIterable(responders)
+                    .filter(responder -> !outcomes.containsKey(responder))
+                    .map(responder -> outcome(responder, Outcome.DEADLINE_EXCEEDED,
+                            "No response within the deadline of " + properties.getDeadline(),
+                            received.getOrDefault(responder, 0), startedAt))
+                    .doOnNext(result -> outcomes.put(result.responder(), result.outcome()))))
+                .doOnComplete(() -> log.info("Queried {} responders in {} ms: {}", responders.size(),
+                        Duration.between(startedAt, Instant.now()).toMillis(), count(outcomes)));
+        });
+    }
+
+    /**
+     * @return resources of the responder followed by its outcome; never errors
+     */
+    private Flux<Result> queryResponder(final Responder responder, final String query, final Instant startedAt) {
+        return Flux.defer(() -> {
+            final int[] resources = { 0 };
+            final AtomicBoolean timedOut = new AtomicBoolean();
+
+            return search(responder, query)
+                .takeUntilOther(Mono.delay(properties.getResponderTimeout()).doOnNext(tick -> timedOut.set(true)))
+                .map(resource -> {
+                    resources[0]++;
+                    return Result.resource(responder, resource);
+                })
+                .concatWith(Mono.fromSupplier(() -> timedOut.get()
+                        ? outcome(responder, Outcome.TIMED_OUT,
+                                "No response within " + properties.getResponderTimeout(), resources[0], startedAt)
+                        : outcome(responder, Outcome.COMPLETED, null, resources[0], startedAt)))
+                .onErrorResume(e -> {
+                    log.warn("Responder {} failed: {}", responder.getName(), e.getMessage());
+                    return Mono.just(outcome(responder, Outcome.FAILED, e.getMessage(), resources[0], startedAt));
+                });
+        });
+    }
+
+    private Flux<JsonNode> search(final Responder responder, final String query) {
+        final UdapFhirClient fhirClient = responder.getClientNickname() != null
+                ? fhirClientPool.get(responder.getClientNickname()) : fhirClientPool.getDefault();
+        if (fhirClient == null) {
+            return Flux.error(new IllegalStateException("No FHIR client " + responder.getClientNickname()
+                    + " for responder " + responder.getName()));
+        }
+
+        final AuthZExtension hl7B2b = responder.getHl7B2b().toExtension();
+        final FhirSearchService searchService = new FhirSearchService(webClient.mutate()
+            .filter(new UdapBearerTokenExchangeFilterFunction(udapClientService, fhirClient,
+                    responder.getAuthorizationServer(), responder.getExpectedMetadataIssuer(), responder.getScope(),
+                    hl7B2b != null ? List.of(hl7B2b) : null, responder.isMustBeTrusted()))
+            .build());
+        searchService.setPrefetch(properties.getPrefetch());
+        searchService.setMaxPages(properties.getMaxPages());
+
+        return searchService.search(responder.getFhirBaseUrl().replaceAll("/+$", "") + "/"
+                + query.replaceAll("^/+", ""));
+    }
+
+    private static Result outcome(final Responder responder, final Outcome outcome, final String error,
+            final int resources, final Instant startedAt) {
+        return new Result(responder, null, outcome, error, resources, Duration.between(startedAt, Instant.now()));
+    }
+
+    private static Map<Outcome, Integer> count(final Map<Responder, Outcome> outcomes) {
+        final Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        outcomes.values().forEach(outcome -> counts.merge(outcome, 1, Integer::sum));
+        return counts;
+    }
+
+}
@@ -0,0 +1,167 @@
+package org.udap.fhir;
+
+import static org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Streams the resources of a FHIR search, following the result Bundles' "next" links.
+ *
+ * Resources are parsed one at a time as the bytes of a page arrive and are emitted on
+ * demand: the page being read is not read ahead of the subscriber's demand by more than
+ * the prefetch, so results of any size are searched in constant memory. The next page is
+ * requested as soon as its link is read, while the current page is still consumed, and
+ * is buffered up to the prefetch; no page beyond the next one is requested.
+ *
+ * Built on the "udapFhirWebClient", so every page carries a current access token of the
+ * OAuth2 client registration. A page answered 401 is requested once more, by then with a
+ * new access token.
+ */
+@Slf4j
+public class FhirSearchService {
+
+    private static final MediaType FHIR_JSON = MediaType.parseMediaType("application/fhir+json");
+
+    private final WebClient webClient;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private int prefetch = 256;
+
+    private int maxPages = Integer.MAX_VALUE;
+
+    /**
+     * @param webClient - authorizes FHIR requests, e.g., the "udapFhirWebClient"
+     */
+    public FhirSearchService(final WebClient webClient) {
+        this.webClient = webClient;
+    }
+
+    /**
+     * @param searchUrl - e.g., https://fhir.example.com/Patient?family=Demo
+     * @return resources of every page, in order, with the default client registration
+     */
+    public Flux<JsonNode> search(final String searchUrl) {
+        return search(searchUrl, null);
+    }
+
+    /**
+     * @param searchUrl - e.g., https://fhir.example.com/Patient?family=Demo
+     * @param registrationId - OAuth2 client registration; the default registration when
+     * null
+     * @return resources of every page, in order; a {@link WebClientResponseException}
+     * error when a page is not answered 2xx
+     */
+    public Flux<JsonNode> search(final String searchUrl, final String registrationId) {
+        return Flux.defer(() -> {
+            final Sinks.Many<String> pageUrls = Sinks.many().unicast().onBackpressureBuffer();
+            final AtomicInteger pages = new AtomicInteger(1);
+            pageUrls.tryEmitNext(searchUrl);
+
+            return pageUrls.asFlux().flatMapSequential(pageUrl -> page(pageUrl, registrationId, nextUrl -> {
+                if (nextUrl != null && pages.incrementAndGet() <= maxPages) {
+                    pageUrls.tryEmitNext(URI.create(pageUrl).resolve(nextUrl).toString());
+                } else {
+                    pageUrls.tryEmitComplete();
+                }
+            }), 2, prefetch);
+        });
+    }
+
+    /**
+     * @param prefetch - resources of a page read ahead of demand
+     */
+    public void setPrefetch(final int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @param maxPages - pages followed at most, the first one included
+     */
+    public void setMaxPages(final int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    /**
+     * @param pageUrl
+     * @param registrationId
+     * @param nextUrlConsumer - told once of the page's "next" link, null when it has none
+     * @return resources of the page
+     */
+    private Flux<JsonNode> page(final String pageUrl, final String registrationId,
+            final Consumer<String> nextUrlConsumer) {
+        final AtomicBoolean followed = new AtomicBoolean();
+        final Consumer<String> follow = nextUrl -> {
+            if (followed.compareAndSet(false, true)) {
+                nextUrlConsumer.accept(nextUrl);
+            }
+        };
+
+        return Flux.defer(() -> {
+            final BundleParser parser = newParser(follow);
+            return webClient.get()
+                .uri(URI.create(pageUrl))
+                .accept(FHIR_JSON, MediaType.APPLICATION_JSON)
+                .attributes(registrationId != null ? clientRegistrationId(registrationId) : attributes -> {
+                })
+                .exchangeToFlux(response -> response.statusCode().is2xxSuccessful()
+                        ? response.bodyToFlux(DataBuffer.class)
+                            .concatMapIterable(dataBuffer -> parse(parser, dataBuffer), 1)
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(endOfInput(parser))))
+                        : response.createException().flatMapMany(Flux::error));
+        })
+            // The 401 arrives ahead of any resource, so the page is not repeated
+            .retryWhen(Retry.max(1).filter(WebClientResponseException.Unauthorized.class::isInstance))
+            .doOnComplete(() -> follow.accept(null))
+            .doOnError(e -> log.error("FHIR search page {} failed: {}", pageUrl, e.getMessage()));
+    }
+
+    private BundleParser newParser(final Consumer<String> nextUrlConsumer) {
+        try {
+            return new BundleParser(objectMapper, nextUrlConsumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<JsonNode> parse(final BundleParser parser, final DataBuffer dataBuffer) {
+        try {
+            final byte[] bytes = new byte[dataBuffer.readableByteCount()];
+            dataBuffer.read(bytes);
+            return parser.feed(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    private static List<JsonNode> endOfInput(final BundleParser parser) {
+        try {
+            return parser.endOfInput();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.udap.fhir;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AuthZExtension;
+import org.udap.service.ReactiveUdapClientService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * WebClient filter that authorizes every request with an access token of one FHIR
+ * client, authorization server, scope and set of authorization extensions; the
+ * non-blocking counterpart of {@link UdapBearerTokenInterceptor}.
+ *
+ * Tokens come from {@link ReactiveUdapClientService}, so they are cached, refreshed ahead
+ * of expiry and requested once for concurrent requests. A token answered 401 is dropped
+ * from the cache, so a repeated request carries a new one.
+ */
+public class UdapBearerTokenExchangeFilterFunction implements ExchangeFilterFunction {
+
+    private final ReactiveUdapClientService udapClientService;
+
+    private final UdapFhirClient fhirClient;
+
+    private final String authorizationServer;
+
+    private final String expectedMetadataIssuer;
+
+    private final String scope;
+
+    private final List<AuthZExtension> authNExtensionList;
+
+    private final boolean mustBeTrusted;
+
+    /**
+     * @param udapClientService
+     * @param fhirClient
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param scope
+     * @param authNExtensionList - may be null
+     * @param mustBeTrusted
+     */
+    public UdapBearerTokenExchangeFilterFunction(final ReactiveUdapClientService udapClientService,
+            final UdapFhirClient fhirClient, final String authorizationServer, final String expectedMetadataIssuer,
+            final String scope, final List<AuthZExtension> authNExtensionList, final boolean mustBeTrusted) {
+        this.udapClientService = udapClientService;
+        this.fhirClient = fhirClient;
+        this.authorizationServer = authorizationServer;
+        this.expectedMetadataIssuer = expectedMetadataIssuer;
+        this.scope = scope;
+        this.authNExtensionList = authNExtensionList;
+        this.mustBeTrusted = mustBeTrusted;
+    }
+
+    /**
+     * @return the response; a {@link org.udap.exception.UdapException} error when no
+     * access token was obtained
+     */
+    @Override
+    public Mono<ClientResponse> filter(final ClientRequest request, final ExchangeFunction next) {
+        return udapClientService
+            .getAccessToken(fhirClient, authorizationServer, expectedMetadataIssuer, scope, authNExtensionList,
+                    mustBeTrusted)
+            .flatMap(accessToken -> next
+                .exchange(ClientRequest.from(request)
+                    .headers(headers -> headers.setBearerAuth(accessToken.getAccessToken()))
+                    .build())
+                .doOnNext(response -> {
+                    if (response.statusCode().isSameCodeAs(HttpStatus.UNAUTHORIZED)) {
+                        udapClientService.invalidateAccessToken(accessToken.getAccessToken());
+                    }
+                }));
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.udap.fhir;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.udap.config.UdapFhirClient;
+import org.udap.exception.UdapException;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.AuthZExtension;
+import org.udap.service.UdapClientService;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HAPI FHIR client interceptor that authorizes every request with an access token of one
+ * FHIR client, authorization server, scope and set of authorization extensions.
+ *
+ * The token is held by the interceptor until shortly before it expires and is then taken
+ * from {@link UdapClientService}, whose access token cache refreshes it ahead of expiry
+ * and coalesces concurrent token requests; calls in flight at the same time never each
+ * request a token. A request answered 401 is retried exactly once with a new token. The
+ * retry replaces the response in place, which needs HAPI's default Apache HTTP client;
+ * with other HTTP clients the 401 is returned and the next request carries the new token.
+ *
+ * Register before interceptors that read the response, e.g., logging interceptors.
+ */
+@Slf4j
+public class UdapBearerTokenInterceptor implements IClientInterceptor {
+
+    private final UdapClientService udapClientService;
+
+    private final UdapFhirClient fhirClient;
+
+    private final String authorizationServer;
+
+    private final String expectedMetadataIssuer;
+
+    private final String scope;
+
+    private final List<AuthZExtension> authNExtensionList;
+
+    private final boolean mustBeTrusted;
+
+    /**
+     * Request in flight on this thread; HAPI intercepts a response on the thread that
+     * sent its request
+     */
+    private final ThreadLocal<Exchange> exchanges = new ThreadLocal<>();
+
+    private volatile HeldToken heldToken;
+
+    private Clock clock = Clock.systemUTC();
+
+    private Duration refreshAhead = Duration.ofSeconds(90);
+
+    /**
+     * @param udapClientService
+     * @param fhirClient
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param scope
+     * @param authNExtensionList - may be null
+     * @param mustBeTrusted
+     */
+    public UdapBearerTokenInterceptor(final UdapClientService udapClientService, final UdapFhirClient fhirClient,
+            final String authorizationServer, final String expectedMetadataIssuer, final String scope,
+            final List<AuthZExtension> authNExtensionList, final boolean mustBeTrusted) {
+        this.udapClientService = udapClientService;
+        this.fhirClient = fhirClient;
+        this.authorizationServer = authorizationServer;
+        this.expectedMetadataIssuer = expectedMetadataIssuer;
+        this.scope = scope;
+        this.authNExtensionList = authNExtensionList;
+        this.mustBeTrusted = mustBeTrusted;
+    }
+
+    /**
+     * @throws FhirClientConnectionException caused by the {@link UdapException} when no
+     * access token was obtained
+     */
+    @Override
+    public void interceptRequest(final IHttpRequest request) {
+        final String accessToken = getAccessToken();
+        authorize(request, accessToken);
+        exchanges.set(new Exchange(request, accessToken));
+    }
+
+    @Override
+    public void interceptResponse(final IHttpResponse response) throws IOException {
+        final Exchange exchange = exchanges.get();
+        exchanges.remove();
+        if (exchange == null || response.getStatus() != Constants.STATUS_HTTP_401_CLIENT_UNAUTHORIZED) {
+            return;
+        }
+
+        log.debug("Access token of {} rejected by {}; retrying once with a new token",
+                fhirClient.getClientNickname(), exchange.request().getUri());
+        final HeldToken rejected = heldToken;
+        if (rejected != null && rejected.accessToken().equals(exchange.accessToken())) {
+            heldToken = null;
+        }
+        udapClientService.invalidateAccessToken(exchange.accessToken());
+
+        final String accessToken = getAccessToken();
+        if (!(response.getResponse() instanceof HttpResponse target)) {
+            return;
+        }
+
+        authorize(exchange.request(), accessToken);
+        final IHttpResponse retried = exchange.request().execute();
+        if (retried.getResponse() instanceof HttpResponse source) {
+            EntityUtils.consumeQuietly(target.getEntity());
+            target.setStatusLine(source.getStatusLine());
+            target.setHeaders(source.getAllHeaders());
+            target.setEntity(source.getEntity());
+        } else {
+            retried.close();
+        }
+    }
+
+    public void setClock(final Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param refreshAhead - the held token is taken from the client service again this
+     * long before it expires; at least the access token cache's expiry margin plus its
+     * refresh-ahead, so a token refreshed in the background is picked up
+     */
+    public void setRefreshAhead(final Duration refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    private String getAccessToken() {
+        final HeldToken held = heldToken;
+        if (held != null && clock.instant().isBefore(held.refreshAt())) {
+            return held.accessToken();
+        }
+
+        final AccessTokenResponse accessTokenResponse;
+        try {
+            accessTokenResponse = udapClientService.getAccessToken(fhirClient, authorizationServer,
+                    expectedMetadataIssuer, scope, authNExtensionList, mustBeTrusted);
+        } catch (UdapException e) {
+            throw new FhirClientConnectionException("No access token from " + authorizationServer, e);
+        }
+
+        // Tokens without "expires_in" are taken from the client service every time
+        final Instant refreshAt = accessTokenResponse.getExpiresIn() != null
+                ? accessTokenResponse.getReceivedAt()
+                    .plusSeconds(accessTokenResponse.getExpiresIn())
+                    .minus(refreshAhead)
+                : Instant.MIN;
+        heldToken = new HeldToken(accessTokenResponse.getAccessToken(), refreshAt);
+
+        return accessTokenResponse.getAccessToken();
+    }
+
+    private static void authorize(final IHttpRequest request, final String accessToken) {
+        request.removeHeaders(Constants.HEADER_AUTHORIZATION);
+        request.addHeader(Constants.HEADER_AUTHORIZATION, Constants.HEADER_AUTHORIZATION_VALPREFIX_BEARER
+                + accessToken);
+    }
+
+    private record Exchange(IHttpRequest request, String accessToken) {
+    }
+
+    private record HeldToken(String accessToken, Instant refreshAt) {
+    }
+
+}
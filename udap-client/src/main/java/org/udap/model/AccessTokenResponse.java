@@ -1,8 +1,12 @@
 package org.udap.model;
 
+import java.time.Instant;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 /**
@@ -22,4 +26,12 @@ public class AccessTokenResponse {
     @JsonProperty("expires_in")
     private Integer expiresIn;
 
+    /**
+     * When the response was received, the start of its "expires_in"; not part of the
+     * response
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Instant receivedAt = Instant.now();
+
 }
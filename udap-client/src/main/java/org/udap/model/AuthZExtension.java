@@ -1,5 +1,13 @@
 package org.udap.model;
 
+import java.text.ParseException;
+import java.util.Map;
+
+import org.udap.util.CommonUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.nimbusds.jose.util.JSONObjectUtils;
+
 import lombok.Data;
 
 /**
@@ -13,4 +21,26 @@ import lombok.Data;
 @Data
 public class AuthZExtension {
 
+    /**
+     * Entries of this extension in the "extensions" claim of an authentication token,
+     * keyed by extension name (e.g., "hl7-b2b"). Extensions without a direct conversion
+     * are converted through their JSON form.
+     * @return claims
+     * @throws JsonProcessingException
+     * @throws ParseException
+     */
+    public Map<String, Object> toClaims() throws JsonProcessingException, ParseException {
+        return JSONObjectUtils.parse(CommonUtil.getObjectAsJson(this));
+    }
+
+    /**
+     * Hash of the canonical JSON form of this extension, identifying it in access token
+     * cache keys. Immutable extensions compute it once.
+     * @return SHA-256 (base64url)
+     * @throws JsonProcessingException
+     */
+    public String canonicalHash() throws JsonProcessingException {
+        return CommonUtil.getCanonicalHash(this);
+    }
+
 }
@@ -2,24 +2,33 @@ package org.udap.model;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
+import lombok.AccessLevel;
 import lombok.Builder;
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
 
 /**
  * B2B Authorization Extension Object See
  * http://hl7.org/fhir/us/udap-security/b2b.html#b2b-authorization-extension-object
  *
+ * Immutable, so that its claims are converted once however often the extension is sent
+ *
  * @author Brett P Stringham
  *
  */
 @Builder
-@Data
+@Value
 public class AuthZExtensionHl7B2b {
 
     /**
@@ -112,4 +121,41 @@ public class AuthZExtensionHl7B2b {
     @JsonProperty("consent_reference")
     private List<URL> consentReference;
 
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    private final Map<String, Object> claims = createClaims();
+
+    /**
+     * @return the extension object as claims, with the members of its JSON form
+     */
+    public Map<String, Object> toClaims() {
+        return getClaims();
+    }
+
+    private Map<String, Object> createClaims() {
+        final Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("version", version);
+        putIfNotNull(claims, "subject_name", subjectName);
+        putIfNotNull(claims, "subject_id", subjectId);
+        putIfNotNull(claims, "subject_role", subjectRole);
+        putIfNotNull(claims, "organization_name", organizationName);
+        claims.put("organization_id", organizationId);
+        claims.put("purpose_of_use", toStrings(purposeOfUse));
+        putIfNotNull(claims, "consent_policy", toStrings(consentPolicy));
+        putIfNotNull(claims, "consent_reference", toStrings(consentReference));
+
+        return Collections.unmodifiableMap(claims);
+    }
+
+    private static void putIfNotNull(final Map<String, Object> claims, final String name, final Object value) {
+        if (value != null) {
+            claims.put(name, value);
+        }
+    }
+
+    private static List<String> toStrings(final List<?> values) {
+        return values == null ? null : values.stream().map(value -> value == null ? null : value.toString()).toList();
+    }
+
 }
@@ -1,21 +1,66 @@
 package org.udap.model;
 
+import java.util.Map;
+
+import org.udap.util.CommonUtil;
+
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import lombok.AccessLevel;
 import lombok.Builder;
-import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
 
 /**
+ * Immutable, so that its claims and canonical hash are computed once however often the
+ * extension is sent
+ *
  * @author Brett P Stringham
  *
  */
-@Data
+@Value
 @EqualsAndHashCode(callSuper=false)
 @Builder
 public class AuthZExtensionHl7B2bHeader extends AuthZExtension {
+
+    public static final String NAME = "hl7-b2b";
+
     @JsonInclude(Include.NON_NULL)
-    @JsonProperty("hl7-b2b")
+    @JsonProperty(NAME)
     private AuthZExtensionHl7B2b hl7B2b;
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    private final Map<String, Object> claims = hl7B2b != null ? Map.of(NAME, hl7B2b.toClaims()) : Map.of();
+
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    private final String hash = hash(this);
+
+    @Override
+    public Map<String, Object> toClaims() {
+        return getClaims();
+    }
+
+    @Override
+    public String canonicalHash() {
+        return getHash();
+    }
+
+    private static String hash(final AuthZExtensionHl7B2bHeader extension) {
+        try {
+            return CommonUtil.getCanonicalHash(extension);
+        } catch (JsonProcessingException e) {
+            // Plain values, always serializable
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
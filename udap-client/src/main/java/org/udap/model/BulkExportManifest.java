@@ -0,0 +1,64 @@
+package org.udap.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response of a completed FHIR Bulk Data export: the NDJSON files to download.
+ *
+ * @see <a href=
+ * "https://hl7.org/fhir/uv/bulkdata/export.html#response---complete-status">Complete
+ * Status</a>
+ */
+@NoArgsConstructor
+@Data
+public class BulkExportManifest {
+
+    @JsonProperty("transactionTime")
+    private String transactionTime;
+
+    @JsonProperty("request")
+    private String request;
+
+    /**
+     * When true, the files are downloaded with an access token
+     */
+    @JsonProperty("requiresAccessToken")
+    private boolean requiresAccessToken;
+
+    @JsonProperty("output")
+    private List<File> output = new ArrayList<>();
+
+    /**
+     * OperationOutcome files of the resources that could not be exported
+     */
+    @JsonProperty("error")
+    private List<File> error = new ArrayList<>();
+
+    @NoArgsConstructor
+    @Data
+    public static class File {
+
+        /**
+         * Resource type of the file
+         */
+        @JsonProperty("type")
+        private String type;
+
+        @JsonProperty("url")
+        private String url;
+
+        /**
+         * Resources in the file, when the server tells
+         */
+        @JsonProperty("count")
+        private Long count;
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.udap.model;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Access token response along with the instants that govern how long it is served from
+ * cache.
+ */
+@Builder
+@Data
+public class CachedAccessToken {
+
+    private AccessTokenResponse accessTokenResponse;
+
+    private Instant issuedAt;
+
+    /**
+     * issuedAt plus "expires_in"
+     */
+    private Instant expiresAt;
+
+    /**
+     * No longer served from cache after this instant (expiresAt less the safety margin)
+     */
+    private Instant staleAt;
+
+    /**
+     * A background token request is started once this instant has passed
+     */
+    private Instant refreshAt;
+
+    public boolean isStale(Instant now) {
+        return !now.isBefore(staleAt);
+    }
+
+    public boolean isRefreshDue(Instant now) {
+        return !now.isBefore(refreshAt);
+    }
+
+}
@@ -0,0 +1,107 @@
+package org.udap.model;
+
+import java.time.Instant;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Result of discovering an authorization server's UDAP metadata and, when required,
+ * verifying its signed metadata.
+ */
+@Builder
+@Data
+public class TrustedServer {
+
+    /**
+     * Authorization server base URL used for discovery
+     */
+    private String authorizationServer;
+
+    /**
+     * Issuer the signed metadata was verified against, null when trust was assumed
+     */
+    private String expectedIssuer;
+
+    private ServerMetadata serverMetadata;
+
+    /**
+     * Verified claims of the signed metadata, null when trust was assumed
+     */
+    private JWTClaimsSet metadataClaims;
+
+    private boolean trusted;
+
+    private Instant validatedAt;
+
+    /**
+     * No longer served from cache after this instant
+     */
+    private Instant expiresAt;
+
+    /**
+     * A background re-validation is started once this instant has passed
+     */
+    private Instant refreshAt;
+
+    /**
+     * Once expired, still served (while re-validated in the background) until this instant
+     */
+    private Instant staleWhileRevalidateUntil;
+
+    /**
+     * Once expired, still served when re-validation fails to reach the server until this
+     * instant
+     */
+    private Instant staleIfErrorUntil;
+
+    /**
+     * ETag of the discovery response, sent as If-None-Match on re-validation
+     */
+    private String eTag;
+
+    /**
+     * Last-Modified of the discovery response, sent as If-Modified-Since on re-validation
+     */
+    private Instant lastModified;
+
+    /**
+     * The discovery response was sent with Cache-Control no-store; never cached nor
+     * recorded
+     */
+    private boolean noStore;
+
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+
+    public boolean isStaleWhileRevalidate(Instant now) {
+        return staleWhileRevalidateUntil != null && now.isBefore(staleWhileRevalidateUntil);
+    }
+
+    public boolean isStaleIfError(Instant now) {
+        return staleIfErrorUntil != null && now.isBefore(staleIfErrorUntil);
+    }
+
+    /**
+     * @return last instant the entry may be served at, stale or not
+     */
+    public Instant getRetainUntil() {
+        Instant retainUntil = expiresAt;
+        if (staleWhileRevalidateUntil != null && staleWhileRevalidateUntil.isAfter(retainUntil)) {
+            retainUntil = staleWhileRevalidateUntil;
+        }
+        if (staleIfErrorUntil != null && staleIfErrorUntil.isAfter(retainUntil)) {
+            retainUntil = staleIfErrorUntil;
+        }
+
+        return retainUntil;
+    }
+
+    public boolean isRefreshDue(Instant now) {
+        return !now.isBefore(refreshAt);
+    }
+
+}
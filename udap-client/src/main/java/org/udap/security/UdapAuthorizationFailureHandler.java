@@ -0,0 +1,41 @@
+package org.udap.security;
+
+import java.util.Map;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.RemoveAuthorizedClientReactiveOAuth2AuthorizationFailureHandler;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.udap.service.AccessTokenCache;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Drops an access token rejected by a resource server (401, "invalid_token") or the
+ * authorization server ("invalid_grant"), both from the authorized client service and
+ * from the access token cache, so that the next authorization requests a new token
+ * rather than being served the rejected one again.
+ */
+public class UdapAuthorizationFailureHandler implements ReactiveOAuth2AuthorizationFailureHandler {
+
+    private final ReactiveOAuth2AuthorizationFailureHandler delegate;
+
+    public UdapAuthorizationFailureHandler(final ReactiveOAuth2AuthorizedClientService authorizedClientService,
+            final AccessTokenCache accessTokenCache) {
+        this.delegate = new RemoveAuthorizedClientReactiveOAuth2AuthorizationFailureHandler(
+                (clientRegistrationId, principal, attributes) -> authorizedClientService
+                    .loadAuthorizedClient(clientRegistrationId, principal.getName())
+                    .doOnNext(authorizedClient -> accessTokenCache
+                        .invalidateAccessToken(authorizedClient.getAccessToken().getTokenValue()))
+                    .then(authorizedClientService.removeAuthorizedClient(clientRegistrationId,
+                            principal.getName())));
+    }
+
+    @Override
+    public Mono<Void> onAuthorizationFailure(final OAuth2AuthorizationException authorizationException,
+            final Authentication principal, final Map<String, Object> attributes) {
+        return delegate.onAuthorizationFailure(authorizationException, principal, attributes);
+    }
+
+}
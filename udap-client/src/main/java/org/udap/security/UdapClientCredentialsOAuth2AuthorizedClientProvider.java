@@ -0,0 +1,69 @@
+package org.udap.security;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProvider;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.exception.UdapException;
+import org.udap.security.UdapOAuth2ClientRegistrations.Request;
+import org.udap.service.UdapClientService;
+
+/**
+ * Blocking counterpart of {@link UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider}
+ * backed by {@link UdapClientService}
+ */
+public class UdapClientCredentialsOAuth2AuthorizedClientProvider implements OAuth2AuthorizedClientProvider {
+
+    private final UdapClientService udapClientService;
+
+    private final UdapFhirClientPool fhirClientPool;
+
+    private Clock clock = Clock.systemUTC();
+
+    private Duration clockSkew = Duration.ofSeconds(60);
+
+    public UdapClientCredentialsOAuth2AuthorizedClientProvider(final UdapClientService udapClientService,
+            final UdapFhirClientPool fhirClientPool) {
+        this.udapClientService = udapClientService;
+        this.fhirClientPool = fhirClientPool;
+    }
+
+    /**
+     * @return the authorized client; null when the registration is not a UDAP client
+     * registration or its authorized client is still usable
+     * @throws org.springframework.security.oauth2.client.ClientAuthorizationException
+     * caused by the {@link UdapException} when no access token was obtained
+     */
+    @Override
+    public OAuth2AuthorizedClient authorize(final OAuth2AuthorizationContext context) {
+        final Request request = Request.of(context, fhirClientPool);
+        if (request == null
+                || UdapOAuth2ClientRegistrations.isReusable(context.getAuthorizedClient(), clock, clockSkew)) {
+            return null;
+        }
+
+        try {
+            return request.toAuthorizedClient(context,
+                    udapClientService.getAccessToken(request.fhirClient(), request.authorizationServer(),
+                            request.expectedMetadataIssuer(), request.scope(), request.authNExtensionList(),
+                            request.mustBeTrusted()));
+        } catch (UdapException e) {
+            throw request.toAuthorizationException(e);
+        }
+    }
+
+    public void setClock(final Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param clockSkew - an access token is replaced this long before it expires
+     */
+    public void setClockSkew(final Duration clockSkew) {
+        this.clockSkew = clockSkew;
+    }
+
+}
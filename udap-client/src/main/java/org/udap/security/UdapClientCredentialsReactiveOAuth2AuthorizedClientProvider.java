@@ -0,0 +1,75 @@
+package org.udap.security;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.exception.UdapException;
+import org.udap.security.UdapOAuth2ClientRegistrations.Request;
+import org.udap.service.ReactiveUdapClientService;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorizes (and re-authorizes) UDAP client registrations with the client credentials
+ * grant and a signed authentication token, see {@link UdapOAuth2ClientRegistrations}.
+ * An authorized client is reused until its access token is within the clock skew of its
+ * expiry; new tokens come from {@link ReactiveUdapClientService}, so they are shared
+ * through its access token cache.
+ *
+ * Errors are {@link org.springframework.security.oauth2.client.ClientAuthorizationException}s
+ * caused by the {@link UdapException}.
+ */
+public class UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider
+        implements ReactiveOAuth2AuthorizedClientProvider {
+
+    private final ReactiveUdapClientService udapClientService;
+
+    private final UdapFhirClientPool fhirClientPool;
+
+    private Clock clock = Clock.systemUTC();
+
+    private Duration clockSkew = Duration.ofSeconds(60);
+
+    public UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider(
+            final ReactiveUdapClientService udapClientService, final UdapFhirClientPool fhirClientPool) {
+        this.udapClientService = udapClientService;
+        this.fhirClientPool = fhirClientPool;
+    }
+
+    /**
+     * @return the authorized client; empty when the registration is not a UDAP client
+     * registration or its authorized client is still usable
+     */
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(final OAuth2AuthorizationContext context) {
+        return Mono.defer(() -> {
+            final Request request = Request.of(context, fhirClientPool);
+            if (request == null
+                    || UdapOAuth2ClientRegistrations.isReusable(context.getAuthorizedClient(), clock, clockSkew)) {
+                return Mono.empty();
+            }
+
+            return udapClientService
+                .getAccessToken(request.fhirClient(), request.authorizationServer(), request.expectedMetadataIssuer(),
+                        request.scope(), request.authNExtensionList(), request.mustBeTrusted())
+                .map(accessTokenResponse -> request.toAuthorizedClient(context, accessTokenResponse))
+                .onErrorMap(UdapException.class, request::toAuthorizationException);
+        });
+    }
+
+    public void setClock(final Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param clockSkew - an access token is replaced this long before it expires
+     */
+    public void setClockSkew(final Duration clockSkew) {
+        this.clockSkew = clockSkew;
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.udap.security;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.util.StringUtils;
+import org.udap.config.UdapFhirClient;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.exception.UdapException;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.AuthZExtension;
+
+/**
+ * Spring Security client registrations of UDAP clients. A UDAP client registration is a
+ * client credentials registration whose provider configuration metadata names the FHIR
+ * client (by nickname) and the authorization server; the token endpoint is discovered,
+ * so the registration's token URI is informational only.
+ */
+public final class UdapOAuth2ClientRegistrations {
+
+    /**
+     * Provider configuration metadata: nickname of the FHIR client in the pool
+     */
+    public static final String CLIENT_NICKNAME = "udap_client_nickname";
+
+    /**
+     * Provider configuration metadata: base URL of the authorization server
+     */
+    public static final String AUTHORIZATION_SERVER = "udap_authorization_server";
+
+    /**
+     * Provider configuration metadata: expected "iss" of the signed metadata
+     */
+    public static final String EXPECTED_METADATA_ISSUER = "udap_expected_metadata_issuer";
+
+    /**
+     * Provider configuration metadata: Boolean, whether the server's signed metadata must
+     * be trusted
+     */
+    public static final String MUST_BE_TRUSTED = "udap_must_be_trusted";
+
+    /**
+     * Provider configuration metadata: List of {@link AuthZExtension}s of every
+     * authentication token, e.g., the B2B extension
+     */
+    public static final String AUTHZ_EXTENSIONS = "udap_authz_extensions";
+
+    /**
+     * Authorize request / context attribute: List of {@link AuthZExtension}s of this
+     * authorization, in place of the registration's
+     */
+    public static final String AUTHZ_EXTENSIONS_ATTRIBUTE_NAME = UdapOAuth2ClientRegistrations.class.getName()
+            .concat(".AUTHZ_EXTENSIONS");
+
+    private UdapOAuth2ClientRegistrations() {
+    }
+
+    /**
+     * @param registrationId
+     * @param fhirClient
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param mustBeTrusted
+     * @param authNExtensionList - may be null
+     * @return builder of a client credentials registration of the FHIR client, to which
+     * scopes may be added
+     */
+    public static ClientRegistration.Builder withUdapClient(final String registrationId,
+            final UdapFhirClient fhirClient, final String authorizationServer, final String expectedMetadataIssuer,
+            final boolean mustBeTrusted, final List<AuthZExtension> authNExtensionList) {
+        final String clientId = fhirClient.getClientIds().getOrDefault(authorizationServer, fhirClient.getClientId());
+
+        return ClientRegistration.withRegistrationId(registrationId)
+            .clientId(StringUtils.hasText(clientId) ? clientId : fhirClient.getClientNickname())
+            .authorizationGrantType(AuthorizationGrantType.CLIENT_CREDENTIALS)
+            .tokenUri(authorizationServer)
+            .providerConfigurationMetadata(metadata(fhirClient, authorizationServer, expectedMetadataIssuer,
+                    mustBeTrusted, authNExtensionList));
+    }
+
+    private static Map<String, Object> metadata(final UdapFhirClient fhirClient, final String authorizationServer,
+            final String expectedMetadataIssuer, final boolean mustBeTrusted,
+            final List<AuthZExtension> authNExtensionList) {
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put(CLIENT_NICKNAME, fhirClient.getClientNickname());
+        metadata.put(AUTHORIZATION_SERVER, authorizationServer);
+        if (expectedMetadataIssuer != null) {
+            metadata.put(EXPECTED_METADATA_ISSUER, expectedMetadataIssuer);
+        }
+        metadata.put(MUST_BE_TRUSTED, mustBeTrusted);
+        if (authNExtensionList != null) {
+            metadata.put(AUTHZ_EXTENSIONS, List.copyOf(authNExtensionList));
+        }
+
+        return metadata;
+    }
+
+    /**
+     * Access token request of a UDAP client registration
+     */
+    record Request(ClientRegistration clientRegistration, UdapFhirClient fhirClient, String authorizationServer,
+            String expectedMetadataIssuer, boolean mustBeTrusted, String scope,
+            List<AuthZExtension> authNExtensionList) {
+
+        /**
+         * @param context
+         * @param fhirClientPool
+         * @return the request; null when the context is not of a UDAP client registration
+         * @throws ClientAuthorizationException when the FHIR client is not in the pool
+         */
+        @SuppressWarnings("unchecked")
+        static Request of(final OAuth2AuthorizationContext context, final UdapFhirClientPool fhirClientPool) {
+            final ClientRegistration clientRegistration = context.getClientRegistration();
+            final Map<String, Object> metadata = clientRegistration.getProviderDetails().getConfigurationMetadata();
+            if (!AuthorizationGrantType.CLIENT_CREDENTIALS.equals(clientRegistration.getAuthorizationGrantType())
+                    || !metadata.containsKey(CLIENT_NICKNAME)) {
+                return null;
+            }
+
+            final String clientNickname = (String) metadata.get(CLIENT_NICKNAME);
+            final UdapFhirClient fhirClient = fhirClientPool.get(clientNickname);
+            if (fhirClient == null) {
+                throw new ClientAuthorizationException(new OAuth2Error(UdapException.CLIENT_ERROR,
+                        "No FHIR client " + clientNickname, null), clientRegistration.getRegistrationId());
+            }
+
+            final String[] requestScopes = context
+                .getAttribute(OAuth2AuthorizationContext.REQUEST_SCOPE_ATTRIBUTE_NAME);
+            final String scope = requestScopes != null ? String.join(" ", requestScopes)
+                    : clientRegistration.getScopes() != null ? String.join(" ", clientRegistration.getScopes()) : "";
+            final List<AuthZExtension> contextExtensions = context.getAttribute(AUTHZ_EXTENSIONS_ATTRIBUTE_NAME);
+
+            return new Request(clientRegistration, fhirClient, (String) metadata.get(AUTHORIZATION_SERVER),
+                    (String) metadata.get(EXPECTED_METADATA_ISSUER),
+                    !Boolean.FALSE.equals(metadata.get(MUST_BE_TRUSTED)), scope.isEmpty() ? null : scope,
+                    contextExtensions != null ? contextExtensions
+                            : (List<AuthZExtension>) metadata.get(AUTHZ_EXTENSIONS));
+        }
+
+        OAuth2AuthorizedClient toAuthorizedClient(final OAuth2AuthorizationContext context,
+                final AccessTokenResponse accessTokenResponse) {
+            final Instant issuedAt = accessTokenResponse.getReceivedAt();
+            final Instant expiresAt = accessTokenResponse.getExpiresIn() != null
+                    ? issuedAt.plusSeconds(Math.max(1, accessTokenResponse.getExpiresIn())) : null;
+            final OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                    accessTokenResponse.getAccessToken(), issuedAt, expiresAt);
+
+            return new OAuth2AuthorizedClient(clientRegistration, context.getPrincipal().getName(), accessToken);
+        }
+
+        ClientAuthorizationException toAuthorizationException(final UdapException e) {
+            return new ClientAuthorizationException(new OAuth2Error(e.getError(), e.getErrorMessage(), null),
+                    clientRegistration.getRegistrationId(), e);
+        }
+
+    }
+
+    /**
+     * @param authorizedClient - may be null
+     * @param clock
+     * @param clockSkew
+     * @return true when the authorized client's access token may still be used; tokens
+     * without an expiry are not reused, so they are served by the access token cache
+     */
+    static boolean isReusable(final OAuth2AuthorizedClient authorizedClient, final Clock clock,
+            final Duration clockSkew) {
+        if (authorizedClient == null || authorizedClient.getAccessToken().getExpiresAt() == null) {
+            return false;
+        }
+
+        return clock.instant().isBefore(authorizedClient.getAccessToken().getExpiresAt().minus(clockSkew));
+    }
+
+}
@@ -0,0 +1,394 @@
+package org.udap.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.CachedAccessToken;
+import org.udap.util.SingleFlight;
+import org.udap.util.UdapMetrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Expiry aware cache of access tokens. A cached token is served until a safety margin
+ * before its "expires_in" and is replaced by a background token request ahead of that
+ * point, so steady callers never wait on the token endpoint.
+ *
+ * Blocking refreshers run on a small dedicated pool; asynchronous refreshers hold no
+ * thread while the token request is in flight.
+ */
+@Slf4j
+@Service
+public class AccessTokenCache {
+
+    private final AccessTokenCacheProperties properties;
+
+    private final Cache<AccessTokenKey, CachedAccessToken> cache;
+
+    private final Set<AccessTokenKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Keys of the cached entries by "access_token" value, maintained as entries are added
+     * and removed
+     */
+    private final ConcurrentMap<String, Set<AccessTokenKey>> keysByAccessToken = new ConcurrentHashMap<>();
+
+    private final Executor refreshExecutor;
+
+    /**
+     * One token request in flight per key, shared by the client services and their
+     * background refreshes
+     */
+    private final SingleFlight<AccessTokenKey, AccessTokenResponse> tokenRequests = new SingleFlight<>();
+
+    /**
+     * Told of every cached token and, with a null token, of every invalidated one
+     */
+    private volatile BiConsumer<AccessTokenKey, CachedAccessToken> changeListener = (key, cachedToken) -> {
+    };
+
+    @Autowired
+    public AccessTokenCache(final AccessTokenCacheProperties properties) {
+        this(properties, refreshExecutor(properties));
+    }
+
+    public AccessTokenCache(final AccessTokenCacheProperties properties, final Executor refreshExecutor) {
+        this.properties = properties;
+        this.refreshExecutor = refreshExecutor;
+        this.cache = UdapMetrics.monitor(Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfter(new CachedAccessTokenExpiry())
+            // Removals are told synchronously, so the index never outlives an entry
+            .executor(Runnable::run)
+            .<AccessTokenKey, CachedAccessToken>removalListener((key, cachedToken, cause) -> {
+                if (key != null && cachedToken != null) {
+                    unindex(key, cachedToken);
+                }
+            })
+            .recordStats()
+            .build(), "udap.access-token");
+    }
+
+    /**
+     * Returns a cached access token that is still usable. When the token is due to be
+     * refreshed, the refresher is started in the background and the cached token is
+     * returned meanwhile.
+     * @param key
+     * @param refresher - requests a new access token; only ever invoked in the background
+     * @return AccessTokenResponse or null when no usable token is cached
+     */
+    public AccessTokenResponse get(final AccessTokenKey key, final Callable<AccessTokenResponse> refresher) {
+        return getWithAsyncRefresh(key, () -> callInBackground(refresher));
+    }
+
+    /**
+     * Same as {@link #get(AccessTokenKey, Callable)}, for a refresher that requests the new
+     * access token without blocking the calling thread
+     * @param key
+     * @param refresher - starts a new access token request
+     * @return AccessTokenResponse or null when no usable token is cached
+     */
+    public AccessTokenResponse getWithAsyncRefresh(final AccessTokenKey key,
+            final Supplier<? extends CompletionStage<AccessTokenResponse>> refresher) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+
+        final CachedAccessToken cached = cache.getIfPresent(key);
+        if (cached == null || cached.isStale(Instant.now())) {
+            return null;
+        }
+
+        if (cached.isRefreshDue(Instant.now())) {
+            refreshInBackground(key, refresher);
+        }
+
+        return cached.getAccessTokenResponse();
+    }
+
+    /**
+     * Caches an access token response; responses without "access_token" or "expires_in"
+     * are not cached
+     * @param key
+     * @param accessTokenResponse
+     */
+    public void put(final AccessTokenKey key, final AccessTokenResponse accessTokenResponse) {
+        if (!properties.isEnabled() || accessTokenResponse == null || accessTokenResponse.getAccessToken() == null
+                || accessTokenResponse.getExpiresIn() == null) {
+            return;
+        }
+
+        final Instant issuedAt = Instant.now();
+        final Instant expiresAt = issuedAt.plusSeconds(accessTokenResponse.getExpiresIn());
+        final Instant staleAt = expiresAt.minus(properties.getExpiryMargin());
+        if (!staleAt.isAfter(issuedAt)) {
+            log.debug("Access token lifetime of {}s is within the expiry margin; not cached",
+                    accessTokenResponse.getExpiresIn());
+            return;
+        }
+
+        Instant refreshAt = staleAt.minus(properties.getRefreshAhead());
+        if (refreshAt.isBefore(issuedAt)) {
+            refreshAt = issuedAt;
+        }
+
+        final CachedAccessToken cachedToken = CachedAccessToken.builder()
+            .accessTokenResponse(accessTokenResponse)
+            .issuedAt(issuedAt)
+            .expiresAt(expiresAt)
+            .staleAt(staleAt)
+            .refreshAt(refreshAt)
+            .build();
+        index(key, cachedToken);
+        cache.put(key, cachedToken);
+        changeListener.accept(key, cachedToken);
+    }
+
+    /**
+     * @return the token requests in flight; callers requesting a token for a key join the
+     * request already in flight for it
+     */
+    public SingleFlight<AccessTokenKey, AccessTokenResponse> getTokenRequests() {
+        return tokenRequests;
+    }
+
+    public void invalidate(final AccessTokenKey key) {
+        cache.invalidate(key);
+        changeListener.accept(key, null);
+    }
+
+    /**
+     * Invalidates every cached entry holding the access token, e.g., once a resource
+     * server rejected it
+     * @param accessToken - "access_token" value
+     * @return true when an entry was invalidated
+     */
+    public boolean invalidateAccessToken(final String accessToken) {
+        final Set<AccessTokenKey> keys = keysByAccessToken.get(accessToken);
+        if (keys == null) {
+            return false;
+        }
+
+        boolean invalidated = false;
+        for (AccessTokenKey key : keys) {
+            final CachedAccessToken cachedToken = cache.asMap().get(key);
+            if (cachedToken != null && accessToken.equals(accessToken(cachedToken))
+                    && cache.asMap().remove(key, cachedToken)) {
+                changeListener.accept(key, null);
+                invalidated = true;
+            }
+        }
+
+        return invalidated;
+    }
+
+    /**
+     * Invalidates the access tokens of a client at a token endpoint, whatever their
+     * client_id, scope and extensions; e.g., once the client registered again
+     * @param fhirClient
+     * @param tokenEndpoint
+     * @return true when an entry was invalidated
+     */
+    public boolean invalidateClient(final UdapFhirClient fhirClient, final String tokenEndpoint) {
+        final String clientNickname = AccessTokenKey.clientNickname(fhirClient);
+
+        boolean invalidated = false;
+        for (Map.Entry<AccessTokenKey, CachedAccessToken> entry : cache.asMap().entrySet()) {
+            final AccessTokenKey key = entry.getKey();
+            if (Objects.equals(clientNickname, key.clientNickname())
+                    && Objects.equals(tokenEndpoint, key.tokenEndpoint())
+                    && cache.asMap().remove(key, entry.getValue())) {
+                changeListener.accept(key, null);
+                invalidated = true;
+            }
+        }
+
+        return invalidated;
+    }
+
+    public void invalidateAll() {
+        cache.asMap().keySet().forEach(key -> changeListener.accept(key, null));
+        cache.invalidateAll();
+    }
+
+    /**
+     * Adds a token cached earlier, e.g., by a warm-start snapshot. The token keeps its
+     * recorded instants, so it is only served until its recorded stale instant
+     * @param key
+     * @param cachedToken
+     * @return true when the token was added; false when it is stale or a newer token is
+     * cached
+     */
+    public boolean restore(final AccessTokenKey key, final CachedAccessToken cachedToken) {
+        if (!properties.isEnabled() || cachedToken.isStale(Instant.now())) {
+            return false;
+        }
+
+        index(key, cachedToken);
+        if (cache.asMap().putIfAbsent(key, cachedToken) != null) {
+            unindex(key, cachedToken);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param changeListener - told of every cached token and, with a null token, of every
+     * invalidated one; not of restored tokens nor of tokens that expire
+     */
+    public void setChangeListener(final BiConsumer<AccessTokenKey, CachedAccessToken> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    private void index(final AccessTokenKey key, final CachedAccessToken cachedToken) {
+        keysByAccessToken.compute(accessToken(cachedToken), (accessToken, keys) -> {
+            final Set<AccessTokenKey> indexed = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            indexed.add(key);
+            return indexed;
+        });
+    }
+
+    /**
+     * Drops the key from the index of the removed entry's token, unless the entry that
+     * replaced it holds the same token
+     */
+    private void unindex(final AccessTokenKey key, final CachedAccessToken removed) {
+        keysByAccessToken.computeIfPresent(accessToken(removed), (accessToken, keys) -> {
+            final CachedAccessToken current = cache.asMap().get(key);
+            if (current == null || !accessToken.equals(accessToken(current))) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private static String accessToken(final CachedAccessToken cachedToken) {
+        return cachedToken.getAccessTokenResponse().getAccessToken();
+    }
+
+    private void refreshInBackground(final AccessTokenKey key,
+            final Supplier<? extends CompletionStage<AccessTokenResponse>> refresher) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        final CompletionStage<AccessTokenResponse> refresh;
+        try {
+            refresh = refresher.get();
+        } catch (RuntimeException e) {
+            // e.g., the refresh pool is saturated; the token is requested once it goes stale
+            refreshing.remove(key);
+            log.warn("Background access token refresh for {} not started: {}", key.clientNickname(),
+                    e.getMessage());
+            return;
+        }
+
+        refresh.whenComplete((accessTokenResponse, t) -> {
+            try {
+                if (t != null) {
+                    // Keep serving the current token until it goes stale
+                    log.warn("Background access token refresh for {} failed: {}", key.clientNickname(),
+                            (t instanceof CompletionException ? t.getCause() : t).getMessage());
+                } else if (accessTokenResponse != null) {
+                    put(key, accessTokenResponse);
+                }
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private CompletableFuture<AccessTokenResponse> callInBackground(final Callable<AccessTokenResponse> refresher) {
+        final CompletableFuture<AccessTokenResponse> refresh = new CompletableFuture<>();
+        refreshExecutor.execute(() -> {
+            try {
+                refresh.complete(refresher.call());
+            } catch (Exception e) {
+                refresh.completeExceptionally(e);
+            }
+        });
+
+        return refresh;
+    }
+
+    /**
+     * @return a bounded pool of daemon threads for blocking refreshers; at most one refresh
+     * per cached key is queued, so the queue never outgrows the cache
+     */
+    private static Executor refreshExecutor(final AccessTokenCacheProperties properties) {
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(properties.getRefreshThreads(),
+                properties.getRefreshThreads(), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>((int) Math.min(properties.getMaximumSize(), Integer.MAX_VALUE)),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "udap-token-refresh-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * Per-entry time to live bounded by the token's stale instant
+     */
+    private static final class CachedAccessTokenExpiry implements Expiry<AccessTokenKey, CachedAccessToken> {
+
+        @Override
+        public long expireAfterCreate(final AccessTokenKey key, final CachedAccessToken value,
+                final long currentTime) {
+            return remainingNanos(value.getStaleAt());
+        }
+
+        @Override
+        public long expireAfterUpdate(final AccessTokenKey key, final CachedAccessToken value,
+                final long currentTime, final long currentDuration) {
+            return remainingNanos(value.getStaleAt());
+        }
+
+        @Override
+        public long expireAfterRead(final AccessTokenKey key, final CachedAccessToken value, final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+
+        private static long remainingNanos(final Instant staleAt) {
+            final Duration remaining = Duration.between(Instant.now(), staleAt);
+            return remaining.isNegative() ? 0 : remaining.toNanos();
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.udap.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AuthZExtension;
+import org.udap.util.CommonUtil;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Identifies an access token that may be reused: the same client, under the same
+ * client_id, asking the same token endpoint, for the same scope, with the same
+ * authorization extensions.
+ *
+ * @param clientNickname - nickname of the FHIR client (client_id when no nickname is set)
+ * @param clientId - client_id the client authenticates with
+ * @param tokenEndpoint - authorization server's token endpoint
+ * @param scope - requested scope
+ * @param extensionsHash - canonical hash of the authorization extension list: the hash of
+ * its only extension, or the hash of its extensions' hashes
+ */
+public record AccessTokenKey(String clientNickname, String clientId, String tokenEndpoint, String scope,
+        String extensionsHash) {
+
+    public static AccessTokenKey of(final UdapFhirClient fhirClient, final String tokenEndpoint, final String scope,
+            final List<AuthZExtension> authNExtensionList) throws JsonProcessingException {
+        return new AccessTokenKey(clientNickname(fhirClient), fhirClient.getClientId(), tokenEndpoint, scope,
+                extensionsHash(authNExtensionList));
+    }
+
+    /**
+     * @param fhirClient
+     * @return nickname of the client as keyed, its client_id when no nickname is set
+     */
+    static String clientNickname(final UdapFhirClient fhirClient) {
+        return fhirClient.getClientNickname() != null ? fhirClient.getClientNickname() : fhirClient.getClientId();
+    }
+
+    /**
+     * No JSON on the way: immutable extensions hash themselves once
+     */
+    private static String extensionsHash(final List<AuthZExtension> authNExtensionList)
+            throws JsonProcessingException {
+        if (authNExtensionList == null || authNExtensionList.isEmpty()) {
+            return "";
+        }
+        if (authNExtensionList.size() == 1) {
+            return authNExtensionList.get(0).canonicalHash();
+        }
+
+        final StringBuilder hashes = new StringBuilder();
+        for (AuthZExtension extension : authNExtensionList) {
+            hashes.append(extension.canonicalHash()).append('.');
+        }
+        return CommonUtil.getSha256(hashes.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
@@ -0,0 +1,206 @@
+package org.udap.service;
+
+import java.time.Clock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.udap.config.UdapResilienceProperties;
+import org.udap.config.UdapResilienceProperties.CircuitBreakerProperties;
+import org.udap.config.UdapResilienceProperties.RetryProperties;
+import org.udap.config.UdapResilienceProperties.Timeouts;
+import org.udap.exception.UdapCircuitOpenException;
+import org.udap.exception.UdapException;
+import org.udap.exception.UdapServerException;
+import org.udap.exception.UdapTimeoutException;
+import org.udap.util.CircuitBreaker;
+
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.timeout.ReadTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Guards the calls to authorization servers: every attempt is bounded by the server's
+ * connect and response timeouts and passes its circuit breaker, idempotent calls are
+ * retried with jittered exponential backoff, and the call as a whole is bounded by the
+ * server's deadline.
+ *
+ * Failures surface as {@link UdapException}s: {@link UdapTimeoutException},
+ * {@link UdapCircuitOpenException}, {@link UdapServerException} for error statuses, or
+ * a plain UdapException for connection errors and missing response bodies.
+ */
+@Slf4j
+@Service
+public class AuthorizationServerResilience {
+
+    private final UdapResilienceProperties properties;
+
+    private final Clock clock;
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AuthorizationServerResilience(final UdapResilienceProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    public AuthorizationServerResilience(final UdapResilienceProperties properties, final Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * Guards an idempotent call, e.g., discovery; retried on connection errors, timeouts,
+     * 429 and 5xx responses
+     * @param authorizationServer
+     * @return operator for {@link Mono#transform(Function)}
+     */
+    public <T> Function<Mono<T>, Mono<T>> idempotent(final String authorizationServer) {
+        return guard(authorizationServer, true);
+    }
+
+    /**
+     * Guards a call that is not retried, e.g., registration and token requests
+     * @param authorizationServer
+     * @return operator for {@link Mono#transform(Function)}
+     */
+    public <T> Function<Mono<T>, Mono<T>> once(final String authorizationServer) {
+        return guard(authorizationServer, false);
+    }
+
+    /**
+     * @param authorizationServer
+     * @return state of the server's circuit breaker
+     */
+    public CircuitBreaker.State getState(final String authorizationServer) {
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(authorizationServer);
+        return circuitBreaker != null ? circuitBreaker.getState() : CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Blocks for a guarded call; its deadline bounds the wait
+     * @param mono
+     * @return value of the call
+     * @throws UdapException
+     */
+    public static <T> T block(final Mono<T> mono) throws UdapException {
+        try {
+            return mono.block();
+        } catch (RuntimeException e) {
+            // Checked exceptions are wrapped by block()
+            if (Exceptions.unwrap(e) instanceof UdapException udapException) {
+                throw udapException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param e
+     * @return true when the call failed because the server could not be reached or did
+     * not answer properly (connection error, timeout, 5xx, open circuit)
+     */
+    public static boolean isUnreachable(final UdapException e) {
+        return e instanceof UdapTimeoutException || e instanceof UdapCircuitOpenException
+                || UdapException.CONNECTION_ERROR.equals(e.getError())
+                || e instanceof UdapServerException serverException && serverException.isServerError();
+    }
+
+    private <T> Function<Mono<T>, Mono<T>> guard(final String authorizationServer, final boolean idempotent) {
+        final Timeouts timeouts = properties.timeoutsFor(authorizationServer);
+        final RetryProperties retry = properties.getRetry();
+
+        return mono -> {
+            // Bounds each attempt even when the HTTP client sets no timeouts of its own
+            Mono<T> call = withCircuitBreaker(authorizationServer,
+                    mono.timeout(timeouts.getConnectTimeout().plus(timeouts.getResponseTimeout())));
+
+            if (idempotent && retry.getMaxAttempts() > 1) {
+                call = call.retryWhen(Retry.backoff(retry.getMaxAttempts() - 1, retry.getMinBackoff())
+                    .maxBackoff(retry.getMaxBackoff())
+                    .jitter(retry.getJitter())
+                    .filter(AuthorizationServerResilience::isRetryable)
+                    .doBeforeRetry(signal -> log.warn("Retrying {} after: {}", authorizationServer,
+                            signal.failure().toString()))
+                    .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+            }
+
+            return call.timeout(timeouts.getDeadline())
+                .switchIfEmpty(Mono.error(() -> new UdapException(UdapException.INVALID_RESPONSE,
+                        "No response body from " + authorizationServer)))
+                .onErrorMap(e -> toUdapException(authorizationServer, e));
+        };
+    }
+
+    private <T> Mono<T> withCircuitBreaker(final String authorizationServer, final Mono<T> mono) {
+        final CircuitBreakerProperties settings = properties.getCircuitBreaker();
+        if (!settings.isEnabled()) {
+            return mono;
+        }
+
+        return Mono.defer(() -> {
+            final CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(authorizationServer,
+                    key -> new CircuitBreaker(settings.getFailureThreshold(), settings.getOpenDuration(), clock));
+            if (!circuitBreaker.tryAcquire()) {
+                return Mono.error(new UdapCircuitOpenException(authorizationServer));
+            }
+
+            return mono.doOnSuccess(value -> circuitBreaker.onSuccess()).doOnError(e -> {
+                if (isFailure(e)) {
+                    if (circuitBreaker.onFailure()) {
+                        log.warn("Circuit breaker of {} opened after: {}", authorizationServer, e.toString());
+                    }
+                } else {
+                    // The server answered, if only with an error
+                    circuitBreaker.onSuccess();
+                }
+            }).doOnCancel(circuitBreaker::onRelease);
+        });
+    }
+
+    /**
+     * @param e
+     * @return true when the server could not be reached or failed to answer in time
+     */
+    private static boolean isFailure(final Throwable e) {
+        return e instanceof WebClientRequestException || e instanceof TimeoutException
+                || e instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError();
+    }
+
+    private static boolean isRetryable(final Throwable e) {
+        return isFailure(e) || e instanceof WebClientResponseException response
+                && response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private static Throwable toUdapException(final String authorizationServer, final Throwable e) {
+        if (e instanceof UdapException) {
+            return e;
+        }
+        if (e instanceof WebClientResponseException response) {
+            return UdapServerException.of(response);
+        }
+        if (e instanceof TimeoutException) {
+            return new UdapTimeoutException("Timed out calling " + authorizationServer, e);
+        }
+        if (e instanceof WebClientRequestException) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ReadTimeoutException || cause instanceof ConnectTimeoutException) {
+                return new UdapTimeoutException("Timed out calling " + authorizationServer, e);
+            }
+            return new UdapException(UdapException.CONNECTION_ERROR,
+                    "Could not reach " + authorizationServer + ": " + e.getMessage(), e);
+        }
+
+        return e;
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.udap.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.udap.config.UdapBulkRegistrationProperties;
+import org.udap.config.UdapFhirClient;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Registers FHIR clients with many authorization servers at once, e.g., when onboarding a
+ * trust community: every target is discovered, its metadata verified and the client
+ * registered, at most {@link UdapBulkRegistrationProperties#getConcurrency()} at a time.
+ *
+ * Runs are idempotent: a target whose client already has a client ID at the authorization
+ * server (recorded, restored from a snapshot or configured, see
+ * {@link ClientRegistrations#getClientId}) is skipped, so an interrupted or partly failed
+ * run is completed by running it again.
+ */
+@Slf4j
+@Service
+public class BulkRegistration {
+
+    public enum Status {
+        REGISTERED, SKIPPED, FAILED
+    }
+
+    /**
+     * A client to register with an authorization server
+     *
+     * @param fhirClient
+     * @param authorizationServer - base URL of the authorization server
+     * @param expectedMetadataIssuer - required issuer of the signed metadata
+     * @param mustBeTrusted
+     */
+    public record Target(UdapFhirClient fhirClient, String authorizationServer, String expectedMetadataIssuer,
+            boolean mustBeTrusted) {
+
+        public Target(final UdapFhirClient fhirClient, final String authorizationServer,
+                final String expectedMetadataIssuer) {
+            this(fhirClient, authorizationServer, expectedMetadataIssuer, true);
+        }
+
+        RegistrationKey key() {
+            return RegistrationKey.of(fhirClient, authorizationServer);
+        }
+
+    }
+
+    /**
+     * @param target
+     * @param status
+     * @param clientId - issued or already recorded; null when the registration failed
+     * @param error - why the registration failed; null otherwise
+     * @param elapsed - spent on the target
+     */
+    public record Result(Target target, Status status, String clientId, String error, Duration elapsed) {
+    }
+
+    private final UdapBulkRegistrationProperties properties;
+
+    private final ReactiveUdapClientService udapClientService;
+
+    private final ClientRegistrations clientRegistrations;
+
+    /**
+     * @param properties
+     * @param udapClientService - registers the clients
+     * @param clientRegistrations - the client IDs recorded by the client service
+     */
+    @Autowired
+    public BulkRegistration(final UdapBulkRegistrationProperties properties,
+            final ReactiveUdapClientService udapClientService, final ClientRegistrations clientRegistrations) {
+        this.properties = properties;
+        this.udapClientService = udapClientService;
+        this.clientRegistrations = clientRegistrations;
+    }
+
+    /**
+     * @param targets - a client is registered with an authorization server once, however
+     * often it is listed
+     * @return one result per client / authorization server pair, as the targets complete;
+     * never errors
+     */
+    public Flux<Result> register(final Collection<Target> targets) {
+        return Flux.defer(() -> {
+            final Instant startedAt = Instant.now();
+            final Map<Status, Integer> counts = new EnumMap<>(Status.class);
+            log.info("Registering {} targets, {} at a time", targets.size(), properties.getConcurrency());
+
+            return Flux.fromIterable(targets)
+                .distinct(Target::key)
+                .flatMap(this::register, properties.getConcurrency())
+                .doOnNext(result -> counts.merge(result.status(), 1, Integer::sum))
+                .doOnComplete(() -> log.info("Registered targets in {} ms: {}",
+                        Duration.between(startedAt, Instant.now()).toMillis(), counts));
+        });
+    }
+
+    /**
+     * @return the target's result; never errors
+     */
+    private Mono<Result> register(final Target target) {
+        return Mono.defer(() -> {
+            final Instant startedAt = Instant.now();
+            final String clientId = clientRegistrations.getClientId(target.fhirClient(),
+                    target.authorizationServer());
+            if (clientId != null) {
+                return Mono.just(new Result(target, Status.SKIPPED, clientId, null, Duration.ZERO));
+            }
+
+            return udapClientService
+                .register(target.fhirClient(), target.authorizationServer(), target.expectedMetadataIssuer(),
+                        properties.getUdapVersion(), target.mustBeTrusted())
+                .map(registrationResponse -> new Result(target, Status.REGISTERED,
+                        registrationResponse.getClientId(), null, Duration.between(startedAt, Instant.now())))
+                .switchIfEmpty(Mono.fromSupplier(() -> new Result(target, Status.FAILED, null,
+                        "No registration response", Duration.between(startedAt, Instant.now()))))
+                .onErrorResume(e -> Mono.just(new Result(target, Status.FAILED, null, e.getMessage(),
+                        Duration.between(startedAt, Instant.now()))));
+        });
+    }
+
+}
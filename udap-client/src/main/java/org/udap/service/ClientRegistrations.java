@@ -0,0 +1,119 @@
+package org.udap.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.udap.config.UdapFhirClient;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.model.RegistrationResponse;
+
+/**
+ * Client IDs issued to the FHIR clients by the authorization servers they registered
+ * with. Recorded client IDs are indexed by the client pool, see
+ * {@link UdapFhirClientPool#getByClientId(String, String)}.
+ */
+@Service
+public class ClientRegistrations {
+
+    private final ConcurrentMap<RegistrationKey, String> clientIds = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes the recorded client IDs; null outside of a Spring context
+     */
+    private final UdapFhirClientPool fhirClientPool;
+
+    /**
+     * Told of every recorded client ID and, with a null client ID, of every removed one
+     */
+    private volatile BiConsumer<RegistrationKey, String> changeListener = (key, clientId) -> {
+    };
+
+    public ClientRegistrations() {
+        this(null);
+    }
+
+    @Autowired
+    public ClientRegistrations(final UdapFhirClientPool fhirClientPool) {
+        this.fhirClientPool = fhirClientPool;
+    }
+
+    /**
+     * @param fhirClient
+     * @param authorizationServer
+     * @return client ID issued by the authorization server, recorded or configured; null
+     * when the client has not registered with it
+     */
+    public String getClientId(final UdapFhirClient fhirClient, final String authorizationServer) {
+        final String clientId = clientIds.get(RegistrationKey.of(fhirClient, authorizationServer));
+        return clientId != null ? clientId : fhirClient.getClientIds().get(authorizationServer);
+    }
+
+    /**
+     * Records the client ID of a successful registration
+     * @param fhirClient
+     * @param authorizationServer
+     * @param registrationResponse
+     */
+    public void put(final UdapFhirClient fhirClient, final String authorizationServer,
+            final RegistrationResponse registrationResponse) {
+        if (registrationResponse == null || registrationResponse.getClientId() == null) {
+            return;
+        }
+
+        final RegistrationKey key = RegistrationKey.of(fhirClient, authorizationServer);
+        clientIds.put(key, registrationResponse.getClientId());
+        if (fhirClientPool != null) {
+            fhirClientPool.putClientId(fhirClient, authorizationServer, registrationResponse.getClientId());
+        }
+        changeListener.accept(key, registrationResponse.getClientId());
+    }
+
+    /**
+     * Forgets a registration, e.g., after the authorization server revoked the client
+     * @param fhirClient
+     * @param authorizationServer
+     */
+    public void remove(final UdapFhirClient fhirClient, final String authorizationServer) {
+        final RegistrationKey key = RegistrationKey.of(fhirClient, authorizationServer);
+        if (clientIds.remove(key) != null) {
+            if (fhirClientPool != null) {
+                fhirClientPool.removeClientId(fhirClient, authorizationServer);
+            }
+            changeListener.accept(key, null);
+        }
+    }
+
+    /**
+     * Adds a client ID recorded earlier, e.g., by a warm-start snapshot
+     * @param key
+     * @param clientId
+     * @return true when added; false when a client ID is already recorded
+     */
+    public boolean restore(final RegistrationKey key, final String clientId) {
+        if (clientIds.putIfAbsent(key, clientId) != null) {
+            return false;
+        }
+
+        final UdapFhirClient fhirClient = fhirClientPool != null ? fhirClientPool.get(key.clientNickname()) : null;
+        if (fhirClient != null) {
+            fhirClientPool.putClientId(fhirClient, key.authorizationServer(), clientId);
+        }
+        return true;
+    }
+
+    public int size() {
+        return clientIds.size();
+    }
+
+    /**
+     * @param changeListener - told of every recorded client ID and, with a null client ID,
+     * of every removed one; not of restored client IDs
+     */
+    public void setChangeListener(final BiConsumer<RegistrationKey, String> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+}
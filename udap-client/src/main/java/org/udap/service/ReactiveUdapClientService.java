@@ -0,0 +1,303 @@
+package org.udap.service;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.text.ParseException;
+import java.time.Clock;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.ClientKeyMaterial;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.exception.UdapException;
+import org.udap.exception.UntrustedServerException;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.AuthZExtension;
+import org.udap.model.RegistrationRequest;
+import org.udap.model.RegistrationResponse;
+import org.udap.model.ServerMetadata;
+import org.udap.model.TrustedServer;
+import org.udap.util.JtiGenerator;
+import org.udap.util.JwsSignerRegistry;
+import org.udap.util.UdapMetrics;
+import org.udap.util.UdapUtil;
+import org.udap.util.UdapWebClientFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.proc.BadJOSEException;
+
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking UDAP client service for WebFlux callers, also behind the blocking
+ * {@link UdapClientService}. No step blocks the calling thread: HTTP calls run on the
+ * shared Reactor Netty event loops, keystore decryption on the bounded elastic scheduler
+ * and JWS signing/verification on the parallel scheduler.
+ *
+ * Errors are {@link UdapException}s, as thrown by the blocking service.
+ */
+@Slf4j
+@Service
+public class ReactiveUdapClientService {
+
+    private final TrustedServerCache trustedServerCache;
+
+    private final AccessTokenCache accessTokenCache;
+
+    private final ClientRegistrations clientRegistrations;
+
+    private final WebClient webClient;
+
+    private final Clock clock;
+
+    private final JtiGenerator jtiGenerator;
+
+    private final AuthorizationServerResilience resilience;
+
+    /**
+     * Standalone use (outside of a Spring context) with default cache and HTTP client
+     * settings
+     */
+    public ReactiveUdapClientService() {
+        this(new TrustedServerCache(new TrustedServerCacheProperties(), UdapWebClientFactory.getShared()),
+                new AccessTokenCache(new AccessTokenCacheProperties()), new ClientRegistrations(),
+                UdapWebClientFactory.getShared());
+    }
+
+    public ReactiveUdapClientService(final TrustedServerCache trustedServerCache,
+            final AccessTokenCache accessTokenCache, final WebClient webClient) {
+        this(trustedServerCache, accessTokenCache, new ClientRegistrations(), webClient);
+    }
+
+    @Autowired
+    public ReactiveUdapClientService(final TrustedServerCache trustedServerCache,
+            final AccessTokenCache accessTokenCache, final ClientRegistrations clientRegistrations,
+            @Qualifier("udapWebClient") final WebClient webClient) {
+        this(trustedServerCache, accessTokenCache, clientRegistrations, webClient, Clock.systemUTC(),
+                JtiGenerator.getDefault());
+    }
+
+    /**
+     * @param trustedServerCache
+     * @param accessTokenCache
+     * @param clientRegistrations - records the client IDs of successful registrations
+     * @param webClient
+     * @param clock - source of the authentication tokens' "iat"
+     * @param jtiGenerator - source of the software statements' and authentication tokens'
+     * "jti"
+     */
+    public ReactiveUdapClientService(final TrustedServerCache trustedServerCache,
+            final AccessTokenCache accessTokenCache, final ClientRegistrations clientRegistrations,
+            final WebClient webClient, final Clock clock, final JtiGenerator jtiGenerator) {
+        this.trustedServerCache = trustedServerCache;
+        this.accessTokenCache = accessTokenCache;
+        this.clientRegistrations = clientRegistrations;
+        this.webClient = webClient;
+        this.clock = clock;
+        this.jtiGenerator = jtiGenerator;
+        this.resilience = trustedServerCache.getResilience();
+    }
+
+    /**
+     * Registers the UDAP client at the given authorization server. Also performs
+     * necessary checks on server metadata to ensure server is trusted
+     * @param fhirClient
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param udapVersion
+     * @param mustBeTrusted
+     * @return RegistrationResponse; a {@link UdapException} error when the server is not
+     * trusted, the client cannot sign its request or the registration fails
+     */
+    public Mono<RegistrationResponse> register(final UdapFhirClient fhirClient, final String authorizationServer,
+            final String expectedMetadataIssuer, final String udapVersion, final boolean mustBeTrusted) {
+        return getTrustedServer(authorizationServer, expectedMetadataIssuer, mustBeTrusted)
+            .flatMap(trustedServer -> getKeyMaterial(fhirClient)
+                .publishOn(Schedulers.parallel())
+                .<RegistrationRequest>handle((keyMaterial, sink) -> {
+                    try {
+                        sink.next(UdapUtil.createRegistrationRequest(fhirClient, trustedServer.getServerMetadata(),
+                                udapVersion, keyMaterial.getSigners(), jtiGenerator));
+                    } catch (CertificateException | IOException | JOSEException e) {
+                        sink.error(clientError(e));
+                    }
+                })
+                .flatMap(registrationRequest -> UdapUtil
+                    .postRegistrationRequest(webClient, trustedServer.getServerMetadata().getRegistrationEndpoint(),
+                            registrationRequest)
+                    .transform(UdapMetrics.timed(UdapMetrics.REGISTRATION_REQUEST,
+                            metricTags(fhirClient, authorizationServer)))
+                    .transform(resilience.once(authorizationServer)))
+                .doOnNext(registrationResponse -> {
+                    clientRegistrations.put(fhirClient, authorizationServer, registrationResponse);
+                    // Tokens issued before the registration are not served any longer
+                    accessTokenCache.invalidateClient(fhirClient, trustedServer.getServerMetadata().getTokenEndpoint());
+                }))
+            .doOnError(e -> log.error("UDAP Registration Error: {}", e.getMessage()));
+    }
+
+    /**
+     * UDAP JWT Based Authentication with support for Authorization Extensions
+     * @param fhirClient
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param scope
+     * @param authNExtensionList
+     * @param mustBeTrusted
+     * @return AccessTokenResponse; a {@link UdapException} error when the server is not
+     * trusted, the client cannot sign its request or the token request fails
+     */
+    public Mono<AccessTokenResponse> getAccessToken(final UdapFhirClient fhirClient,
+            final String authorizationServer, final String expectedMetadataIssuer, final String scope,
+            final List<AuthZExtension> authNExtensionList, final boolean mustBeTrusted) {
+        return getTrustedServer(authorizationServer, expectedMetadataIssuer, mustBeTrusted)
+            .flatMap(trustedServer -> {
+                final ServerMetadata serverMetadata = trustedServer.getServerMetadata();
+                final AccessTokenKey tokenKey;
+                try {
+                    tokenKey = AccessTokenKey.of(fhirClient, serverMetadata.getTokenEndpoint(), scope,
+                            authNExtensionList);
+                } catch (JsonProcessingException e) {
+                    return Mono.error(clientError(e));
+                }
+
+                // Background refreshes hold no thread while the token request is in flight
+                final AccessTokenResponse cachedToken = accessTokenCache.getWithAsyncRefresh(tokenKey,
+                        () -> fetchAccessToken(tokenKey, fhirClient, authorizationServer, serverMetadata, scope,
+                                authNExtensionList)
+                            .toFuture());
+                if (cachedToken != null) {
+                    return Mono.just(cachedToken);
+                }
+
+                return fetchAccessToken(tokenKey, fhirClient, authorizationServer, serverMetadata, scope,
+                        authNExtensionList);
+            })
+            .doOnError(e -> log.error("UDAP error getting access token: {}", e.getMessage()));
+    }
+
+    /**
+     * Stops serving an access token from cache, e.g., once a resource server rejected it;
+     * the next {@link #getAccessToken} requests a new one
+     * @param accessToken - "access_token" value
+     * @return true when the token was cached
+     */
+    public boolean invalidateAccessToken(final String accessToken) {
+        return accessTokenCache.invalidateAccessToken(accessToken);
+    }
+
+    /**
+     * Requests and caches a new access token. Concurrent requests for the same key, from
+     * callers and background refreshes, share a single token request and its outcome.
+     * @param tokenKey
+     * @param fhirClient
+     * @param authorizationServer
+     * @param serverMetadata
+     * @param scope
+     * @param authNExtensionList
+     * @return AccessTokenResponse
+     */
+    private Mono<AccessTokenResponse> fetchAccessToken(final AccessTokenKey tokenKey, final UdapFhirClient fhirClient,
+            final String authorizationServer, final ServerMetadata serverMetadata, final String scope,
+            final List<AuthZExtension> authNExtensionList) {
+        return Mono.fromFuture(() -> accessTokenCache.getTokenRequests().executeAsync(tokenKey,
+                () -> requestAccessToken(fhirClient, authorizationServer, serverMetadata, scope, authNExtensionList)
+                    .doOnNext(accessToken -> accessTokenCache.put(tokenKey, accessToken))
+                    .toFuture()));
+    }
+
+    /**
+     * Signs a new authentication token and posts it to the token endpoint
+     * @param fhirClient
+     * @param authorizationServer
+     * @param serverMetadata
+     * @param scope
+     * @param authNExtensionList
+     * @return AccessTokenResponse
+     */
+    private Mono<AccessTokenResponse> requestAccessToken(final UdapFhirClient fhirClient,
+            final String authorizationServer, final ServerMetadata serverMetadata, final String scope,
+            final List<AuthZExtension> authNExtensionList) {
+        final String tokenEndPoint = serverMetadata.getTokenEndpoint();
+
+        return getKeyMaterial(fhirClient)
+            .publishOn(Schedulers.parallel())
+            .<JWSObject>handle((keyMaterial, sink) -> {
+                try {
+                    final JwsSignerRegistry signers = keyMaterial.getSigners();
+                    final JWSAlgorithm jwsAlg = signers
+                        .negotiate(serverMetadata.getTokenEndpointAuthSigningAlgValuesSupported());
+
+                    sink.next(UdapUtil.createSignedAuthNToken(fhirClient, tokenEndPoint, authNExtensionList,
+                            signers, jwsAlg, clock, jtiGenerator));
+                } catch (JsonProcessingException | ParseException | JOSEException e) {
+                    sink.error(clientError(e));
+                }
+            })
+            .flatMap(authNToken -> UdapUtil.postAccessTokenRequest(webClient, authNToken, tokenEndPoint, scope)
+                .transform(UdapMetrics.timed(UdapMetrics.TOKEN_REQUEST, metricTags(fhirClient, authorizationServer)))
+                .transform(resilience.once(authorizationServer)));
+    }
+
+    private static Tags metricTags(final UdapFhirClient fhirClient, final String authorizationServer) {
+        return UdapMetrics.tags(UdapMetrics.AUTHORIZATION_SERVER, authorizationServer, UdapMetrics.CLIENT,
+                fhirClient.getClientNickname());
+    }
+
+    private static UdapException clientError(final Throwable e) {
+        return new UdapException(UdapException.CLIENT_ERROR, e.getMessage(), e);
+    }
+
+    /**
+     * @param fhirClient
+     * @return the client's key material; decrypted off the event loop when not yet loaded
+     */
+    private static Mono<ClientKeyMaterial> getKeyMaterial(final UdapFhirClient fhirClient) {
+        final ClientKeyMaterial keyMaterial = fhirClient.getKeyMaterial();
+        if (keyMaterial != null) {
+            return Mono.just(keyMaterial);
+        }
+
+        return Mono.fromCallable(() -> ClientKeyMaterial.of(fhirClient))
+            .subscribeOn(Schedulers.boundedElastic())
+            // Keystore and certificate errors
+            .onErrorMap(e -> e instanceof Exception && !(e instanceof RuntimeException), e -> clientError(e));
+    }
+
+    /**
+     * Discovers (or serves from cache) the authorization server's metadata and, when the
+     * server must be trusted, the verified signed metadata claims
+     * @param authorizationServer
+     * @param expectedMetadataIssuer
+     * @param mustBeTrusted
+     * @return TrustedServer; a {@link UdapException} error when no metadata was returned
+     * or it is not trusted
+     */
+    private Mono<TrustedServer> getTrustedServer(final String authorizationServer,
+            final String expectedMetadataIssuer, final boolean mustBeTrusted) {
+        if (!mustBeTrusted) {
+            log.warn("Authorization server - trust assumed! mustBeTrusted set to {}", mustBeTrusted);
+        }
+
+        return trustedServerCache
+            .retrieve(authorizationServer, mustBeTrusted ? expectedMetadataIssuer : null,
+                    UdapUtil.SIGNED_METADATA_ALGORITHMS)
+            .onErrorMap(e -> e instanceof ParseException || e instanceof JOSEException || e instanceof BadJOSEException,
+                    e -> new UntrustedServerException(authorizationServer, e))
+            .flatMap(trustedServer -> trustedServer.isTrusted() ? Mono.just(trustedServer)
+                    : Mono.error(new UntrustedServerException(authorizationServer)))
+            .doOnError(UntrustedServerException.class, e -> log.error(authorizationServer + " is not trusted"));
+    }
+
+}
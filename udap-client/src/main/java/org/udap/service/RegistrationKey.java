@@ -0,0 +1,20 @@
+package org.udap.service;
+
+import org.udap.config.UdapFhirClient;
+
+/**
+ * Identifies a client's registration at an authorization server.
+ *
+ * @param clientNickname - nickname of the FHIR client (client_id when no nickname is set)
+ * @param authorizationServer - base URL of the authorization server
+ */
+public record RegistrationKey(String clientNickname, String authorizationServer) {
+
+    public static RegistrationKey of(final UdapFhirClient fhirClient, final String authorizationServer) {
+        final String clientNickname = fhirClient.getClientNickname() != null ? fhirClient.getClientNickname()
+                : fhirClient.getClientId();
+
+        return new RegistrationKey(clientNickname, authorizationServer);
+    }
+
+}
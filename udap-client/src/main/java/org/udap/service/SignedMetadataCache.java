@@ -0,0 +1,241 @@
+package org.udap.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.udap.config.SignedMetadataCacheProperties;
+import org.udap.util.CommonUtil;
+import org.udap.util.UdapMetrics;
+import org.udap.util.UdapUtil;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.KeyConverter;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.Base64;
+import com.nimbusds.jose.util.X509CertUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+/**
+ * Caches the claims of verified signed server metadata, keyed by a digest of the signed
+ * metadata together with the required issuer and accepted algorithms. Authorization
+ * servers republish the same signed metadata for hours; an identical signed metadata is
+ * verified once and its claims served until the metadata "exp".
+ *
+ * Signature verifiers are kept per server certificate (x5c), so a new signed metadata of
+ * a known server does not parse its certificate or build a verifier again. Failed
+ * verifications are never cached.
+ *
+ * Verifies like {@link UdapUtil#getClaimsFromSignedServerMetadata(String, String, Set)},
+ * except that the verification key is always the x5c certificate's, whatever the "kid".
+ */
+@Service
+public class SignedMetadataCache {
+
+    private static final DefaultJWSVerifierFactory VERIFIER_FACTORY = new DefaultJWSVerifierFactory();
+
+    /**
+     * "typ" JWT or none, as accepted by the default JWT processor
+     */
+    private static final DefaultJOSEObjectTypeVerifier<SecurityContext> TYPE_VERIFIER =
+            new DefaultJOSEObjectTypeVerifier<>(JOSEObjectType.JWT, null);
+
+    private final SignedMetadataCacheProperties properties;
+
+    private final Cache<VerifiedMetadataKey, JWTClaimsSet> verified;
+
+    private final Cache<Base64, CertificateVerifiers> certificates;
+
+    @Autowired
+    public SignedMetadataCache(final SignedMetadataCacheProperties properties) {
+        this.properties = properties;
+        this.verified = UdapMetrics.monitor(Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfter(new VerifiedMetadataExpiry())
+            .recordStats()
+            .build(), "udap.signed-metadata");
+        this.certificates = Caffeine.newBuilder().maximumSize(properties.getMaximumCertificates()).build();
+    }
+
+    /**
+     * Returns the (possibly cached) claims of the verified signed metadata
+     * @param signedMetadata
+     * @param requiredIssuer
+     * @param acceptedJWSAlgs
+     * @return JWTClaimsSet
+     * @throws ParseException
+     * @throws JOSEException
+     * @throws BadJOSEException when the signed metadata carries no certificate or fails
+     * verification
+     */
+    public JWTClaimsSet getClaims(final String signedMetadata, final String requiredIssuer,
+            final Set<JWSAlgorithm> acceptedJWSAlgs) throws ParseException, JOSEException, BadJOSEException {
+        if (!properties.isEnabled()) {
+            return UdapUtil.getClaimsFromSignedServerMetadata(signedMetadata, requiredIssuer, acceptedJWSAlgs);
+        }
+
+        Assert.hasText(signedMetadata, "metadataJwt cannot be empty");
+        Assert.hasText(requiredIssuer, "requiredIssuer cannot be empty");
+        Assert.notEmpty(acceptedJWSAlgs, "acceptedJWSAlgs cannot be empty");
+
+        final VerifiedMetadataKey key = new VerifiedMetadataKey(
+                CommonUtil.getSha256(signedMetadata.getBytes(StandardCharsets.UTF_8)), requiredIssuer,
+                acceptedJWSAlgs);
+
+        final JWTClaimsSet cached = verified.getIfPresent(key);
+        if (cached != null && cached.getExpirationTime().toInstant().isAfter(Instant.now())) {
+            return cached;
+        }
+
+        // "exp" is a required claim of verified signed metadata
+        final JWTClaimsSet claims = verify(signedMetadata, requiredIssuer, acceptedJWSAlgs);
+        verified.put(key, claims);
+
+        return claims;
+    }
+
+    public void invalidateAll() {
+        verified.invalidateAll();
+        certificates.invalidateAll();
+    }
+
+    public long size() {
+        verified.cleanUp();
+        return verified.estimatedSize();
+    }
+
+    private JWTClaimsSet verify(final String signedMetadata, final String requiredIssuer,
+            final Set<JWSAlgorithm> acceptedJWSAlgs) throws ParseException, JOSEException, BadJOSEException {
+        final SignedJWT signedJwt = SignedJWT.parse(signedMetadata);
+        final JWSHeader header = signedJwt.getHeader();
+
+        final List<Base64> x5c = header.getX509CertChain();
+        if (x5c == null || x5c.isEmpty()) {
+            throw new BadJOSEException("Signed JWT rejected: missing x5c");
+        }
+
+        TYPE_VERIFIER.verify(header.getType(), null);
+
+        final Optional<JWSVerifier> verifier = acceptedJWSAlgs.contains(header.getAlgorithm())
+                ? getCertificateVerifiers(x5c.get(0)).get(header.getAlgorithm()) : Optional.empty();
+        if (verifier.isEmpty()) {
+            throw new BadJOSEException("Signed JWT rejected: Another algorithm expected, or no matching key(s) found");
+        }
+
+        if (!signedJwt.verify(verifier.get())) {
+            throw new BadJWSException("Signed JWT rejected: Invalid signature");
+        }
+
+        final JWTClaimsSet claims = signedJwt.getJWTClaimsSet();
+        UdapUtil.getServerMetadataClaimsVerifier(requiredIssuer).verify(claims, null);
+
+        return claims;
+    }
+
+    private CertificateVerifiers getCertificateVerifiers(final Base64 certificate) throws JOSEException {
+        final CertificateVerifiers cached = certificates.getIfPresent(certificate);
+        if (cached != null) {
+            return cached;
+        }
+
+        final CertificateVerifiers created = new CertificateVerifiers(
+                JWK.parse(X509CertUtils.parse(certificate.decode())));
+        final CertificateVerifiers previous = certificates.asMap().putIfAbsent(certificate, created);
+
+        return previous != null ? previous : created;
+    }
+
+    /**
+     * Public key of a server certificate and its signature verifiers, one per algorithm
+     * (empty when the key cannot verify the algorithm)
+     */
+    private static final class CertificateVerifiers {
+
+        private final JWK jwk;
+
+        private final ConcurrentMap<JWSAlgorithm, Optional<JWSVerifier>> verifiers = new ConcurrentHashMap<>();
+
+        CertificateVerifiers(final JWK jwk) {
+            this.jwk = jwk;
+        }
+
+        Optional<JWSVerifier> get(final JWSAlgorithm jwsAlg) throws JOSEException {
+            final Optional<JWSVerifier> verifier = verifiers.get(jwsAlg);
+            if (verifier != null) {
+                return verifier;
+            }
+
+            final Optional<JWSVerifier> created = create(jwsAlg);
+            verifiers.putIfAbsent(jwsAlg, created);
+
+            return created;
+        }
+
+        private Optional<JWSVerifier> create(final JWSAlgorithm jwsAlg) throws JOSEException {
+            final JWSHeader header = new JWSHeader(jwsAlg);
+            final JWKMatcher matcher = JWKMatcher.forJWSHeader(header);
+            if (matcher == null || !matcher.matches(jwk)) {
+                return Optional.empty();
+            }
+
+            final Key publicKey = KeyConverter.toJavaKeys(List.of(jwk)).get(0);
+
+            return Optional.of(VERIFIER_FACTORY.createJWSVerifier(header, publicKey));
+        }
+
+    }
+
+    private record VerifiedMetadataKey(String digest, String requiredIssuer, Set<JWSAlgorithm> acceptedJWSAlgs) {
+    }
+
+    /**
+     * Verified claims live until the signed metadata "exp"
+     */
+    private static final class VerifiedMetadataExpiry implements Expiry<VerifiedMetadataKey, JWTClaimsSet> {
+
+        @Override
+        public long expireAfterCreate(final VerifiedMetadataKey key, final JWTClaimsSet value,
+                final long currentTime) {
+            final Duration remaining = Duration.between(Instant.now(), value.getExpirationTime().toInstant());
+            return remaining.isNegative() ? 0 : remaining.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(final VerifiedMetadataKey key, final JWTClaimsSet value,
+                final long currentTime, final long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(final VerifiedMetadataKey key, final JWTClaimsSet value,
+                final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+
+    }
+
+}
@@ -0,0 +1,517 @@
+package org.udap.service;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.SignedMetadataCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapResilienceProperties;
+import org.udap.exception.UdapException;
+import org.udap.model.ServerMetadata;
+import org.udap.model.TrustedServer;
+import org.udap.util.CacheDirectives;
+import org.udap.util.SingleFlight;
+import org.udap.util.UdapMetrics;
+import org.udap.util.UdapUtil;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Caches information on trusted authorization servers (discovered metadata and the
+ * verified signed metadata claims) with configurable re-validate intervals.
+ *
+ * Entries live until the earlier of the configured re-validate interval and the signed
+ * metadata "exp" claim. Once an entry is within the refresh-ahead window it is still
+ * served while a background re-validation replaces it.
+ *
+ * Discovery follows HTTP caching: the response's Cache-Control max-age (or Expires)
+ * bounds the entry's lifetime, re-validation is a conditional request (If-None-Match,
+ * If-Modified-Since) so that unchanged metadata costs a 304 and no re-verification, and
+ * expired entries keep being served within stale-while-revalidate and, while the server
+ * cannot be reached, stale-if-error. The configured stale windows do not apply to no-cache
+ * responses, and no-store responses are not cached at all.
+ *
+ * Discovery is guarded by {@link AuthorizationServerResilience}: retried, bounded by the
+ * server's deadline and failing fast while the server's circuit breaker is open.
+ */
+@Slf4j
+@Service
+public class TrustedServerCache {
+
+    private final TrustedServerCacheProperties properties;
+
+    private final Cache<TrustedServerKey, TrustedServer> cache;
+
+    private final Set<TrustedServerKey> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * One discovery and verification in flight per key, shared by concurrent misses and
+     * background re-validations
+     */
+    private final SingleFlight<TrustedServerKey, TrustedServer> discoveries = new SingleFlight<>();
+
+    /**
+     * Told of every stored entry and, with a null entry, of every invalidated one
+     */
+    private volatile BiConsumer<TrustedServerKey, TrustedServer> changeListener = (key, trustedServer) -> {
+    };
+
+    private final SignedMetadataCache signedMetadataCache;
+
+    private final AuthorizationServerResilience resilience;
+
+    private final WebClient webClient;
+
+    public TrustedServerCache(final TrustedServerCacheProperties properties, final WebClient webClient) {
+        this(properties, new SignedMetadataCache(new SignedMetadataCacheProperties()),
+                new AuthorizationServerResilience(new UdapResilienceProperties()), webClient);
+    }
+
+    @Autowired
+    public TrustedServerCache(final TrustedServerCacheProperties properties,
+            final SignedMetadataCache signedMetadataCache, final AuthorizationServerResilience resilience,
+            @Qualifier("udapWebClient") final WebClient webClient) {
+        this.properties = properties;
+        this.signedMetadataCache = signedMetadataCache;
+        this.resilience = resilience;
+        this.webClient = webClient;
+        this.cache = UdapMetrics.monitor(Caffeine.newBuilder()
+            .maximumSize(properties.getMaximumSize())
+            .expireAfter(new TrustedServerExpiry())
+            .recordStats()
+            .build(), "udap.trusted-server");
+    }
+
+    /**
+     * Returns the (possibly cached) trusted server entry for the authorization server
+     * @param authorizationServer - base URL of the authorization server
+     * @param expectedIssuer - required issuer of the signed metadata; null when trust is
+     * assumed and the signed metadata is not verified
+     * @param jwsAlgs - accepted signature algorithms of the signed metadata
+     * @return TrustedServer
+     * @throws ParseException
+     * @throws JOSEException
+     * @throws BadJOSEException
+     * @throws UdapException when no metadata could be retrieved
+     */
+    public TrustedServer get(final String authorizationServer, final String expectedIssuer,
+            final Set<JWSAlgorithm> jwsAlgs) throws ParseException, JOSEException, BadJOSEException, UdapException {
+        final TrustedServerKey key = new TrustedServerKey(authorizationServer, expectedIssuer, jwsAlgs);
+
+        final TrustedServer cached = properties.isEnabled() ? cache.getIfPresent(key) : null;
+        if (cached != null && isServable(key, cached)) {
+            return cached;
+        }
+
+        try {
+            final TrustedServer trustedServer = load(key, cached);
+            store(key, trustedServer);
+
+            return trustedServer;
+        } catch (UdapException e) {
+            if (isServableOnError(key, cached, e)) {
+                return cached;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(String, String, Set)}; metadata is
+     * fetched without blocking and verified on the parallel scheduler
+     * @param authorizationServer - base URL of the authorization server
+     * @param expectedIssuer - required issuer of the signed metadata; null when trust is
+     * assumed and the signed metadata is not verified
+     * @param jwsAlgs - accepted signature algorithms of the signed metadata
+     * @return TrustedServer; a {@link UdapException} error when no metadata could be
+     * retrieved
+     */
+    public Mono<TrustedServer> retrieve(final String authorizationServer, final String expectedIssuer,
+            final Set<JWSAlgorithm> jwsAlgs) {
+        final TrustedServerKey key = new TrustedServerKey(authorizationServer, expectedIssuer, jwsAlgs);
+
+        final TrustedServer cached = properties.isEnabled() ? cache.getIfPresent(key) : null;
+        if (cached != null && isServable(key, cached)) {
+            return Mono.just(cached);
+        }
+
+        return Mono.fromFuture(() -> discoveries.executeAsync(key, () -> discoverAsync(key, cached).toFuture()))
+            .doOnNext(trustedServer -> store(key, trustedServer))
+            .onErrorResume(UdapException.class,
+                    e -> isServableOnError(key, cached, e) ? Mono.just(cached) : Mono.error(e));
+    }
+
+    /**
+     * @return timeouts, retries and circuit breakers of the authorization servers, shared
+     * with the registration and token requests
+     */
+    public AuthorizationServerResilience getResilience() {
+        return resilience;
+    }
+
+    /**
+     * Drops the cached entries of an authorization server, e.g., after its keys rotated
+     * @param authorizationServer
+     */
+    public void invalidate(final String authorizationServer) {
+        cache.asMap().keySet().removeIf(key -> {
+            if (!key.authorizationServer().equals(authorizationServer)) {
+                return false;
+            }
+            changeListener.accept(key, null);
+            return true;
+        });
+    }
+
+    public void invalidateAll() {
+        cache.asMap().keySet().forEach(key -> changeListener.accept(key, null));
+        cache.invalidateAll();
+    }
+
+    /**
+     * Adds an entry recorded earlier, e.g., by a warm-start snapshot. The entry keeps its
+     * recorded instants, so it is re-validated when first used after it expires; its
+     * signed metadata, when required, is verified again
+     * @param key
+     * @param trustedServer
+     * @return true when the entry was added; false when it may no longer be served, its
+     * signed metadata fails verification or a newer entry is cached
+     */
+    public boolean restore(final TrustedServerKey key, final TrustedServer trustedServer) {
+        if (!properties.isEnabled() || !trustedServer.isTrusted()
+                || !trustedServer.getRetainUntil().isAfter(Instant.now())) {
+            return false;
+        }
+        if (key.expectedIssuer() != null) {
+            try {
+                final JWTClaimsSet metadataClaims = signedMetadataCache.getClaims(
+                        trustedServer.getServerMetadata().getSignedMetadata(), key.expectedIssuer(), key.jwsAlgs());
+                if (!UdapUtil.isServerMetadataTrusted(trustedServer.getServerMetadata(), metadataClaims)) {
+                    return false;
+                }
+                trustedServer.setMetadataClaims(metadataClaims);
+            } catch (ParseException | JOSEException | BadJOSEException | RuntimeException e) {
+                log.warn("Recorded metadata of {} failed verification; not restored: {}",
+                        key.authorizationServer(), e.getMessage());
+                return false;
+            }
+        }
+
+        return cache.asMap().putIfAbsent(key, trustedServer) == null;
+    }
+
+    /**
+     * @param changeListener - told of every stored entry and, with a null entry, of every
+     * invalidated one; not of restored entries nor of entries that expire
+     */
+    public void setChangeListener(final BiConsumer<TrustedServerKey, TrustedServer> changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @param key
+     * @param cached
+     * @return true when the entry is fresh, or stale but within stale-while-revalidate;
+     * starts a background re-validation when one is due
+     */
+    private boolean isServable(final TrustedServerKey key, final TrustedServer cached) {
+        final Instant now = Instant.now();
+        if (!cached.isExpired(now)) {
+            if (cached.isRefreshDue(now)) {
+                refreshInBackground(key, cached);
+            }
+            return true;
+        }
+        if (cached.isStaleWhileRevalidate(now)) {
+            refreshInBackground(key, cached);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param key
+     * @param cached - may be null
+     * @param e - re-validation failure
+     * @return true when the server could not be reached and the last verified entry is
+     * within stale-if-error
+     */
+    private boolean isServableOnError(final TrustedServerKey key, final TrustedServer cached,
+            final UdapException e) {
+        if (cached == null || !cached.isStaleIfError(Instant.now())
+                || !AuthorizationServerResilience.isUnreachable(e)) {
+            return false;
+        }
+
+        log.warn("Serving stale metadata of {}: {}", key.authorizationServer(), e.getMessage());
+        return true;
+    }
+
+    private void refreshInBackground(final TrustedServerKey key, final TrustedServer cached) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        // Asynchronous, so no thread waits on the authorization server
+        discoveries.executeAsync(key, () -> discoverAsync(key, cached).toFuture())
+            .whenComplete((trustedServer, e) -> {
+                try {
+                    if (e != null) {
+                        // Keep serving the current entry while stale-while-revalidate or
+                        // stale-if-error allow
+                        log.warn("Re-validation of {} failed: {}", key.authorizationServer(), e.getMessage());
+                    } else if (!trustedServer.isTrusted()) {
+                        log.warn("{} failed re-validation; no longer trusted", key.authorizationServer());
+                        cache.invalidate(key);
+                        changeListener.accept(key, null);
+                    } else {
+                        store(key, trustedServer);
+                    }
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+    }
+
+    private void store(final TrustedServerKey key, final TrustedServer trustedServer) {
+        if (!properties.isEnabled() || !trustedServer.isTrusted()) {
+            // Servers failing verification are not cached so that the next call re-verifies
+            return;
+        }
+        if (trustedServer.isNoStore()) {
+            // The server no longer lets its metadata be stored; drop what was
+            if (cache.asMap().remove(key) != null) {
+                changeListener.accept(key, null);
+            }
+            return;
+        }
+
+        cache.put(key, trustedServer);
+        changeListener.accept(key, trustedServer);
+    }
+
+    /**
+     * Discovers the server's metadata; a conditional request when the previous entry can
+     * be re-validated
+     * @param key
+     * @param previous - cached entry, may be null
+     * @return TrustedServer
+     */
+    private TrustedServer load(final TrustedServerKey key, final TrustedServer previous)
+            throws ParseException, JOSEException, BadJOSEException, UdapException {
+        try {
+            return discoveries.execute(key, () -> discover(key, previous));
+        } catch (ParseException | JOSEException | BadJOSEException | UdapException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // discover(key, previous) throws no other checked exception
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private TrustedServer discover(final TrustedServerKey key, final TrustedServer previous)
+            throws ParseException, JOSEException, BadJOSEException, UdapException {
+        return toTrustedServer(key, previous,
+                AuthorizationServerResilience.block(retrieveServerMetadata(key, previous)));
+    }
+
+    private Mono<TrustedServer> discoverAsync(final TrustedServerKey key, final TrustedServer previous) {
+        // Signature verification is CPU bound; keep it off the event loop
+        return retrieveServerMetadata(key, previous).publishOn(Schedulers.parallel())
+            .handle((response, sink) -> {
+                try {
+                    sink.next(toTrustedServer(key, previous, response));
+                } catch (ParseException | JOSEException | BadJOSEException | UdapException e) {
+                    sink.error(e);
+                }
+            });
+    }
+
+    private Mono<ResponseEntity<ServerMetadata>> retrieveServerMetadata(final TrustedServerKey key,
+            final TrustedServer previous) {
+        final boolean conditional = isRevalidatable(previous);
+
+        return UdapUtil
+            .retrieveServerMetadata(webClient, key.authorizationServer(), conditional ? previous.getETag() : null,
+                    conditional ? previous.getLastModified() : null)
+            .transform(resilience.idempotent(key.authorizationServer()));
+    }
+
+    /**
+     * @param previous
+     * @return true when an unchanged (304) metadata lets the previous entry be served
+     * again: it is trusted and its signed metadata has not expired
+     */
+    private static boolean isRevalidatable(final TrustedServer previous) {
+        if (previous == null || !previous.isTrusted()) {
+            return false;
+        }
+
+        final JWTClaimsSet claims = previous.getMetadataClaims();
+        return claims == null || claims.getExpirationTime() == null
+                || claims.getExpirationTime().toInstant().isAfter(Instant.now());
+    }
+
+    private TrustedServer toTrustedServer(final TrustedServerKey key, final TrustedServer previous,
+            final ResponseEntity<ServerMetadata> response)
+            throws ParseException, JOSEException, BadJOSEException, UdapException {
+        if (response.getStatusCode() != HttpStatus.NOT_MODIFIED) {
+            return verify(key, response.getBody(), response.getHeaders());
+        }
+        if (!isRevalidatable(previous)) {
+            throw new UdapException(UdapException.INVALID_RESPONSE,
+                    "Unconditional discovery answered 304 by " + key.authorizationServer());
+        }
+
+        // Unchanged metadata, already verified; the 304 carries the current validators and
+        // freshness
+        final HttpHeaders headers = response.getHeaders();
+        final TrustedServer revalidated = entry(key, previous.getServerMetadata(), previous.getMetadataClaims(),
+                true, headers);
+        if (revalidated.getETag() == null) {
+            revalidated.setETag(previous.getETag());
+        }
+        if (revalidated.getLastModified() == null) {
+            revalidated.setLastModified(previous.getLastModified());
+        }
+
+        return revalidated;
+    }
+
+    private TrustedServer verify(final TrustedServerKey key, final ServerMetadata serverMetadata,
+            final HttpHeaders headers) throws ParseException, JOSEException, BadJOSEException {
+        JWTClaimsSet metadataClaims = null;
+        boolean trusted = true;
+        if (key.expectedIssuer() != null) {
+            final Timer.Sample sample = UdapMetrics.start();
+            String outcome = UdapMetrics.ERROR;
+            try {
+                metadataClaims = signedMetadataCache.getClaims(serverMetadata.getSignedMetadata(),
+                        key.expectedIssuer(), key.jwsAlgs());
+                trusted = metadataClaims != null
+                        && UdapUtil.isServerMetadataTrusted(serverMetadata, metadataClaims);
+                outcome = trusted ? UdapMetrics.SUCCESS : UdapMetrics.UNTRUSTED;
+            } catch (BadJOSEException e) {
+                outcome = UdapMetrics.UNTRUSTED;
+                throw e;
+            } finally {
+                UdapMetrics.stop(sample, UdapMetrics.METADATA_VERIFICATION, outcome,
+                        UdapMetrics.tags(UdapMetrics.AUTHORIZATION_SERVER, key.authorizationServer()));
+            }
+        }
+
+        return entry(key, serverMetadata, metadataClaims, trusted, headers);
+    }
+
+    /**
+     * Entry expiring at the earliest of the re-validate interval, the response's
+     * freshness lifetime and the signed metadata "exp"; stale windows never extend past the
+     * signed metadata "exp"
+     */
+    private TrustedServer entry(final TrustedServerKey key, final ServerMetadata serverMetadata,
+            final JWTClaimsSet metadataClaims, final boolean trusted, final HttpHeaders headers) {
+        final Instant now = Instant.now();
+        final CacheDirectives directives = CacheDirectives.of(headers);
+
+        final Instant metadataExpiration = metadataClaims != null && metadataClaims.getExpirationTime() != null
+                ? metadataClaims.getExpirationTime().toInstant() : null;
+
+        Duration freshness = properties.getRevalidateInterval();
+        if (directives.freshness() != null && directives.freshness().compareTo(freshness) < 0) {
+            freshness = directives.freshness();
+        }
+        final Instant expiresAt = earliest(now.plus(freshness), metadataExpiration);
+
+        Instant refreshAt = expiresAt.minus(properties.getRefreshAhead());
+        if (refreshAt.isBefore(now)) {
+            refreshAt = now;
+        }
+
+        // The configured stale windows do not apply to a response to re-validate on every use
+        final Duration staleWhileRevalidate = directives.staleWhileRevalidate() != null
+                ? directives.staleWhileRevalidate()
+                : directives.noCache() ? Duration.ZERO : properties.getStaleWhileRevalidate();
+        final Duration staleIfError = directives.staleIfError() != null ? directives.staleIfError()
+                : directives.noCache() ? Duration.ZERO : properties.getStaleIfError();
+        final long lastModified = headers.getLastModified();
+
+        return TrustedServer.builder()
+            .authorizationServer(key.authorizationServer())
+            .expectedIssuer(key.expectedIssuer())
+            .serverMetadata(serverMetadata)
+            .metadataClaims(metadataClaims)
+            .trusted(trusted)
+            .validatedAt(now)
+            .expiresAt(expiresAt)
+            .refreshAt(refreshAt)
+            .staleWhileRevalidateUntil(earliest(expiresAt.plus(staleWhileRevalidate), metadataExpiration))
+            .staleIfErrorUntil(earliest(expiresAt.plus(staleIfError), metadataExpiration))
+            .eTag(headers.getETag())
+            .lastModified(lastModified >= 0 ? Instant.ofEpochMilli(lastModified) : null)
+            .noStore(directives.noStore())
+            .build();
+    }
+
+    private static Instant earliest(final Instant instant, final Instant bound) {
+        return bound != null && bound.isBefore(instant) ? bound : instant;
+    }
+
+    /**
+     * Per-entry time to live bounded by the last instant the entry may be served, stale
+     * windows included
+     */
+    private static final class TrustedServerExpiry implements Expiry<TrustedServerKey, TrustedServer> {
+
+        @Override
+        public long expireAfterCreate(final TrustedServerKey key, final TrustedServer value, final long currentTime) {
+            return remainingNanos(value.getRetainUntil());
+        }
+
+        @Override
+        public long expireAfterUpdate(final TrustedServerKey key, final TrustedServer value, final long currentTime,
+                final long currentDuration) {
+            return remainingNanos(value.getRetainUntil());
+        }
+
+        @Override
+        public long expireAfterRead(final TrustedServerKey key, final TrustedServer value, final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+
+        private static long remainingNanos(final Instant expiresAt) {
+            final Duration remaining = Duration.between(Instant.now(), expiresAt);
+            return remaining.isNegative() ? 0 : remaining.toNanos();
+        }
+
+    }
+
+}
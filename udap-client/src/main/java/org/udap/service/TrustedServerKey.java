@@ -0,0 +1,17 @@
+package org.udap.service;
+
+import java.util.Set;
+
+import com.nimbusds.jose.JWSAlgorithm;
+
+/**
+ * Identifies a trusted server entry. Signed metadata claims are only valid for the issuer
+ * and algorithms they were verified against.
+ *
+ * @param authorizationServer - base URL of the authorization server
+ * @param expectedIssuer - required issuer of the signed metadata; null when trust is
+ * assumed
+ * @param jwsAlgs - accepted signature algorithms of the signed metadata
+ */
+public record TrustedServerKey(String authorizationServer, String expectedIssuer, Set<JWSAlgorithm> jwsAlgs) {
+}
@@ -1,43 +1,69 @@
 package org.udap.service;
 
-import java.io.IOException;
-import java.net.URI;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.text.ParseException;
+import java.time.Clock;
 import java.util.List;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.udap.config.UdapFhirClient;
+import org.udap.exception.UdapException;
 import org.udap.model.AccessTokenResponse;
 import org.udap.model.AuthZExtension;
 import org.udap.model.RegistrationResponse;
-import org.udap.model.ServerMetadata;
-import org.udap.util.CommonUtil;
-import org.udap.util.UdapUtil;
-
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSObject;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.proc.BadJOSEException;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.JWTClaimsSet.Builder;
-
-import lombok.extern.slf4j.Slf4j;
+import org.udap.util.JtiGenerator;
 
 /**
  * UDAP Client Service to perform actions such as... Trusted Dynamic Client Registration
  * Getting an Access Token from a UDAP capable authorization server
  *
+ * Blocking facade of {@link ReactiveUdapClientService}: every call waits for the reactive
+ * flow, so both share one implementation, the trusted server and access token caches and
+ * in-flight token requests. Calls are bounded by the authorization server's deadline (see
+ * {@link AuthorizationServerResilience}); failures are thrown as {@link UdapException}s.
+ *
  * @author Brett P. Stringham
  *
  */
-@Slf4j
 @Service
 public class UdapClientService {
 
+    private final ReactiveUdapClientService reactiveClientService;
+
+    /**
+     * Standalone use (outside of a Spring context) with default cache and HTTP client
+     * settings
+     */
+    public UdapClientService() {
+        this(new ReactiveUdapClientService());
+    }
+
+    public UdapClientService(final TrustedServerCache trustedServerCache, final AccessTokenCache accessTokenCache,
+            final WebClient webClient) {
+        this(new ReactiveUdapClientService(trustedServerCache, accessTokenCache, webClient));
+    }
+
+    /**
+     * @param trustedServerCache
+     * @param accessTokenCache
+     * @param clientRegistrations - records the client IDs of successful registrations
+     * @param webClient
+     * @param clock - source of the authentication tokens' "iat"
+     * @param jtiGenerator - source of the software statements' and authentication tokens'
+     * "jti"
+     */
+    public UdapClientService(final TrustedServerCache trustedServerCache, final AccessTokenCache accessTokenCache,
+            final ClientRegistrations clientRegistrations, final WebClient webClient, final Clock clock,
+            final JtiGenerator jtiGenerator) {
+        this(new ReactiveUdapClientService(trustedServerCache, accessTokenCache, clientRegistrations, webClient,
+                clock, jtiGenerator));
+    }
+
+    @Autowired
+    public UdapClientService(final ReactiveUdapClientService reactiveClientService) {
+        this.reactiveClientService = reactiveClientService;
+    }
+
     /**
      * Registers the default UDAP client at the given authorization server. Also performs
      * necessary checks on server metadata to ensure server is trusted
@@ -45,39 +71,14 @@ public class UdapClientService {
      * @param expectedMetadataIssuer
      * @param udapVersion
      * @return RegistrationResponse
+     * @throws UdapException when the server is not trusted, the client cannot sign its
+     * request or the registration fails
      */
-    public RegistrationResponse register(final UdapFhirClient fhirClient, 
-    		final String authorizationServer, final String expectedMetadataIssuer,
-            final String udapVersion, final boolean mustBeTrusted) {
-    	
-        // TODO: Create service that caches information on trusted servers with
-        // configurable "re-validate" intervals
-        final ServerMetadata serverMetadata = UdapUtil.getServerMetadata(authorizationServer);
-        boolean isServerTrusted;
-        try {
-            // UDAP Client - Private Key
-            final URI privateKeyLocation = URI.create(fhirClient.getPrivateKeyLocation());
-            final JWKSet privateJwkSet = CommonUtil.getJwkSetFromPkcs12(privateKeyLocation,
-            		fhirClient.getPrivateKeySecret().toCharArray());
-                
-            if (mustBeTrusted) {
-                isServerTrusted = UdapUtil.isServerMetadataTrusted(serverMetadata, expectedMetadataIssuer,
-                        JWSAlgorithm.RS256);
-            } else {
-                isServerTrusted = true;
-                log.warn("Authorization server - trust assumed! mustBeTrusted set to {}", mustBeTrusted);
-            }
-
-            if (isServerTrusted) {
-                return UdapUtil.registerClient(fhirClient, serverMetadata, udapVersion, privateJwkSet);
-            } else {
-                log.error(authorizationServer + " is not trusted");
-            }
-        } catch (ParseException | CertificateException | IOException | BadJOSEException | JOSEException | KeyStoreException | NoSuchAlgorithmException e) {
-            log.error("UDAP Registration Error: {}", e.getMessage());
-        }
-
-        return null;
+    public RegistrationResponse register(final UdapFhirClient fhirClient,
+            final String authorizationServer, final String expectedMetadataIssuer,
+            final String udapVersion, final boolean mustBeTrusted) throws UdapException {
+        return AuthorizationServerResilience.block(reactiveClientService.register(fhirClient, authorizationServer,
+                expectedMetadataIssuer, udapVersion, mustBeTrusted));
     }
 
     /**
@@ -85,60 +86,25 @@ public class UdapClientService {
      * @param authorizationServer
      * @param expectedMetadataIssuer
      * @param authNExtensionList
-     * @return
+     * @return AccessTokenResponse
+     * @throws UdapException when the server is not trusted, the client cannot sign its
+     * request or the token request fails
      */
-    public AccessTokenResponse getAccessToken(final UdapFhirClient fhirClient, 
-    		final String authorizationServer, final String expectedMetadataIssuer, final String scope,
-            final List<AuthZExtension> authNExtensionList, final boolean mustBeTrusted) {
-    	
-        // TODO: Create service that caches information on trusted servers with
-        // configurable "re-validate" intervals
-        final ServerMetadata serverMetadata = UdapUtil.getServerMetadata(authorizationServer);
-        final boolean isServerTrusted;
-        try {
-            // UDAP Client - Private Key
-            final URI privateKeyLocation = URI.create(fhirClient.getPrivateKeyLocation());
-            final JWKSet privateJwkSet = CommonUtil.getJwkSetFromPkcs12(privateKeyLocation,
-            		fhirClient.getPrivateKeySecret().toCharArray());
-            
-            if (mustBeTrusted) {
-                isServerTrusted = UdapUtil.isServerMetadataTrusted(serverMetadata, expectedMetadataIssuer,
-                        JWSAlgorithm.RS256);
-            } else {
-                isServerTrusted = true;
-                log.warn("Authorization server - trust assumed! mustBeTrusted set to {}", mustBeTrusted);
-            }
-
-            if (isServerTrusted) {
-                String tokenEndPoint = serverMetadata.getTokenEndpoint();
-
-                // http://hl7.org/fhir/us/udap-security/b2b.html#constructing-authentication-token
-                Builder authNTokenBuilder = UdapUtil.createAuthNToken(fhirClient, tokenEndPoint);
-
-                // Attach available authorization extensions to access token request
-                for (AuthZExtension extension : authNExtensionList) {
-                    log.debug("Appending AuthZ Extension: {}", CommonUtil.getObjectAsJson(extension));
-                    UdapUtil.appendAuthNExtension(authNTokenBuilder, extension);
-                }
-
-                JWTClaimsSet authNClaims = authNTokenBuilder.build();
-
-                // http://hl7.org/fhir/us/udap-security/b2b.html#client-credentials-grants
-                JWSObject authNToken = UdapUtil.createJwtWithSignature(authNClaims, privateJwkSet,
-                        JWSAlgorithm.RS256);
-
-                log.info("AuthN Token: " + authNToken.serialize());
-
-                return UdapUtil.getAccessToken(authNToken, tokenEndPoint, scope);
-
-            } else {
-                log.error(authorizationServer + " is not trusted");
-            }
-        } catch (ParseException | IOException | BadJOSEException | JOSEException | KeyStoreException | NoSuchAlgorithmException | CertificateException e) {
-            log.error("UDAP error getting access token: {}", e.getMessage());
-        }
+    public AccessTokenResponse getAccessToken(final UdapFhirClient fhirClient,
+            final String authorizationServer, final String expectedMetadataIssuer, final String scope,
+            final List<AuthZExtension> authNExtensionList, final boolean mustBeTrusted) throws UdapException {
+        return AuthorizationServerResilience.block(reactiveClientService.getAccessToken(fhirClient,
+                authorizationServer, expectedMetadataIssuer, scope, authNExtensionList, mustBeTrusted));
+    }
 
-        return null;
+    /**
+     * Stops serving an access token from cache, e.g., once a resource server rejected it;
+     * the next {@link #getAccessToken} requests a new one
+     * @param accessToken - "access_token" value
+     * @return true when the token was cached
+     */
+    public boolean invalidateAccessToken(final String accessToken) {
+        return reactiveClientService.invalidateAccessToken(accessToken);
     }
 
 }
@@ -0,0 +1,188 @@
+package org.udap.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.udap.config.ClientKeyMaterial;
+import org.udap.config.UdapFhirClient;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.config.UdapWarmUpProperties;
+import org.udap.config.UdapWarmUpProperties.Target;
+import org.udap.util.UdapUtil;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Warms up the configured FHIR clients once the application is ready: loads every
+ * client's key material, discovers (and verifies) the metadata of every target
+ * authorization server and prefetches an access token for every client / server pair
+ * with a scope, at most {@link UdapWarmUpProperties#getConcurrency()} at a time.
+ *
+ * As a health indicator ("udapWarmUp") it reports OUT_OF_SERVICE until warm-up is done,
+ * so that adding it to the readiness group keeps traffic away from a cold node. Warm-up is
+ * done once every step completed, failed or the warm-up timed out; failed steps are
+ * reported but do not hold the node back, they are retried by the first request.
+ */
+@Slf4j
+@Service
+public class UdapWarmUp implements HealthIndicator {
+
+    public enum State {
+        DISABLED, PENDING, RUNNING, DONE
+    }
+
+    private final UdapWarmUpProperties properties;
+
+    private final UdapFhirClientPool fhirClientPool;
+
+    private final TrustedServerCache trustedServerCache;
+
+    private final ReactiveUdapClientService udapClientService;
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private volatile State state;
+
+    private volatile int total;
+
+    private volatile Instant startedAt;
+
+    private volatile Instant finishedAt;
+
+    @Autowired
+    public UdapWarmUp(final UdapWarmUpProperties properties, final UdapFhirClientPool fhirClientPool,
+            final TrustedServerCache trustedServerCache, final ReactiveUdapClientService udapClientService) {
+        this.properties = properties;
+        this.fhirClientPool = fhirClientPool;
+        this.trustedServerCache = trustedServerCache;
+        this.udapClientService = udapClientService;
+        this.state = properties.isEnabled() ? State.PENDING : State.DISABLED;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (properties.isEnabled()) {
+            warmUp().subscribe();
+        }
+    }
+
+    /**
+     * @return completes once every step completed or failed, or the warm-up timed out;
+     * never errors
+     */
+    public Mono<Void> warmUp() {
+        final List<UdapFhirClient> fhirClients = fhirClientPool.getFhirClients();
+
+        final List<Mono<?>> steps = new ArrayList<>();
+        fhirClients.forEach(fhirClient -> steps.add(step("key material of " + fhirClient.getClientNickname(),
+                () -> Mono.fromCallable(() -> ClientKeyMaterial.of(fhirClient))
+                    .subscribeOn(Schedulers.boundedElastic()))));
+        for (Target target : properties.getTargets()) {
+            steps.add(step("discovery of " + target.getAuthorizationServer(), () -> discover(target)));
+            if (target.getScope() != null) {
+                fhirClients.stream()
+                    .filter(fhirClient -> target.getClientNicknames().isEmpty()
+                            || target.getClientNicknames().contains(fhirClient.getClientNickname()))
+                    .forEach(fhirClient -> steps.add(step("access token of " + fhirClient.getClientNickname()
+                            + " at " + target.getAuthorizationServer(),
+                            () -> prefetchAccessToken(fhirClient, target))));
+            }
+        }
+
+        return Mono.defer(() -> {
+            total = steps.size();
+            startedAt = Instant.now();
+            state = State.RUNNING;
+            log.info("Warming up {} steps, {} at a time", total, properties.getConcurrency());
+
+            return Flux.fromIterable(steps)
+                .flatMap(step -> step, properties.getConcurrency())
+                .then()
+                .timeout(properties.getTimeout())
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.warn("Warm-up timed out after {} with {} of {} steps done", properties.getTimeout(),
+                            completed.get() + failed.get(), total);
+                    return Mono.empty();
+                })
+                // Done before the subscriber is signalled, so a blocking caller sees the final state
+                .doOnTerminate(this::done)
+                .doOnCancel(this::done);
+        });
+    }
+
+    private void done() {
+        finishedAt = Instant.now();
+        state = State.DONE;
+        log.info("Warm-up done in {} ms: {} completed, {} failed", getElapsed().toMillis(), completed.get(),
+                failed.get());
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public Health health() {
+        if (state == State.DISABLED) {
+            return Health.up().build();
+        }
+
+        final Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", state);
+        details.put("total", total);
+        details.put("completed", completed.get());
+        details.put("failed", failed.get());
+        if (startedAt != null) {
+            details.put("elapsedMillis", getElapsed().toMillis());
+        }
+
+        return (state == State.DONE ? Health.up() : Health.outOfService()).withDetails(details).build();
+    }
+
+    private Duration getElapsed() {
+        return Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now());
+    }
+
+    private Mono<?> discover(final Target target) {
+        return trustedServerCache.retrieve(target.getAuthorizationServer(),
+                target.isMustBeTrusted() ? target.getExpectedMetadataIssuer() : null,
+                UdapUtil.SIGNED_METADATA_ALGORITHMS);
+    }
+
+    private Mono<?> prefetchAccessToken(final UdapFhirClient fhirClient, final Target target) {
+        return udapClientService.getAccessToken(fhirClient, target.getAuthorizationServer(),
+                target.getExpectedMetadataIssuer(), target.getScope(), null, target.isMustBeTrusted());
+    }
+
+    /**
+     * @param description
+     * @param mono - assembled once the step starts
+     * @return the step, counted as completed or failed; never errors
+     */
+    private Mono<?> step(final String description, final Supplier<Mono<?>> mono) {
+        return Mono.defer(mono).doOnSuccess(value -> completed.incrementAndGet()).onErrorResume(e -> {
+            failed.incrementAndGet();
+            log.warn("Warm-up of {} failed: {}", description, e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+}
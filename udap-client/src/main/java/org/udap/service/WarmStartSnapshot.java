@@ -0,0 +1,576 @@
+package org.udap.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+import org.udap.config.UdapSnapshotProperties;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.CachedAccessToken;
+import org.udap.model.ServerMetadata;
+import org.udap.model.TrustedServer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * On-disk snapshot of the verified trusted servers, registered client IDs and (unless
+ * disabled) unexpired access tokens, so that a restarted node serves from warm caches
+ * instead of discovering, verifying and requesting tokens from every authorization server
+ * at once.
+ *
+ * The snapshot is an append-only log: every change of the caches is appended as one
+ * record by a background writer, later records superseding earlier ones, and the log is
+ * rewritten with its live entries only on startup and after
+ * {@link UdapSnapshotProperties#getCompactThreshold()} superseded records. On startup the
+ * file is memory-mapped and replayed into the caches before the application serves.
+ *
+ * Each record is encrypted with AES-GCM, which also authenticates it, and chained to the
+ * record before it: the tag of the previous record (or the random seed following the
+ * file's header) is the record's associated data. A tampered, reordered or cut out record
+ * fails to decrypt, and the log is replayed up to it only. As a truncated log still
+ * replays, restored trusted servers have their signed metadata verified again (see
+ * {@link TrustedServerCache#restore(TrustedServerKey, TrustedServer)}); a trusted server
+ * invalidated by a cut off record is served again at most until its recorded expiry.
+ * Restored entries keep their recorded instants and are re-validated
+ * lazily: a trusted server once it expires (a conditional request, see
+ * {@link TrustedServerCache}), an access token once it goes stale. Entries already past
+ * those instants are not restored.
+ */
+@Slf4j
+@Service
+public class WarmStartSnapshot implements InitializingBean, DisposableBean {
+
+    private static final byte[] MAGIC = "UDAPSNP2".getBytes(StandardCharsets.US_ASCII);
+
+    private static final String TRUSTED_SERVER = "trusted_server";
+
+    private static final String REGISTRATION = "registration";
+
+    private static final String ACCESS_TOKEN = "access_token";
+
+    private static final String CIPHER = "AES/GCM/NoPadding";
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int TAG_LENGTH = 128;
+
+    /**
+     * Random seed of the chain of records, following the header
+     */
+    private static final int SEED_LENGTH = 16;
+
+    /**
+     * Larger lengths are taken as a torn or corrupt tail
+     */
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private final UdapSnapshotProperties properties;
+
+    private final TrustedServerCache trustedServerCache;
+
+    private final AccessTokenCache accessTokenCache;
+
+    private final ClientRegistrations clientRegistrations;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+        .serializationInclusion(JsonInclude.Include.NON_NULL)
+        .build();
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Live records by type and id; owned by the writer once the snapshot is open
+     */
+    private final Map<String, SnapshotRecord> live = new HashMap<>();
+
+    private int superseded;
+
+    /**
+     * Associated data of the next record: the tag of the last one, or the file's seed
+     */
+    private byte[] chain;
+
+    private Path path;
+
+    private SecretKey secretKey;
+
+    private FileChannel channel;
+
+    private ExecutorService writer;
+
+    @Autowired
+    public WarmStartSnapshot(final UdapSnapshotProperties properties, final TrustedServerCache trustedServerCache,
+            final AccessTokenCache accessTokenCache, final ClientRegistrations clientRegistrations) {
+        this.properties = properties;
+        this.trustedServerCache = trustedServerCache;
+        this.accessTokenCache = accessTokenCache;
+        this.clientRegistrations = clientRegistrations;
+    }
+
+    /**
+     * Restores the snapshot into the caches, compacts it and starts recording their
+     * changes. A snapshot that cannot be read or written leaves the caches cold
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        secretKey = secretKey(properties.getKey());
+        if (secretKey == null) {
+            return;
+        }
+
+        path = Path.of(properties.getPath()).toAbsolutePath();
+        try {
+            final long start = System.nanoTime();
+            load();
+            final int[] restored = restore();
+            rewrite();
+            log.info("Restored {} trusted servers, {} registrations and {} access tokens from {} in {} ms",
+                    restored[0], restored[1], restored[2], path,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | GeneralSecurityException e) {
+            log.error("Unable to open snapshot {}: {}", path, e.getMessage());
+            return;
+        }
+
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "udap-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        trustedServerCache.setChangeListener((key, trustedServer) -> record(TRUSTED_SERVER,
+                id(key.authorizationServer(), key.expectedIssuer(), algorithmNames(key.jwsAlgs())),
+                trustedServer != null ? trustedServer.getRetainUntil() : null,
+                trustedServer != null ? () -> toEntry(key, trustedServer) : null));
+        clientRegistrations.setChangeListener((key, clientId) -> record(REGISTRATION,
+                id(key.clientNickname(), key.authorizationServer()), null,
+                clientId != null ? () -> new RegistrationEntry(key.clientNickname(), key.authorizationServer(),
+                        clientId) : null));
+        if (properties.isAccessTokens()) {
+            accessTokenCache.setChangeListener((key, cachedToken) -> record(ACCESS_TOKEN,
+                    id(key.clientNickname(), key.clientId(), key.tokenEndpoint(), key.scope(),
+                            key.extensionsHash()),
+                    cachedToken != null ? cachedToken.getStaleAt() : null,
+                    cachedToken != null ? () -> toEntry(key, cachedToken) : null));
+        }
+    }
+
+    /**
+     * Writes the pending records and closes the snapshot
+     */
+    @Override
+    public void destroy() throws Exception {
+        if (writer == null) {
+            return;
+        }
+
+        trustedServerCache.setChangeListener((key, trustedServer) -> {
+        });
+        clientRegistrations.setChangeListener((key, clientId) -> {
+        });
+        accessTokenCache.setChangeListener((key, cachedToken) -> {
+        });
+
+        writer.shutdown();
+        if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Snapshot writer did not finish; the latest changes may be lost");
+            writer.shutdownNow();
+            if (!writer.awaitTermination(1, TimeUnit.SECONDS)) {
+                // The channel is still the writer's
+                return;
+            }
+        }
+        // An interrupted write closes the channel
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    /**
+     * Queues a record for the writer; the entry is converted by the writer, off the
+     * caller's thread
+     * @param type
+     * @param id
+     * @param retainUntil - instant after which the entry is not restored, null for never
+     * @param entry - null to record the removal of the entry
+     */
+    private void record(final String type, final String id, final Instant retainUntil,
+            final Supplier<?> entry) {
+        writer.execute(() -> {
+            try {
+                append(new SnapshotRecord(type, id, retainUntil,
+                        entry != null ? objectMapper.valueToTree(entry.get()) : null));
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                log.warn("Unable to write {} record to snapshot {}: {}", type, path, e.getMessage());
+            }
+        });
+    }
+
+    private void append(final SnapshotRecord record) throws IOException, GeneralSecurityException {
+        final String liveKey = record.type() + record.id();
+        final SnapshotRecord previous = record.value() != null ? live.put(liveKey, record) : live.remove(liveKey);
+        if (previous == null && record.value() == null) {
+            return;
+        }
+        if (previous != null && ++superseded >= properties.getCompactThreshold()) {
+            rewrite();
+            return;
+        }
+
+        final ByteBuffer buffer = seal(record);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Replays the memory-mapped snapshot into the live records; stops at a torn tail or at
+     * the first record that does not decrypt in its place of the chain
+     */
+    private void load() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            final byte[] magic = new byte[MAGIC.length];
+            if (buffer.remaining() < MAGIC.length + SEED_LENGTH || !Arrays.equals(MAGIC, bytes(buffer, magic))) {
+                log.warn("{} is not a UDAP snapshot; ignored", path);
+                return;
+            }
+            chain = bytes(buffer, new byte[SEED_LENGTH]);
+
+            while (buffer.remaining() >= Integer.BYTES) {
+                final int length = buffer.getInt();
+                if (length < IV_LENGTH + TAG_LENGTH / Byte.SIZE || length > MAX_RECORD_LENGTH
+                        || length > buffer.remaining()) {
+                    log.warn("Snapshot {} ends with a torn record; ignored", path);
+                    break;
+                }
+
+                final SnapshotRecord record = open(bytes(buffer, new byte[length]));
+                if (record == null) {
+                    log.warn("Snapshot {} could not be decrypted from byte {} on (key changed or records "
+                            + "altered); ignored from there", path, buffer.position() - length - Integer.BYTES);
+                    break;
+                }
+                if (record.value() != null) {
+                    live.put(record.type() + record.id(), record);
+                } else {
+                    live.remove(record.type() + record.id());
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the live records to the caches; drops the records that are no longer
+     * servable
+     * @return restored trusted servers, registrations and access tokens
+     */
+    private int[] restore() {
+        final int[] restored = new int[3];
+        final Instant now = Instant.now();
+
+        live.values().removeIf(record -> {
+            if (record.retainUntil() != null && !record.retainUntil().isAfter(now)) {
+                return true;
+            }
+
+            try {
+                switch (record.type()) {
+                    case TRUSTED_SERVER -> {
+                        final TrustedServerEntry entry = objectMapper.treeToValue(record.value(),
+                                TrustedServerEntry.class);
+                        if (trustedServerCache.restore(entry.key(), entry.toTrustedServer())) {
+                            restored[0]++;
+                        }
+                    }
+                    case REGISTRATION -> {
+                        final RegistrationEntry entry = objectMapper.treeToValue(record.value(),
+                                RegistrationEntry.class);
+                        if (clientRegistrations.restore(
+                                new RegistrationKey(entry.clientNickname(), entry.authorizationServer()),
+                                entry.clientId())) {
+                            restored[1]++;
+                        }
+                    }
+                    case ACCESS_TOKEN -> {
+                        if (!properties.isAccessTokens()) {
+                            return true;
+                        }
+                        final AccessTokenEntry entry = objectMapper.treeToValue(record.value(),
+                                AccessTokenEntry.class);
+                        if (accessTokenCache.restore(entry.key(), entry.toCachedAccessToken())) {
+                            restored[2]++;
+                        }
+                    }
+                    default -> {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (JsonProcessingException | ParseException e) {
+                log.warn("Unable to restore {} record from snapshot: {}", record.type(), e.getMessage());
+                return true;
+            }
+        });
+
+        return restored;
+    }
+
+    /**
+     * Replaces the snapshot with its live, unexpired records and reopens it for appending
+     */
+    private void rewrite() throws IOException, GeneralSecurityException {
+        final Instant now = Instant.now();
+        live.values().removeIf(record -> record.retainUntil() != null && !record.retainUntil().isAfter(now));
+
+        final Path directory = path.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        final Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(rewritten);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            // Owner only, like a keystore
+            Files.createFile(rewritten,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+
+        chain = new byte[SEED_LENGTH];
+        secureRandom.nextBytes(chain);
+        try (FileChannel out = FileChannel.open(rewritten, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            out.write(ByteBuffer.wrap(MAGIC));
+            out.write(ByteBuffer.wrap(chain));
+            for (SnapshotRecord record : live.values()) {
+                final ByteBuffer buffer = seal(record);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        superseded = 0;
+    }
+
+    /**
+     * Seals the record as the next one of the chain
+     * @param record
+     * @return length prefixed IV and AES-GCM ciphertext of the record
+     */
+    private ByteBuffer seal(final SnapshotRecord record) throws IOException, GeneralSecurityException {
+        final byte[] iv = new byte[IV_LENGTH];
+        secureRandom.nextBytes(iv);
+
+        final Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(chain);
+        final byte[] ciphertext = cipher.doFinal(objectMapper.writeValueAsBytes(record));
+        chain = tag(ciphertext);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + IV_LENGTH + ciphertext.length);
+        buffer.putInt(IV_LENGTH + ciphertext.length).put(iv).put(ciphertext).flip();
+
+        return buffer;
+    }
+
+    /**
+     * Opens the sealed record as the next one of the chain
+     * @param sealed - IV and ciphertext
+     * @return the record, null when it does not decrypt with the configured key and the
+     * tag of the record before it
+     */
+    private SnapshotRecord open(final byte[] sealed) {
+        try {
+            final Cipher cipher = Cipher.getInstance(CIPHER);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_LENGTH, sealed, 0, IV_LENGTH));
+            cipher.updateAAD(chain);
+
+            final SnapshotRecord record = objectMapper
+                .readValue(cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH), SnapshotRecord.class);
+            chain = tag(sealed);
+            return record;
+        } catch (GeneralSecurityException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param ciphertext - AES-GCM output, ending with the tag
+     * @return the tag
+     */
+    private static byte[] tag(final byte[] ciphertext) {
+        return Arrays.copyOfRange(ciphertext, ciphertext.length - TAG_LENGTH / Byte.SIZE, ciphertext.length);
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer, final byte[] bytes) {
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private String id(final Object... keyParts) {
+        try {
+            return objectMapper.writeValueAsString(Arrays.asList(keyParts));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> algorithmNames(final Set<JWSAlgorithm> jwsAlgs) {
+        return jwsAlgs != null ? jwsAlgs.stream().map(JWSAlgorithm::getName).sorted().toList() : null;
+    }
+
+    private static SecretKey secretKey(final String key) {
+        if (key == null || key.isBlank()) {
+            log.error("udap.snapshot.key is not set; snapshot disabled");
+            return null;
+        }
+
+        try {
+            final byte[] bytes = Base64.getDecoder().decode(key.trim());
+            if (bytes.length == 16 || bytes.length == 24 || bytes.length == 32) {
+                return new SecretKeySpec(bytes, "AES");
+            }
+        } catch (IllegalArgumentException e) {
+            // Reported below
+        }
+
+        log.error("udap.snapshot.key is not a Base64 encoded 128, 192 or 256 bit key; snapshot disabled");
+        return null;
+    }
+
+    private static TrustedServerEntry toEntry(final TrustedServerKey key, final TrustedServer trustedServer) {
+        return new TrustedServerEntry(key.authorizationServer(), key.expectedIssuer(),
+                algorithmNames(key.jwsAlgs()), trustedServer.getServerMetadata(),
+                trustedServer.getMetadataClaims() != null ? trustedServer.getMetadataClaims().toString() : null,
+                trustedServer.getValidatedAt(), trustedServer.getExpiresAt(), trustedServer.getRefreshAt(),
+                trustedServer.getStaleWhileRevalidateUntil(), trustedServer.getStaleIfErrorUntil(),
+                trustedServer.getETag(), trustedServer.getLastModified());
+    }
+
+    private static AccessTokenEntry toEntry(final AccessTokenKey key, final CachedAccessToken cachedToken) {
+        return new AccessTokenEntry(key.clientNickname(), key.clientId(), key.tokenEndpoint(), key.scope(),
+                key.extensionsHash(), cachedToken.getAccessTokenResponse(), cachedToken.getIssuedAt(),
+                cachedToken.getExpiresAt(), cachedToken.getStaleAt(), cachedToken.getRefreshAt());
+    }
+
+    /**
+     * @param type - kind of entry
+     * @param id - identity of the entry within its type
+     * @param retainUntil - instant after which the entry is not restored, null for never
+     * @param value - the entry, null when the entry was removed
+     */
+    private record SnapshotRecord(String type, String id, Instant retainUntil, JsonNode value) {
+    }
+
+    private record TrustedServerEntry(String authorizationServer, String expectedIssuer, List<String> jwsAlgs,
+            ServerMetadata serverMetadata, String metadataClaims, Instant validatedAt, Instant expiresAt,
+            Instant refreshAt, Instant staleWhileRevalidateUntil, Instant staleIfErrorUntil, String eTag,
+            Instant lastModified) {
+
+        TrustedServerKey key() {
+            final Set<JWSAlgorithm> algorithms = new LinkedHashSet<>();
+            if (jwsAlgs != null) {
+                jwsAlgs.forEach(name -> algorithms.add(JWSAlgorithm.parse(name)));
+            }
+
+            return new TrustedServerKey(authorizationServer, expectedIssuer, jwsAlgs != null ? algorithms : null);
+        }
+
+        TrustedServer toTrustedServer() throws ParseException {
+            return TrustedServer.builder()
+                .authorizationServer(authorizationServer)
+                .expectedIssuer(expectedIssuer)
+                .serverMetadata(serverMetadata)
+                .metadataClaims(metadataClaims != null ? JWTClaimsSet.parse(metadataClaims) : null)
+                .trusted(true)
+                .validatedAt(validatedAt)
+                .expiresAt(expiresAt)
+                .refreshAt(refreshAt)
+                .staleWhileRevalidateUntil(staleWhileRevalidateUntil)
+                .staleIfErrorUntil(staleIfErrorUntil)
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .build();
+        }
+
+    }
+
+    private record RegistrationEntry(String clientNickname, String authorizationServer, String clientId) {
+    }
+
+    private record AccessTokenEntry(String clientNickname, String clientId, String tokenEndpoint, String scope,
+            String extensionsHash, AccessTokenResponse accessTokenResponse, Instant issuedAt, Instant expiresAt,
+            Instant staleAt, Instant refreshAt) {
+
+        AccessTokenKey key() {
+            return new AccessTokenKey(clientNickname, clientId, tokenEndpoint, scope, extensionsHash);
+        }
+
+        CachedAccessToken toCachedAccessToken() {
+            accessTokenResponse.setReceivedAt(issuedAt);
+            return CachedAccessToken.builder()
+                .accessTokenResponse(accessTokenResponse)
+                .issuedAt(issuedAt)
+                .expiresAt(expiresAt)
+                .staleAt(staleAt)
+                .refreshAt(refreshAt)
+                .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package org.udap.util;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * HTTP caching directives of a response: freshness lifetime from Cache-Control max-age
+ * (or Expires), no-cache / no-store, and the RFC 5861 stale-while-revalidate and
+ * stale-if-error extensions.
+ *
+ * @param freshness - time the response is fresh for; null when the server gave none
+ * @param staleWhileRevalidate - null when the server gave none
+ * @param staleIfError - null when the server gave none
+ * @param noCache - no-cache or no-store: the response must be re-validated before every
+ * use, and is served stale only within the windows the server gave
+ * @param noStore - no-store: the response must not be stored at all
+ */
+public record CacheDirectives(Duration freshness, Duration staleWhileRevalidate, Duration staleIfError,
+        boolean noCache, boolean noStore) {
+
+    public static final CacheDirectives NONE = new CacheDirectives(null, null, null, false, false);
+
+    /**
+     * @param headers - response headers
+     * @return directives of the Cache-Control, Expires and Date headers
+     */
+    public static CacheDirectives of(final HttpHeaders headers) {
+        Duration freshness = null;
+        Duration staleWhileRevalidate = null;
+        Duration staleIfError = null;
+        boolean noCache = false;
+        boolean noStore = false;
+
+        final String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                final String[] nameValue = directive.trim().split("=", 2);
+                final String name = nameValue[0].trim().toLowerCase(Locale.ROOT);
+                final Duration seconds = nameValue.length > 1 ? seconds(nameValue[1]) : null;
+                switch (name) {
+                    case "no-cache" -> noCache = true;
+                    case "no-store" -> {
+                        noCache = true;
+                        noStore = true;
+                    }
+                    case "max-age" -> freshness = seconds != null ? seconds : freshness;
+                    case "stale-while-revalidate" -> staleWhileRevalidate = seconds;
+                    case "stale-if-error" -> staleIfError = seconds;
+                    default -> {
+                        // Not relevant to a private client cache
+                    }
+                }
+            }
+        }
+
+        if (noCache) {
+            freshness = Duration.ZERO;
+        } else if (freshness == null && headers.getExpires() >= 0) {
+            final Duration untilExpires = Duration.between(date(headers), Instant.ofEpochMilli(headers.getExpires()));
+            freshness = untilExpires.isNegative() ? Duration.ZERO : untilExpires;
+        }
+
+        return new CacheDirectives(freshness, staleWhileRevalidate, staleIfError, noCache, noStore);
+    }
+
+    private static Duration seconds(final String value) {
+        try {
+            final long seconds = Long.parseLong(value.trim().replace("\"", ""));
+            return seconds >= 0 ? Duration.ofSeconds(seconds) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param headers
+     * @return the response's Date, or now when missing or invalid
+     */
+    private static Instant date(final HttpHeaders headers) {
+        try {
+            final long date = headers.getDate();
+            return date >= 0 ? Instant.ofEpochMilli(date) : Instant.now();
+        } catch (IllegalArgumentException e) {
+            return Instant.now();
+        }
+    }
+
+}
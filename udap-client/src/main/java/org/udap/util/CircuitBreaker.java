@@ -0,0 +1,109 @@
+package org.udap.util;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Circuit breaker of one authorization server. Closed, calls pass; after
+ * failureThreshold consecutive failures it opens and calls are rejected. Once the open
+ * duration has passed a single trial call is let through (half-open): its success closes
+ * the circuit, its failure opens it again.
+ *
+ * Thread-safe; state changes are cheap and guarded by the breaker's monitor.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final Clock clock;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private Instant openedAt;
+
+    private boolean trialInFlight;
+
+    public CircuitBreaker(final int failureThreshold, final Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    public CircuitBreaker(final int failureThreshold, final Duration openDuration, final Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true when a call may be made; every permitted call is followed by one of
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onRelease()}
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.instant().isBefore(openedAt.plus(openDuration))) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * The server answered
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * The server failed to answer (connection error, timeout, 5xx)
+     * @return true when this failure opened the circuit
+     */
+    public synchronized boolean onFailure() {
+        trialInFlight = false;
+        if (state == State.OPEN) {
+            // A call started before the circuit opened
+            return false;
+        }
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.instant();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * The call ended without telling whether the server is healthy, e.g., it was
+     * cancelled
+     */
+    public synchronized void onRelease() {
+        trialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+}
@@ -0,0 +1,100 @@
+package org.udap.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jose.util.JSONStringUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Client assertion (authentication JWT) whose header and constant claims (iss, sub, aud)
+ * are encoded once. Signing only encodes the per request claims, the authorization
+ * "extensions", "iat", "exp" and "jti", and appends them to the pre-encoded claims.
+ *
+ * The constant claims are padded with JSON whitespace to a multiple of three bytes, so
+ * that their base64url form can be concatenated with the base64url form of the per
+ * request claims.
+ *
+ * Thread-safe; obtained from {@link JwsSignerRegistry#getTemplate(JWTClaimsSet,
+ * com.nimbusds.jose.JWSAlgorithm)}.
+ */
+public final class ClientAssertionTemplate {
+
+    private final JWSHeader header;
+
+    private final JWSSigner signer;
+
+    /**
+     * base64url of the constant claims: "{" ... "," padded to a multiple of three bytes
+     */
+    private final String encodedClaims;
+
+    ClientAssertionTemplate(final JWSHeader header, final JWSSigner signer, final JWTClaimsSet constantClaims) {
+        Assert.isNull(constantClaims.getIssueTime(), "iat is set per assertion");
+        Assert.isNull(constantClaims.getExpirationTime(), "exp is set per assertion");
+        Assert.isNull(constantClaims.getJWTID(), "jti is set per assertion");
+        Assert.isNull(constantClaims.getClaim(UdapUtil.EXTENSIONS_CLAIM), "extensions are set per assertion");
+
+        this.header = header;
+        this.signer = signer;
+
+        final String json = constantClaims.toString();
+        final byte[] claims = (constantClaims.getClaims().isEmpty() ? "{" : json.substring(0, json.length() - 1) + ",")
+            .getBytes(StandardCharsets.UTF_8);
+        final byte[] padded = Arrays.copyOf(claims, (claims.length + 2) / 3 * 3);
+        Arrays.fill(padded, claims.length, padded.length, (byte) ' ');
+
+        this.encodedClaims = Base64URL.encode(padded).toString();
+    }
+
+    /**
+     * Signs a new assertion from the template
+     * @param issuedAt - "iat", truncated to seconds
+     * @param ttl - seconds from "iat" to "exp"
+     * @param jti - nonce of the assertion
+     * @return signed JWT
+     * @throws JOSEException
+     */
+    public JWSObject sign(final Instant issuedAt, final long ttl, final String jti) throws JOSEException {
+        return sign(issuedAt, ttl, jti, null);
+    }
+
+    /**
+     * Signs a new assertion from the template with authorization extensions
+     * @param issuedAt - "iat", truncated to seconds
+     * @param ttl - seconds from "iat" to "exp"
+     * @param jti - nonce of the assertion
+     * @param extensions - "extensions" claim; omitted when null or empty
+     * @return signed JWT
+     * @throws JOSEException
+     */
+    public JWSObject sign(final Instant issuedAt, final long ttl, final String jti,
+            final Map<String, Object> extensions) throws JOSEException {
+        final long iat = issuedAt.getEpochSecond();
+        final String variableClaims = (extensions == null || extensions.isEmpty() ? ""
+                : JSONStringUtils.toJSONString(UdapUtil.EXTENSIONS_CLAIM) + ":"
+                        + JSONObjectUtils.toJSONString(extensions) + ",")
+                + "\"iat\":" + iat + ",\"exp\":" + (iat + ttl) + ",\"jti\":"
+                + JSONStringUtils.toJSONString(jti) + "}";
+
+        final Payload payload = new Payload(
+                new Base64URL(encodedClaims + Base64URL.encode(variableClaims.getBytes(StandardCharsets.UTF_8))));
+
+        final JWSObject jwsObject = new JWSObject(header, payload);
+        jwsObject.sign(signer);
+
+        return jwsObject;
+    }
+
+}
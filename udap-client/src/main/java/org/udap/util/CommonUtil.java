@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.UnrecoverableKeyException;
@@ -17,10 +18,14 @@ import java.security.cert.X509Certificate;
 import java.util.Enumeration;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jose.util.X509CertUtils;
 
 /**
@@ -39,10 +44,43 @@ public class CommonUtil {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    /**
+     * Property and map key order independent serialization, so that equal objects always
+     * produce the same bytes
+     */
+    private static final ObjectMapper CANONICAL_OBJECT_MAPPER = JsonMapper.builder()
+        .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+        .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+        .build();
+
     public static String getObjectAsJson(Object obj) throws JsonProcessingException {
         return OBJECT_MAPPER.writeValueAsString(obj);
     }
 
+    /**
+     * SHA-256 (base64url) of the canonical JSON form of an object; suitable as a compact
+     * cache key component
+     * @param obj
+     * @return
+     * @throws JsonProcessingException
+     */
+    public static String getCanonicalHash(Object obj) throws JsonProcessingException {
+        return getSha256(CANONICAL_OBJECT_MAPPER.writeValueAsBytes(obj));
+    }
+
+    /**
+     * @param bytes
+     * @return SHA-256 (base64url) of the bytes
+     */
+    public static String getSha256(byte[] bytes) {
+        try {
+            return Base64URL.encode(MessageDigest.getInstance("SHA-256").digest(bytes)).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static X509Certificate readX509File(URI certificateUri) throws IOException {
         byte[] x509Bytes = Files.readAllBytes(Paths.get(certificateUri));
 
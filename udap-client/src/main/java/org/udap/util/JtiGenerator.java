@@ -0,0 +1,38 @@
+package org.udap.util;
+
+import java.util.UUID;
+
+/**
+ * Source of "jti" values of software statements and authentication tokens. A jti SHALL
+ * NOT be reused by the client app before the "exp" of the JWT carrying it has passed.
+ */
+@FunctionalInterface
+public interface JtiGenerator {
+
+    /**
+     * @return a new, unique jti
+     */
+    String next();
+
+    /**
+     * @return random (version 4) UUIDs; every value draws from the shared SecureRandom
+     */
+    static JtiGenerator uuid() {
+        return () -> UUID.randomUUID().toString();
+    }
+
+    /**
+     * @return per-thread random prefix and counter, see {@link PerThreadJtiGenerator}
+     */
+    static JtiGenerator perThread() {
+        return PerThreadJtiGenerator.INSTANCE;
+    }
+
+    /**
+     * @return the generator used unless another one is passed in
+     */
+    static JtiGenerator getDefault() {
+        return perThread();
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.udap.util;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.factories.DefaultJWSSignerFactory;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+/**
+ * Pre-built JWS signers of one client's private JWK set, one per algorithm. The key
+ * selection, signer and header (kid, x5c, ...) are created on first use of an algorithm
+ * and reused for every later signature; signers are thread-safe.
+ *
+ * Produces the same JWS objects as a {@link com.nimbusds.jose.mint.DefaultJWSMinter} over
+ * the same JWK set.
+ *
+ * Also negotiates the signing algorithm: the most preferred algorithm that both a key of
+ * the set and the server's advertised list support.
+ */
+public final class JwsSignerRegistry {
+
+    /**
+     * Client signing algorithms in order of preference. ECDSA signatures are many times
+     * cheaper to create than RSA-2048 ones and make for smaller JWTs; RS256 is supported by
+     * every UDAP server
+     */
+    public static final List<JWSAlgorithm> PREFERRED_ALGORITHMS = List.of(JWSAlgorithm.ES256,
+            JWSAlgorithm.ES384, JWSAlgorithm.RS256);
+
+    /**
+     * Assumed when a server does not advertise its supported algorithms
+     */
+    private static final List<String> DEFAULT_SERVER_ALGORITHMS = List.of(JWSAlgorithm.RS256.getName());
+
+    private static final DefaultJWSSignerFactory SIGNER_FACTORY = new DefaultJWSSignerFactory();
+
+    /**
+     * Distinct client_id and token endpoint combinations kept per key
+     */
+    private static final int MAXIMUM_TEMPLATES = 1000;
+
+    private final JWKSet jwkSet;
+
+    private final ConcurrentMap<JWSAlgorithm, PreparedSigner> signers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<List<String>, JWSAlgorithm> negotiated = new ConcurrentHashMap<>();
+
+    /**
+     * Client assertion templates per constant claims (client and audience) and algorithm
+     */
+    private final Cache<TemplateKey, ClientAssertionTemplate> templates = Caffeine.newBuilder()
+        .maximumSize(MAXIMUM_TEMPLATES)
+        .build();
+
+    public JwsSignerRegistry(final JWKSet jwkSet) {
+        this.jwkSet = jwkSet;
+    }
+
+    /**
+     * Signs the claims as a JWT
+     * @param claimsSet
+     * @param jwsAlg
+     * @return signed JWT
+     * @throws JOSEException when no key of the JWK set supports the algorithm
+     */
+    public JWSObject sign(final JWTClaimsSet claimsSet, final JWSAlgorithm jwsAlg) throws JOSEException {
+        final PreparedSigner signer = getSigner(jwsAlg);
+
+        final JWSObject jwsObject = new JWSObject(signer.header(), claimsSet.toPayload());
+        jwsObject.sign(signer.signer());
+
+        return jwsObject;
+    }
+
+    /**
+     * Returns the (cached) template of client assertions with the given constant claims;
+     * see {@link ClientAssertionTemplate}
+     * @param constantClaims - claims other than "extensions", "iat", "exp" and "jti",
+     * which vary per request
+     * @param jwsAlg
+     * @return ClientAssertionTemplate
+     * @throws JOSEException when no key of the JWK set supports the algorithm
+     */
+    public ClientAssertionTemplate getTemplate(final JWTClaimsSet constantClaims, final JWSAlgorithm jwsAlg)
+            throws JOSEException {
+        final PreparedSigner signer = getSigner(jwsAlg);
+
+        return templates.get(new TemplateKey(constantClaims.getClaims(), jwsAlg),
+                key -> new ClientAssertionTemplate(signer.header(), signer.signer(), constantClaims));
+    }
+
+    /**
+     * Like {@link #getTemplate(JWTClaimsSet, JWSAlgorithm)}; the claims are only built
+     * when no template exists yet
+     * @param constantClaims - claims other than "extensions", "iat", "exp" and "jti"
+     * @param jwsAlg
+     * @return ClientAssertionTemplate
+     * @throws JOSEException when no key of the JWK set supports the algorithm
+     */
+    public ClientAssertionTemplate getTemplate(final JWTClaimsSet.Builder constantClaims,
+            final JWSAlgorithm jwsAlg) throws JOSEException {
+        // Looked up by a view of the builder's claims, stored under the built (immutable) claims
+        final ClientAssertionTemplate template = templates
+            .getIfPresent(new TemplateKey(constantClaims.getClaims(), jwsAlg));
+
+        return template != null ? template : getTemplate(constantClaims.build(), jwsAlg);
+    }
+
+    /**
+     * @return number of client assertion templates held
+     */
+    long templateCount() {
+        templates.cleanUp();
+        return templates.estimatedSize();
+    }
+
+    /**
+     * @param jwsAlg
+     * @return true when a key of the JWK set can sign with the algorithm
+     */
+    public boolean supports(final JWSAlgorithm jwsAlg) {
+        return !selectKeys(headerBuilder(jwsAlg).build()).isEmpty();
+    }
+
+    /**
+     * Picks the signing algorithm for a server endpoint
+     * @param serverAlgorithms - algorithms advertised in the server metadata, e.g.,
+     * token_endpoint_auth_signing_alg_values_supported; RS256 when not advertised
+     * @return most preferred algorithm supported by both the keys and the server
+     * @throws JOSEException when there is no common algorithm
+     */
+    public JWSAlgorithm negotiate(final List<String> serverAlgorithms) throws JOSEException {
+        final List<String> advertised = serverAlgorithms == null || serverAlgorithms.isEmpty()
+                ? DEFAULT_SERVER_ALGORITHMS : serverAlgorithms;
+
+        final JWSAlgorithm jwsAlg = negotiated.get(advertised);
+        if (jwsAlg != null) {
+            return jwsAlg;
+        }
+
+        for (JWSAlgorithm candidate : PREFERRED_ALGORITHMS) {
+            if (advertised.contains(candidate.getName()) && supports(candidate)) {
+                negotiated.putIfAbsent(List.copyOf(advertised), candidate);
+                return candidate;
+            }
+        }
+
+        throw new JOSEException("No key supports any of the server's signing algorithms " + advertised);
+    }
+
+    private PreparedSigner getSigner(final JWSAlgorithm jwsAlg) throws JOSEException {
+        final PreparedSigner signer = signers.get(jwsAlg);
+        if (signer != null) {
+            return signer;
+        }
+
+        // Concurrent first uses may both build a signer; either one is kept
+        final PreparedSigner created = createSigner(jwsAlg);
+        final PreparedSigner previous = signers.putIfAbsent(jwsAlg, created);
+
+        return previous != null ? previous : created;
+    }
+
+    @SuppressWarnings("deprecation")
+    private PreparedSigner createSigner(final JWSAlgorithm jwsAlg) throws JOSEException {
+        final List<JWK> jwks = selectKeys(headerBuilder(jwsAlg).build());
+        if (jwks.isEmpty()) {
+            throw new JOSEException("No JWKs found for signing");
+        }
+
+        final JWK jwk = jwks.get(0);
+        final JWSHeader header = headerBuilder(jwsAlg).keyID(jwk.getKeyID())
+            .x509CertURL(jwk.getX509CertURL())
+            .x509CertChain(jwk.getX509CertChain())
+            .x509CertSHA256Thumbprint(jwk.getX509CertSHA256Thumbprint())
+            .x509CertThumbprint(jwk.getX509CertThumbprint())
+            .build();
+
+        // A parsed header keeps its base64url form, which is otherwise re-serialized
+        // (x5c included) on every signature
+        final JWSHeader encodedHeader;
+        try {
+            encodedHeader = JWSHeader.parse(header.toBase64URL());
+        } catch (ParseException e) {
+            throw new JOSEException(e.getMessage(), e);
+        }
+
+        return new PreparedSigner(encodedHeader, SIGNER_FACTORY.createJWSSigner(jwk, jwsAlg));
+    }
+
+    private List<JWK> selectKeys(final JWSHeader header) {
+        final JWKMatcher matcher = JWKMatcher.forJWSHeader(header);
+
+        return matcher != null ? new JWKSelector(matcher).select(jwkSet) : List.of();
+    }
+
+    private static JWSHeader.Builder headerBuilder(final JWSAlgorithm jwsAlg) {
+        return new JWSHeader.Builder(jwsAlg).type(JOSEObjectType.JWT);
+    }
+
+    private record PreparedSigner(JWSHeader header, JWSSigner signer) {
+    }
+
+    private record TemplateKey(Map<String, Object> constantClaims, JWSAlgorithm jwsAlg) {
+    }
+
+}
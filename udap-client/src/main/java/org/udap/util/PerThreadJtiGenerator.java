@@ -0,0 +1,51 @@
+package org.udap.util;
+
+import java.security.SecureRandom;
+
+import com.nimbusds.jose.util.Base64URL;
+
+/**
+ * jti generator without shared state on the hot path: each thread draws a 96 bit random
+ * prefix from a SecureRandom once and then appends its own counter. Values are unique
+ * within a thread by the counter and across threads, processes and restarts by the
+ * prefix (a collision of two prefixes is as likely as one of two random 96 bit values),
+ * so no jti repeats within any "exp" window.
+ */
+final class PerThreadJtiGenerator implements JtiGenerator {
+
+    static final PerThreadJtiGenerator INSTANCE = new PerThreadJtiGenerator();
+
+    private static final int PREFIX_BYTES = 12;
+
+    private static final SecureRandom SEED = new SecureRandom();
+
+    private static final ThreadLocal<Sequence> SEQUENCES = ThreadLocal.withInitial(Sequence::new);
+
+    private PerThreadJtiGenerator() {
+
+    }
+
+    @Override
+    public String next() {
+        return SEQUENCES.get().next();
+    }
+
+    private static final class Sequence {
+
+        private final String prefix;
+
+        private long counter;
+
+        Sequence() {
+            final byte[] random = new byte[PREFIX_BYTES];
+            SEED.nextBytes(random);
+            this.prefix = Base64URL.encode(random) + "-";
+        }
+
+        String next() {
+            return prefix + Long.toString(counter++, Character.MAX_RADIX);
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.udap.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller performs the call while
+ * every caller arriving before it completes waits for, and receives, the same result. A
+ * failure is shared the same way, so that waiters do not each retry against an already
+ * struggling server. Once a call completes the key is released and the next caller
+ * starts a new call.
+ *
+ * Every call made for a given key is expected to throw the same checked exception type.
+ * Blocking and asynchronous callers share the same calls in flight.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * A call that may throw a checked exception
+     * @param <V> result type
+     * @param <E> checked exception type
+     */
+    @FunctionalInterface
+    public interface Flight<V, E extends Exception> {
+
+        V call() throws E;
+
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Performs the call, or waits for the call already in flight for the key
+     * @param <E> checked exception type thrown by the call
+     * @param key
+     * @param flight
+     * @return result of the call
+     * @throws E
+     */
+    public <E extends Exception> V execute(final K key, final Flight<V, E> flight) throws E {
+        final CompletableFuture<V> call = new CompletableFuture<>();
+        final CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            return await(leader);
+        }
+
+        try {
+            final V value = flight.call();
+            call.complete(value);
+
+            return value;
+        } catch (Throwable t) {
+            call.completeExceptionally(t);
+
+            throw t;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Starts the asynchronous call, or joins the call already in flight for the key,
+     * without blocking the caller
+     * @param key
+     * @param flight - starts the call
+     * @return result of the call
+     */
+    public CompletableFuture<V> executeAsync(final K key, final Supplier<? extends CompletionStage<V>> flight) {
+        final CompletableFuture<V> call = new CompletableFuture<>();
+        final CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+        if (leader != null) {
+            return leader.copy();
+        }
+
+        try {
+            flight.get().whenComplete((value, t) -> {
+                inFlight.remove(key, call);
+                if (t != null) {
+                    call.completeExceptionally(t instanceof CompletionException ? t.getCause() : t);
+                } else {
+                    call.complete(value);
+                }
+            });
+        } catch (Throwable t) {
+            inFlight.remove(key, call);
+            call.completeExceptionally(t);
+        }
+
+        // Callers cancelling their copy do not cancel the call shared with other callers
+        return call.copy();
+    }
+
+    /**
+     * @return number of keys with a call in flight
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V await(final CompletableFuture<V> leader) throws E {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+
+            // Calls for the same key throw the same checked exception type
+            throw (E) cause;
+        }
+    }
+
+}
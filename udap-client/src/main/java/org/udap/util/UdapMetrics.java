@@ -0,0 +1,183 @@
+package org.udap.util;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.search.Search;
+import reactor.core.publisher.Mono;
+
+/**
+ * Micrometer timers of the UDAP client stages: discovery (metadata fetch and signed
+ * metadata verification), keystore load, JWS signing and the registration and token
+ * requests. Timers publish a percentile histogram and are tagged by authorization
+ * server, client nickname and outcome where the stage knows them.
+ *
+ * Meters are registered with the global registry, like the connection pool metrics of
+ * the shared HTTP client; Spring Boot Actuator adds its registry to the global one.
+ */
+public final class UdapMetrics {
+
+    private UdapMetrics() {
+
+    }
+
+    public static final String METADATA_FETCH = "udap.client.metadata.fetch";
+
+    public static final String METADATA_VERIFICATION = "udap.client.metadata.verification";
+
+    public static final String KEYSTORE_LOAD = "udap.client.keystore.load";
+
+    public static final String JWS_SIGNING = "udap.client.jws.signing";
+
+    public static final String REGISTRATION_REQUEST = "udap.client.registration.request";
+
+    public static final String TOKEN_REQUEST = "udap.client.token.request";
+
+    public static final String AUTHORIZATION_SERVER = "authorization_server";
+
+    public static final String CLIENT = "client";
+
+    public static final String ALGORITHM = "algorithm";
+
+    public static final String TOKEN = "token";
+
+    public static final String OUTCOME = "outcome";
+
+    public static final String SUCCESS = "success";
+
+    /**
+     * No metadata or response body, e.g., the server answered other than 200 OK
+     */
+    public static final String EMPTY = "empty";
+
+    /**
+     * Conditional request answered 304 Not Modified
+     */
+    public static final String NOT_MODIFIED = "not_modified";
+
+    /**
+     * Signed metadata that failed verification or does not match the metadata
+     */
+    public static final String UNTRUSTED = "untrusted";
+
+    public static final String ERROR = "error";
+
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Tag value of an unknown authorization server or client
+     */
+    private static final String NONE = "none";
+
+    /**
+     * Tag and meter name prefix of the cache metrics
+     */
+    private static final String CACHE = "cache";
+
+    private static final Duration MINIMUM_EXPECTED = Duration.ofMillis(1);
+
+    private static final Duration MAXIMUM_EXPECTED = Duration.ofMinutes(2);
+
+    public static MeterRegistry getRegistry() {
+        return Metrics.globalRegistry;
+    }
+
+    /**
+     * @param keyValues - tag keys and values; null values are tagged "none"
+     * @return Tags
+     */
+    public static Tags tags(final String... keyValues) {
+        Tags tags = Tags.empty();
+        for (int i = 0; i + 1 < keyValues.length; i += 2) {
+            tags = tags.and(keyValues[i], keyValues[i + 1] == null ? NONE : keyValues[i + 1]);
+        }
+
+        return tags;
+    }
+
+    public static Timer.Sample start() {
+        return Timer.start(getRegistry());
+    }
+
+    /**
+     * Records the time since the sample was started
+     * @param sample
+     * @param name
+     * @param outcome
+     * @param tags
+     */
+    public static void stop(final Timer.Sample sample, final String name, final String outcome, final Tags tags) {
+        sample.stop(timer(name, tags.and(OUTCOME, outcome)));
+    }
+
+    /**
+     * Times each subscription of a Mono: "success" when it emits, "empty", "error" or
+     * "cancelled" otherwise
+     * @param name
+     * @param tags
+     * @return operator for {@link Mono#transform(Function)}
+     */
+    public static <T> Function<Mono<T>, Mono<T>> timed(final String name, final Tags tags) {
+        return timed(name, tags, value -> SUCCESS);
+    }
+
+    /**
+     * Like {@link #timed(String, Tags)}, with the outcome of an emitted value given by the
+     * caller
+     * @param name
+     * @param tags
+     * @param outcome - outcome of an emitted value
+     * @return operator for {@link Mono#transform(Function)}
+     */
+    public static <T> Function<Mono<T>, Mono<T>> timed(final String name, final Tags tags,
+            final Function<? super T, String> outcome) {
+        return mono -> Mono.defer(() -> {
+            final Timer.Sample sample = start();
+
+            return mono.doOnSuccess(value -> stop(sample, name, value != null ? outcome.apply(value) : EMPTY, tags))
+                .doOnError(e -> stop(sample, name, ERROR, tags))
+                .doOnCancel(() -> stop(sample, name, CANCELLED, tags));
+        });
+    }
+
+    /**
+     * Publishes the hit, miss, eviction and size metrics of a cache built with
+     * {@code recordStats()}. A cache created again under the same name replaces the
+     * meters of the one before, so that re-created caches neither report through stale
+     * gauges nor add meters without bound
+     * @param cache
+     * @param cacheName
+     * @return the cache
+     */
+    public static <K, V, C extends Cache<K, V>> C monitor(final C cache, final String cacheName) {
+        final MeterRegistry registry = getRegistry();
+        synchronized (registry) {
+            Search.in(registry)
+                .tag(CACHE, cacheName)
+                .meters()
+                .stream()
+                .filter(meter -> meter.getId().getName().startsWith(CACHE + "."))
+                .forEach(registry::remove);
+
+            return CaffeineCacheMetrics.monitor(registry, cache, cacheName);
+        }
+    }
+
+    private static Timer timer(final String name, final Tags tags) {
+        return Timer.builder(name)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(MINIMUM_EXPECTED)
+            .maximumExpectedValue(MAXIMUM_EXPECTED)
+            .register(getRegistry());
+    }
+
+}
@@ -8,25 +8,27 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
+import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.util.Assert;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.BodyInserters.FormInserter;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.udap.config.ClientKeyMaterial;
 import org.udap.config.UdapFhirClient;
 import org.udap.model.AccessTokenResponse;
 import org.udap.model.AuthZExtension;
@@ -52,17 +54,15 @@ import com.nimbusds.jose.proc.JWSKeySelector;
 import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.Base64;
-import com.nimbusds.jose.util.JSONObjectUtils;
 import com.nimbusds.jose.util.X509CertUtils;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.JWTClaimsSet.Builder;
 import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
 import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 
-import io.netty.handler.logging.LogLevel;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import reactor.netty.http.client.HttpClient;
-import reactor.netty.transport.logging.AdvancedByteBufFormat;
+import reactor.core.publisher.Mono;
 
 /**
  * Generic utility that support base UDAP specifications
@@ -84,17 +84,27 @@ public final class UdapUtil {
             "authorization_endpoint", "token_endpoint", "registration_endpoint"));
 
     /**
-     * TODO: Refine / replace with a performant method
+     * Signature algorithms accepted for signed server metadata; RS256 is required of every
+     * server, ES256 and ES384 are permitted
+     * http://hl7.org/fhir/us/udap-security/discovery.html#signed-metadata-elements
+     */
+    public static final Set<JWSAlgorithm> SIGNED_METADATA_ALGORITHMS = Set.of(JWSAlgorithm.RS256,
+            JWSAlgorithm.ES256, JWSAlgorithm.ES384);
+
+    /**
+     * Authentication token claim holding the authorization extension objects, keyed by
+     * extension name
+     * http://hl7.org/fhir/us/udap-security/b2b.html#constructing-authentication-token
+     */
+    public static final String EXTENSIONS_CLAIM = "extensions";
+
+    /**
      * @param date
      * @param ttl
-     * @return
+     * @return date plus ttl seconds
      */
     public static Date addSecondsToDate(Date date, int ttl /* seconds */) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.add(Calendar.SECOND, ttl);
-
-        return calendar.getTime();
+        return new Date(date.getTime() + ttl * 1000L);
     }
 
     /**
@@ -126,12 +136,31 @@ public final class UdapUtil {
      */
     public static JWTClaimsSet createSoftwareStatement(final UdapFhirClient fhirClient, final String audience)
             throws IOException, CertificateParsingException {
-        final X509Certificate clientX509 = CommonUtil.readX509File(URI.create(fhirClient.getX509Location()));
+        return createSoftwareStatement(fhirClient, audience, JtiGenerator.getDefault());
+    }
 
+    /**
+     * Create client's software statement to-be incorporated into the clients trusted
+     * dynamic client registration request
+     * @param fhirClient - FHIR client values such as name and certificate location
+     * @param audience - The Authorization Server's "registration URL"
+     * @param jtiGenerator - source of "jti"
+     * @return
+     * @throws IOException
+     * @throws CertificateParsingException
+     */
+    public static JWTClaimsSet createSoftwareStatement(final UdapFhirClient fhirClient, final String audience,
+            final JtiGenerator jtiGenerator) throws IOException, CertificateParsingException {
         // iss required Issuer of the JWT -- unique identifying client URI. This SHALL
         // match the value of a uniformResourceIdentifier entry in the Subject Alternative
         // Name extension of the client's certificate included in the x5c JWT header
-        final String iss = getSubjectAlternativeName(clientX509);
+        final String iss;
+        final ClientKeyMaterial keyMaterial = fhirClient.getKeyMaterial();
+        if (keyMaterial != null) {
+            iss = keyMaterial.getSubjectAlternativeName();
+        } else {
+            iss = getSubjectAlternativeName(CommonUtil.readX509File(URI.create(fhirClient.getX509Location())));
+        }
 
         // sub required Same as iss. In typical use, the client application will not yet
         // have a client_id from the Authorization Server
@@ -150,7 +179,7 @@ public final class UdapUtil {
         // statement. This value SHALL NOT be reused by the client app in another software
         // statement or authentication JWT before the time specified in the exp claim has
         // passed
-        final String jti = UUID.randomUUID().toString();
+        final String jti = jtiGenerator.next();
 
         final JWTClaimsSet.Builder claimsSetBuilder = new JWTClaimsSet.Builder().issuer(iss)
             .subject(sub)
@@ -233,6 +262,46 @@ public final class UdapUtil {
         return minter.mint(header, claimsSet.toPayload(), null);
     }
 
+    /**
+     * Signs the claims with the client's pre-built signer for the algorithm; preferred over
+     * {@link #createJwtWithSignature(JWTClaimsSet, JWKSet, JWSAlgorithm)} on hot paths as
+     * key selection and signer construction happen once per key and algorithm
+     * @param claimsSet
+     * @param signers - signers of the client's key material
+     * @param jwsAlg
+     * @return
+     * @throws JOSEException
+     */
+    public static JWSObject createJwtWithSignature(final JWTClaimsSet claimsSet, final JwsSignerRegistry signers,
+            final JWSAlgorithm jwsAlg) throws JOSEException {
+        return signers.sign(claimsSet, jwsAlg);
+    }
+
+    /**
+     * Signs for the client, timed as {@link UdapMetrics#JWS_SIGNING}
+     * @param fhirClient
+     * @param jwsAlg
+     * @param token - "software_statement" or "authn_token"
+     * @param signing
+     * @return
+     * @throws JOSEException
+     */
+    private static JWSObject sign(final UdapFhirClient fhirClient, final JWSAlgorithm jwsAlg, final String token,
+            final JwsSigning signing) throws JOSEException {
+        final Timer.Sample sample = UdapMetrics.start();
+        String outcome = UdapMetrics.ERROR;
+        try {
+            final JWSObject signed = signing.sign();
+            outcome = UdapMetrics.SUCCESS;
+
+            return signed;
+        } finally {
+            UdapMetrics.stop(sample, UdapMetrics.JWS_SIGNING, outcome,
+                    UdapMetrics.tags(UdapMetrics.CLIENT, fhirClient.getClientNickname(), UdapMetrics.ALGORITHM,
+                            jwsAlg.getName(), UdapMetrics.TOKEN, token));
+        }
+    }
+
     /**
      * Helper function to construct a JWT Authentication Token See -
      * http://hl7.org/fhir/us/udap-security/b2b.html#constructing-authentication-token
@@ -243,6 +312,47 @@ public final class UdapUtil {
      * @throws CertificateParsingException
      */
     public static Builder createAuthNToken(final UdapFhirClient fhirClient, final String audience) {
+        return createAuthNToken(fhirClient, audience, Clock.systemUTC(), JtiGenerator.getDefault());
+    }
+
+    /**
+     * Helper function to construct a JWT Authentication Token See -
+     * http://hl7.org/fhir/us/udap-security/b2b.html#constructing-authentication-token
+     * @param fhirClient - FHIR client values such as name and certificate location
+     * @param audience - The FHIR Authorization Server's token endpoint URL
+     * @param clock - source of "iat"
+     * @param jtiGenerator - source of "jti"
+     * @return
+     */
+    public static Builder createAuthNToken(final UdapFhirClient fhirClient, final String audience,
+            final Clock clock, final JtiGenerator jtiGenerator) {
+        // iat required Issued time integer for this authentication JWT, expressed in
+        // seconds since the "Epoch"
+        final Instant issueTime = clock.instant();
+
+        // exp required Expiration time integer for this authentication JWT, expressed in
+        // seconds since the "Epoch" (1970-01-01T00:00:00Z UTC)
+        final Instant expirationTime = issueTime.plusSeconds(fhirClient.getAuthNTokenTtl());
+
+        // jti required A string value that uniquely identifies this authentication JWT.
+        // This value SHALL NOT be reused by the client
+        // app in another authentication JWT before the time specified in the exp claim
+        // has passed
+        final String jti = jtiGenerator.next();
+
+        return createAuthNTokenConstantClaims(fhirClient, audience).issueTime(Date.from(issueTime))
+            .expirationTime(Date.from(expirationTime))
+            .jwtID(jti);
+    }
+
+    /**
+     * Claims of the JWT Authentication Token that are the same for every token of the
+     * client and token endpoint, i.e., all but "iat", "exp" and "jti"
+     * @param fhirClient
+     * @param audience - The FHIR Authorization Server's token endpoint URL
+     * @return
+     */
+    private static Builder createAuthNTokenConstantClaims(final UdapFhirClient fhirClient, final String audience) {
         /**
          * NOTE FROM UDAP.org: UDAP Test Tool 1.0.18: Tests 7, 18 and 20 have now been
          * updated accordingly; the 'sub' value of Authentication JWTs must now be set to
@@ -256,32 +366,16 @@ public final class UdapUtil {
         // Server during the registration process
         final String sub = fhirClient.getClientId();
 
-        // iat required Issued time integer for this authentication JWT, expressed in
-        // seconds since the "Epoch"
-        final Date issueTime = new Date();
-
-        // exp required Expiration time integer for this authentication JWT, expressed in
-        // seconds since the "Epoch" (1970-01-01T00:00:00Z UTC)
-        final Date expirationTime = addSecondsToDate(issueTime, fhirClient.getAuthNTokenTtl());
-
-        // jti required A string value that uniquely identifies this authentication JWT.
-        // This value SHALL NOT be reused by the client
-        // app in another authentication JWT before the time specified in the exp claim
-        // has passed
-        final String jti = UUID.randomUUID().toString();
-
         return new JWTClaimsSet.Builder().issuer(iss)
             .subject(sub)
             // The FHIR Authorization Server's token endpoint URL
-            .audience(audience)
-            .issueTime(issueTime)
-            .expirationTime(expirationTime)
-            .jwtID(jti);
+            .audience(audience);
     }
 
     /**
      * Attaches Extension Object (prior to digital signature) to an JWT - Authorization
-     * Token (i.e., claimset)
+     * Token (i.e., claimset). An extension is merged into the "extensions" claim already
+     * present.
      * @param <E>
      * @param claimsSet - Existing claim set produced by createAuthNToken
      * @param extension - An authorization extension object to be included claims set
@@ -292,26 +386,44 @@ public final class UdapUtil {
      */
     public static <E extends AuthZExtension> Builder appendAuthNExtension(final Builder claimsSetBuilder,
             final E extension) throws JsonProcessingException, ParseException {
-        Map<String, Object> claims = claimsSetBuilder.getClaims();
+        return appendAuthNExtensions(claimsSetBuilder, List.of(extension));
+    }
 
-        try {
-            log.debug("AuthZExtension ", extension);
+    /**
+     * Attaches Extension Objects (prior to digital signature) to an JWT - Authorization
+     * Token (i.e., claimset), merged in one pass into a single "extensions" claim keyed
+     * by extension name
+     * @param claimsSetBuilder - Existing claim set produced by createAuthNToken
+     * @param extensions - authorization extension objects to be included in the claims set
+     * @return
+     * @throws JsonProcessingException
+     * @throws ParseException
+     */
+    public static Builder appendAuthNExtensions(final Builder claimsSetBuilder,
+            final List<? extends AuthZExtension> extensions) throws JsonProcessingException, ParseException {
+        if (extensions == null || extensions.isEmpty()) {
+            return claimsSetBuilder;
+        }
 
-            if (!claims.containsKey("extensions")) {
-                String ext = CommonUtil.getObjectAsJson(extension);
+        final Object existing = claimsSetBuilder.getClaims().get(EXTENSIONS_CLAIM);
+        if (existing == null && extensions.size() == 1) {
+            // Immutable extensions hand out their cached claims; no copy needed
+            return claimsSetBuilder.claim(EXTENSIONS_CLAIM, extensions.get(0).toClaims());
+        }
 
-                claimsSetBuilder.claim("extensions",
-                        JSONObjectUtils.parse(ext) /* emptyExtensionList */);
-            } else {
-            	// TODO: Add to existing list of AuthN extensions
-            }
-        } catch (ClassCastException e) {
-            log.error("ClassCastException: {}", e);
+        final Map<String, Object> merged = new LinkedHashMap<>();
+        if (existing instanceof Map<?, ?> existingExtensions) {
+            existingExtensions.forEach((name, value) -> merged.put(name.toString(), value));
+        } else if (existing != null) {
+            throw new ParseException("The \"" + EXTENSIONS_CLAIM + "\" claim is not a JSON object", 0);
+        }
 
-            throw e;
+        for (AuthZExtension extension : extensions) {
+            log.debug("Appending AuthZ Extension: {}", extension);
+            merged.putAll(extension.toClaims());
         }
 
-        return claimsSetBuilder;
+        return claimsSetBuilder.claim(EXTENSIONS_CLAIM, merged);
     }
 
     /**
@@ -389,24 +501,40 @@ public final class UdapUtil {
     public static JWTClaimsSet getClaimsFromSignedServerMetadata(final String signedMetadata,
             final String requiredIssuer, final JWSAlgorithm expectedJWSAlg)
             throws ParseException, JOSEException, BadJOSEException {
+        Assert.notNull(expectedJWSAlg, "expectedJWSAlg cannot be null");
+
+        return getClaimsFromSignedServerMetadata(signedMetadata, requiredIssuer, Set.of(expectedJWSAlg));
+    }
+
+    /**
+     * 2.3 Signed metadata elements, signed with any of the accepted algorithms
+     * @See http://hl7.org/fhir/us/udap-security/discovery.html#signed-metadata-elements
+     * @param signedMetadata
+     * @param requiredIssuer
+     * @param acceptedJWSAlgs - e.g., {@link #SIGNED_METADATA_ALGORITHMS}
+     * @return
+     * @throws JOSEException
+     * @throws BadJOSEException
+     * @throws ParseException
+     */
+    public static JWTClaimsSet getClaimsFromSignedServerMetadata(final String signedMetadata,
+            final String requiredIssuer, final Set<JWSAlgorithm> acceptedJWSAlgs)
+            throws ParseException, JOSEException, BadJOSEException {
         Assert.hasText(signedMetadata, "metadataJwt cannot be empty");
         Assert.hasText(requiredIssuer, "requiredIssuer cannot be empty");
-        Assert.notNull(expectedJWSAlg, "expectedJWSAlg cannot be null");
+        Assert.notEmpty(acceptedJWSAlgs, "acceptedJWSAlgs cannot be empty");
 
         final JWSObject jwsObject = JWSObject.parse(signedMetadata);
         final List<Base64> x5c = jwsObject.getHeader().getX509CertChain();
-        final X509Certificate serverCertificate;
-        if (x5c != null && !x5c.isEmpty()) {
-            serverCertificate = X509CertUtils.parse(x5c.get(0).decode());
-        } else {
-            // TODO: throw UDAP Exception object
-            return null;
+        if (x5c == null || x5c.isEmpty()) {
+            throw new BadJOSEException("Signed JWT rejected: missing x5c");
         }
+        final X509Certificate serverCertificate = X509CertUtils.parse(x5c.get(0).decode());
 
         final JWKSet jwkSet = new JWKSet(JWK.parse(serverCertificate));
 
         final JWKSource<SecurityContext> jwkSource = new ImmutableJWKSet<>(jwkSet);
-        final JWSKeySelector<SecurityContext> jwsKeySelector = new JWSVerificationKeySelector<>(expectedJWSAlg,
+        final JWSKeySelector<SecurityContext> jwsKeySelector = new JWSVerificationKeySelector<>(acceptedJWSAlgs,
                 jwkSource);
 
         final DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
@@ -422,38 +550,110 @@ public final class UdapUtil {
          * DefaultJWTClaimsVerifier:
          * https://www.javadoc.io/doc/com.nimbusds/nimbus-jose-jwt/latest/com/nimbusds/jwt/proc/DefaultJWTClaimsVerifier.html
          */
-        jwtProcessor.setJWTClaimsSetVerifier(new DefaultJWTClaimsVerifier<>(
-                new JWTClaimsSet.Builder().issuer(requiredIssuer).build(), SERVER_METADATA_CLAIMS));
+        jwtProcessor.setJWTClaimsSetVerifier(getServerMetadataClaimsVerifier(requiredIssuer));
 
         return jwtProcessor.process(signedMetadata, null /* Optional SecurityContext */);
     }
 
+    /**
+     * @param requiredIssuer
+     * @return verifier of the required signed metadata claims and of their issuer
+     */
+    public static DefaultJWTClaimsVerifier<SecurityContext> getServerMetadataClaimsVerifier(
+            final String requiredIssuer) {
+        return new DefaultJWTClaimsVerifier<>(new JWTClaimsSet.Builder().issuer(requiredIssuer).build(),
+                SERVER_METADATA_CLAIMS);
+    }
+
     /**
      * Helper to retrieve UDAP server metadata at the /.well-known/udap endpoint
      * @param baseUrl
      * @return
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 200 OK; use {@link org.udap.service.TrustedServerCache#get}, which bounds the call
+     * by the server's deadline and throws {@link org.udap.exception.UdapException}s
      */
+    @Deprecated
     public static ServerMetadata getServerMetadata(String baseUrl) {
-        WebClient webClient = WebClient.builder()
-            .baseUrl(baseUrl)
-            .defaultHeader("Accept", MediaType.APPLICATION_JSON_VALUE)
-            .build();
+        return getServerMetadata(UdapWebClientFactory.getShared(), baseUrl);
+    }
 
-        final ResponseEntity<ServerMetadata> metadataResponse = webClient.get()
-            .uri("/.well-known/udap")
+    /**
+     * Helper to retrieve UDAP server metadata at the /.well-known/udap endpoint
+     * @param webClient - shared, pooled client
+     * @param baseUrl
+     * @return
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 200 OK; use {@link org.udap.service.TrustedServerCache#get}, which bounds the call
+     * by the server's deadline and throws {@link org.udap.exception.UdapException}s
+     */
+    @Deprecated
+    public static ServerMetadata getServerMetadata(final WebClient webClient, final String baseUrl) {
+        return retrieveServerMetadata(webClient, baseUrl).block(Duration.ofMinutes(2));
+    }
+
+    /**
+     * Non-blocking retrieval of UDAP server metadata at the /.well-known/udap endpoint
+     * @param webClient - shared, pooled client
+     * @param baseUrl
+     * @return ServerMetadata; a WebClientResponseException error on an error status, empty
+     * on other answers than 200 OK; guard with
+     * {@link org.udap.service.AuthorizationServerResilience}
+     */
+    public static Mono<ServerMetadata> retrieveServerMetadata(final WebClient webClient, final String baseUrl) {
+        return webClient.get()
+            .uri(getDiscoveryUri(baseUrl))
+            .accept(MediaType.APPLICATION_JSON)
             .retrieve()
             .toEntity(ServerMetadata.class)
-            .block(Duration.ofMinutes(2));
-
-        if (metadataResponse != null && metadataResponse.getStatusCode() == HttpStatus.OK) {
-            return metadataResponse.getBody();
-
-        } /**else {
-            // TODO: Handle error scenarios
-        }*/
+            // Error statuses fail the call; other answers without metadata complete empty
+            .filter(metadataResponse -> metadataResponse.getStatusCode() == HttpStatus.OK)
+            .mapNotNull(ResponseEntity::getBody)
+            .transform(UdapMetrics.timed(UdapMetrics.METADATA_FETCH,
+                    UdapMetrics.tags(UdapMetrics.AUTHORIZATION_SERVER, baseUrl)));
+    }
 
-        return null;
+    /**
+     * Conditional retrieval of UDAP server metadata at the /.well-known/udap endpoint.
+     * The validators of a previously retrieved response are sent as If-None-Match and
+     * If-Modified-Since, so that unchanged metadata is answered 304 Not Modified without
+     * a body.
+     * @param webClient - shared, pooled client
+     * @param baseUrl
+     * @param eTag - ETag of the previous response, may be null
+     * @param lastModified - Last-Modified of the previous response, may be null
+     * @return response with the ServerMetadata, or 304 without body; empty unless the
+     * server answered 200 OK or 304
+     */
+    public static Mono<ResponseEntity<ServerMetadata>> retrieveServerMetadata(final WebClient webClient,
+            final String baseUrl, final String eTag, final Instant lastModified) {
+        return webClient.get()
+            .uri(getDiscoveryUri(baseUrl))
+            .accept(MediaType.APPLICATION_JSON)
+            .headers(headers -> {
+                if (eTag != null) {
+                    headers.setIfNoneMatch(eTag);
+                }
+                if (lastModified != null) {
+                    headers.setIfModifiedSince(lastModified);
+                }
+            })
+            .retrieve()
+            .toEntity(ServerMetadata.class)
+            .filter(response -> response.getStatusCode() == HttpStatus.NOT_MODIFIED
+                    || response.getStatusCode() == HttpStatus.OK && response.hasBody())
+            .transform(UdapMetrics.timed(UdapMetrics.METADATA_FETCH,
+                    UdapMetrics.tags(UdapMetrics.AUTHORIZATION_SERVER, baseUrl),
+                    response -> response.getStatusCode() == HttpStatus.NOT_MODIFIED ? UdapMetrics.NOT_MODIFIED
+                            : UdapMetrics.SUCCESS));
+    }
 
+    /**
+     * @param baseUrl
+     * @return URI of the /.well-known/udap endpoint relative to the base URL
+     */
+    public static URI getDiscoveryUri(final String baseUrl) {
+        return UriComponentsBuilder.fromUriString(baseUrl).path("/.well-known/udap").build().toUri();
     }
 
     /**
@@ -465,45 +665,209 @@ public final class UdapUtil {
      * @throws CertificateException
      * @throws IOException
      * @throws JOSEException
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 2xx; use {@link org.udap.service.UdapClientService#register}, which bounds the call
+     * by the server's deadline and throws {@link org.udap.exception.UdapException}s
      */
+    @Deprecated
     public static RegistrationResponse registerClient(final UdapFhirClient fhirClient,
             final ServerMetadata serverMetadata, final String udapVersion, final JWKSet privateJwkSet)
             throws CertificateException, IOException, JOSEException {
+        return registerClient(UdapWebClientFactory.getShared(), fhirClient, serverMetadata, udapVersion,
+                privateJwkSet);
+    }
+
+    /**
+     * Performs registration of UDAP client at the appropriate URL as identified in the
+     * ServerMetadata that has been digitally signed with the FHIR client's private key
+     * @param webClient - shared, pooled client
+     * @param fhirClient
+     * @param serverMetadata
+     * @return
+     * @throws CertificateException
+     * @throws IOException
+     * @throws JOSEException
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 2xx; use {@link org.udap.service.UdapClientService#register}, which bounds the call
+     * by the server's deadline and throws {@link org.udap.exception.UdapException}s
+     */
+    @Deprecated
+    public static RegistrationResponse registerClient(final WebClient webClient, final UdapFhirClient fhirClient,
+            final ServerMetadata serverMetadata, final String udapVersion, final JWKSet privateJwkSet)
+            throws CertificateException, IOException, JOSEException {
+        return registerClient(webClient, fhirClient, serverMetadata, udapVersion,
+                new JwsSignerRegistry(privateJwkSet));
+    }
+
+    /**
+     * Performs registration of UDAP client at the appropriate URL as identified in the
+     * ServerMetadata that has been digitally signed with the FHIR client's private key
+     * @param webClient - shared, pooled client
+     * @param fhirClient
+     * @param serverMetadata
+     * @param udapVersion
+     * @param signers - signers of the client's key material
+     * @return
+     * @throws CertificateException
+     * @throws IOException
+     * @throws JOSEException
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 2xx; use {@link org.udap.service.UdapClientService#register}, which bounds the call
+     * by the server's deadline and throws {@link org.udap.exception.UdapException}s
+     */
+    @Deprecated
+    public static RegistrationResponse registerClient(final WebClient webClient, final UdapFhirClient fhirClient,
+            final ServerMetadata serverMetadata, final String udapVersion, final JwsSignerRegistry signers)
+            throws CertificateException, IOException, JOSEException {
+        final RegistrationRequest registrationRequest = createRegistrationRequest(fhirClient, serverMetadata,
+                udapVersion, signers);
+
+        return postRegistrationRequest(webClient, serverMetadata.getRegistrationEndpoint(), registrationRequest)
+            .block(Duration.ofMinutes(2));
+    }
+
+    /**
+     * Creates the client's software statement for the server's registration endpoint and
+     * signs it with the client's private key
+     * @param fhirClient
+     * @param serverMetadata
+     * @param udapVersion
+     * @param signers - signers of the client's key material
+     * @return RegistrationRequest
+     * @throws CertificateException
+     * @throws IOException
+     * @throws JOSEException
+     */
+    public static RegistrationRequest createRegistrationRequest(final UdapFhirClient fhirClient,
+            final ServerMetadata serverMetadata, final String udapVersion, final JwsSignerRegistry signers)
+            throws CertificateException, IOException, JOSEException {
+        return createRegistrationRequest(fhirClient, serverMetadata, udapVersion, signers,
+                JtiGenerator.getDefault());
+    }
 
+    /**
+     * Creates the client's software statement for the server's registration endpoint and
+     * signs it with the client's private key
+     * @param fhirClient
+     * @param serverMetadata
+     * @param udapVersion
+     * @param signers - signers of the client's key material
+     * @param jtiGenerator - source of the software statement's "jti"
+     * @return RegistrationRequest
+     * @throws CertificateException
+     * @throws IOException
+     * @throws JOSEException
+     */
+    public static RegistrationRequest createRegistrationRequest(final UdapFhirClient fhirClient,
+            final ServerMetadata serverMetadata, final String udapVersion, final JwsSignerRegistry signers,
+            final JtiGenerator jtiGenerator) throws CertificateException, IOException, JOSEException {
         String registrationEndpoint = serverMetadata.getRegistrationEndpoint();
 
-        // Create client software statement then sign with the client's private key
-        JWTClaimsSet claimsSet = createSoftwareStatement(fhirClient, registrationEndpoint);
-        JWSObject signedStatement = createJwtWithSignature(claimsSet, privateJwkSet, JWSAlgorithm.RS256);
+        // Create client software statement then sign with the client's private key using the
+        // preferred algorithm the registration endpoint supports
+        JWTClaimsSet claimsSet = createSoftwareStatement(fhirClient, registrationEndpoint, jtiGenerator);
+        JWSAlgorithm jwsAlg = signers
+            .negotiate(serverMetadata.getRegistrationEndpointJwtSigningAlgValuesSupported());
+        JWSObject signedStatement = sign(fhirClient, jwsAlg, "software_statement",
+                () -> createJwtWithSignature(claimsSet, signers, jwsAlg));
 
         //////////////////////////////////////////////////////////////////
         // https://www.udap.org/UDAPTestTool/
         // Client APP TEST - Test 3: Trusted dynamic client registration
         //////////////////////////////////////////////////////////////////
-        RegistrationRequest registrationRequest = RegistrationRequest.builder()
+        return RegistrationRequest.builder()
             .softwareStatement(signedStatement.serialize())
             .udap(udapVersion)
             .build();
+    }
 
-        // TODO: Support automatic debug logging only when necessary
-        HttpClient httpClient = HttpClient.create()
-            .wiretap("reactor.netty.http.client.HttpClient", LogLevel.DEBUG, AdvancedByteBufFormat.TEXTUAL);
-
-        WebClient webClient = WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
-
-        ResponseEntity<RegistrationResponse> response = webClient.post()
+    /**
+     * Non-blocking post of a registration request to the registration endpoint
+     * @param webClient - shared, pooled client
+     * @param registrationEndpoint
+     * @param registrationRequest
+     * @return RegistrationResponse; a WebClientResponseException error on an error
+     * status, empty on other 2xx answers without a body; guard with
+     * {@link org.udap.service.AuthorizationServerResilience}
+     */
+    public static Mono<RegistrationResponse> postRegistrationRequest(final WebClient webClient,
+            final String registrationEndpoint, final RegistrationRequest registrationRequest) {
+        return webClient.post()
             .uri(registrationEndpoint)
             .accept(MediaType.APPLICATION_JSON)
             .body(BodyInserters.fromValue(registrationRequest))
             .retrieve()
             .toEntity(RegistrationResponse.class)
-            .block(Duration.ofMinutes(2));
+            .filter(response -> response.getStatusCode().is2xxSuccessful())
+            .mapNotNull(ResponseEntity::getBody);
+    }
+
+    /**
+     * Constructs the authentication token for the token endpoint, attaches the
+     * authorization extensions and signs it with the client's private key
+     * @param fhirClient
+     * @param tokenEndpoint
+     * @param authNExtensionList
+     * @param signers - signers of the client's key material
+     * @param jwsAlg - negotiated with the token endpoint, see
+     * {@link JwsSignerRegistry#negotiate(List)}
+     * @return signed authentication token
+     * @throws JsonProcessingException
+     * @throws ParseException
+     * @throws JOSEException
+     */
+    public static JWSObject createSignedAuthNToken(final UdapFhirClient fhirClient, final String tokenEndpoint,
+            final List<AuthZExtension> authNExtensionList, final JwsSignerRegistry signers,
+            final JWSAlgorithm jwsAlg)
+            throws JsonProcessingException, ParseException, JOSEException {
+        return createSignedAuthNToken(fhirClient, tokenEndpoint, authNExtensionList, signers, jwsAlg,
+                Clock.systemUTC(), JtiGenerator.getDefault());
+    }
 
-        if (response != null && response.getStatusCode().is2xxSuccessful()) {
-            return response.getBody();
+    /**
+     * Constructs the authentication token for the token endpoint, attaches the
+     * authorization extensions and signs it with the client's private key. The header
+     * and constant claims come pre-encoded from a {@link ClientAssertionTemplate}, one per
+     * client and token endpoint; only the extensions, "iat", "exp" and "jti" are encoded
+     * per token.
+     * @param fhirClient
+     * @param tokenEndpoint
+     * @param authNExtensionList
+     * @param signers - signers of the client's key material
+     * @param jwsAlg - negotiated with the token endpoint, see
+     * {@link JwsSignerRegistry#negotiate(List)}
+     * @param clock - source of "iat"
+     * @param jtiGenerator - source of "jti"
+     * @return signed authentication token
+     * @throws JsonProcessingException
+     * @throws ParseException
+     * @throws JOSEException
+     */
+    public static JWSObject createSignedAuthNToken(final UdapFhirClient fhirClient, final String tokenEndpoint,
+            final List<AuthZExtension> authNExtensionList, final JwsSignerRegistry signers,
+            final JWSAlgorithm jwsAlg, final Clock clock, final JtiGenerator jtiGenerator)
+            throws JsonProcessingException, ParseException, JOSEException {
+        // http://hl7.org/fhir/us/udap-security/b2b.html#constructing-authentication-token
+        Builder constantClaims = createAuthNTokenConstantClaims(fhirClient, tokenEndpoint);
+
+        // Attach available authorization extensions to access token request; they vary per
+        // request, so they are spliced into the token rather than kept in the template
+        @SuppressWarnings("unchecked")
+        Map<String, Object> extensions = (Map<String, Object>) appendAuthNExtensions(new JWTClaimsSet.Builder(),
+                authNExtensionList).getClaims().get(EXTENSIONS_CLAIM);
+
+        ClientAssertionTemplate template = signers.getTemplate(constantClaims, jwsAlg);
+        String jti = jtiGenerator.next();
+
+        // http://hl7.org/fhir/us/udap-security/b2b.html#client-credentials-grants
+        JWSObject authNToken = sign(fhirClient, jwsAlg, "authn_token",
+                () -> template.sign(clock.instant(), fhirClient.getAuthNTokenTtl(), jti, extensions));
+
+        if (log.isDebugEnabled()) {
+            log.debug("AuthN Token: {}", authNToken.serialize());
         }
 
-        return null;
+        return authNToken;
     }
 
     /**
@@ -511,43 +875,73 @@ public final class UdapUtil {
      * @param authNToken
      * @param tokenEndpoint
      * @return
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 200 OK; use {@link org.udap.service.UdapClientService#getAccessToken}, which caches
+     * tokens, bounds the call by the server's deadline and throws
+     * {@link org.udap.exception.UdapException}s
      */
+    @Deprecated
     public static AccessTokenResponse getAccessToken(final JWSObject authNToken, final String tokenEndpoint, final String scope) {
+        return getAccessToken(UdapWebClientFactory.getShared(), authNToken, tokenEndpoint, scope);
+    }
+
+    /**
+     * Post authN token to token endpoint to receive access token
+     * @param webClient - shared, pooled client
+     * @param authNToken
+     * @param tokenEndpoint
+     * @return
+     * @deprecated blocks for up to two minutes and returns null unless the server answered
+     * 200 OK; use {@link org.udap.service.UdapClientService#getAccessToken}, which caches
+     * tokens, bounds the call by the server's deadline and throws
+     * {@link org.udap.exception.UdapException}s
+     */
+    @Deprecated
+    public static AccessTokenResponse getAccessToken(final WebClient webClient, final JWSObject authNToken,
+            final String tokenEndpoint, final String scope) {
+        return postAccessTokenRequest(webClient, authNToken, tokenEndpoint, scope).block(Duration.ofMinutes(2));
+    }
+
+    /**
+     * Non-blocking post of the authN token to the token endpoint
+     * @param webClient - shared, pooled client
+     * @param authNToken
+     * @param tokenEndpoint
+     * @param scope
+     * @return AccessTokenResponse; a WebClientResponseException error on an error status,
+     * empty on other answers than 200 OK; guard with
+     * {@link org.udap.service.AuthorizationServerResilience}
+     */
+    public static Mono<AccessTokenResponse> postAccessTokenRequest(final WebClient webClient,
+            final JWSObject authNToken, final String tokenEndpoint, final String scope) {
         TokenRequestClientCredentialsGrant authNTokenRequest = TokenRequestClientCredentialsGrant.builder()
             .grantType("client_credentials")
             .clientAssertionType(URI.create("urn:ietf:params:oauth:client-assertion-type:jwt-bearer"))
             .clientAssertion(authNToken.serialize())
-            // TODO: pass as parameter
             .scope(scope)
             .udap("1")
             .build();
 
         log.debug("authNTokenRequest: {}", authNTokenRequest);
 
-        // TODO: Support automatic debug logging only when necessary
-        HttpClient httpClient = HttpClient.create()
-            .wiretap("reactor.netty.http.client.HttpClient", LogLevel.DEBUG, AdvancedByteBufFormat.TEXTUAL);
-
-        WebClient webClient = WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
-
         // https://www.udap.org/udap-jwt-client-auth.html - SECTION 7
-        ResponseEntity<AccessTokenResponse> response = webClient.post()
+        return webClient.post()
             .uri(tokenEndpoint)
             .contentType(MediaType.APPLICATION_FORM_URLENCODED)
             .accept(MediaType.APPLICATION_JSON)
             .body(UdapUtil.getFormInserter(authNTokenRequest))
             .retrieve()
-            // .onErrorMap(WebClientResponseException.class, e -> new
-            // BadRequestResponse(e))
             .toEntity(AccessTokenResponse.class)
-            .block(Duration.ofMinutes(2));
+            // Error statuses fail the call; other answers without a token complete empty
+            .filter(response -> response.getStatusCode() == HttpStatus.OK)
+            .mapNotNull(ResponseEntity::getBody);
+    }
 
-        // TODO: Implement robust error handling per WebClient best practices
-        if (response != null && response.getStatusCode() == HttpStatus.OK) {
-            return response.getBody();
-        }
+    @FunctionalInterface
+    private interface JwsSigning {
+
+        JWSObject sign() throws JOSEException;
 
-        return null;
     }
 
 }
@@ -0,0 +1,140 @@
+package org.udap.util;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.UdapHttpClientProperties;
+import org.udap.config.UdapResilienceProperties;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.logging.LogLevel;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.logging.AdvancedByteBufFormat;
+
+/**
+ * Builds the pooled HTTP client used for UDAP calls. Reusing one client keeps
+ * connections (and TLS sessions) alive across requests instead of paying a TCP and TLS
+ * handshake on every discovery, registration and token request.
+ *
+ * Connect and response timeouts are those of {@link UdapResilienceProperties}; hosts with
+ * their own timeouts get a variant of the client sharing the same connection pool.
+ */
+public final class UdapWebClientFactory {
+
+    private UdapWebClientFactory() {
+
+    }
+
+    /**
+     * Client with default settings for use outside of a Spring context, created on first
+     * use
+     */
+    private static final class SharedHolder {
+
+        private static final WebClient SHARED = create(new UdapHttpClientProperties());
+
+    }
+
+    public static WebClient getShared() {
+        return SharedHolder.SHARED;
+    }
+
+    public static ConnectionProvider createConnectionProvider(final UdapHttpClientProperties properties) {
+        return ConnectionProvider.builder(properties.getPoolName())
+            .maxConnections(properties.getMaxConnections())
+            .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+            .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+            .maxIdleTime(properties.getMaxIdleTime())
+            .maxLifeTime(properties.getMaxLifeTime())
+            .evictInBackground(properties.getEvictInBackground())
+            .metrics(properties.isMetrics())
+            .build();
+    }
+
+    public static HttpClient createHttpClient(final ConnectionProvider connectionProvider,
+            final UdapHttpClientProperties properties) {
+        HttpClient httpClient = HttpClient.create(connectionProvider);
+
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        if (properties.isWiretap()) {
+            httpClient = httpClient.wiretap("reactor.netty.http.client.HttpClient", LogLevel.DEBUG,
+                    AdvancedByteBufFormat.TEXTUAL);
+        }
+
+        return httpClient;
+    }
+
+    public static WebClient create(final HttpClient httpClient) {
+        return create(httpClient, new UdapResilienceProperties());
+    }
+
+    public static WebClient create(final HttpClient httpClient, final UdapResilienceProperties resilience) {
+        return WebClient.builder().clientConnector(new PerHostConnector(httpClient, resilience)).build();
+    }
+
+    public static WebClient create(final UdapHttpClientProperties properties) {
+        return create(properties, new UdapResilienceProperties());
+    }
+
+    public static WebClient create(final UdapHttpClientProperties properties,
+            final UdapResilienceProperties resilience) {
+        return create(createHttpClient(createConnectionProvider(properties), properties), resilience);
+    }
+
+    private static HttpClient withTimeouts(final HttpClient httpClient,
+            final UdapResilienceProperties.Timeouts timeouts) {
+        return httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) timeouts.getConnectTimeout().toMillis())
+            .responseTimeout(timeouts.getResponseTimeout());
+    }
+
+    /**
+     * Picks the client variant with the timeouts of the request's host
+     */
+    private static final class PerHostConnector implements ClientHttpConnector {
+
+        private final HttpClient httpClient;
+
+        private final UdapResilienceProperties resilience;
+
+        private final ClientHttpConnector defaultConnector;
+
+        private final ConcurrentMap<String, ClientHttpConnector> hostConnectors = new ConcurrentHashMap<>();
+
+        PerHostConnector(final HttpClient httpClient, final UdapResilienceProperties resilience) {
+            this.httpClient = httpClient;
+            this.resilience = resilience;
+            this.defaultConnector = new ReactorClientHttpConnector(withTimeouts(httpClient,
+                    resilience.timeoutsFor(null)));
+        }
+
+        @Override
+        public Mono<ClientHttpResponse> connect(final HttpMethod method, final URI uri,
+                final Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+            final String host = uri.getHost();
+            if (host == null || !resilience.getAuthorizationServers().containsKey(host)) {
+                return defaultConnector.connect(method, uri, requestCallback);
+            }
+
+            final ClientHttpConnector connector = hostConnectors.computeIfAbsent(host,
+                    key -> new ReactorClientHttpConnector(withTimeouts(httpClient, resilience.timeoutsFor(key))));
+
+            return connector.connect(method, uri, requestCallback);
+        }
+
+    }
+
+}
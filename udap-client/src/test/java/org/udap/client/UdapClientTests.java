@@ -9,9 +9,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.util.Assert;
-import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.udap.config.UdapFhirClient;
 import org.udap.config.UdapFhirClientPool;
+import org.udap.exception.UdapServerException;
 import org.udap.model.*;
 import org.udap.service.UdapClientService;
 import org.udap.util.CommonUtil;
@@ -58,7 +58,7 @@ class UdapClientTests {
     void checkX509Properties() throws IOException, CertificateParsingException {
         assertThat(udapClientService).isNotNull();
 
-        final UdapFhirClient fhirClient = udapFhirClientPool.getFhirClients().get(0);
+        final UdapFhirClient fhirClient = udapFhirClientPool.getDefault();
 
         URI x509Location = URI.create(fhirClient.getX509Location());
         X509Certificate x509 = CommonUtil.readX509File(x509Location);
@@ -78,7 +78,7 @@ class UdapClientTests {
             CertificateException, IOException {
         assertThat(udapClientService).isNotNull();
 
-        final UdapFhirClient fhirClient = udapFhirClientPool.getFhirClients().get(0);
+        final UdapFhirClient fhirClient = udapFhirClientPool.getDefault();
 
         URI privateKeyLocation = URI.create(fhirClient.getPrivateKeyLocation());
         PrivateKey privateKey = CommonUtil.getPrivateKey(privateKeyLocation, fhirClient.getPrivateKeySecret().toCharArray());
@@ -94,10 +94,10 @@ class UdapClientTests {
         final String defaultAuthorizationServer = "https://example.com/";
         final String expectedMetadataIssuer = "https://example.com/";
 
-        final UdapFhirClient fhirClient = udapFhirClientPool.getFhirClients().get(0);
+        final UdapFhirClient fhirClient = udapFhirClientPool.getDefault();
 
         // Perform (UDAP) Trusted Dynamic Client Registration
-        assertThrows(WebClientResponseException.class, () -> {
+        assertThrows(UdapServerException.class, () -> {
             RegistrationResponse response = udapClientService.register(fhirClient,
                     defaultAuthorizationServer, expectedMetadataIssuer,
                     "1" /* UDAP Version */, true /* must be trusted */);
@@ -144,10 +144,10 @@ class UdapClientTests {
 
         final List<AuthZExtension> authZExtensionList = Arrays.asList(hl7B2bHeader);
 
-        final UdapFhirClient fhirClient = udapFhirClientPool.getFhirClients().get(0);
+        final UdapFhirClient fhirClient = udapFhirClientPool.getDefault();
 
         // Perform (UDAP) Trusted Dynamic Client Registration
-        assertThrows(WebClientResponseException.class, () -> {
+        assertThrows(UdapServerException.class, () -> {
                     AccessTokenResponse response = udapClientService.getAccessToken(fhirClient,
                             defaultAuthorizationServer, expectedMetadataIssuer, scope,
                             authZExtensionList, true);
@@ -0,0 +1,40 @@
+package org.udap.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.CompositeHealth;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Starts the application with the dev profile, its client taken from the test client's
+ * environment
+ */
+@SpringBootTest(properties = {
+        "UDAP_FHIR_CLIENT_LOGO_URI=${UDAP_TEST_FHIR_CLIENT_LOGO_URI}",
+        "UDAP_FHIR_CLIENT_ID=${UDAP_TEST_FHIR_CLIENT_ID}",
+        "UDAP_FHIR_CLIENT_X509_LOCATION=${UDAP_TEST_FHIR_CLIENT_X509_LOCATION}",
+        "UDAP_FHIR_CLIENT_PRIVATE_KEY_LOCATION=${UDAP_TEST_FHIR_CLIENT_PRIVATE_KEY_LOCATION}",
+        "UDAP_FHIR_CLIENT_PRIVATE_KEY_SECRET=${UDAP_TEST_FHIR_CLIENT_PRIVATE_KEY_SECRET}" })
+@ActiveProfiles("dev")
+class UdapDemoTests {
+
+    @Autowired
+    private HealthEndpoint healthEndpoint;
+
+    @Test
+    @DisplayName("Application starts with the dev profile; readiness includes the UDAP warm-up")
+    void startsWithDevProfile() {
+        final CompositeHealth readiness = (CompositeHealth) healthEndpoint.healthForPath("readiness");
+
+        assertTrue(readiness.getComponents().containsKey("udapWarmUp"));
+        assertEquals(Status.UP, readiness.getComponents().get("udapWarmUp").getStatus());
+    }
+
+}
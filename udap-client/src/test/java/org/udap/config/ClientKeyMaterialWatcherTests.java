@@ -0,0 +1,198 @@
+package org.udap.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ClientKeyMaterialWatcherTests {
+
+    private static final String SECRET = "secret";
+
+    private static final Duration QUIET_PERIOD = Duration.ofMillis(100);
+
+    @TempDir
+    private Path directory;
+
+    private UdapFhirClient fhirClient;
+
+    private ClientKeyMaterialWatcher watcher;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Watches the client's keystore "client.p12" and certificate "client.crt" in a
+     * directory
+     */
+    private void watch(final Path keyMaterialDirectory) throws Exception {
+        fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname("client");
+        fhirClient.setPrivateKeyLocation(keyMaterialDirectory.resolve("client.p12").toUri().toString());
+        fhirClient.setPrivateKeySecret(SECRET);
+        fhirClient.setX509Location(keyMaterialDirectory.resolve("client.crt").toUri().toString());
+        fhirClient.setKeyMaterial(ClientKeyMaterial.load(fhirClient));
+
+        watcher = new ClientKeyMaterialWatcher(List.of(fhirClient), QUIET_PERIOD);
+        watcher.start();
+    }
+
+    private static KeyPair keyPair() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate certificate(final KeyPair keyPair, final String subjectAlternativeName)
+            throws Exception {
+        final Instant now = Instant.now();
+        final X500Name subject = new X500Name("CN=" + subjectAlternativeName);
+        return new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(subject,
+                BigInteger.valueOf(now.toEpochMilli()), Date.from(now.minus(Duration.ofDays(1))),
+                Date.from(now.plus(Duration.ofDays(1))), subject, keyPair.getPublic())
+            .addExtension(Extension.subjectAlternativeName, false,
+                    new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, subjectAlternativeName)))
+            .build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    /**
+     * Replaces the keystore and certificate in the directory, each file atomically
+     */
+    private static void write(final Path keyMaterialDirectory, final KeyPair keyPair,
+            final X509Certificate certificate) throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("client", keyPair.getPrivate(), SECRET.toCharArray(), new Certificate[] { certificate });
+        final Path keyStoreFile = Files.createTempFile(keyMaterialDirectory, "client", ".tmp");
+        try (var out = Files.newOutputStream(keyStoreFile)) {
+            keyStore.store(out, SECRET.toCharArray());
+        }
+        Files.move(keyStoreFile, keyMaterialDirectory.resolve("client.p12"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        replace(keyMaterialDirectory.resolve("client.crt"), ("-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(certificate.getEncoded())
+                + "\n-----END CERTIFICATE-----\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void write(final Path keyMaterialDirectory, final String subjectAlternativeName)
+            throws Exception {
+        final KeyPair keyPair = keyPair();
+        write(keyMaterialDirectory, keyPair, certificate(keyPair, subjectAlternativeName));
+    }
+
+    private static void replace(final Path file, final byte[] content) throws IOException {
+        final Path temporary = Files.createTempFile(file.getParent(), "client", ".tmp");
+        Files.write(temporary, content);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void awaitSubjectAlternativeName(final String expected) throws InterruptedException {
+        final Instant deadline = Instant.now().plusSeconds(10);
+        while (!expected.equals(fhirClient.getKeyMaterial().getSubjectAlternativeName())
+                && Instant.now().isBefore(deadline)) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, fhirClient.getKeyMaterial().getSubjectAlternativeName());
+    }
+
+    /**
+     * Waits past the quiet period of the last change
+     */
+    private static void awaitReload() throws InterruptedException {
+        Thread.sleep(QUIET_PERIOD.multipliedBy(10).toMillis());
+    }
+
+    @Test
+    @DisplayName("Rotated key material is reloaded")
+    void reloads() throws Exception {
+        write(directory, "https://client.example.com/v1");
+        watch(directory);
+
+        write(directory, "https://client.example.com/v2");
+
+        awaitSubjectAlternativeName("https://client.example.com/v2");
+    }
+
+    @Test
+    @DisplayName("A certificate that does not match the keystore's key is not swapped in")
+    void rejectsMismatchedCertificate() throws Exception {
+        write(directory, "https://client.example.com/v1");
+        watch(directory);
+        final ClientKeyMaterial current = fhirClient.getKeyMaterial();
+
+        write(directory, keyPair(), certificate(keyPair(), "https://client.example.com/mismatched"));
+        awaitReload();
+        assertSame(current, fhirClient.getKeyMaterial());
+
+        write(directory, "https://client.example.com/v2");
+        awaitSubjectAlternativeName("https://client.example.com/v2");
+    }
+
+    @Test
+    @DisplayName("Key material that fails to load keeps the current one and watching goes on")
+    void keepsCurrentOnFailure() throws Exception {
+        write(directory, "https://client.example.com/v1");
+        watch(directory);
+        final ClientKeyMaterial current = fhirClient.getKeyMaterial();
+
+        replace(directory.resolve("client.p12"), "truncated".getBytes(StandardCharsets.US_ASCII));
+        awaitReload();
+        assertSame(current, fhirClient.getKeyMaterial());
+
+        write(directory, "https://client.example.com/v2");
+        awaitSubjectAlternativeName("https://client.example.com/v2");
+    }
+
+    @Test
+    @DisplayName("Key material linked through a swapped symbolic link is reloaded, as a Kubernetes secret")
+    void reloadsOnSymbolicLinkSwap() throws Exception {
+        final Path first = Files.createDirectory(directory.resolve("..2026_01_01"));
+        write(first, "https://client.example.com/v1");
+        Files.createSymbolicLink(directory.resolve("..data"), first.getFileName());
+        for (String file : List.of("client.p12", "client.crt")) {
+            Files.createSymbolicLink(directory.resolve(file), Path.of("..data", file));
+        }
+        watch(directory);
+
+        final Path second = Files.createDirectory(directory.resolve("..2026_02_01"));
+        write(second, "https://client.example.com/v2");
+        final Path link = Files.createSymbolicLink(directory.resolve("..data_tmp"), second.getFileName());
+        Files.move(link, directory.resolve("..data"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        awaitSubjectAlternativeName("https://client.example.com/v2");
+    }
+
+}
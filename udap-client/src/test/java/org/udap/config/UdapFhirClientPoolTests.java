@@ -0,0 +1,127 @@
+package org.udap.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.udap.model.RegistrationResponse;
+import org.udap.service.ClientRegistrations;
+
+import com.nimbusds.jose.jwk.JWKSet;
+
+class UdapFhirClientPoolTests {
+
+    private static final String AUTHORIZATION_SERVER = "https://as.example.com";
+
+    private final UdapFhirClientPool pool = new UdapFhirClientPool();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool.setWatchKeyMaterial(false);
+        pool.setPreloadKeyMaterial(false);
+        pool.setMaxKeyMaterial(1);
+        pool.setFhirClientDefault("first");
+        pool.setFhirClients(List.of(fhirClient("first"), fhirClient("second")));
+        pool.afterPropertiesSet();
+    }
+
+    private static UdapFhirClient fhirClient(final String nickname) {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname(nickname);
+        fhirClient.setClientIds(Map.of(AUTHORIZATION_SERVER, nickname + "-id"));
+        return fhirClient;
+    }
+
+    private static ClientKeyMaterial keyMaterial(final String subjectAlternativeName) {
+        return ClientKeyMaterial.builder()
+            .privateJwkSet(new JWKSet())
+            .subjectAlternativeName(subjectAlternativeName)
+            .loadedAt(Instant.now())
+            .build();
+    }
+
+    @Test
+    @DisplayName("Clients are found by nickname, by client ID per authorization server and by issuer")
+    void indexesClients() {
+        assertEquals("first", pool.getDefault().getClientNickname());
+        assertEquals("second", pool.get("second").getClientNickname());
+        assertSame(pool.get("second"), pool.getByClientId(AUTHORIZATION_SERVER, "second-id"));
+        assertNull(pool.getByClientId("https://other.example.com", "second-id"));
+
+        final UdapFhirClient registered = pool.get("first");
+        final RegistrationResponse registration = new RegistrationResponse();
+        registration.setClientId("issued-id");
+        new ClientRegistrations(pool).put(registered, "https://other.example.com", registration);
+        assertSame(registered, pool.getByClientId("https://other.example.com", "issued-id"));
+
+        final UdapFhirClient withKeys = fhirClient("third");
+        withKeys.setKeyMaterial(keyMaterial("https://client.example.com/third"));
+        pool.add(withKeys);
+        assertSame(withKeys, pool.getByIssuer("https://client.example.com/third"));
+    }
+
+    @Test
+    @DisplayName("Clients are added and removed at runtime; nicknames are unique")
+    void addsAndRemovesClients() {
+        pool.add(fhirClient("third"));
+        assertEquals(3, pool.size());
+        assertThrows(IllegalArgumentException.class, () -> pool.add(fhirClient("third")));
+
+        final UdapFhirClient removed = pool.remove("second");
+
+        assertEquals("second", removed.getClientNickname());
+        assertNull(pool.get("second"));
+        assertNull(pool.getByClientId(AUTHORIZATION_SERVER, "second-id"));
+        assertEquals(List.of("first", "third"),
+                pool.getFhirClients().stream().map(UdapFhirClient::getClientNickname).toList());
+    }
+
+    @Test
+    @DisplayName("Clients sharing a SAN stay indexed by it and reloaded key material re-indexes its client")
+    void reindexesIssuers() {
+        final UdapFhirClient first = pool.get("first");
+        final UdapFhirClient second = pool.get("second");
+        first.setKeyMaterial(keyMaterial("https://client.example.com/shared"));
+        second.setKeyMaterial(keyMaterial("https://client.example.com/shared"));
+        assertSame(first, pool.getByIssuer("https://client.example.com/shared"));
+
+        pool.remove("first");
+        assertSame(second, pool.getByIssuer("https://client.example.com/shared"));
+
+        second.setKeyMaterial(keyMaterial("https://client.example.com/rotated"));
+        assertNull(pool.getByIssuer("https://client.example.com/shared"));
+        assertSame(second, pool.getByIssuer("https://client.example.com/rotated"));
+
+        // Removed clients are not indexed again
+        first.setKeyMaterial(keyMaterial("https://client.example.com/first"));
+        assertNull(pool.getByIssuer("https://client.example.com/first"));
+    }
+
+    @Test
+    @DisplayName("Key material beyond the bound is dropped and loaded again on use")
+    void boundsKeyMaterial() {
+        final UdapFhirClient first = pool.get("first");
+        final UdapFhirClient second = pool.get("second");
+
+        first.setKeyMaterial(keyMaterial("https://client.example.com/first"));
+        // Used often, so kept over the newcomer
+        for (int i = 0; i < 10; i++) {
+            first.getKeyMaterial();
+        }
+        second.setKeyMaterial(keyMaterial("https://client.example.com/second"));
+
+        assertTrue(first.isKeyMaterialLoaded() ^ second.isKeyMaterialLoaded());
+        assertFalse(first.isKeyMaterialLoaded() && second.isKeyMaterialLoaded());
+    }
+
+}
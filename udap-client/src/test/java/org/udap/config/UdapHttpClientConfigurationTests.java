@@ -0,0 +1,115 @@
+package org.udap.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.context.ConfigurationPropertiesAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.udap.test.FakeAuthorizationServer;
+
+import io.netty.handler.timeout.ReadTimeoutException;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+class UdapHttpClientConfigurationTests {
+
+    private FakeAuthorizationServer server;
+
+    private ApplicationContextRunner contextRunner;
+
+    /**
+     * "/port" answers the client port of the connection, "/slow" answers after 500ms;
+     * "127.0.0.1" has a response timeout of its own
+     */
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes
+                .get("/port",
+                        (request, response) -> response
+                            .sendString(Mono.just(Integer.toString(request.remoteAddress().getPort()))))
+                .get("/slow", (request, response) -> response
+                    .sendString(Mono.just("slow").delayElement(Duration.ofMillis(500)))))
+            .start();
+
+        contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ConfigurationPropertiesAutoConfiguration.class))
+            .withUserConfiguration(UdapHttpClientProperties.class, UdapResilienceProperties.class,
+                    UdapHttpClientConfiguration.class)
+            .withPropertyValues("udap.http-client.pool-name=udap-configuration-test",
+                    "udap.resilience.authorization-servers.[127.0.0.1].response-timeout=100ms");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private static String get(final WebClient webClient, final String url) {
+        return webClient.get().uri(url).retrieve().bodyToMono(String.class).block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * @return client ports of sequential requests, spaced so that each connection is back
+     * in the pool before the next request
+     */
+    private Set<String> ports(final WebClient webClient) {
+        return IntStream.range(0, 3).mapToObj(i -> {
+            LockSupport.parkNanos(Duration.ofMillis(100).toNanos());
+            return get(webClient, "http://localhost:" + server.port() + "/port");
+        }).collect(Collectors.toSet());
+    }
+
+    @Test
+    @DisplayName("One connection pool backs the UDAP web client and its connections are reused")
+    void reusesConnectionProvider() {
+        contextRunner.run(context -> {
+            final ConnectionProvider connectionProvider = context.getBean(ConnectionProvider.class);
+            assertEquals("udap-configuration-test", connectionProvider.name());
+
+            final WebClient webClient = context.getBean("udapWebClient", WebClient.class);
+            assertSame(webClient, context.getBean("udapWebClient", WebClient.class));
+            assertEquals(1, ports(webClient).size());
+        });
+    }
+
+    @Test
+    @DisplayName("Per-host timeouts of the resilience properties are applied by the UDAP web client")
+    void appliesHostTimeouts() {
+        contextRunner.run(context -> {
+            final WebClient webClient = context.getBean("udapWebClient", WebClient.class);
+
+            final WebClientRequestException e = assertThrows(WebClientRequestException.class,
+                    () -> get(webClient, "http://127.0.0.1:" + server.port() + "/slow"));
+            assertInstanceOf(ReadTimeoutException.class, e.getCause());
+            assertEquals("slow", get(webClient, "http://localhost:" + server.port() + "/slow"));
+        });
+    }
+
+    @Test
+    @DisplayName("The connection pool is disposed with the context")
+    void disposesConnectionProvider() {
+        final AtomicReference<ConnectionProvider> connectionProvider = new AtomicReference<>();
+        contextRunner.run(context -> connectionProvider.set(context.getBean(ConnectionProvider.class)));
+
+        assertTrue(connectionProvider.get().isDisposed());
+    }
+
+}
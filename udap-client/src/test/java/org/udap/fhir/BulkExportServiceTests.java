@@ -0,0 +1,257 @@
+package org.udap.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.BulkExportManifest;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.ReactiveUdapClientService;
+import org.udap.service.TrustedServerCache;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+class BulkExportServiceTests {
+
+    private final AtomicInteger statusRequests = new AtomicInteger();
+
+    private final AtomicBoolean interrupted = new AtomicBoolean();
+
+    /**
+     * Type and Range header of every file request
+     */
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+    /**
+     * Tokens the FHIR server rejects
+     */
+    private final Set<String> revokedTokens = ConcurrentHashMap.newKeySet();
+
+    @TempDir
+    private Path directory;
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private BulkExportService bulkExportService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes.get("/fhir/Group/1/{operation}", (request, response) -> unauthorized(request)
+                        ? response.status(HttpResponseStatus.UNAUTHORIZED).send()
+                        : response.status(HttpResponseStatus.ACCEPTED).header("Content-Location", "/status/1").send())
+                .get("/status/1", (request, response) -> {
+                    if (statusRequests.incrementAndGet() == 1) {
+                        return response.status(HttpResponseStatus.ACCEPTED)
+                            .header("Retry-After", "1")
+                            .header("X-Progress", "50%")
+                            .send();
+                    }
+                    return response.header("Content-Type", "application/json").sendString(Mono.just("""
+                            {"transactionTime":"2026-01-01T00:00:00Z","request":"%1$s/fhir/Group/1/$export",
+                            "requiresAccessToken":true,"output":[
+                            {"type":"Patient","url":"%1$s/files/Patient"},
+                            {"type":"Observation","url":"%1$s/files/Observation"}],"error":[]}
+                            """.formatted(baseUrl)));
+                })
+                .get("/files/{type}", this::file)
+                .get("/signed/{type}", (request, response) -> {
+                    ranges.add(request.param("type") + ":" + request.requestHeaders().get("Range"));
+                    return response.header("Content-Type", "application/fhir+ndjson")
+                        .sendByteArray(Mono.just(ndjson(request.param("type"))));
+                }))
+            .start();
+        baseUrl = server.baseUrl();
+
+        final UdapFhirClient fhirClient = fhirClient("client");
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        final ReactiveUdapClientService udapClientService = new ReactiveUdapClientService(
+                new TrustedServerCache(new TrustedServerCacheProperties(), webClient),
+                new AccessTokenCache(new AccessTokenCacheProperties()), webClient);
+        bulkExportService = new BulkExportService(webClient.mutate()
+            .filter(new UdapBearerTokenExchangeFilterFunction(udapClientService, fhirClient, baseUrl, null,
+                    "system/*.read", null, false))
+            .build(), webClient);
+        bulkExportService.setMinBackoff(Duration.ofMillis(100));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private boolean unauthorized(final HttpServerRequest request) {
+        final String authorization = request.requestHeaders().get("Authorization");
+        return authorization == null || revokedTokens.contains(authorization.substring("Bearer ".length()));
+    }
+
+    private static byte[] ndjson(final String type) {
+        return IntStream.range(0, 5000)
+            .mapToObj(i -> "{\"resourceType\":\"%s\",\"id\":\"%d\"}\n".formatted(type, i))
+            .collect(Collectors.joining())
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The first download of the Patient file is cut off halfway, after which its access
+     * token is revoked; Range requests are honored
+     */
+    private Mono<Void> file(final HttpServerRequest request, final HttpServerResponse response) {
+        if (unauthorized(request)) {
+            return response.status(HttpResponseStatus.UNAUTHORIZED).send().then();
+        }
+
+        final String type = request.param("type");
+        final byte[] bytes = ndjson(type);
+        final String range = request.requestHeaders().get("Range");
+        ranges.add(type + ":" + range);
+        response.header("Content-Type", "application/fhir+ndjson");
+
+        if (range != null) {
+            final int start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            if (start >= bytes.length) {
+                return response.status(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + bytes.length)
+                    .send();
+            }
+            return response.status(HttpResponseStatus.PARTIAL_CONTENT)
+                .header("Content-Range", "bytes %d-%d/%d".formatted(start, bytes.length - 1, bytes.length))
+                .sendByteArray(Mono.just(Arrays.copyOfRange(bytes, start, bytes.length)))
+                .then();
+        }
+        if ("Patient".equals(type) && interrupted.compareAndSet(false, true)) {
+            revokedTokens.add("token-1");
+            return response.header("Content-Length", Integer.toString(bytes.length))
+                .sendByteArray(Mono.just(Arrays.copyOf(bytes, bytes.length / 2)))
+                .then()
+                .then(Mono.fromRunnable(() -> response.withConnection(Connection::dispose)));
+        }
+        return response.sendByteArray(Mono.just(bytes)).then();
+    }
+
+    @Test
+    @DisplayName("An export is kicked off, polled as told by Retry-After and its files downloaded")
+    void exports() throws IOException {
+        final List<Path> files = bulkExportService.export(baseUrl + "/fhir/Group/1/$export?_type=Patient", directory)
+            .collectList()
+            .block(Duration.ofSeconds(20));
+
+        assertEquals(Set.of(directory.resolve("Patient-1.ndjson"), directory.resolve("Observation-1.ndjson")),
+                Set.copyOf(files));
+        assertArrayEquals(ndjson("Patient"), Files.readAllBytes(directory.resolve("Patient-1.ndjson")));
+        assertArrayEquals(ndjson("Observation"), Files.readAllBytes(directory.resolve("Observation-1.ndjson")));
+        assertFalse(Files.exists(directory.resolve("Patient-1.ndjson.part")));
+        assertEquals(2, statusRequests.get());
+        // The interrupted download resumed where it stopped, with a new access token
+        assertEquals(2, server.tokenRequests());
+        assertEquals(List.of("Patient:null", "Patient:bytes=" + ndjson("Patient").length / 2 + "-"),
+                ranges.stream().filter(range -> range.startsWith("Patient")).toList());
+    }
+
+    @Test
+    @DisplayName("Downloaded files are skipped, a part is downloaded again when its Range is not honored")
+    void resumesManifest() throws IOException {
+        final Path part = directory.resolve("Patient-1.ndjson.part");
+        Files.writeString(part, "{\"resourceType\":\"Patient\",\"id\":\"x\"}\n".repeat(10000));
+        final long partSize = Files.size(part);
+        Files.writeString(directory.resolve("Observation-1.ndjson"), "done");
+
+        final BulkExportManifest manifest = new BulkExportManifest();
+        for (String type : List.of("Patient", "Observation")) {
+            final BulkExportManifest.File file = new BulkExportManifest.File();
+            file.setType(type);
+            file.setUrl(baseUrl + "/signed/" + type);
+            manifest.getOutput().add(file);
+        }
+        final List<Path> files = bulkExportService.download(manifest, directory)
+            .collectList()
+            .block(Duration.ofSeconds(20));
+
+        assertEquals(2, files.size());
+        assertArrayEquals(ndjson("Patient"), Files.readAllBytes(directory.resolve("Patient-1.ndjson")));
+        assertEquals("done", Files.readString(directory.resolve("Observation-1.ndjson")));
+        assertEquals(List.of("Patient:bytes=" + partSize + "-"), ranges);
+        // Files not requiring an access token are downloaded without one
+        assertEquals(0, server.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("A part holding the whole file, stopped before its rename, is completed on 416")
+    void completesWholePart() throws IOException {
+        final byte[] bytes = ndjson("Patient");
+        Files.write(directory.resolve("Patient-1.ndjson.part"), bytes);
+
+        final BulkExportManifest manifest = new BulkExportManifest();
+        manifest.setRequiresAccessToken(true);
+        final BulkExportManifest.File file = new BulkExportManifest.File();
+        file.setType("Patient");
+        file.setUrl(baseUrl + "/files/Patient");
+        manifest.getOutput().add(file);
+        final List<Path> files = bulkExportService.download(manifest, directory)
+            .collectList()
+            .block(Duration.ofSeconds(20));
+
+        assertEquals(List.of(directory.resolve("Patient-1.ndjson")), files);
+        assertArrayEquals(bytes, Files.readAllBytes(directory.resolve("Patient-1.ndjson")));
+        assertFalse(Files.exists(directory.resolve("Patient-1.ndjson.part")));
+        assertEquals(List.of("Patient:bytes=" + bytes.length + "-"), ranges);
+    }
+
+    @Test
+    @DisplayName("A manifest naming files outside the directory is rejected before anything is downloaded")
+    void rejectsHostileManifest() throws IOException {
+        final BulkExportManifest manifest = new BulkExportManifest();
+        for (String type : List.of("Patient", "../../escape")) {
+            final BulkExportManifest.File file = new BulkExportManifest.File();
+            file.setType(type);
+            file.setUrl(baseUrl + "/signed/Patient");
+            manifest.getError().add(file);
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> bulkExportService.download(manifest, directory).collectList().block(Duration.ofSeconds(20)));
+        assertTrue(ranges.isEmpty());
+        assertFalse(Files.exists(directory.getParent().resolve("escape-1.ndjson")));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}
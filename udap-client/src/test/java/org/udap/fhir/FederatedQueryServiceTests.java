@@ -0,0 +1,165 @@
+package org.udap.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFederatedQueryProperties;
+import org.udap.config.UdapFederatedQueryProperties.Responder;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.fhir.FederatedQueryService.Outcome;
+import org.udap.fhir.FederatedQueryService.Result;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.ReactiveUdapClientService;
+import org.udap.service.TrustedServerCache;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+
+class FederatedQueryServiceTests {
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private final UdapFederatedQueryProperties properties = new UdapFederatedQueryProperties();
+
+    private FederatedQueryService federatedQueryService;
+
+    /**
+     * Every gateway is its own authorization server and issues access tokens named after
+     * itself; "slow" answers searches after 3 seconds, "broken" with 500 and "locked"
+     * issues no access token
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        server = FakeAuthorizationServer.builder()
+            .accessToken((gateway, n) -> gateway + "-token")
+            .locked("locked")
+            .routes(routes -> routes.get("/{gateway}/fhir/Patient", (request, response) -> {
+                final String gateway = request.param("gateway");
+                final String authorization = request.requestHeaders().get("Authorization");
+                if (!("Bearer " + gateway + "-token").equals(authorization)) {
+                    return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                }
+                if ("broken".equals(gateway)) {
+                    return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR).send();
+                }
+                final Mono<String> bundle = Mono.just("""
+                        {"resourceType":"Bundle","type":"searchset","entry":[
+                        {"resource":{"resourceType":"Patient","id":"%1$s-1"}},
+                        {"resource":{"resourceType":"Patient","id":"%1$s-2"}}]}
+                        """.formatted(gateway));
+                return response.header("Content-Type", "application/fhir+json")
+                    .sendString("slow".equals(gateway) ? bundle.delayElement(Duration.ofSeconds(3)) : bundle);
+            }))
+            .start();
+        baseUrl = server.baseUrl();
+
+        final UdapFhirClientPool fhirClientPool = new UdapFhirClientPool();
+        fhirClientPool.setWatchKeyMaterial(false);
+        fhirClientPool.setPreloadKeyMaterial(false);
+        fhirClientPool.setFhirClientDefault("client");
+        fhirClientPool.setFhirClients(List.of(fhirClient("client")));
+        fhirClientPool.afterPropertiesSet();
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        federatedQueryService = new FederatedQueryService(properties, fhirClientPool,
+                new ReactiveUdapClientService(new TrustedServerCache(new TrustedServerCacheProperties(), webClient),
+                        new AccessTokenCache(new AccessTokenCacheProperties()), webClient),
+                webClient);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private Responder responder(final String gateway) {
+        final Responder responder = new Responder();
+        responder.setName(gateway);
+        responder.setFhirBaseUrl(baseUrl + "/" + gateway + "/fhir/");
+        responder.setAuthorizationServer(server.url(gateway));
+        responder.setMustBeTrusted(false);
+        responder.setScope("system/Patient.read");
+        return responder;
+    }
+
+    private List<Result> query(final String... gateways) {
+        return federatedQueryService
+            .query(List.of(gateways).stream().map(this::responder).toList(), "/Patient?family=Demo")
+            .collectList()
+            .block(Duration.ofSeconds(10));
+    }
+
+    private static Map<String, Result> outcomes(final List<Result> results) {
+        return results.stream()
+            .filter(result -> !result.isResource())
+            .collect(Collectors.toMap(result -> result.responder().getName(), result -> result));
+    }
+
+    @Test
+    @DisplayName("Responders are queried concurrently; slow and failing ones do not hold back the others")
+    void queriesConcurrently() {
+        properties.setResponderTimeout(Duration.ofSeconds(1));
+
+        final Instant startedAt = Instant.now();
+        final List<Result> results = query("fast", "slow", "broken", "locked", "quick");
+        final Duration elapsed = Duration.between(startedAt, Instant.now());
+
+        final Map<String, Result> outcomes = outcomes(results);
+        assertEquals(5, outcomes.size());
+        assertEquals(Outcome.COMPLETED, outcomes.get("fast").outcome());
+        assertEquals(2, outcomes.get("fast").resources());
+        assertEquals(Outcome.COMPLETED, outcomes.get("quick").outcome());
+        assertEquals(Outcome.TIMED_OUT, outcomes.get("slow").outcome());
+        assertEquals(Outcome.FAILED, outcomes.get("broken").outcome());
+        assertEquals(Outcome.FAILED, outcomes.get("locked").outcome());
+        assertEquals(List.of("fast-1", "fast-2", "quick-1", "quick-2"),
+                results.stream()
+                    .filter(Result::isResource)
+                    .map(result -> result.resource().path("id").asText())
+                    .sorted()
+                    .toList());
+        // Resources are streamed ahead of the slowest responder's outcome
+        assertTrue(results.indexOf(outcomes.get("slow")) == results.size() - 1);
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(3)) < 0, "took " + elapsed);
+    }
+
+    @Test
+    @DisplayName("The deadline ends the query with the results so far and reports the responders cut short")
+    void endsAtDeadline() {
+        properties.setConcurrency(2);
+        properties.setDeadline(Duration.ofSeconds(1));
+
+        final Instant startedAt = Instant.now();
+        final List<Result> results = query("fast", "slow", "quick", "prompt");
+        final Duration elapsed = Duration.between(startedAt, Instant.now());
+
+        final Map<String, Result> outcomes = outcomes(results);
+        assertEquals(4, outcomes.size());
+        assertEquals(Outcome.COMPLETED, outcomes.get("fast").outcome());
+        assertEquals(Outcome.DEADLINE_EXCEEDED, outcomes.get("slow").outcome());
+        // Queued behind "slow", both completed within the deadline
+        assertEquals(Outcome.COMPLETED, outcomes.get("quick").outcome());
+        assertEquals(Outcome.COMPLETED, outcomes.get("prompt").outcome());
+        assertEquals(6, results.stream().filter(Result::isResource).count());
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(3)) < 0, "took " + elapsed);
+    }
+
+}
@@ -0,0 +1,155 @@
+package org.udap.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Mono;
+
+class FhirSearchServiceTests {
+
+    private static final int PAGES = 3;
+
+    private static final int PAGE_SIZE = 50;
+
+    private final AtomicInteger pageRequests = new AtomicInteger();
+
+    private final AtomicInteger unauthorizedRequests = new AtomicInteger();
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private final FhirSearchService searchService = new FhirSearchService(UdapWebClientFactory.getShared());
+
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes.get("/fhir/Patient", (request, response) -> {
+                final List<String> pageParameter = new QueryStringDecoder(request.uri()).parameters().get("page");
+                final int page = pageParameter != null ? Integer.parseInt(pageParameter.get(0)) : 1;
+                // The first request of page 2 is answered as if its access token had expired
+                if (page == 2 && unauthorizedRequests.getAndIncrement() == 0) {
+                    return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                }
+                pageRequests.incrementAndGet();
+                return response.header("Content-Type", "application/fhir+json").sendString(Mono.just(bundle(page)));
+            }))
+            .start();
+        baseUrl = server.baseUrl();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private String bundle(final int page) {
+        final String link = page < PAGES
+                ? ",{\"relation\":\"next\",\"url\":\"%s/fhir/Patient?page=%d\"}".formatted(baseUrl, page + 1) : "";
+        final String entries = IntStream.range(0, PAGE_SIZE)
+            .mapToObj(i -> """
+                    {"fullUrl":"urn:p%1$d","resource":{"resourceType":"Patient","id":"%1$d",
+                    "name":[{"family":"Demo","given":["Demo"]}]},"search":{"mode":"match"}}
+                    """.formatted((page - 1) * PAGE_SIZE + i))
+            .collect(Collectors.joining(","));
+        return """
+                {"resourceType":"Bundle","type":"searchset","total":%d,
+                "link":[{"relation":"self","url":"%s/fhir/Patient?page=%d"}%s],"entry":[%s]}
+                """.formatted(PAGES * PAGE_SIZE, baseUrl, page, link, entries);
+    }
+
+    @Test
+    @DisplayName("Resources of every page are streamed in order, a page answered 401 is requested once more")
+    void followsNextLinks() {
+        final List<JsonNode> resources = searchService.search(baseUrl + "/fhir/Patient")
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertEquals(PAGES * PAGE_SIZE, resources.size());
+        for (int i = 0; i < resources.size(); i++) {
+            assertEquals(Integer.toString(i), resources.get(i).path("id").asText());
+            assertEquals("Patient", resources.get(i).path("resourceType").asText());
+        }
+        assertEquals(PAGES, pageRequests.get());
+        assertEquals(2, unauthorizedRequests.get());
+    }
+
+    @Test
+    @DisplayName("No page beyond the next one is requested ahead of demand")
+    void prefetchesOnePage() throws InterruptedException {
+        searchService.setPrefetch(8);
+        final List<JsonNode> received = new ArrayList<>();
+        final BaseSubscriber<JsonNode> subscriber = new BaseSubscriber<>() {
+
+            @Override
+            protected void hookOnSubscribe(final Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(final JsonNode resource) {
+                received.add(resource);
+            }
+
+        };
+        searchService.search(baseUrl + "/fhir/Patient").subscribe(subscriber);
+
+        Thread.sleep(500);
+        subscriber.dispose();
+
+        assertEquals(1, received.size());
+        assertEquals(2, pageRequests.get());
+    }
+
+    @Test
+    @DisplayName("Bundles are parsed incrementally, however their bytes are split")
+    void parsesIncrementally() throws IOException {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final byte[] bundle = bundle(1).getBytes(StandardCharsets.UTF_8);
+
+        for (int chunkSize : new int[] { 1, 7, 64, bundle.length }) {
+            final List<String> nextUrls = new ArrayList<>();
+            final BundleParser parser = new BundleParser(objectMapper, nextUrls::add);
+            final List<JsonNode> resources = new ArrayList<>();
+            for (int offset = 0; offset < bundle.length; offset += chunkSize) {
+                resources.addAll(parser.feed(Arrays.copyOfRange(bundle, offset,
+                        Math.min(bundle.length, offset + chunkSize))));
+            }
+            resources.addAll(parser.endOfInput());
+
+            assertEquals(PAGE_SIZE, resources.size());
+            assertEquals("Demo", resources.get(PAGE_SIZE - 1).path("name").path(0).path("family").asText());
+            assertEquals(List.of(baseUrl + "/fhir/Patient?page=2"), nextUrls);
+        }
+
+        final BundleParser truncated = new BundleParser(objectMapper, nextUrl -> {
+        });
+        truncated.feed(Arrays.copyOf(bundle, bundle.length / 2));
+        assertThrows(IOException.class, truncated::endOfInput);
+    }
+
+}
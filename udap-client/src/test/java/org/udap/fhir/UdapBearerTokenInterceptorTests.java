@@ -0,0 +1,137 @@
+package org.udap.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.TrustedServerCache;
+import org.udap.service.UdapClientService;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.server.exceptions.AuthenticationException;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+
+class UdapBearerTokenInterceptorTests {
+
+    private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private final AtomicInteger fhirRequests = new AtomicInteger();
+
+    /**
+     * Tokens the FHIR server rejects
+     */
+    private final Set<String> revokedTokens = ConcurrentHashMap.newKeySet();
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private IGenericClient fhirClient;
+
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes.get("/fhir/Patient/{id}", (request, response) -> {
+                fhirRequests.incrementAndGet();
+                final String authorization = request.requestHeaders().get("Authorization");
+                if (authorization == null || revokedTokens.contains(authorization.substring("Bearer ".length()))) {
+                    return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                }
+                return response.header("Content-Type", "application/fhir+json")
+                    .sendString(Mono.just("""
+                            {"resourceType":"Patient","id":"%s","identifier":[{"value":"%s"}]}
+                            """.formatted(request.param("id"), authorization)));
+            }))
+            .start();
+        baseUrl = server.baseUrl();
+
+        final UdapFhirClient udapFhirClient = fhirClient("client");
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        final UdapClientService udapClientService = new UdapClientService(
+                new TrustedServerCache(new TrustedServerCacheProperties(), webClient),
+                new AccessTokenCache(new AccessTokenCacheProperties()), webClient);
+
+        FHIR_CONTEXT.getRestfulClientFactory().setServerValidationMode(ServerValidationModeEnum.NEVER);
+        fhirClient = FHIR_CONTEXT.newRestfulGenericClient(baseUrl + "/fhir");
+        fhirClient.registerInterceptor(new UdapBearerTokenInterceptor(udapClientService, udapFhirClient, baseUrl,
+                null, "system/Patient.read", null, false));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    /**
+     * @return Authorization header the FHIR server was sent
+     */
+    private String readPatient(final String id) {
+        return fhirClient.read().resource(Patient.class).withId(id).execute().getIdentifierFirstRep().getValue();
+    }
+
+    @Test
+    @DisplayName("Concurrent FHIR calls share a single token request")
+    void sharesAccessToken() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<String>> reads = IntStream.range(0, 32)
+                .<Callable<String>>mapToObj(i -> () -> readPatient(Integer.toString(i)))
+                .toList();
+            for (Future<String> read : executor.invokeAll(reads)) {
+                assertEquals("Bearer token-1", read.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, server.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("A call answered 401 is retried once with a new access token")
+    void retriesWithNewAccessToken() {
+        assertEquals("Bearer token-1", readPatient("1"));
+        revokedTokens.add("token-1");
+
+        assertEquals("Bearer token-2", readPatient("2"));
+        assertEquals("Bearer token-2", readPatient("3"));
+        assertEquals(2, server.tokenRequests());
+        assertEquals(4, fhirRequests.get());
+    }
+
+    @Test
+    @DisplayName("A call is retried no more than once")
+    void retriesOnce() {
+        revokedTokens.addAll(List.of("token-1", "token-2", "token-3"));
+
+        assertThrows(AuthenticationException.class, () -> readPatient("1"));
+        assertEquals(2, fhirRequests.get());
+    }
+
+}
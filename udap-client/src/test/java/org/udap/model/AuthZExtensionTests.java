@@ -0,0 +1,81 @@
+package org.udap.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.udap.util.CommonUtil;
+import org.udap.util.UdapUtil;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+class AuthZExtensionTests {
+
+    private static final AuthZExtensionHl7B2bHeader HL7_B2B = AuthZExtensionHl7B2bHeader.builder()
+        .hl7B2b(AuthZExtensionHl7B2b.builder()
+            .version("1")
+            .subjectName("FHIR Test Subject")
+            .organizationId("https://example.com/Organization/2.16.840.1.113883.301.560.6999")
+            .purposeOfUse(List.of("TREATMENT"))
+            .consentPolicy(List.of(URI.create("urn:oid:2.16.840.1.113883.3.7204.1.1.1.1.2.1")))
+            .consentReference(List.of(toUrl("https://example.com/fhir/Consent/1")))
+            .build())
+        .build();
+
+    /**
+     * Extension without a direct conversion
+     */
+    static class TefcaIasExtension extends AuthZExtension {
+
+        @JsonProperty("tefca-ias")
+        public Map<String, String> getTefcaIas() {
+            return Map.of("version", "1");
+        }
+
+    }
+
+    private static URL toUrl(final String url) {
+        try {
+            return URI.create(url).toURL();
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("Direct conversion matches the JSON form and is reused")
+    void convertsLikeJson() throws Exception {
+        final String json = CommonUtil.getObjectAsJson(HL7_B2B);
+
+        assertEquals(JSONObjectUtils.parse(json), HL7_B2B.toClaims());
+        assertSame(HL7_B2B.toClaims(), HL7_B2B.toClaims());
+        assertFalse(json.contains("claims"));
+    }
+
+    @Test
+    @DisplayName("Extensions merge into a single extensions claim")
+    void mergesExtensions() throws Exception {
+        final JWTClaimsSet.Builder builder = new JWTClaimsSet.Builder().issuer("client-id");
+
+        UdapUtil.appendAuthNExtension(builder, HL7_B2B);
+        UdapUtil.appendAuthNExtension(builder, new TefcaIasExtension());
+        final Map<String, Object> appended = builder.build().getJSONObjectClaim(UdapUtil.EXTENSIONS_CLAIM);
+
+        assertEquals(Set.of(AuthZExtensionHl7B2bHeader.NAME, "tefca-ias"), appended.keySet());
+        assertEquals(appended, UdapUtil
+            .appendAuthNExtensions(new JWTClaimsSet.Builder(), List.of(HL7_B2B, new TefcaIasExtension()))
+            .build()
+            .getJSONObjectClaim(UdapUtil.EXTENSIONS_CLAIM));
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.udap.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.ClientAuthorizationException;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.exception.UdapException;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.TrustedServerCache;
+import org.udap.service.UdapClientService;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+class UdapClientCredentialsOAuth2AuthorizedClientProviderTests {
+
+    private static final String REGISTRATION_ID = "example";
+
+    private FakeAuthorizationServer server;
+
+    private final UdapFhirClientPool fhirClientPool = new UdapFhirClientPool();
+
+    private UdapClientCredentialsOAuth2AuthorizedClientProvider provider;
+
+    /**
+     * Every tenant is its own authorization server; "locked" issues no access token
+     */
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder().locked("locked").start();
+
+        fhirClientPool.setFhirClients(List.of(fhirClient("client")));
+        fhirClientPool.setFhirClientDefault("client");
+
+        // Every authorization requests a new access token
+        final AccessTokenCacheProperties accessTokenCacheProperties = new AccessTokenCacheProperties();
+        accessTokenCacheProperties.setEnabled(false);
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        provider = new UdapClientCredentialsOAuth2AuthorizedClientProvider(
+                new UdapClientService(new TrustedServerCache(new TrustedServerCacheProperties(), webClient),
+                        new AccessTokenCache(accessTokenCacheProperties), webClient),
+                fhirClientPool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private OAuth2AuthorizationContext authorization(final String server) {
+        return OAuth2AuthorizationContext
+            .withClientRegistration(UdapOAuth2ClientRegistrations
+                .withUdapClient(REGISTRATION_ID, fhirClientPool.getDefault(), this.server.url(server), null,
+                        false, null)
+                .build())
+            .principal(new TestingAuthenticationToken("user", null))
+            .build();
+    }
+
+    @Test
+    @DisplayName("An authorized client is reused within the clock skew and re-authorized once its token expires")
+    void authorizesAndReauthorizes() {
+        final OAuth2AuthorizedClient authorizedClient = provider.authorize(authorization("example"));
+        assertEquals("token-1", authorizedClient.getAccessToken().getTokenValue());
+
+        final OAuth2AuthorizationContext reauthorization = OAuth2AuthorizationContext
+            .withAuthorizedClient(authorizedClient)
+            .principal(new TestingAuthenticationToken("user", null))
+            .build();
+        assertNull(provider.authorize(reauthorization));
+
+        provider.setClock(Clock.fixed(authorizedClient.getAccessToken().getExpiresAt().minusSeconds(30),
+                ZoneOffset.UTC));
+        assertEquals("token-2", provider.authorize(reauthorization).getAccessToken().getTokenValue());
+        assertEquals(2, server.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("A failed token request is reported as a client authorization failure of the registration")
+    void mapsUdapException() {
+        final ClientAuthorizationException e = assertThrows(ClientAuthorizationException.class,
+                () -> provider.authorize(authorization("locked")));
+
+        assertEquals(REGISTRATION_ID, e.getClientRegistrationId());
+        assertInstanceOf(UdapException.class, e.getCause());
+    }
+
+}
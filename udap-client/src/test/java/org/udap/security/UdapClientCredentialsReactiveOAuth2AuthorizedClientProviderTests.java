@@ -0,0 +1,165 @@
+package org.udap.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.security.oauth2.client.web.reactive.function.client.ServerOAuth2AuthorizedClientExchangeFilterFunction.clientRegistrationId;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizationContext;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.config.UdapOAuth2ClientConfiguration;
+import org.udap.config.UdapOAuth2ClientProperties;
+import org.udap.service.AccessTokenCache;
+import org.udap.service.ReactiveUdapClientService;
+import org.udap.service.TrustedServerCache;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+
+class UdapClientCredentialsReactiveOAuth2AuthorizedClientProviderTests {
+
+    private static final String REGISTRATION_ID = "example";
+
+    /**
+     * Token the resource server rejects
+     */
+    private volatile String revokedToken;
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private final UdapFhirClientPool fhirClientPool = new UdapFhirClientPool();
+
+    private ReactiveUdapClientService udapClientService;
+
+    private WebClient fhirWebClient;
+
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes.get("/fhir/Patient", (request, response) -> {
+                final String authorization = request.requestHeaders().get("Authorization");
+                if (authorization == null || authorization.equals("Bearer " + revokedToken)) {
+                    return response.status(HttpResponseStatus.UNAUTHORIZED).send();
+                }
+                return response.sendString(Mono.just(authorization));
+            }))
+            .start();
+        baseUrl = server.baseUrl();
+
+        fhirClientPool.setFhirClients(List.of(fhirClient("client")));
+        fhirClientPool.setFhirClientDefault("client");
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        final AccessTokenCache accessTokenCache = new AccessTokenCache(new AccessTokenCacheProperties());
+        udapClientService = new ReactiveUdapClientService(
+                new TrustedServerCache(new TrustedServerCacheProperties(), webClient), accessTokenCache, webClient);
+
+        final UdapOAuth2ClientProperties properties = new UdapOAuth2ClientProperties();
+        final UdapOAuth2ClientProperties.Registration registration = new UdapOAuth2ClientProperties.Registration();
+        registration.setAuthorizationServer(baseUrl);
+        registration.setMustBeTrusted(false);
+        registration.getScope().add("system/Patient.read");
+        properties.getRegistrations().put(REGISTRATION_ID, registration);
+        properties.setDefaultRegistrationId(REGISTRATION_ID);
+
+        final UdapOAuth2ClientConfiguration configuration = new UdapOAuth2ClientConfiguration();
+        final ReactiveClientRegistrationRepository repository = configuration
+            .udapClientRegistrationRepository(properties, fhirClientPool);
+        final ReactiveOAuth2AuthorizedClientService clientService = configuration
+            .udapAuthorizedClientService(repository);
+        final UdapAuthorizationFailureHandler failureHandler = configuration
+            .udapAuthorizationFailureHandler(clientService, accessTokenCache);
+        final ReactiveOAuth2AuthorizedClientManager clientManager = configuration
+            .udapAuthorizedClientManager(repository, clientService, failureHandler, udapClientService,
+                    fhirClientPool, properties);
+        fhirWebClient = configuration.udapFhirWebClient(webClient, clientManager, failureHandler, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private String getPatients() {
+        return fhirWebClient.get()
+            .uri(baseUrl + "/fhir/Patient")
+            .attributes(clientRegistrationId(REGISTRATION_ID))
+            .retrieve()
+            .bodyToMono(String.class)
+            .onErrorResume(e -> Mono.just("error"))
+            .block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    @DisplayName("FHIR calls carry the registration's access token, requested once")
+    void attachesAccessToken() {
+        assertEquals("Bearer token-1", getPatients());
+        assertEquals("Bearer token-1", getPatients());
+        assertEquals(1, server.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("A rejected access token is dropped, the next call carries a new one")
+    void replacesRejectedAccessToken() {
+        assertEquals("Bearer token-1", getPatients());
+        revokedToken = "token-1";
+
+        assertEquals("error", getPatients());
+        assertEquals("Bearer token-2", getPatients());
+        assertEquals(2, server.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("An authorized client is re-authorized once its access token is within the clock skew of expiry")
+    void reauthorizesExpiringClient() {
+        final ClientRegistration clientRegistration = UdapOAuth2ClientRegistrations
+            .withUdapClient(REGISTRATION_ID, fhirClientPool.getDefault(), baseUrl, null, false, null)
+            .build();
+        final UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider provider =
+                new UdapClientCredentialsReactiveOAuth2AuthorizedClientProvider(udapClientService, fhirClientPool);
+
+        final OAuth2AuthorizedClient authorizedClient = provider
+            .authorize(OAuth2AuthorizationContext.withClientRegistration(clientRegistration)
+                .principal(new TestingAuthenticationToken("user", null))
+                .build())
+            .block(Duration.ofSeconds(10));
+        assertEquals("token-1", authorizedClient.getAccessToken().getTokenValue());
+
+        final OAuth2AuthorizationContext reauthorization = OAuth2AuthorizationContext
+            .withAuthorizedClient(authorizedClient)
+            .principal(new TestingAuthenticationToken("user", null))
+            .build();
+        assertNull(provider.authorize(reauthorization).block(Duration.ofSeconds(10)));
+
+        provider.setClock(Clock.fixed(authorizedClient.getAccessToken().getExpiresAt().minusSeconds(30),
+                ZoneOffset.UTC));
+        // Served by the access token cache, still outside its expiry margin
+        assertEquals("token-1", provider.authorize(reauthorization)
+            .block(Duration.ofSeconds(10))
+            .getAccessToken()
+            .getTokenValue());
+    }
+
+}
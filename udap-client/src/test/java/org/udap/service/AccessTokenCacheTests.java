@@ -0,0 +1,142 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.AuthZExtension;
+import org.udap.model.AuthZExtensionHl7B2b;
+import org.udap.model.AuthZExtensionHl7B2bHeader;
+
+class AccessTokenCacheTests {
+
+    private static final AccessTokenKey KEY = new AccessTokenKey("client", "client-id",
+            "https://as.example.com/token", "system/Patient.read", "");
+
+    private static AccessTokenResponse token(final String value, final Integer expiresIn) {
+        final AccessTokenResponse response = new AccessTokenResponse();
+        response.setAccessToken(value);
+        response.setTokenType("Bearer");
+        response.setExpiresIn(expiresIn);
+        return response;
+    }
+
+    private static AccessTokenCacheProperties properties(final Duration expiryMargin, final Duration refreshAhead) {
+        final AccessTokenCacheProperties properties = new AccessTokenCacheProperties();
+        properties.setExpiryMargin(expiryMargin);
+        properties.setRefreshAhead(refreshAhead);
+        return properties;
+    }
+
+    @Test
+    @DisplayName("Cached token is served without refreshing while fresh")
+    void servesFreshToken() {
+        final AccessTokenCache cache = new AccessTokenCache(
+                properties(Duration.ofSeconds(30), Duration.ofSeconds(60)), Runnable::run);
+        final AtomicInteger refreshes = new AtomicInteger();
+        final AccessTokenResponse issued = token("first", 3600);
+
+        cache.put(KEY, issued);
+
+        assertSame(issued, cache.get(KEY, () -> {
+            refreshes.incrementAndGet();
+            return token("second", 3600);
+        }));
+        assertEquals(0, refreshes.get());
+    }
+
+    @Test
+    @DisplayName("Token inside the refresh-ahead window is served and replaced in the background")
+    void refreshesAhead() {
+        final AccessTokenCache cache = new AccessTokenCache(
+                properties(Duration.ofSeconds(30), Duration.ofSeconds(60)), Runnable::run);
+
+        cache.put(KEY, token("first", 60));
+
+        assertEquals("first", cache.get(KEY, () -> token("second", 3600)).getAccessToken());
+        assertEquals("second", cache.get(KEY, () -> token("third", 3600)).getAccessToken());
+    }
+
+    @Test
+    @DisplayName("Tokens without expires_in or within the expiry margin are not cached")
+    void doesNotCacheUnboundedOrShortLivedTokens() {
+        final AccessTokenCache cache = new AccessTokenCache(
+                properties(Duration.ofSeconds(30), Duration.ofSeconds(60)), Runnable::run);
+
+        cache.put(KEY, token("unbounded", null));
+        assertNull(cache.get(KEY, () -> null));
+
+        cache.put(KEY, token("short", 10));
+        assertNull(cache.get(KEY, () -> null));
+    }
+
+    @Test
+    @DisplayName("Disabled cache never serves a token")
+    void disabled() {
+        final AccessTokenCacheProperties properties = new AccessTokenCacheProperties();
+        properties.setEnabled(false);
+        final AccessTokenCache cache = new AccessTokenCache(properties, Runnable::run);
+
+        cache.put(KEY, token("first", 3600));
+
+        assertNull(cache.get(KEY, () -> null));
+    }
+
+    @Test
+    @DisplayName("Invalidating an access token drops the entries holding it, not those it was replaced in")
+    void invalidatesAccessToken() {
+        final AccessTokenCache cache = new AccessTokenCache(
+                properties(Duration.ofSeconds(30), Duration.ofSeconds(60)), Runnable::run);
+        final AccessTokenKey other = new AccessTokenKey("other", "other-id", KEY.tokenEndpoint(), KEY.scope(), "");
+
+        cache.put(KEY, token("first", 3600));
+        cache.put(other, token("first", 3600));
+        cache.put(KEY, token("second", 3600));
+
+        assertTrue(cache.invalidateAccessToken("first"));
+        assertNull(cache.get(other, () -> null));
+        assertEquals("second", cache.get(KEY, () -> null).getAccessToken());
+        assertFalse(cache.invalidateAccessToken("first"));
+
+        cache.invalidateAll();
+        assertFalse(cache.invalidateAccessToken("second"));
+    }
+
+    private static AuthZExtension hl7B2b(final String organizationId) {
+        return AuthZExtensionHl7B2bHeader.builder()
+            .hl7B2b(AuthZExtensionHl7B2b.builder().version("1").organizationId(organizationId).build())
+            .build();
+    }
+
+    @Test
+    @DisplayName("Keys of equal authorization extensions match, of other extensions or orders differ")
+    void keysExtensions() throws Exception {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname("client");
+        final AccessTokenKey key = AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(),
+                List.of(hl7B2b("a"), hl7B2b("b")));
+
+        assertEquals(key, AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(),
+                List.of(hl7B2b("a"), hl7B2b("b"))));
+        assertNotEquals(key, AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(),
+                List.of(hl7B2b("b"), hl7B2b("a"))));
+        assertEquals(AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(), List.of(hl7B2b("a"))),
+                AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(), List.of(hl7B2b("a"))));
+        assertNotEquals(AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(), List.of(hl7B2b("a"))),
+                AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(), List.of(hl7B2b("b"))));
+        assertEquals("", AccessTokenKey.of(fhirClient, KEY.tokenEndpoint(), KEY.scope(), null).extensionsHash());
+    }
+
+}
@@ -0,0 +1,162 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.UdapResilienceProperties;
+import org.udap.exception.UdapCircuitOpenException;
+import org.udap.exception.UdapServerException;
+import org.udap.exception.UdapTimeoutException;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.CircuitBreaker;
+import org.udap.util.UdapWebClientFactory;
+
+import reactor.core.publisher.Mono;
+
+class AuthorizationServerResilienceTests {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * Requests answered 503 before the server recovers
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final MutableClock clock = new MutableClock();
+
+    private final UdapResilienceProperties properties = new UdapResilienceProperties();
+
+    private FakeAuthorizationServer authorizationServer;
+
+    private AuthorizationServerResilience resilience;
+
+    private final WebClient webClient = UdapWebClientFactory.getShared();
+
+    @BeforeEach
+    void setUp() {
+        authorizationServer = FakeAuthorizationServer.builder()
+            .routes(routes -> routes.get("/metadata", (request, response) -> {
+                requests.incrementAndGet();
+                if (failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                    return response.status(503).send();
+                }
+                return response.sendString(Mono.just("metadata"));
+            }).get("/slow", (request, response) -> {
+                requests.incrementAndGet();
+                return response.sendString(Mono.just("slow").delayElement(Duration.ofSeconds(5)));
+            }))
+            .start();
+
+        properties.setResponseTimeout(Duration.ofMillis(500));
+        properties.setDeadline(Duration.ofSeconds(2));
+        properties.getRetry().setMinBackoff(Duration.ofMillis(10));
+        properties.getCircuitBreaker().setFailureThreshold(2);
+        resilience = new AuthorizationServerResilience(properties, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        authorizationServer.close();
+    }
+
+    private Mono<String> get(final String path) {
+        return webClient.get()
+            .uri(authorizationServer.baseUrl() + path)
+            .retrieve()
+            .bodyToMono(String.class);
+    }
+
+    @Test
+    @DisplayName("Idempotent calls are retried after 5xx responses")
+    void retriesIdempotentCalls() throws Exception {
+        failures.set(2);
+        properties.getCircuitBreaker().setFailureThreshold(5);
+
+        assertEquals("metadata",
+                AuthorizationServerResilience.block(get("/metadata").transform(resilience.idempotent("as"))));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    @DisplayName("Other calls are not retried and fail as typed server errors")
+    void doesNotRetryOtherCalls() {
+        failures.set(1);
+
+        final UdapServerException e = assertThrows(UdapServerException.class,
+                () -> AuthorizationServerResilience.block(get("/metadata").transform(resilience.once("as"))));
+        assertEquals(503, e.getStatusCode());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    @DisplayName("Circuit opens after consecutive failures and a trial call closes it")
+    void opensCircuit() throws Exception {
+        failures.set(2);
+
+        assertThrows(UdapServerException.class,
+                () -> AuthorizationServerResilience.block(get("/metadata").transform(resilience.once("as"))));
+        assertThrows(UdapServerException.class,
+                () -> AuthorizationServerResilience.block(get("/metadata").transform(resilience.once("as"))));
+        assertEquals(CircuitBreaker.State.OPEN, resilience.getState("as"));
+
+        assertThrows(UdapCircuitOpenException.class,
+                () -> AuthorizationServerResilience.block(get("/metadata").transform(resilience.idempotent("as"))));
+        assertEquals(2, requests.get());
+
+        clock.advance(properties.getCircuitBreaker().getOpenDuration());
+        assertEquals("metadata",
+                AuthorizationServerResilience.block(get("/metadata").transform(resilience.once("as"))));
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getState("as"));
+    }
+
+    @Test
+    @DisplayName("A hung server fails the call by its deadline")
+    void enforcesDeadline() {
+        final long start = System.nanoTime();
+
+        assertThrows(UdapTimeoutException.class,
+                () -> AuthorizationServerResilience.block(get("/slow").transform(resilience.idempotent("as"))));
+
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(3)) < 0, elapsed::toString);
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(final Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.udap.test.TestFhirClients.unregisteredFhirClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapBulkRegistrationProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.RegistrationResponse;
+import org.udap.service.BulkRegistration.Result;
+import org.udap.service.BulkRegistration.Status;
+import org.udap.service.BulkRegistration.Target;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+class BulkRegistrationTests {
+
+    private final UdapBulkRegistrationProperties properties = new UdapBulkRegistrationProperties();
+
+    private final ClientRegistrations clientRegistrations = new ClientRegistrations();
+
+    private FakeAuthorizationServer server;
+
+    private String baseUrl;
+
+    private BulkRegistration bulkRegistration;
+
+    private UdapFhirClient first;
+
+    private UdapFhirClient second;
+
+    /**
+     * Every tenant is its own authorization server, issuing client IDs named after itself;
+     * "down" answers discovery with 503
+     */
+    @BeforeEach
+    void setUp() {
+        server = FakeAuthorizationServer.builder()
+            .unavailable("down")
+            .registrationDelay(Duration.ofMillis(200))
+            .start();
+        baseUrl = server.baseUrl();
+
+        first = unregisteredFhirClient("first");
+        second = unregisteredFhirClient("second");
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        bulkRegistration = new BulkRegistration(properties,
+                new ReactiveUdapClientService(new TrustedServerCache(new TrustedServerCacheProperties(), webClient),
+                        new AccessTokenCache(new AccessTokenCacheProperties()), clientRegistrations, webClient),
+                clientRegistrations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private List<Target> targets() {
+        return List.of("a", "b", "c", "down")
+            .stream()
+            .flatMap(as -> List.of(first, second).stream()
+                .map(fhirClient -> new Target(fhirClient, baseUrl + "/" + as, null, false)))
+            .toList();
+    }
+
+    private List<Result> register(final List<Target> targets) {
+        return bulkRegistration.register(targets).collectList().block(Duration.ofSeconds(20));
+    }
+
+    private static Map<Status, Long> count(final List<Result> results) {
+        return results.stream().collect(Collectors.groupingBy(Result::status, Collectors.counting()));
+    }
+
+    @Test
+    @DisplayName("Targets are registered a few at a time, failures do not hold back the others")
+    void registersTargets() {
+        properties.setConcurrency(2);
+        final RegistrationResponse registered = new RegistrationResponse();
+        registered.setClientId("existing");
+        clientRegistrations.put(first, baseUrl + "/a", registered);
+
+        final List<Target> targets = new ArrayList<>(targets());
+        // Listed twice, registered once
+        targets.add(new Target(second, baseUrl + "/b", null, false));
+        final List<Result> results = register(targets);
+
+        assertEquals(8, results.size());
+        assertEquals(Map.of(Status.REGISTERED, 5L, Status.SKIPPED, 1L, Status.FAILED, 2L), count(results));
+        assertEquals(5, server.registrations());
+        assertTrue(server.maxRegistrationsInFlight() <= 2, "in flight: " + server.maxRegistrationsInFlight());
+        for (Result result : results) {
+            if (result.status() == Status.REGISTERED) {
+                assertEquals(result.clientId(), clientRegistrations.getClientId(result.target().fhirClient(),
+                        result.target().authorizationServer()));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("A repeated run skips the targets registered by the first one")
+    void skipsRegisteredTargets() {
+        register(targets());
+        assertEquals(6, server.registrations());
+
+        final List<Result> results = register(targets());
+
+        assertEquals(Map.of(Status.SKIPPED, 6L, Status.FAILED, 2L), count(results));
+        assertEquals(6, server.registrations());
+    }
+
+}
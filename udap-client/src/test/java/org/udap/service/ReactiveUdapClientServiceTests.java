@@ -0,0 +1,190 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.ClientKeyMaterial;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.exception.UdapException;
+import org.udap.model.AccessTokenResponse;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapMetrics;
+import org.udap.util.UdapWebClientFactory;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ReactiveUdapClientServiceTests {
+
+    private FakeAuthorizationServer authorizationServer;
+
+    private TrustedServerCache trustedServerCache;
+
+    private AccessTokenCache accessTokenCache;
+
+    private ReactiveUdapClientService service;
+
+    private UdapFhirClient fhirClient;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        // Every token request in flight for 200ms
+        authorizationServer = FakeAuthorizationServer.builder()
+            .accessToken((tenant, n) -> "token")
+            .expiresIn(3600)
+            .tokenDelay(Duration.ofMillis(200))
+            .start();
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        trustedServerCache = new TrustedServerCache(new TrustedServerCacheProperties(), webClient);
+        accessTokenCache = new AccessTokenCache(new AccessTokenCacheProperties());
+        service = new ReactiveUdapClientService(trustedServerCache, accessTokenCache, webClient);
+
+        fhirClient = fhirClient("reactive");
+    }
+
+    @AfterEach
+    void tearDown() {
+        authorizationServer.close();
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    private String baseUrl() {
+        return authorizationServer.baseUrl();
+    }
+
+    private Mono<AccessTokenResponse> accessToken() {
+        return service.getAccessToken(fhirClient, baseUrl(), null, "system/Patient.read", List.of(), false);
+    }
+
+    @Test
+    @DisplayName("Access token is obtained without blocking and served from cache afterwards")
+    void getsAndCachesAccessToken() {
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+
+        assertEquals(1, authorizationServer.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("Concurrent subscribers share a single token request")
+    void coalescesConcurrentRequests() {
+        final List<AccessTokenResponse> responses = Flux.range(0, 8)
+            .flatMap(i -> accessToken())
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertEquals(8, responses.size());
+        assertTrue(responses.stream().allMatch(response -> "token".equals(response.getAccessToken())));
+        assertEquals(1, authorizationServer.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("Tokens issued before the client registers again, or to another client_id, are not served")
+    void keysTokensByClientId() {
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+
+        service.register(fhirClient, baseUrl(), null, "1", false).block(Duration.ofSeconds(10));
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+        assertEquals(2, authorizationServer.tokenRequests());
+
+        fhirClient.setClientId("client-1");
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+        assertEquals(3, authorizationServer.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("Blocking and reactive callers of the same cache share a single token request")
+    void coalescesWithBlockingService() {
+        final UdapClientService blockingService = new UdapClientService(trustedServerCache, accessTokenCache,
+                UdapWebClientFactory.getShared());
+        final CompletableFuture<AccessTokenResponse> blocking = CompletableFuture.supplyAsync(() -> {
+            try {
+                return blockingService.getAccessToken(fhirClient, baseUrl(), null, "system/Patient.read",
+                        List.of(), false);
+            } catch (UdapException e) {
+                throw new CompletionException(e);
+            }
+        });
+        final List<AccessTokenResponse> responses = Flux.range(0, 4)
+            .flatMap(i -> accessToken())
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertEquals("token", blocking.join().getAccessToken());
+        assertTrue(responses.stream().allMatch(response -> "token".equals(response.getAccessToken())));
+        assertEquals(1, authorizationServer.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("EC client key signs with ES256 when the token endpoint supports it")
+    void negotiatesEs256() throws JOSEException, ParseException {
+        authorizationServer.setSigningAlgs("RS256", "ES256");
+        fhirClient.setKeyMaterial(ClientKeyMaterial.builder()
+            .privateJwkSet(new JWKSet(new ECKeyGenerator(Curve.P_256).keyID("reactive-ec").generate()))
+            .loadedAt(Instant.now())
+            .build());
+
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+
+        final String clientAssertion = UriComponentsBuilder.newInstance()
+            .query(authorizationServer.tokenRequestBodies().get(0))
+            .build()
+            .getQueryParams()
+            .getFirst("client_assertion");
+        assertEquals(JWSAlgorithm.ES256, JWSObject.parse(clientAssertion).getHeader().getAlgorithm());
+    }
+
+    @Test
+    @DisplayName("Discovery, signing and token request are timed per server, client and outcome")
+    void recordsStageTimers() {
+        assertEquals("token", accessToken().block(Duration.ofSeconds(10)).getAccessToken());
+
+        assertEquals(1, meterRegistry.get(UdapMetrics.METADATA_FETCH)
+            .tags(UdapMetrics.AUTHORIZATION_SERVER, baseUrl(), UdapMetrics.OUTCOME, UdapMetrics.SUCCESS)
+            .timer()
+            .count());
+        assertEquals(1, meterRegistry.get(UdapMetrics.JWS_SIGNING)
+            .tags(UdapMetrics.CLIENT, "reactive", UdapMetrics.ALGORITHM, "RS256", UdapMetrics.TOKEN, "authn_token")
+            .timer()
+            .count());
+        final Timer tokenRequest = meterRegistry.get(UdapMetrics.TOKEN_REQUEST)
+            .tags(UdapMetrics.AUTHORIZATION_SERVER, baseUrl(), UdapMetrics.CLIENT, "reactive", UdapMetrics.OUTCOME,
+                    UdapMetrics.SUCCESS)
+            .timer();
+        assertEquals(1, tokenRequest.count());
+        // Includes the mock server's 200ms delay
+        assertTrue(tokenRequest.totalTime(TimeUnit.MILLISECONDS) >= 200);
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileInputStream;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Date;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.udap.config.SignedMetadataCacheProperties;
+import org.udap.util.JwsSignerRegistry;
+import org.udap.util.UdapUtil;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+class SignedMetadataCacheTests {
+
+    private static final String ISSUER = "https://as.example.com/fhir";
+
+    private static final Set<JWSAlgorithm> ALGORITHMS = UdapUtil.SIGNED_METADATA_ALGORITHMS;
+
+    @TempDir
+    static Path keyDirectory;
+
+    private static String signedMetadata;
+
+    /**
+     * Server key and self-signed certificate, so that the signed metadata carries an x5c
+     */
+    @BeforeAll
+    static void signMetadata() throws Exception {
+        final Path keystore = keyDirectory.resolve("server.p12");
+        final Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool")
+            .toString(), "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-dname",
+                "CN=as.example.com", "-storetype", "PKCS12", "-keystore", keystore.toString(), "-storepass",
+                "changeit", "-validity", "1").inheritIO().start();
+        assertEquals(0, keytool.waitFor());
+
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(keystore.toFile())) {
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        // No "kid", which the uncached verification would try to match against the x5c key
+        final RSAKey rsaKey = (RSAKey) JWKSet.load(keyStore, name -> "changeit".toCharArray()).getKeys().get(0);
+        final JWKSet jwkSet = new JWKSet(new RSAKey.Builder(rsaKey).keyID(null).build());
+
+        final Date now = new Date();
+        final JWTClaimsSet claims = new JWTClaimsSet.Builder().issuer(ISSUER)
+            .subject(ISSUER)
+            .issueTime(now)
+            .expirationTime(new Date(now.getTime() + 3_600_000))
+            .jwtID("metadata")
+            .claim("authorization_endpoint", ISSUER + "/authorize")
+            .claim("token_endpoint", ISSUER + "/token")
+            .claim("registration_endpoint", ISSUER + "/register")
+            .build();
+        signedMetadata = new JwsSignerRegistry(jwkSet).sign(claims, JWSAlgorithm.RS256).serialize();
+    }
+
+    @Test
+    @DisplayName("Identical signed metadata is verified once")
+    void cachesVerifiedClaims() throws Exception {
+        final SignedMetadataCache cache = new SignedMetadataCache(new SignedMetadataCacheProperties());
+
+        final JWTClaimsSet claims = cache.getClaims(signedMetadata, ISSUER, ALGORITHMS);
+
+        assertEquals(UdapUtil.getClaimsFromSignedServerMetadata(signedMetadata, ISSUER, ALGORITHMS).toJSONObject(),
+                claims.toJSONObject());
+        assertSame(claims, cache.getClaims(signedMetadata, ISSUER, ALGORITHMS));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Issuer and algorithms are part of the key")
+    void rejectsOtherIssuer() {
+        final SignedMetadataCache cache = new SignedMetadataCache(new SignedMetadataCacheProperties());
+
+        assertThrows(BadJOSEException.class,
+                () -> cache.getClaims(signedMetadata, "https://other.example.com", ALGORITHMS));
+        assertThrows(BadJOSEException.class,
+                () -> cache.getClaims(signedMetadata, ISSUER, Set.of(JWSAlgorithm.ES256)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Tampered signature and missing certificate are rejected and not cached")
+    void rejectsInvalidSignature() throws Exception {
+        final SignedMetadataCache cache = new SignedMetadataCache(new SignedMetadataCacheProperties());
+        final String[] parts = signedMetadata.split("\\.");
+        final String tampered = parts[0] + "." + parts[1] + "." + new StringBuilder(parts[2]).reverse();
+
+        assertThrows(BadJOSEException.class, () -> cache.getClaims(tampered, ISSUER, ALGORITHMS));
+        assertEquals(0, cache.size());
+
+        final String unsigned = signedMetadata.replaceFirst("^[^.]+", "eyJhbGciOiJSUzI1NiJ9");
+        assertThrows(BadJOSEException.class, () -> cache.getClaims(unsigned, ISSUER, ALGORITHMS));
+        assertEquals(0, cache.size());
+
+        // Rejected alike when verified without the cache
+        final SignedMetadataCacheProperties disabled = new SignedMetadataCacheProperties();
+        disabled.setEnabled(false);
+        assertThrows(BadJOSEException.class,
+                () -> new SignedMetadataCache(disabled).getClaims(unsigned, ISSUER, ALGORITHMS));
+    }
+
+}
@@ -0,0 +1,182 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.udap.config.SignedMetadataCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapResilienceProperties;
+import org.udap.exception.UdapException;
+import org.udap.model.TrustedServer;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.CacheDirectives;
+import org.udap.util.UdapUtil;
+import org.udap.util.UdapWebClientFactory;
+
+class TrustedServerCacheTests {
+
+    private static final String ETAG = "\"metadata-v1\"";
+
+    private final TrustedServerCacheProperties properties = new TrustedServerCacheProperties();
+
+    private FakeAuthorizationServer authorizationServer;
+
+    private String baseUrl;
+
+    private TrustedServerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        // Every response expires at once
+        authorizationServer = FakeAuthorizationServer.builder().cacheControl("max-age=0").eTag(ETAG).start();
+        baseUrl = authorizationServer.baseUrl();
+
+        // Expired entries are re-validated by the calling thread
+        properties.setStaleWhileRevalidate(Duration.ZERO);
+        final UdapResilienceProperties resilience = new UdapResilienceProperties();
+        resilience.getRetry().setMaxAttempts(1);
+        cache = new TrustedServerCache(properties, new SignedMetadataCache(new SignedMetadataCacheProperties()),
+                new AuthorizationServerResilience(resilience), UdapWebClientFactory.getShared());
+    }
+
+    @AfterEach
+    void tearDown() {
+        authorizationServer.close();
+    }
+
+    private TrustedServer get() throws Exception {
+        return cache.get(baseUrl, null, UdapUtil.SIGNED_METADATA_ALGORITHMS);
+    }
+
+    @Test
+    @DisplayName("Fresh metadata is served from cache without discovery")
+    void servesFreshEntry() throws Exception {
+        authorizationServer.setCacheControl(null);
+        final TrustedServer first = get();
+
+        assertSame(first, get());
+        assertSame(first, cache.retrieve(baseUrl, null, UdapUtil.SIGNED_METADATA_ALGORITHMS).block());
+        assertEquals(1, authorizationServer.discoveries());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Metadata is discovered again once it expired")
+    void rediscoversExpiredEntry() throws Exception {
+        authorizationServer.setCacheControl(null);
+        properties.setRevalidateInterval(Duration.ofMillis(200));
+        properties.setRefreshAhead(Duration.ZERO);
+        get();
+        get();
+        assertEquals(1, authorizationServer.discoveries());
+
+        Thread.sleep(300);
+        get();
+
+        assertEquals(2, authorizationServer.discoveries());
+    }
+
+    @Test
+    @DisplayName("Entries expire after the re-validate interval or an earlier Cache-Control max-age")
+    void boundsFreshnessByRevalidateInterval() throws Exception {
+        properties.setRevalidateInterval(Duration.ofMinutes(5));
+
+        authorizationServer.setCacheControl("max-age=3600");
+        final TrustedServer bounded = get();
+        assertEquals(Duration.ofMinutes(5), Duration.between(bounded.getValidatedAt(), bounded.getExpiresAt()));
+
+        cache.invalidateAll();
+        authorizationServer.setCacheControl("max-age=60");
+        final TrustedServer shorter = get();
+        assertEquals(Duration.ofMinutes(1), Duration.between(shorter.getValidatedAt(), shorter.getExpiresAt()));
+
+        cache.invalidateAll();
+        authorizationServer.setCacheControl(null);
+        final TrustedServer unbounded = get();
+        assertEquals(Duration.ofMinutes(5), Duration.between(unbounded.getValidatedAt(), unbounded.getExpiresAt()));
+    }
+
+    @Test
+    @DisplayName("Expired metadata is re-validated with If-None-Match and a 304 keeps the entry")
+    void revalidatesWithConditionalRequest() throws Exception {
+        final TrustedServer first = get();
+        assertEquals(ETAG, first.getETag());
+
+        final TrustedServer second = get();
+
+        assertEquals(2, authorizationServer.discoveries());
+        assertEquals(1, authorizationServer.notModifiedResponses());
+        assertSame(first.getServerMetadata(), second.getServerMetadata());
+        assertEquals(ETAG, second.getETag());
+    }
+
+    @Test
+    @DisplayName("Last verified metadata is served within stale-if-error while the server is down")
+    void servesStaleIfError() throws Exception {
+        final TrustedServer first = get();
+        authorizationServer.setUnavailable(true);
+
+        assertSame(first, get());
+
+        // Nothing to fall back on
+        cache.invalidateAll();
+        assertThrows(UdapException.class, this::get);
+    }
+
+    @Test
+    @DisplayName("Cache-Control max-age, no-cache and RFC 5861 extensions are parsed")
+    void parsesCacheControl() {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("public, max-age=600, stale-while-revalidate=30, stale-if-error=\"3600\"");
+        assertEquals(new CacheDirectives(Duration.ofMinutes(10), Duration.ofSeconds(30), Duration.ofHours(1), false,
+                false), CacheDirectives.of(headers));
+
+        headers.setCacheControl("no-cache, max-age=600");
+        assertEquals(new CacheDirectives(Duration.ZERO, null, null, true, false), CacheDirectives.of(headers));
+
+        headers.setCacheControl("no-store");
+        assertEquals(new CacheDirectives(Duration.ZERO, null, null, true, true), CacheDirectives.of(headers));
+
+        assertNull(CacheDirectives.of(new HttpHeaders()).freshness());
+    }
+
+    @Test
+    @DisplayName("no-cache metadata gets no default stale windows and no-store metadata is neither cached nor recorded")
+    void honoursNoCacheAndNoStore() throws Exception {
+        final List<TrustedServer> changes = new ArrayList<>();
+        cache.setChangeListener((key, trustedServer) -> changes.add(trustedServer));
+        final TrustedServer first = get();
+        assertEquals(1, cache.size());
+
+        // Re-validated with a 304 that forbids storing: the cached entry is dropped
+        authorizationServer.setCacheControl("no-store");
+        get();
+        assertEquals(0, cache.size());
+        assertEquals(Arrays.asList(first, null), changes);
+
+        get();
+        assertEquals(3, authorizationServer.discoveries());
+        assertEquals(0, cache.size());
+        assertEquals(2, changes.size());
+
+        // Not served once the server is down
+        authorizationServer.setCacheControl("no-cache");
+        final TrustedServer revalidated = get();
+        assertEquals(revalidated.getExpiresAt(), revalidated.getStaleIfErrorUntil());
+        authorizationServer.setUnavailable(true);
+        assertThrows(UdapException.class, this::get);
+    }
+
+}
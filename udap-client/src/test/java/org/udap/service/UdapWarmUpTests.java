@@ -0,0 +1,90 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.udap.test.TestFhirClients.fhirClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClientPool;
+import org.udap.config.UdapWarmUpProperties;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapWebClientFactory;
+
+class UdapWarmUpTests {
+
+    private final UdapWarmUpProperties properties = new UdapWarmUpProperties();
+
+    private final UdapFhirClientPool fhirClientPool = new UdapFhirClientPool();
+
+    private FakeAuthorizationServer authorizationServer;
+
+    private UdapWarmUp warmUp;
+
+    @BeforeEach
+    void setUp() {
+        authorizationServer = FakeAuthorizationServer.start();
+
+        fhirClientPool.setFhirClients(List.of(fhirClient("first"), fhirClient("second")));
+
+        final WebClient webClient = UdapWebClientFactory.getShared();
+        final TrustedServerCache trustedServerCache = new TrustedServerCache(new TrustedServerCacheProperties(),
+                webClient);
+        properties.setEnabled(true);
+        properties.setConcurrency(2);
+        warmUp = new UdapWarmUp(properties, fhirClientPool, trustedServerCache, new ReactiveUdapClientService(
+                trustedServerCache, new AccessTokenCache(new AccessTokenCacheProperties()), webClient));
+    }
+
+    @AfterEach
+    void tearDown() {
+        authorizationServer.close();
+    }
+
+    private UdapWarmUpProperties.Target target(final String authorizationServer, final String scope) {
+        final UdapWarmUpProperties.Target target = new UdapWarmUpProperties.Target();
+        target.setAuthorizationServer(authorizationServer);
+        target.setMustBeTrusted(false);
+        target.setScope(scope);
+        return target;
+    }
+
+    @Test
+    @DisplayName("Warm-up discovers once and prefetches a token per client, out of service until done")
+    void warmsUpEveryPair() {
+        properties.getTargets().add(target(authorizationServer.baseUrl(), "system/Patient.read"));
+        assertEquals(Status.OUT_OF_SERVICE, warmUp.health().getStatus());
+
+        warmUp.warmUp().block(Duration.ofSeconds(10));
+
+        assertEquals(Status.UP, warmUp.health().getStatus());
+        assertEquals(UdapWarmUp.State.DONE, warmUp.getState());
+        // Key material of two clients, one discovery, two tokens
+        assertEquals(5, warmUp.health().getDetails().get("completed"));
+        assertEquals(1, authorizationServer.discoveries());
+        assertEquals(2, authorizationServer.tokenRequests());
+    }
+
+    @Test
+    @DisplayName("Unreachable servers are reported as failed steps without holding the node back")
+    void reportsFailures() {
+        final int closedPort = authorizationServer.port();
+        authorizationServer.close();
+        properties.getTargets().add(target("http://localhost:" + closedPort, null));
+
+        warmUp.warmUp().block(Duration.ofSeconds(60));
+
+        assertEquals(Status.UP, warmUp.health().getStatus());
+        assertEquals(2, warmUp.health().getDetails().get("completed"));
+        assertEquals(1, warmUp.health().getDetails().get("failed"));
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.udap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.udap.config.AccessTokenCacheProperties;
+import org.udap.config.TrustedServerCacheProperties;
+import org.udap.config.UdapFhirClient;
+import org.udap.config.UdapSnapshotProperties;
+import org.udap.model.AccessTokenResponse;
+import org.udap.model.RegistrationResponse;
+import org.udap.test.FakeAuthorizationServer;
+import org.udap.util.UdapUtil;
+import org.udap.util.UdapWebClientFactory;
+
+class WarmStartSnapshotTests {
+
+    private static final String ACCESS_TOKEN = "secret-access-token";
+
+    private final UdapSnapshotProperties properties = new UdapSnapshotProperties();
+
+    @TempDir
+    private Path directory;
+
+    private FakeAuthorizationServer authorizationServer;
+
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() {
+        authorizationServer = FakeAuthorizationServer.start();
+        baseUrl = authorizationServer.baseUrl();
+
+        properties.setEnabled(true);
+        properties.setPath(directory.resolve("snapshot.bin").toString());
+        properties.setKey(Base64.getEncoder().encodeToString(new byte[32]));
+    }
+
+    @AfterEach
+    void tearDown() {
+        authorizationServer.close();
+    }
+
+    /**
+     * Caches of one node along with its snapshot
+     */
+    private final class Node {
+
+        final TrustedServerCache trustedServerCache = new TrustedServerCache(new TrustedServerCacheProperties(),
+                UdapWebClientFactory.getShared());
+
+        final AccessTokenCache accessTokenCache = new AccessTokenCache(new AccessTokenCacheProperties());
+
+        final ClientRegistrations clientRegistrations = new ClientRegistrations();
+
+        final WarmStartSnapshot snapshot = new WarmStartSnapshot(properties, trustedServerCache, accessTokenCache,
+                clientRegistrations);
+
+        Node() {
+            snapshot.afterPropertiesSet();
+        }
+
+    }
+
+    private static UdapFhirClient fhirClient() {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname("snapshot");
+        return fhirClient;
+    }
+
+    private static AccessTokenResponse token(final int expiresIn) {
+        final AccessTokenResponse response = new AccessTokenResponse();
+        response.setAccessToken(ACCESS_TOKEN);
+        response.setTokenType("Bearer");
+        response.setExpiresIn(expiresIn);
+        return response;
+    }
+
+    private AccessTokenKey tokenKey() {
+        return new AccessTokenKey("snapshot", "snapshot-id", baseUrl + "/token", "system/*.read", "");
+    }
+
+    private void populate(final Node node, final AccessTokenKey tokenKey, final int expiresIn) throws Exception {
+        node.trustedServerCache.get(baseUrl, null, UdapUtil.SIGNED_METADATA_ALGORITHMS);
+        final RegistrationResponse registration = new RegistrationResponse();
+        registration.setClientId("client-id");
+        node.clientRegistrations.put(fhirClient(), baseUrl, registration);
+        node.accessTokenCache.put(tokenKey, token(expiresIn));
+        node.snapshot.destroy();
+    }
+
+    @Test
+    @DisplayName("A restarted node serves metadata, client IDs and tokens from the snapshot")
+    void restoresEntries() throws Exception {
+        final AccessTokenKey tokenKey = tokenKey();
+        populate(new Node(), tokenKey, 3600);
+
+        final Node restarted = new Node();
+
+        assertEquals(baseUrl + "/token", restarted.trustedServerCache
+            .get(baseUrl, null, UdapUtil.SIGNED_METADATA_ALGORITHMS)
+            .getServerMetadata()
+            .getTokenEndpoint());
+        assertEquals(1, authorizationServer.discoveries());
+        assertEquals("client-id", restarted.clientRegistrations.getClientId(fhirClient(), baseUrl));
+        assertEquals(ACCESS_TOKEN, restarted.accessTokenCache.get(tokenKey, () -> null).getAccessToken());
+        restarted.snapshot.destroy();
+    }
+
+    @Test
+    @DisplayName("Secrets are encrypted at rest and unreadable with another key")
+    void encryptsEntries() throws Exception {
+        final AccessTokenKey tokenKey = tokenKey();
+        populate(new Node(), tokenKey, 3600);
+
+        final String contents = new String(Files.readAllBytes(Path.of(properties.getPath())),
+                StandardCharsets.ISO_8859_1);
+        assertFalse(contents.contains(ACCESS_TOKEN));
+        assertFalse(contents.contains("client-id"));
+
+        final byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        properties.setKey(Base64.getEncoder().encodeToString(otherKey));
+        final Node restarted = new Node();
+
+        assertEquals(0, restarted.accessTokenCache.size());
+        assertEquals(0, restarted.clientRegistrations.size());
+        assertEquals(0, restarted.trustedServerCache.size());
+        restarted.snapshot.destroy();
+    }
+
+    @Test
+    @DisplayName("Tokens gone stale while the node was down are not restored")
+    void dropsStaleTokens() throws Exception {
+        final AccessTokenKey tokenKey = tokenKey();
+        // Stale one second after it is cached (30 second expiry margin)
+        populate(new Node(), tokenKey, 31);
+        Thread.sleep(1100);
+
+        final Node restarted = new Node();
+
+        assertNull(restarted.accessTokenCache.get(tokenKey, () -> null));
+        assertEquals("client-id", restarted.clientRegistrations.getClientId(fhirClient(), baseUrl));
+        restarted.snapshot.destroy();
+    }
+
+    @Test
+    @DisplayName("A snapshot with a record cut out is restored up to the cut only")
+    void stopsAtBrokenChain() throws Exception {
+        final AccessTokenKey tokenKey = tokenKey();
+        populate(new Node(), tokenKey, 3600);
+
+        // Header and seed, then the trusted server, registration and access token records
+        final ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(Path.of(properties.getPath())));
+        final List<byte[]> records = new ArrayList<>();
+        snapshot.position(8 + 16);
+        while (snapshot.hasRemaining()) {
+            final byte[] record = new byte[Integer.BYTES + snapshot.getInt(snapshot.position())];
+            snapshot.get(record);
+            records.add(record);
+        }
+        assertEquals(3, records.size());
+        try (OutputStream out = Files.newOutputStream(Path.of(properties.getPath()))) {
+            out.write(snapshot.array(), 0, 8 + 16);
+            out.write(records.get(0));
+            out.write(records.get(2));
+        }
+
+        final Node restarted = new Node();
+
+        assertEquals(1, restarted.trustedServerCache.size());
+        assertEquals(0, restarted.clientRegistrations.size());
+        assertEquals(0, restarted.accessTokenCache.size());
+        restarted.snapshot.destroy();
+    }
+
+}
@@ -0,0 +1,330 @@
+package org.udap.test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+import org.springframework.http.HttpHeaders;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.HttpServerRoutes;
+
+/**
+ * UDAP authorization server on a local port for tests: discovery, token and registration
+ * endpoints, plus any routes of the test (e.g., a FHIR server).
+ *
+ * Every endpoint is served at the root and below a first path segment, the "tenant", so
+ * that one server stands in for many authorization servers ({@link #url(String)}).
+ */
+public final class FakeAuthorizationServer implements AutoCloseable {
+
+    private final Builder settings;
+
+    private final DisposableServer server;
+
+    private final String baseUrl;
+
+    private final AtomicInteger discoveries = new AtomicInteger();
+
+    private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+
+    private final List<String> tokenRequestBodies = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger registrations = new AtomicInteger();
+
+    private final AtomicInteger registrationsInFlight = new AtomicInteger();
+
+    private final AtomicInteger maxRegistrationsInFlight = new AtomicInteger();
+
+    private volatile boolean unavailable;
+
+    private volatile String cacheControl;
+
+    private volatile List<String> signingAlgs;
+
+    private FakeAuthorizationServer(final Builder settings) {
+        this.settings = settings;
+        this.cacheControl = settings.cacheControl;
+        this.signingAlgs = settings.signingAlgs;
+        this.server = HttpServer.create().host("localhost").port(0).route(routes -> {
+            settings.routes.accept(routes);
+            for (String prefix : List.of("", "/{tenant}")) {
+                routes.get(prefix + "/.well-known/udap", this::discovery)
+                    .post(prefix + "/token", this::token)
+                    .post(prefix + "/register", this::register);
+            }
+        }).bindNow();
+        this.baseUrl = "http://localhost:" + server.port();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a server with the default endpoints only
+     */
+    public static FakeAuthorizationServer start() {
+        return builder().start();
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @param tenant
+     * @return base URL of the tenant's authorization server
+     */
+    public String url(final String tenant) {
+        return baseUrl + "/" + tenant;
+    }
+
+    public int port() {
+        return server.port();
+    }
+
+    /**
+     * @return discovery requests, answered or not
+     */
+    public int discoveries() {
+        return discoveries.get();
+    }
+
+    public int notModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    public int tokenRequests() {
+        return tokenRequests.get();
+    }
+
+    /**
+     * @return form bodies of the token requests
+     */
+    public List<String> tokenRequestBodies() {
+        return tokenRequestBodies;
+    }
+
+    public int registrations() {
+        return registrations.get();
+    }
+
+    public int maxRegistrationsInFlight() {
+        return maxRegistrationsInFlight.get();
+    }
+
+    /**
+     * @param unavailable - when true, discovery is answered 503
+     */
+    public void setUnavailable(final boolean unavailable) {
+        this.unavailable = unavailable;
+    }
+
+    /**
+     * @param cacheControl - Cache-Control header of discovery responses; may be null
+     */
+    public void setCacheControl(final String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * @param signingAlgs - signature algorithms of the token and registration endpoints
+     */
+    public void setSigningAlgs(final String... signingAlgs) {
+        this.signingAlgs = List.of(signingAlgs);
+    }
+
+    /**
+     * @param issuer - base URL of the (tenant's) authorization server
+     * @return discovery document of the server
+     */
+    public String metadata(final String issuer) {
+        final String algs = signingAlgs.stream().map(alg -> "\"" + alg + "\"").collect(Collectors.joining(","));
+        return """
+                {"udap_versions_supported":["1"],"udap_profiles_supported":["udap_dcr","udap_authn"],
+                "udap_authorization_extensions_supported":[],"udap_certifications_supported":[],
+                "grant_types_supported":["client_credentials"],"token_endpoint":"%1$s/token",
+                "token_endpoint_auth_methods_supported":["private_key_jwt"],
+                "token_endpoint_auth_signing_alg_values_supported":[%2$s],
+                "registration_endpoint":"%1$s/register",
+                "registration_endpoint_jwt_signing_alg_values_supported":[%2$s]}
+                """.formatted(issuer, algs);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private String issuer(final HttpServerRequest request) {
+        final String tenant = request.param("tenant");
+        return tenant != null ? url(tenant) : baseUrl;
+    }
+
+    private Publisher<Void> discovery(final HttpServerRequest request, final HttpServerResponse response) {
+        discoveries.incrementAndGet();
+        if (unavailable || settings.unavailableTenants.contains(request.param("tenant"))) {
+            return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE).send();
+        }
+
+        if (cacheControl != null) {
+            response.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        if (settings.eTag != null) {
+            response.header(HttpHeaders.ETAG, settings.eTag);
+            if (settings.eTag.equals(request.requestHeaders().get(HttpHeaders.IF_NONE_MATCH))) {
+                notModifiedResponses.incrementAndGet();
+                return response.status(HttpResponseStatus.NOT_MODIFIED).send();
+            }
+        }
+
+        return response.header(HttpHeaders.CONTENT_TYPE, "application/json")
+            .sendString(Mono.just(metadata(issuer(request))));
+    }
+
+    private Publisher<Void> token(final HttpServerRequest request, final HttpServerResponse response) {
+        final int n = tokenRequests.incrementAndGet();
+        final String tenant = request.param("tenant");
+        final Mono<String> body = request.receive().aggregate().asString().doOnNext(tokenRequestBodies::add);
+        if (settings.lockedTenants.contains(tenant)) {
+            return response.status(HttpResponseStatus.BAD_REQUEST)
+                .header(HttpHeaders.CONTENT_TYPE, "application/json")
+                .sendString(body.then(Mono.just("{\"error\":\"invalid_client\"}")));
+        }
+
+        return response.header(HttpHeaders.CONTENT_TYPE, "application/json")
+            .sendString(body.then(Mono.fromSupplier(() -> """
+                    {"access_token":"%s","token_type":"Bearer","expires_in":%d}
+                    """.formatted(settings.accessToken.apply(tenant, n), settings.expiresIn)))
+                .delayElement(settings.tokenDelay));
+    }
+
+    private Publisher<Void> register(final HttpServerRequest request, final HttpServerResponse response) {
+        final int n = registrations.incrementAndGet();
+        final String tenant = request.param("tenant");
+        maxRegistrationsInFlight.accumulateAndGet(registrationsInFlight.incrementAndGet(), Math::max);
+
+        return response.status(HttpResponseStatus.CREATED)
+            .header(HttpHeaders.CONTENT_TYPE, "application/json")
+            .sendString(Mono.just("{\"client_id\":\"%s-%d\"}".formatted(tenant != null ? tenant : "client", n))
+                .delayElement(settings.registrationDelay)
+                .doFinally(signal -> registrationsInFlight.decrementAndGet()));
+    }
+
+    public static final class Builder {
+
+        private Consumer<HttpServerRoutes> routes = routes -> {
+        };
+
+        private final Set<String> unavailableTenants = new HashSet<>();
+
+        private final Set<String> lockedTenants = new HashSet<>();
+
+        private String cacheControl;
+
+        private String eTag;
+
+        private List<String> signingAlgs = List.of("RS256");
+
+        private BiFunction<String, Integer, String> accessToken = (tenant, n) -> "token-" + n;
+
+        private int expiresIn = 300;
+
+        private Duration tokenDelay = Duration.ZERO;
+
+        private Duration registrationDelay = Duration.ZERO;
+
+        private Builder() {
+
+        }
+
+        /**
+         * @param routes - further routes of the test, matched ahead of the endpoints
+         */
+        public Builder routes(final Consumer<HttpServerRoutes> routes) {
+            this.routes = routes;
+            return this;
+        }
+
+        /**
+         * @param tenants - answer discovery with 503
+         */
+        public Builder unavailable(final String... tenants) {
+            unavailableTenants.addAll(List.of(tenants));
+            return this;
+        }
+
+        /**
+         * @param tenants - answer token requests with 400 "invalid_client"
+         */
+        public Builder locked(final String... tenants) {
+            lockedTenants.addAll(List.of(tenants));
+            return this;
+        }
+
+        public Builder cacheControl(final String cacheControl) {
+            this.cacheControl = cacheControl;
+            return this;
+        }
+
+        /**
+         * @param eTag - ETag of the discovery document; a matching If-None-Match is
+         * answered 304
+         */
+        public Builder eTag(final String eTag) {
+            this.eTag = eTag;
+            return this;
+        }
+
+        public Builder signingAlgs(final String... signingAlgs) {
+            this.signingAlgs = Stream.of(signingAlgs).toList();
+            return this;
+        }
+
+        /**
+         * @param accessToken - access token issued by the tenant (null at the root) for
+         * the n-th token request; "token-&lt;n&gt;" by default
+         */
+        public Builder accessToken(final BiFunction<String, Integer, String> accessToken) {
+            this.accessToken = accessToken;
+            return this;
+        }
+
+        public Builder expiresIn(final int expiresIn) {
+            this.expiresIn = expiresIn;
+            return this;
+        }
+
+        public Builder tokenDelay(final Duration tokenDelay) {
+            this.tokenDelay = tokenDelay;
+            return this;
+        }
+
+        public Builder registrationDelay(final Duration registrationDelay) {
+            this.registrationDelay = registrationDelay;
+            return this;
+        }
+
+        public FakeAuthorizationServer start() {
+            return new FakeAuthorizationServer(this);
+        }
+
+    }
+
+}
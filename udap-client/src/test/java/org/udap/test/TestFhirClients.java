@@ -0,0 +1,74 @@
+package org.udap.test;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.udap.config.ClientKeyMaterial;
+import org.udap.config.UdapFhirClient;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+
+/**
+ * FHIR clients for tests, holding an RSA key generated once per nickname.
+ */
+public final class TestFhirClients {
+
+    private static final Map<String, JWK> KEYS = new ConcurrentHashMap<>();
+
+    private TestFhirClients() {
+
+    }
+
+    /**
+     * @param nickname
+     * @return a client already registered, as "&lt;nickname&gt;-id"
+     */
+    public static UdapFhirClient fhirClient(final String nickname) {
+        final UdapFhirClient fhirClient = unregisteredFhirClient(nickname);
+        fhirClient.setClientId(nickname + "-id");
+        return fhirClient;
+    }
+
+    /**
+     * @param nickname
+     * @return a client yet to register, its certificate's SAN
+     * "https://client.example.com/&lt;nickname&gt;"
+     */
+    public static UdapFhirClient unregisteredFhirClient(final String nickname) {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientNickname(nickname);
+        fhirClient.setClientName(nickname);
+        fhirClient.setAuthNTokenTtl(300);
+        fhirClient.setSoftwareStatementTtl(300);
+        fhirClient.setKeyMaterial(keyMaterial(nickname, key(nickname)));
+        return fhirClient;
+    }
+
+    /**
+     * @param nickname
+     * @param key - private key of the client
+     * @return key material of the client
+     */
+    public static ClientKeyMaterial keyMaterial(final String nickname, final JWK key) {
+        return ClientKeyMaterial.builder()
+            .privateJwkSet(new JWKSet(key))
+            .subjectAlternativeName("https://client.example.com/" + nickname)
+            .loadedAt(Instant.now())
+            .build();
+    }
+
+    private static JWK key(final String nickname) {
+        return KEYS.computeIfAbsent(nickname, keyId -> {
+            try {
+                return new RSAKeyGenerator(2048).keyID(keyId).generate();
+            } catch (JOSEException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.udap.config.UdapFhirClient;
+import org.udap.model.AuthZExtensionHl7B2b;
+import org.udap.model.AuthZExtensionHl7B2bHeader;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+class ClientAssertionTemplateTests {
+
+    private static final String TOKEN_ENDPOINT = "https://as.example.com/token";
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2023-08-01T12:00:00.750Z"), ZoneOffset.UTC);
+
+    private static final AuthZExtensionHl7B2bHeader HL7_B2B = AuthZExtensionHl7B2bHeader.builder()
+        .hl7B2b(AuthZExtensionHl7B2b.builder()
+            .version("1")
+            .organizationId("https://example.com/Organization/1")
+            .purposeOfUse(List.of("TREATMENT"))
+            .build())
+        .build();
+
+    private static UdapFhirClient fhirClient(final String clientId) {
+        final UdapFhirClient fhirClient = new UdapFhirClient();
+        fhirClient.setClientId(clientId);
+        fhirClient.setAuthNTokenTtl(300);
+
+        return fhirClient;
+    }
+
+    @Test
+    @DisplayName("Template tokens carry the same header and claims as built tokens")
+    void signsLikeBuilder() throws Exception {
+        final ECKey ecKey = new ECKeyGenerator(Curve.P_256).keyID("client").generate();
+        final JwsSignerRegistry signers = new JwsSignerRegistry(new JWKSet(ecKey));
+        final UdapFhirClient fhirClient = fhirClient("client-id");
+
+        final JWSObject authNToken = UdapUtil.createSignedAuthNToken(fhirClient, TOKEN_ENDPOINT, List.of(HL7_B2B),
+                signers, JWSAlgorithm.ES256, CLOCK, JtiGenerator.getDefault());
+        final JWTClaimsSet built = UdapUtil
+            .appendAuthNExtensions(UdapUtil.createAuthNToken(fhirClient, TOKEN_ENDPOINT, CLOCK, JtiGenerator.uuid()),
+                    List.of(HL7_B2B))
+            .jwtID(authNToken.getPayload().toJSONObject().get("jti").toString())
+            .build();
+
+        assertTrue(JWSObject.parse(authNToken.serialize()).verify(new ECDSAVerifier(ecKey.toECPublicKey())));
+        assertEquals(signers.sign(built, JWSAlgorithm.ES256).getHeader().toJSONObject(),
+                authNToken.getHeader().toJSONObject());
+        assertEquals(built.toJSONObject(), JWTClaimsSet.parse(authNToken.getPayload().toJSONObject()).toJSONObject());
+        assertEquals(CLOCK.instant().getEpochSecond() + 300, built.getExpirationTime().getTime() / 1000);
+    }
+
+    @Test
+    @DisplayName("Template is built once per constant claims and every token gets its own jti")
+    void reusesTemplate() throws Exception {
+        final JwsSignerRegistry signers = new JwsSignerRegistry(
+                new JWKSet(new ECKeyGenerator(Curve.P_256).generate()));
+        final JWTClaimsSet constantClaims = new JWTClaimsSet.Builder().issuer("client-id").build();
+
+        final ClientAssertionTemplate template = signers.getTemplate(constantClaims, JWSAlgorithm.ES256);
+        assertSame(template, signers.getTemplate(new JWTClaimsSet.Builder().issuer("client-id").build(),
+                JWSAlgorithm.ES256));
+
+        final JWSObject first = UdapUtil.createSignedAuthNToken(fhirClient("client-id"), TOKEN_ENDPOINT, null,
+                signers, JWSAlgorithm.ES256, CLOCK, JtiGenerator.getDefault());
+        final JWSObject second = UdapUtil.createSignedAuthNToken(fhirClient("client-id"), TOKEN_ENDPOINT, null,
+                signers, JWSAlgorithm.ES256, CLOCK, JtiGenerator.getDefault());
+        assertNotEquals(first.getPayload().toJSONObject().get("jti"), second.getPayload().toJSONObject().get("jti"));
+    }
+
+    @Test
+    @DisplayName("Tokens with other authorization extensions share the template of their client and audience")
+    void splicesExtensionsPerToken() throws Exception {
+        final JwsSignerRegistry signers = new JwsSignerRegistry(
+                new JWKSet(new ECKeyGenerator(Curve.P_256).generate()));
+
+        for (String organization : List.of("1", "2", "3")) {
+            final AuthZExtensionHl7B2bHeader hl7B2b = AuthZExtensionHl7B2bHeader.builder()
+                .hl7B2b(AuthZExtensionHl7B2b.builder()
+                    .version("1")
+                    .organizationId("https://example.com/Organization/" + organization)
+                    .purposeOfUse(List.of("TREATMENT"))
+                    .build())
+                .build();
+            final JWSObject authNToken = UdapUtil.createSignedAuthNToken(fhirClient("client-id"), TOKEN_ENDPOINT,
+                    List.of(hl7B2b), signers, JWSAlgorithm.ES256, CLOCK, JtiGenerator.getDefault());
+
+            assertEquals(hl7B2b.toClaims(), JWTClaimsSet.parse(authNToken.getPayload().toJSONObject())
+                .getJSONObjectClaim(UdapUtil.EXTENSIONS_CLAIM));
+        }
+        assertEquals(1, signers.templateCount());
+    }
+
+    @Test
+    @DisplayName("Pre-encoded claims splice into valid JSON whatever their length")
+    void splicesAnyLength() throws JOSEException {
+        final JwsSignerRegistry signers = new JwsSignerRegistry(
+                new JWKSet(new ECKeyGenerator(Curve.P_256).generate()));
+
+        for (String clientId : List.of("a", "ab", "abc", "client-é")) {
+            final Map<String, Object> claims = signers
+                .getTemplate(new JWTClaimsSet.Builder().issuer(clientId).build(), JWSAlgorithm.ES256)
+                .sign(CLOCK.instant(), 60, "n\"once")
+                .getPayload()
+                .toJSONObject();
+
+            assertEquals(Map.of("iss", clientId, "iat", 1690891200L, "exp", 1690891260L, "jti", "n\"once"), claims);
+        }
+    }
+
+}
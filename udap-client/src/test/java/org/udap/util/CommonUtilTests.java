@@ -0,0 +1,42 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+
+class CommonUtilTests {
+
+    @TempDir
+    Path keyDirectory;
+
+    @Test
+    @DisplayName("EC P-256 PKCS#12 keystore loads as a private EC JWK with its certificate")
+    void loadsEcKeystore() throws Exception {
+        final Path keystore = keyDirectory.resolve("client-ec.p12");
+        final Process keytool = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "keytool")
+            .toString(), "-genkeypair", "-alias", "client", "-keyalg", "EC", "-keysize", "256", "-dname",
+                "CN=https://sandbox.example.org/client-apps/ec", "-storetype", "PKCS12", "-keystore",
+                keystore.toString(), "-storepass", "changeit", "-validity", "1").inheritIO().start();
+        assertEquals(0, keytool.waitFor());
+
+        final JWKSet jwkSet = CommonUtil.getJwkSetFromPkcs12(keystore.toUri(), "changeit".toCharArray());
+
+        final ECKey ecKey = (ECKey) jwkSet.getKeys().get(0);
+        assertEquals(Curve.P_256, ecKey.getCurve());
+        assertTrue(ecKey.isPrivate());
+        assertEquals(1, ecKey.getX509CertChain().size());
+        assertEquals(JWSAlgorithm.ES256, new JwsSignerRegistry(jwkSet).negotiate(List.of("RS256", "ES256")));
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JtiGeneratorTests {
+
+    private static final int THREADS = 8;
+
+    private static final int PER_THREAD = 10_000;
+
+    @Test
+    @DisplayName("Per-thread jti values are unique across threads")
+    void uniqueAcrossThreads() throws Exception {
+        final Set<String> jtis = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < PER_THREAD; j++) {
+                        jtis.add(JtiGenerator.perThread().next());
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(THREADS * PER_THREAD, jtis.size());
+    }
+
+    @Test
+    @DisplayName("jti values need no JSON escaping and threads get distinct prefixes")
+    void urlSafe() throws Exception {
+        final String jti = JtiGenerator.perThread().next();
+        final String[] other = new String[1];
+        final Thread thread = new Thread(() -> other[0] = JtiGenerator.perThread().next());
+        thread.start();
+        thread.join();
+
+        assertTrue(jti.matches("[A-Za-z0-9_-]+"), jti);
+        // 96 bit prefix: 16 base64url characters
+        assertNotEquals(jti.substring(0, 16), other[0].substring(0, 16));
+    }
+
+}
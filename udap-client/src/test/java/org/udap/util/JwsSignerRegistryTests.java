@@ -0,0 +1,71 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+class JwsSignerRegistryTests {
+
+    private static final JWTClaimsSet CLAIMS = new JWTClaimsSet.Builder().issuer("client-id")
+        .subject("client-id")
+        .audience("https://as.example.com/token")
+        .build();
+
+    @Test
+    @DisplayName("Signatures match the minter's header and verify with the client's public key")
+    void signsLikeMinter() throws JOSEException {
+        final RSAKey rsaKey = new RSAKeyGenerator(2048).keyID("client").generate();
+        final JwsSignerRegistry signers = new JwsSignerRegistry(new JWKSet(rsaKey));
+
+        final JWSObject minted = UdapUtil.createJwtWithSignature(CLAIMS, new JWKSet(rsaKey), JWSAlgorithm.RS256);
+        final JWSObject signed = signers.sign(CLAIMS, JWSAlgorithm.RS256);
+
+        assertEquals(minted.getHeader().toJSONObject(), signed.getHeader().toJSONObject());
+        assertEquals(minted.getPayload().toString(), signed.getPayload().toString());
+        assertTrue(signed.verify(new RSASSAVerifier(rsaKey.toRSAPublicKey())));
+        // Reused signer keeps producing valid signatures
+        assertTrue(signers.sign(CLAIMS, JWSAlgorithm.RS256).verify(new RSASSAVerifier(rsaKey.toRSAPublicKey())));
+    }
+
+    @Test
+    @DisplayName("Algorithms without a matching key are rejected")
+    void rejectsUnsupportedAlgorithm() throws JOSEException {
+        final JwsSignerRegistry signers = new JwsSignerRegistry(new JWKSet(new RSAKeyGenerator(2048).generate()));
+
+        assertFalse(signers.supports(JWSAlgorithm.ES256));
+        assertThrows(JOSEException.class, () -> signers.sign(CLAIMS, JWSAlgorithm.ES256));
+    }
+
+    @Test
+    @DisplayName("Preferred algorithm supported by both the keys and the server is negotiated")
+    void negotiatesAlgorithm() throws JOSEException {
+        final JwsSignerRegistry ecSigners = new JwsSignerRegistry(
+                new JWKSet(new ECKeyGenerator(Curve.P_256).generate()));
+        final JwsSignerRegistry rsaSigners = new JwsSignerRegistry(
+                new JWKSet(new RSAKeyGenerator(2048).generate()));
+
+        assertEquals(JWSAlgorithm.ES256, ecSigners.negotiate(List.of("RS256", "ES256")));
+        assertEquals(JWSAlgorithm.RS256, rsaSigners.negotiate(List.of("RS256", "ES256")));
+        // RS256 is assumed when the server does not advertise its algorithms
+        assertEquals(JWSAlgorithm.RS256, rsaSigners.negotiate(null));
+        assertThrows(JOSEException.class, () -> ecSigners.negotiate(List.of("RS256")));
+    }
+
+}
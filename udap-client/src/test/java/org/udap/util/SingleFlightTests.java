@@ -0,0 +1,112 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTests {
+
+    private static final int CALLERS = 16;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts CALLERS concurrent executions for the same key; the leader's call is held
+     * open until every caller has had the chance to join it
+     */
+    private <E extends Exception> List<Future<String>> callConcurrently(final SingleFlight<String, String> flights,
+            final CountDownLatch release, final SingleFlight.Flight<String, E> flight) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(CALLERS);
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> {
+                started.countDown();
+                return flights.execute("key", flight);
+            }));
+        }
+        started.await(5, TimeUnit.SECONDS);
+        // Give the callers a moment to reach the in-flight call
+        Thread.sleep(100);
+        release.countDown();
+
+        return results;
+    }
+
+    @Test
+    @DisplayName("Concurrent callers share one call and its result")
+    void coalescesConcurrentCalls() throws Exception {
+        final SingleFlight<String, String> flights = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<Future<String>> results = callConcurrently(flights, release, () -> {
+            calls.incrementAndGet();
+            release.await();
+            return "token";
+        });
+
+        for (Future<String> result : results) {
+            assertEquals("token", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    @DisplayName("Concurrent callers share the failure of the call in flight")
+    void sharesFailure() throws Exception {
+        final SingleFlight<String, String> flights = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final IOException failure = new IOException("unavailable");
+
+        final List<Future<String>> results = callConcurrently(flights, release, () -> {
+            calls.incrementAndGet();
+            release.await();
+            throw failure;
+        });
+
+        for (Future<String> result : results) {
+            final Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    @DisplayName("A completed call is not reused by later callers")
+    void releasesKeyAfterCompletion() throws Exception {
+        final SingleFlight<String, String> flights = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> flights.execute("key", () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("first attempt");
+        }));
+        assertEquals("second", flights.execute("key", () -> {
+            calls.incrementAndGet();
+            return "second";
+        }));
+        assertEquals(2, calls.get());
+    }
+
+}
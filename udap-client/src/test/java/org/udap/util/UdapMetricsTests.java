@@ -0,0 +1,50 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UdapMetricsTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    private Cache<String, String> cache() {
+        return UdapMetrics.monitor(Caffeine.newBuilder().executor(Runnable::run).recordStats().build(),
+                "udap.test");
+    }
+
+    @Test
+    @DisplayName("A cache created again under the same name replaces the meters of the one before")
+    void replacesCacheMeters() {
+        final Cache<String, String> first = cache();
+        first.put("a", "a");
+        final int meters = meterRegistry.getMeters().size();
+        final Cache<String, String> second = cache();
+        second.put("a", "a");
+        second.put("b", "b");
+
+        assertEquals(meters, meterRegistry.getMeters().size());
+        assertEquals(1, meterRegistry.get("cache.size").tag("cache", "udap.test").gauges().size());
+        assertEquals(2, meterRegistry.get("cache.size").tag("cache", "udap.test").gauge().value());
+    }
+
+}
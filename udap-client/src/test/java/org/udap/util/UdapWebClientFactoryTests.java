@@ -0,0 +1,141 @@
+package org.udap.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.udap.config.UdapHttpClientProperties;
+import org.udap.config.UdapResilienceProperties;
+import org.udap.test.FakeAuthorizationServer;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.timeout.ReadTimeoutException;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+class UdapWebClientFactoryTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private FakeAuthorizationServer server;
+
+    private ConnectionProvider connectionProvider;
+
+    /**
+     * "/port" answers the client port of the connection, "/slow" answers after 500ms
+     */
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        server = FakeAuthorizationServer.builder()
+            .routes(routes -> routes
+                .get("/port",
+                        (request, response) -> response
+                            .sendString(Mono.just(Integer.toString(request.remoteAddress().getPort()))))
+                .get("/slow", (request, response) -> response
+                    .sendString(Mono.just("slow").delayElement(Duration.ofMillis(500)))))
+            .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    /**
+     * @param resilience
+     * @return client over a new connection pool of its own name, publishing pool metrics
+     */
+    private WebClient webClient(final UdapResilienceProperties resilience) {
+        final UdapHttpClientProperties properties = new UdapHttpClientProperties();
+        properties.setPoolName("udap-test-" + UUID.randomUUID());
+        properties.setMetrics(true);
+        connectionProvider = UdapWebClientFactory.createConnectionProvider(properties);
+
+        return UdapWebClientFactory.create(UdapWebClientFactory.createHttpClient(connectionProvider, properties),
+                resilience);
+    }
+
+    private static String get(final WebClient webClient, final String url) {
+        return webClient.get().uri(url).retrieve().bodyToMono(String.class).block(Duration.ofSeconds(10));
+    }
+
+    /**
+     * @return client ports of sequential requests, spaced so that each connection is back
+     * in the pool before the next request
+     */
+    private Set<String> ports(final WebClient webClient, final String host) {
+        return IntStream.range(0, 3).mapToObj(i -> {
+            LockSupport.parkNanos(Duration.ofMillis(100).toNanos());
+            return get(webClient, "http://" + host + ":" + server.port() + "/port");
+        }).collect(Collectors.toSet());
+    }
+
+    private static UdapResilienceProperties responseTimeout(final String host, final Duration responseTimeout) {
+        final UdapResilienceProperties resilience = new UdapResilienceProperties();
+        final UdapResilienceProperties.Timeouts timeouts = new UdapResilienceProperties.Timeouts();
+        timeouts.setResponseTimeout(responseTimeout);
+        resilience.getAuthorizationServers().put(host, timeouts);
+
+        return resilience;
+    }
+
+    @Test
+    @DisplayName("The shared client is created once")
+    void sharesClient() {
+        assertSame(UdapWebClientFactory.getShared(), UdapWebClientFactory.getShared());
+    }
+
+    @Test
+    @DisplayName("Sequential requests reuse the pooled connection, with and without host timeouts")
+    void reusesConnections() {
+        final WebClient webClient = webClient(responseTimeout("localhost", Duration.ofSeconds(5)));
+
+        assertEquals(1, ports(webClient, "localhost").size());
+        assertEquals(1, ports(webClient, "127.0.0.1").size());
+    }
+
+    @Test
+    @DisplayName("A host with its own response timeout gets it; other hosts keep the default")
+    void appliesHostTimeouts() {
+        final WebClient webClient = webClient(responseTimeout("127.0.0.1", Duration.ofMillis(100)));
+
+        final WebClientRequestException e = assertThrows(WebClientRequestException.class,
+                () -> get(webClient, "http://127.0.0.1:" + server.port() + "/slow"));
+        assertInstanceOf(ReadTimeoutException.class, e.getCause());
+        assertEquals("slow", get(webClient, "http://localhost:" + server.port() + "/slow"));
+    }
+
+    @Test
+    @DisplayName("Client variants of hosts with their own timeouts share the connection pool")
+    void sharesPoolAcrossHosts() {
+        final WebClient webClient = webClient(responseTimeout("localhost", Duration.ofSeconds(5)));
+        get(webClient, "http://localhost:" + server.port() + "/port");
+        get(webClient, "http://127.0.0.1:" + server.port() + "/port");
+
+        assertEquals(2, meterRegistry.find("reactor.netty.connection.provider.total.connections")
+            .tag("name", connectionProvider.name())
+            .gauges()
+            .size());
+    }
+
+}